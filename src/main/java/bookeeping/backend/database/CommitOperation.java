@@ -0,0 +1,126 @@
+package bookeeping.backend.database;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CommitOperation
+{
+	private final CommitOperationType commitOperationType;
+	private final String path;
+	private final String name;
+	private final String newPath;
+	private final String newName;
+	private final String nodeId;
+	private final String shareWithUserId;
+	private final String permission;
+	private final Map<String, Object> properties;
+	
+	private CommitOperation(CommitOperationType commitOperationType, String path, String name, String newPath, String newName, String nodeId, String shareWithUserId, String permission, Map<String, Object> properties)
+	{
+		this.commitOperationType = commitOperationType;
+		this.path = path;
+		this.name = name;
+		this.newPath = newPath;
+		this.newName = newName;
+		this.nodeId = nodeId;
+		this.shareWithUserId = shareWithUserId;
+		this.permission = permission;
+		this.properties = properties == null ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(new HashMap<String, Object>(properties));
+	}
+	
+	public static CommitOperation createDirectory(String directoryPath, String directoryName, Map<String, Object> directoryProperties)
+	{
+		return new CommitOperation(CommitOperationType.CreateDirectory, directoryPath, directoryName, null, null, null, null, null, directoryProperties);
+	}
+	
+	public static CommitOperation createFile(String filePath, String fileName, Map<String, Object> fileProperties)
+	{
+		return new CommitOperation(CommitOperationType.CreateFile, filePath, fileName, null, null, null, null, null, fileProperties);
+	}
+	
+	public static CommitOperation moveDirectory(String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName)
+	{
+		return new CommitOperation(CommitOperationType.MoveDirectory, oldDirectoryPath, oldDirectoryName, newDirectoryPath, newDirectoryName, null, null, null, null);
+	}
+	
+	public static CommitOperation moveFile(String oldFilePath, String oldFileName, String newFilePath, String newFileName)
+	{
+		return new CommitOperation(CommitOperationType.MoveFile, oldFilePath, oldFileName, newFilePath, newFileName, null, null, null, null);
+	}
+	
+	public static CommitOperation deleteNode(String nodeId)
+	{
+		return new CommitOperation(CommitOperationType.DeleteNode, null, null, null, null, nodeId, null, null, null);
+	}
+	
+	public static CommitOperation restoreDirectory(String directoryPath, String directoryName, String nodeIdToBeRestored)
+	{
+		return new CommitOperation(CommitOperationType.RestoreDirectory, directoryPath, directoryName, null, null, nodeIdToBeRestored, null, null, null);
+	}
+	
+	public static CommitOperation restoreFile(String filePath, String fileName, String nodeIdToBeRestored)
+	{
+		return new CommitOperation(CommitOperationType.RestoreFile, filePath, fileName, null, null, nodeIdToBeRestored, null, null, null);
+	}
+	
+	public static CommitOperation shareFile(String filePath, String fileName, String shareWithUserId, String filePermission)
+	{
+		return new CommitOperation(CommitOperationType.ShareFile, filePath, fileName, null, null, null, shareWithUserId, filePermission, null);
+	}
+	
+	public static CommitOperation unshareFile(String filePath, String fileName, String unshareWithUserId)
+	{
+		return new CommitOperation(CommitOperationType.UnshareFile, filePath, fileName, null, null, null, unshareWithUserId, null, null);
+	}
+	
+	public static CommitOperation changeNodeProperties(String nodeId, Map<String, Object> properties)
+	{
+		return new CommitOperation(CommitOperationType.ChangeNodeProperties, null, null, null, null, nodeId, null, null, properties);
+	}
+	
+	public CommitOperationType getCommitOperationType()
+	{
+		return this.commitOperationType;
+	}
+	
+	public String getPath()
+	{
+		return this.path;
+	}
+	
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	public String getNewPath()
+	{
+		return this.newPath;
+	}
+	
+	public String getNewName()
+	{
+		return this.newName;
+	}
+	
+	public String getNodeId()
+	{
+		return this.nodeId;
+	}
+	
+	public String getShareWithUserId()
+	{
+		return this.shareWithUserId;
+	}
+	
+	public String getPermission()
+	{
+		return this.permission;
+	}
+	
+	public Map<String, Object> getProperties()
+	{
+		return this.properties;
+	}
+}
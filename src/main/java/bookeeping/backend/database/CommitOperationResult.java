@@ -0,0 +1,44 @@
+package bookeeping.backend.database;
+
+public class CommitOperationResult
+{
+	private final int index;
+	private final CommitOperation commitOperation;
+	private final CommitOperationStatus commitOperationStatus;
+	private final String nodeId;
+	private final Exception exception;
+	
+	public CommitOperationResult(int index, CommitOperation commitOperation, CommitOperationStatus commitOperationStatus, String nodeId, Exception exception)
+	{
+		this.index = index;
+		this.commitOperation = commitOperation;
+		this.commitOperationStatus = commitOperationStatus;
+		this.nodeId = nodeId;
+		this.exception = exception;
+	}
+	
+	public int getIndex()
+	{
+		return this.index;
+	}
+	
+	public CommitOperation getCommitOperation()
+	{
+		return this.commitOperation;
+	}
+	
+	public CommitOperationStatus getCommitOperationStatus()
+	{
+		return this.commitOperationStatus;
+	}
+	
+	public String getNodeId()
+	{
+		return this.nodeId;
+	}
+	
+	public Exception getException()
+	{
+		return this.exception;
+	}
+}
@@ -0,0 +1,6 @@
+package bookeeping.backend.database;
+
+public enum CommitOperationType
+{
+	CreateDirectory, CreateFile, MoveDirectory, MoveFile, DeleteNode, RestoreDirectory, RestoreFile, ShareFile, UnshareFile, ChangeNodeProperties
+}
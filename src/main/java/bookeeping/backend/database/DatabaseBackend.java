@@ -0,0 +1,6 @@
+package bookeeping.backend.database;
+
+public enum DatabaseBackend
+{
+	Neo4JEmbedded, Neo4JRest, TitanCassandraEmbedded
+}
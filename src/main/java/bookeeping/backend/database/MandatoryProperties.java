@@ -2,5 +2,5 @@ package bookeeping.backend.database;
 
 public enum MandatoryProperties
 {
-	nodeId, rootNodeId, next, userId, filesystemId, directoryPath, directoryName, filePath, fileName, commitId, version, permission
+	nodeId, rootNodeId, next, userId, filesystemId, directoryPath, directoryName, filePath, fileName, commitId, version, permission, versionOf, versionKey, pathKey
 }
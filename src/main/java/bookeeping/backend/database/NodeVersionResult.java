@@ -0,0 +1,37 @@
+package bookeeping.backend.database;
+
+public class NodeVersionResult
+{
+	private final NodeVersionStatus nodeVersionStatus;
+	private final String nodeId;
+	private final int headVersion;
+	
+	public NodeVersionResult(NodeVersionStatus nodeVersionStatus, String nodeId, int headVersion)
+	{
+		this.nodeVersionStatus = nodeVersionStatus;
+		this.nodeId = nodeId;
+		this.headVersion = headVersion;
+	}
+	
+	public NodeVersionStatus getNodeVersionStatus()
+	{
+		return this.nodeVersionStatus;
+	}
+	
+	/*
+	 * The node id of the new version, or null on a conflict.
+	 */
+	public String getNodeId()
+	{
+		return this.nodeId;
+	}
+	
+	/*
+	 * The version of the head after the call: the new version, or on a conflict the version that moved
+	 * the head away from the expected one (-1 when that head could not be read yet).
+	 */
+	public int getHeadVersion()
+	{
+		return this.headVersion;
+	}
+}
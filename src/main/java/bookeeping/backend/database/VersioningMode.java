@@ -0,0 +1,6 @@
+package bookeeping.backend.database;
+
+public enum VersioningMode
+{
+	DeepCopy, StructuralSharing
+}
@@ -7,28 +7,69 @@ import org.neo4j.cypher.javacompat.ExecutionEngine;
 import org.neo4j.cypher.javacompat.ExecutionResult;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
 import org.neo4j.graphdb.index.AutoIndexer;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.kernel.DeadlockDetectedException;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.VersioningMode;
 import bookeeping.backend.database.neo4j.NodeLabels;
+import bookeeping.backend.utilities.AutoIncrementLease;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.LruNodeCache;
+import bookeeping.backend.utilities.cache.NodeCache;
 import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+import bookeeping.backend.utilities.filter.PathFilter;
 
 public class Neo4JEmbeddedConnection
 {
 	private static Neo4JEmbeddedConnection neo4jEmbeddedConnection;
 	private GraphDatabaseService graphDatabaseService;
 	private ExecutionEngine executionEngine;
+	private AutoIncrementLease autoIncrementLease;
+	private VersioningMode versioningMode;
+	private PathStorageMode pathStorageMode;
+	private NodeCache nodeCache;
+	private NodeCache versionCache;
+	private PathFilter pathFilter;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
+	private int commitChunkSize;
 	
 	private Neo4JEmbeddedConnection()
 	{
 		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
 		String databaseLocation = databaseConnectionProperty.getProperty("Neo4JEmbeddedDatabaseLocation");
+		int autoIncrementBlockSize = Integer.parseInt(databaseConnectionProperty.getProperty("AutoIncrementBlockSize"));
+		String versioningMode = databaseConnectionProperty.getProperty("NodeVersioningMode");
+		String pathStorageMode = databaseConnectionProperty.getProperty("PathStorageMode");
+		long nodeCacheMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("NodeCacheMaximumBytes"));
+		long versionCacheMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("VersionCacheMaximumBytes"));
+		long pathFilterMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("PathFilterMaximumBytes"));
+		double pathFilterFalsePositiveRate = Double.parseDouble(databaseConnectionProperty.getProperty("PathFilterFalsePositiveRate"));
+		int filesystemLockStripes = Integer.parseInt(databaseConnectionProperty.getProperty("FilesystemLockStripes"));
+		long filesystemLockTimeout = Long.parseLong(databaseConnectionProperty.getProperty("FilesystemLockTimeout"));
+		int transactionRetryAttempts = Integer.parseInt(databaseConnectionProperty.getProperty("TransactionRetryAttempts"));
+		long transactionRetryInitialBackoff = Long.parseLong(databaseConnectionProperty.getProperty("TransactionRetryInitialBackoff"));
+		long transactionRetryMaximumBackoff = Long.parseLong(databaseConnectionProperty.getProperty("TransactionRetryMaximumBackoff"));
+		int commitChunkSize = Integer.parseInt(databaseConnectionProperty.getProperty("CommitChunkSize"));
 		
 		this.graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase(databaseLocation);
 		this.executionEngine = new ExecutionEngine(this.graphDatabaseService);
+		this.autoIncrementLease = new AutoIncrementLease(autoIncrementBlockSize);
+		this.versioningMode = VersioningMode.valueOf(versioningMode);
+		this.pathStorageMode = PathStorageMode.valueOf(pathStorageMode);
+		this.nodeCache = new LruNodeCache(nodeCacheMaximumBytes);
+		this.versionCache = new LruNodeCache(versionCacheMaximumBytes);
+		this.pathFilter = new PathFilter(pathFilterMaximumBytes, pathFilterFalsePositiveRate);
+		this.filesystemLock = new FilesystemLock(filesystemLockStripes, filesystemLockTimeout);
+		this.transactionRetry = new TransactionRetry(transactionRetryAttempts, transactionRetryInitialBackoff, transactionRetryMaximumBackoff, DeadlockDetectedException.class);
+		this.commitChunkSize = commitChunkSize;
 		this.setupGraph();
 		this.setupPreRequisites();
 	}
@@ -40,8 +81,13 @@ public class Neo4JEmbeddedConnection
 			AutoIndexer<Node> autoIndexer = this.graphDatabaseService.index().getNodeAutoIndexer();
 			autoIndexer.startAutoIndexingProperty(MandatoryProperties.nodeId.name());
 			autoIndexer.startAutoIndexingProperty(MandatoryProperties.userId.name());
+			autoIndexer.startAutoIndexingProperty(MandatoryProperties.versionKey.name());
 			autoIndexer.setEnabled(true);
 			
+			AutoIndexer<Relationship> relationshipAutoIndexer = this.graphDatabaseService.index().getRelationshipAutoIndexer();
+			relationshipAutoIndexer.startAutoIndexingProperty(MandatoryProperties.pathKey.name());
+			relationshipAutoIndexer.setEnabled(true);
+			
 			transaction.success();
 		}
 	}
@@ -69,7 +115,7 @@ public class Neo4JEmbeddedConnection
 		}
 	}
 	
-	public static Neo4JEmbeddedConnection getInstance()
+	public static synchronized Neo4JEmbeddedConnection getInstance()
 	{
 		if(Neo4JEmbeddedConnection.neo4jEmbeddedConnection == null)
 		{
@@ -84,6 +130,83 @@ public class Neo4JEmbeddedConnection
 		return this.graphDatabaseService;
 	}
 	
+	public AutoIncrementLease getAutoIncrementLease()
+	{
+		return this.autoIncrementLease;
+	}
+	
+	public VersioningMode getVersioningMode()
+	{
+		return this.versioningMode;
+	}
+	
+	/*
+	 * Read by CommonCode when it is built, so it applies to services built afterwards.
+	 */
+	public void setVersioningMode(VersioningMode versioningMode)
+	{
+		this.versioningMode = versioningMode;
+	}
+	
+	public PathStorageMode getPathStorageMode()
+	{
+		return this.pathStorageMode;
+	}
+	
+	/*
+	 * Read by CommonCode and DirectoryServiceImpl when they are built, so it applies to services built
+	 * afterwards.
+	 */
+	public void setPathStorageMode(PathStorageMode pathStorageMode)
+	{
+		this.pathStorageMode = pathStorageMode;
+	}
+	
+	public NodeCache getNodeCache()
+	{
+		return this.nodeCache;
+	}
+	
+	public void setNodeCache(NodeCache nodeCache)
+	{
+		this.nodeCache = nodeCache;
+	}
+	
+	public NodeCache getVersionCache()
+	{
+		return this.versionCache;
+	}
+	
+	public void setVersionCache(NodeCache versionCache)
+	{
+		this.versionCache = versionCache;
+	}
+	
+	public PathFilter getPathFilter()
+	{
+		return this.pathFilter;
+	}
+	
+	public void setPathFilter(PathFilter pathFilter)
+	{
+		this.pathFilter = pathFilter;
+	}
+	
+	public FilesystemLock getFilesystemLock()
+	{
+		return this.filesystemLock;
+	}
+	
+	public TransactionRetry getTransactionRetry()
+	{
+		return this.transactionRetry;
+	}
+	
+	public int getCommitChunkSize()
+	{
+		return this.commitChunkSize;
+	}
+	
 	public Iterator<Map<String, Object>> runCypherQuery(String cypherQuery, Map<String,Object> queryParameters)
 	{
 		ExecutionResult executionResult = this.executionEngine.execute(cypherQuery, queryParameters);
@@ -5,31 +5,71 @@ import java.util.Map;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.AutoIndexer;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.kernel.DeadlockDetectedException;
 import org.neo4j.rest.graphdb.RestGraphDatabase;
 import org.neo4j.rest.graphdb.query.RestCypherQueryEngine;
 import org.neo4j.rest.graphdb.util.QueryResult;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.VersioningMode;
 import bookeeping.backend.database.neo4j.NodeLabels;
+import bookeeping.backend.utilities.AutoIncrementLease;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.LruNodeCache;
+import bookeeping.backend.utilities.cache.NodeCache;
 import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+import bookeeping.backend.utilities.filter.PathFilter;
 
 public class Neo4JRestConnection
 {
 	private static Neo4JRestConnection neo4jRestConnection;
+	private String restEndpoint;
 	private GraphDatabaseService graphDatabaseService;
 	private RestCypherQueryEngine restCypherQueryEngine;
+	private AutoIncrementLease autoIncrementLease;
+	private VersioningMode versioningMode;
+	private PathStorageMode pathStorageMode;
+	private NodeCache nodeCache;
+	private NodeCache versionCache;
+	private PathFilter pathFilter;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
 	
 	private Neo4JRestConnection()
 	{
 		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
 		String restEndpoint = databaseConnectionProperty.getProperty("Neo4JRestEndpoint");
+		int autoIncrementBlockSize = Integer.parseInt(databaseConnectionProperty.getProperty("AutoIncrementBlockSize"));
+		String versioningMode = databaseConnectionProperty.getProperty("NodeVersioningMode");
+		String pathStorageMode = databaseConnectionProperty.getProperty("PathStorageMode");
+		long nodeCacheMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("NodeCacheMaximumBytes"));
+		long versionCacheMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("VersionCacheMaximumBytes"));
+		long pathFilterMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("PathFilterMaximumBytes"));
+		double pathFilterFalsePositiveRate = Double.parseDouble(databaseConnectionProperty.getProperty("PathFilterFalsePositiveRate"));
+		int filesystemLockStripes = Integer.parseInt(databaseConnectionProperty.getProperty("FilesystemLockStripes"));
+		long filesystemLockTimeout = Long.parseLong(databaseConnectionProperty.getProperty("FilesystemLockTimeout"));
+		int transactionRetryAttempts = Integer.parseInt(databaseConnectionProperty.getProperty("TransactionRetryAttempts"));
+		long transactionRetryInitialBackoff = Long.parseLong(databaseConnectionProperty.getProperty("TransactionRetryInitialBackoff"));
+		long transactionRetryMaximumBackoff = Long.parseLong(databaseConnectionProperty.getProperty("TransactionRetryMaximumBackoff"));
 		
+		this.restEndpoint = restEndpoint;
 		RestGraphDatabase restGraphDatabase = new RestGraphDatabase(restEndpoint);
 		this.graphDatabaseService = restGraphDatabase;
 		this.restCypherQueryEngine = new RestCypherQueryEngine(restGraphDatabase.getRestAPI());
+		this.autoIncrementLease = new AutoIncrementLease(autoIncrementBlockSize);
+		this.versioningMode = VersioningMode.valueOf(versioningMode);
+		this.pathStorageMode = PathStorageMode.valueOf(pathStorageMode);
+		this.nodeCache = new LruNodeCache(nodeCacheMaximumBytes);
+		this.versionCache = new LruNodeCache(versionCacheMaximumBytes);
+		this.pathFilter = new PathFilter(pathFilterMaximumBytes, pathFilterFalsePositiveRate);
+		this.filesystemLock = new FilesystemLock(filesystemLockStripes, filesystemLockTimeout);
+		this.transactionRetry = new TransactionRetry(transactionRetryAttempts, transactionRetryInitialBackoff, transactionRetryMaximumBackoff, DeadlockDetectedException.class);
 		this.setupGraph();
 		this.setupPreRequisites();
 	}
@@ -41,8 +81,13 @@ public class Neo4JRestConnection
 			AutoIndexer<Node> autoIndexer = this.graphDatabaseService.index().getNodeAutoIndexer();
 			autoIndexer.startAutoIndexingProperty(MandatoryProperties.nodeId.name());
 			autoIndexer.startAutoIndexingProperty(MandatoryProperties.userId.name());
+			autoIndexer.startAutoIndexingProperty(MandatoryProperties.versionKey.name());
 			autoIndexer.setEnabled(true);
 			
+			AutoIndexer<Relationship> relationshipAutoIndexer = this.graphDatabaseService.index().getRelationshipAutoIndexer();
+			relationshipAutoIndexer.startAutoIndexingProperty(MandatoryProperties.pathKey.name());
+			relationshipAutoIndexer.setEnabled(true);
+			
 			transaction.success();
 		}
 	}
@@ -70,7 +115,7 @@ public class Neo4JRestConnection
 		}
 	}
 	
-	public static Neo4JRestConnection getInstance()
+	public static synchronized Neo4JRestConnection getInstance()
 	{
 		if(Neo4JRestConnection.neo4jRestConnection == null)
 		{
@@ -80,11 +125,88 @@ public class Neo4JRestConnection
 		return Neo4JRestConnection.neo4jRestConnection;
 	}
 	
+	public String getRestEndpoint()
+	{
+		return this.restEndpoint;
+	}
+	
 	public GraphDatabaseService getGraphDatabaseServiceObject()
 	{
 		return this.graphDatabaseService;
 	}
 	
+	public AutoIncrementLease getAutoIncrementLease()
+	{
+		return this.autoIncrementLease;
+	}
+	
+	public VersioningMode getVersioningMode()
+	{
+		return this.versioningMode;
+	}
+	
+	/*
+	 * Read by CommonCode when it is built, so it applies to services built afterwards.
+	 */
+	public void setVersioningMode(VersioningMode versioningMode)
+	{
+		this.versioningMode = versioningMode;
+	}
+	
+	public PathStorageMode getPathStorageMode()
+	{
+		return this.pathStorageMode;
+	}
+	
+	/*
+	 * Read by CommonCode and DirectoryServiceImpl when they are built, so it applies to services built
+	 * afterwards.
+	 */
+	public void setPathStorageMode(PathStorageMode pathStorageMode)
+	{
+		this.pathStorageMode = pathStorageMode;
+	}
+	
+	public NodeCache getNodeCache()
+	{
+		return this.nodeCache;
+	}
+	
+	public void setNodeCache(NodeCache nodeCache)
+	{
+		this.nodeCache = nodeCache;
+	}
+	
+	public NodeCache getVersionCache()
+	{
+		return this.versionCache;
+	}
+	
+	public void setVersionCache(NodeCache versionCache)
+	{
+		this.versionCache = versionCache;
+	}
+	
+	public PathFilter getPathFilter()
+	{
+		return this.pathFilter;
+	}
+	
+	public void setPathFilter(PathFilter pathFilter)
+	{
+		this.pathFilter = pathFilter;
+	}
+	
+	public FilesystemLock getFilesystemLock()
+	{
+		return this.filesystemLock;
+	}
+	
+	public TransactionRetry getTransactionRetry()
+	{
+		return this.transactionRetry;
+	}
+	
 	public Iterator<Map<String, Object>> runCypherQuery(String cypherQuery, Map<String,Object> queryParameters)
 	{
 		QueryResult<Map<String,Object>> queryResult = this.restCypherQueryEngine.query(cypherQuery, queryParameters);
@@ -1,64 +1,162 @@
 package bookeeping.backend.database.connection.singleton;
 
 import org.apache.commons.configuration.BaseConfiguration;
+import org.apache.commons.configuration.Configuration;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.VersioningMode;
 import bookeeping.backend.database.titan.NodeLabels;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.utilities.AutoIncrementLease;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.LruNodeCache;
+import bookeeping.backend.utilities.cache.NodeCache;
 import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+import bookeeping.backend.utilities.filter.PathFilter;
 
 import com.thinkaurelius.titan.core.PropertyKey;
 import com.thinkaurelius.titan.core.TitanFactory;
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.schema.ConsistencyModifier;
+import com.thinkaurelius.titan.core.schema.TitanGraphIndex;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
+import com.thinkaurelius.titan.diskstorage.TemporaryBackendException;
+import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
+import com.thinkaurelius.titan.diskstorage.locking.TemporaryLockingException;
+import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
 public class TitanCassandraEmbeddedConnection
 {
 	private static TitanCassandraEmbeddedConnection titanCassandraEmbeddedConnection;
 	private TitanGraph titanGraph;
+	private AutoIncrementLease autoIncrementLease;
+	private VersioningMode versioningMode;
+	private PathStorageMode pathStorageMode;
+	private NodeCache nodeCache;
+	private NodeCache versionCache;
+	private PathFilter pathFilter;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
+	private int commitChunkSize;
+	private int readTransactionVertexCacheSize;
 	
 	private TitanCassandraEmbeddedConnection()
 	{
 		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
 		String databaseBackend = databaseConnectionProperty.getProperty("TitanCassandraEmbeddedServerBackend");
 		String databaseHostname = databaseConnectionProperty.getProperty("TitanCassandraEmbeddedServerHostname");
+		int autoIncrementBlockSize = Integer.parseInt(databaseConnectionProperty.getProperty("AutoIncrementBlockSize"));
+		String versioningMode = databaseConnectionProperty.getProperty("NodeVersioningMode");
+		String pathStorageMode = databaseConnectionProperty.getProperty("PathStorageMode");
+		long nodeCacheMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("NodeCacheMaximumBytes"));
+		long versionCacheMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("VersionCacheMaximumBytes"));
+		long pathFilterMaximumBytes = Long.parseLong(databaseConnectionProperty.getProperty("PathFilterMaximumBytes"));
+		double pathFilterFalsePositiveRate = Double.parseDouble(databaseConnectionProperty.getProperty("PathFilterFalsePositiveRate"));
+		int filesystemLockStripes = Integer.parseInt(databaseConnectionProperty.getProperty("FilesystemLockStripes"));
+		long filesystemLockTimeout = Long.parseLong(databaseConnectionProperty.getProperty("FilesystemLockTimeout"));
+		int transactionRetryAttempts = Integer.parseInt(databaseConnectionProperty.getProperty("TransactionRetryAttempts"));
+		long transactionRetryInitialBackoff = Long.parseLong(databaseConnectionProperty.getProperty("TransactionRetryInitialBackoff"));
+		long transactionRetryMaximumBackoff = Long.parseLong(databaseConnectionProperty.getProperty("TransactionRetryMaximumBackoff"));
+		int commitChunkSize = Integer.parseInt(databaseConnectionProperty.getProperty("CommitChunkSize"));
+		int readTransactionVertexCacheSize = Integer.parseInt(databaseConnectionProperty.getProperty("TitanReadTransactionVertexCacheSize"));
+		boolean databaseCache = Boolean.parseBoolean(databaseConnectionProperty.getProperty("TitanDatabaseCache"));
+		double databaseCacheSize = Double.parseDouble(databaseConnectionProperty.getProperty("TitanDatabaseCacheSize"));
 		
 		BaseConfiguration baseConfiguration = new BaseConfiguration();
 		baseConfiguration.setProperty("storage.backend", databaseBackend);
 		baseConfiguration.setProperty("storage.hostname", databaseHostname);
 		
+		/*
+		 * A read transaction starts with an empty vertex cache, so without the database cache each getter
+		 * loads its vertices from the backend again. This graph is the only writer, and its own commits
+		 * expire the cached entries, so they are kept until then.
+		 */
+		baseConfiguration.setProperty("cache.db-cache", databaseCache);
+		baseConfiguration.setProperty("cache.db-cache-size", databaseCacheSize);
+		baseConfiguration.setProperty("cache.db-cache-time", 0);
+		
 		this.titanGraph = TitanFactory.open(baseConfiguration);
-		this.setupGraph();
-		this.setupPreRequisites();
+		this.autoIncrementLease = new AutoIncrementLease(autoIncrementBlockSize);
+		this.versioningMode = VersioningMode.valueOf(versioningMode);
+		this.pathStorageMode = PathStorageMode.valueOf(pathStorageMode);
+		this.nodeCache = new LruNodeCache(nodeCacheMaximumBytes);
+		this.versionCache = new LruNodeCache(versionCacheMaximumBytes);
+		this.pathFilter = new PathFilter(pathFilterMaximumBytes, pathFilterFalsePositiveRate);
+		this.filesystemLock = new FilesystemLock(filesystemLockStripes, filesystemLockTimeout);
+		this.transactionRetry = new TransactionRetry(transactionRetryAttempts, transactionRetryInitialBackoff, transactionRetryMaximumBackoff, PermanentLockingException.class, TemporaryLockingException.class, TemporaryBackendException.class);
+		this.commitChunkSize = commitChunkSize;
+		this.readTransactionVertexCacheSize = readTransactionVertexCacheSize;
+		TitanCassandraEmbeddedConnection.setupGraph(this.titanGraph);
+		TitanCassandraEmbeddedConnection.setupPreRequisites(this.titanGraph);
 	}
 	
-	private void setupGraph()
+	private static void setupGraph(TitanGraph titanGraph)
 	{
-		TitanManagement titanManagement = this.titanGraph.getManagementSystem();
+		TitanManagement titanManagement = titanGraph.getManagementSystem();
 		
 		try
 		{
 			for(NodeLabels nodeLabels : NodeLabels.values())
 			{
-				if(! this.titanGraph.containsVertexLabel(nodeLabels.name()))
+				if(! titanGraph.containsVertexLabel(nodeLabels.name()))
 				{
 					titanManagement.makeVertexLabel(nodeLabels.name()).make();
 				}
 			}
 			
-			if(! this.titanGraph.containsPropertyKey(MandatoryProperties.nodeId.name()))
+			if(! titanGraph.containsPropertyKey(MandatoryProperties.nodeId.name()))
 			{
 				PropertyKey nodeIdPropertyKey = titanManagement.makePropertyKey(MandatoryProperties.nodeId.name()).dataType(String.class).make();
 				titanManagement.buildIndex("nodeIdIndex", Vertex.class).addKey(nodeIdPropertyKey).unique().buildCompositeIndex();
 			}
 			
-			if(! this.titanGraph.containsPropertyKey(MandatoryProperties.userId.name()))
+			if(! titanGraph.containsPropertyKey(MandatoryProperties.userId.name()))
 			{
 				PropertyKey userIdPropertyKey = titanManagement.makePropertyKey(MandatoryProperties.userId.name()).dataType(String.class).make();
 				titanManagement.buildIndex("userIdIndex", Vertex.class).addKey(userIdPropertyKey).unique().buildCompositeIndex();
 			}
 			
+			if(! titanGraph.containsPropertyKey(MandatoryProperties.versionKey.name()))
+			{
+				PropertyKey versionKeyPropertyKey = titanManagement.makePropertyKey(MandatoryProperties.versionKey.name()).dataType(String.class).make();
+				titanManagement.buildIndex("versionKeyIndex", Vertex.class).addKey(versionKeyPropertyKey).unique().buildCompositeIndex();
+			}
+			
+			/*
+			 * Two versions of a node with the same versionKey mean a forked version chain. Locking the
+			 * index makes the second of two concurrent commits fail instead of both going through.
+			 */
+			TitanGraphIndex versionKeyIndex = titanManagement.getGraphIndex("versionKeyIndex");
+			if(titanManagement.getConsistency(versionKeyIndex) != ConsistencyModifier.LOCK)
+			{
+				titanManagement.setConsistency(versionKeyIndex, ConsistencyModifier.LOCK);
+			}
+			
+			/*
+			 * Two leases reserving an auto increment block at once would read the same next value. With the
+			 * key locked the second commit fails and is retried, reading the value the first one wrote.
+			 */
+			if(! titanGraph.containsPropertyKey(MandatoryProperties.next.name()))
+			{
+				titanManagement.makePropertyKey(MandatoryProperties.next.name()).dataType(String.class).make();
+			}
+			
+			PropertyKey nextPropertyKey = titanManagement.getPropertyKey(MandatoryProperties.next.name());
+			if(titanManagement.getConsistency(nextPropertyKey) != ConsistencyModifier.LOCK)
+			{
+				titanManagement.setConsistency(nextPropertyKey, ConsistencyModifier.LOCK);
+			}
+			
+			if(! titanGraph.containsPropertyKey(MandatoryProperties.pathKey.name()))
+			{
+				PropertyKey pathKeyPropertyKey = titanManagement.makePropertyKey(MandatoryProperties.pathKey.name()).dataType(String.class).make();
+				titanManagement.buildIndex("pathKeyIndex", Edge.class).addKey(pathKeyPropertyKey).buildCompositeIndex();
+			}
+			
 			titanManagement.commit();
 		}
 		finally
@@ -70,22 +168,59 @@ public class TitanCassandraEmbeddedConnection
 		}
 	}
 	
-	private void setupPreRequisites()
+	/*
+	 * Batch loading switches off automatic schema creation, so the keys and labels the services would
+	 * otherwise create on first use are made up front, the same way the default schema maker makes them.
+	 */
+	private static void setupBatchLoadingSchema(TitanGraph titanGraph)
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		TitanManagement titanManagement = titanGraph.getManagementSystem();
 		
 		try
 		{
-			if(! this.titanGraph.getVertices(MandatoryProperties.nodeId.name(), "0").iterator().hasNext())
+			for(MandatoryProperties mandatoryProperties : MandatoryProperties.values())
 			{
-				Vertex autoIncrement = this.titanGraph.addVertexWithLabel(NodeLabels.AutoIncrement.name());
+				if(! titanGraph.containsRelationType(mandatoryProperties.name()))
+				{
+					titanManagement.makePropertyKey(mandatoryProperties.name()).dataType(Object.class).make();
+				}
+			}
+			
+			for(RelationshipLabels relationshipLabels : RelationshipLabels.values())
+			{
+				if(! titanGraph.containsRelationType(relationshipLabels.name()))
+				{
+					titanManagement.makeEdgeLabel(relationshipLabels.name()).make();
+				}
+			}
+			
+			titanManagement.commit();
+		}
+		finally
+		{
+			if(titanManagement.isOpen())
+			{
+				titanManagement.rollback();
+			}
+		}
+	}
+	
+	private static void setupPreRequisites(TitanGraph titanGraph)
+	{
+		TitanTransaction titanTransaction = titanGraph.newTransaction();
+		
+		try
+		{
+			if(! titanTransaction.getVertices(MandatoryProperties.nodeId.name(), "0").iterator().hasNext())
+			{
+				Vertex autoIncrement = titanTransaction.addVertexWithLabel(NodeLabels.AutoIncrement.name());
 				autoIncrement.setProperty(MandatoryProperties.nodeId.name(), "0");
 				autoIncrement.setProperty(MandatoryProperties.next.name(), "2");
 			}
 			
-			if(! this.titanGraph.getVertices(MandatoryProperties.nodeId.name(), "1").iterator().hasNext())
+			if(! titanTransaction.getVertices(MandatoryProperties.nodeId.name(), "1").iterator().hasNext())
 			{
-				Vertex user = this.titanGraph.addVertexWithLabel(NodeLabels.User.name());
+				Vertex user = titanTransaction.addVertexWithLabel(NodeLabels.User.name());
 				user.setProperty(MandatoryProperties.nodeId.name(), "1");
 				user.setProperty(MandatoryProperties.userId.name(), "public");
 			}
@@ -101,7 +236,7 @@ public class TitanCassandraEmbeddedConnection
 		}
 	}
 	
-	public static TitanCassandraEmbeddedConnection getInstance()
+	public static synchronized TitanCassandraEmbeddedConnection getInstance()
 	{
 		if(TitanCassandraEmbeddedConnection.titanCassandraEmbeddedConnection == null)
 		{
@@ -111,8 +246,108 @@ public class TitanCassandraEmbeddedConnection
 		return TitanCassandraEmbeddedConnection.titanCassandraEmbeddedConnection;
 	}
 	
+	/*
+	 * A separate graph for bulk imports: batch loading turns off locking and consistency checks, and large
+	 * id blocks keep the loader from going back to the storage backend for ids. ids.block-size is a global
+	 * option, so it only takes effect on a graph that is being initialised (or after it is changed with
+	 * every instance offline). Nothing else may write to the graph while it is open this way.
+	 */
+	public static TitanGraph openBatchLoadingGraph(Configuration configuration, int idBlockSize)
+	{
+		configuration.setProperty("storage.batch-loading", true);
+		configuration.setProperty("ids.block-size", idBlockSize);
+		
+		TitanGraph titanGraph = TitanFactory.open(configuration);
+		TitanCassandraEmbeddedConnection.setupGraph(titanGraph);
+		TitanCassandraEmbeddedConnection.setupBatchLoadingSchema(titanGraph);
+		TitanCassandraEmbeddedConnection.setupPreRequisites(titanGraph);
+		return titanGraph;
+	}
+	
 	public TitanGraph getTitanGraphObject()
 	{
 		return this.titanGraph;
 	}
+	
+	public AutoIncrementLease getAutoIncrementLease()
+	{
+		return this.autoIncrementLease;
+	}
+	
+	public VersioningMode getVersioningMode()
+	{
+		return this.versioningMode;
+	}
+	
+	/*
+	 * Read by CommonCode when it is built, so it applies to services built afterwards.
+	 */
+	public void setVersioningMode(VersioningMode versioningMode)
+	{
+		this.versioningMode = versioningMode;
+	}
+	
+	public PathStorageMode getPathStorageMode()
+	{
+		return this.pathStorageMode;
+	}
+	
+	/*
+	 * Read by CommonCode and DirectoryServiceImpl when they are built, so it applies to services built
+	 * afterwards.
+	 */
+	public void setPathStorageMode(PathStorageMode pathStorageMode)
+	{
+		this.pathStorageMode = pathStorageMode;
+	}
+	
+	public NodeCache getNodeCache()
+	{
+		return this.nodeCache;
+	}
+	
+	public void setNodeCache(NodeCache nodeCache)
+	{
+		this.nodeCache = nodeCache;
+	}
+	
+	public NodeCache getVersionCache()
+	{
+		return this.versionCache;
+	}
+	
+	public void setVersionCache(NodeCache versionCache)
+	{
+		this.versionCache = versionCache;
+	}
+	
+	public PathFilter getPathFilter()
+	{
+		return this.pathFilter;
+	}
+	
+	public void setPathFilter(PathFilter pathFilter)
+	{
+		this.pathFilter = pathFilter;
+	}
+	
+	public FilesystemLock getFilesystemLock()
+	{
+		return this.filesystemLock;
+	}
+	
+	public TransactionRetry getTransactionRetry()
+	{
+		return this.transactionRetry;
+	}
+	
+	public int getCommitChunkSize()
+	{
+		return this.commitChunkSize;
+	}
+	
+	public int getReadTransactionVertexCacheSize()
+	{
+		return this.readTransactionVertexCacheSize;
+	}
 }
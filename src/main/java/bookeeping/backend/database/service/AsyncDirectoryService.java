@@ -0,0 +1,14 @@
+package bookeeping.backend.database.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncDirectoryService
+{
+	public CompletableFuture<String> createNewDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, Map<String, Object> directoryProperties);
+	public CompletableFuture<Void> restoreDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, String nodeIdToBeRestored);
+	public CompletableFuture<String> moveDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName);
+	public CompletableFuture<Map<String, Object>> getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName);
+	public CompletableFuture<Map<String, Map<String, Object>>> getDirectories(String userId, String filesystemId, int filesystemVersion, String directoryPath, List<String> directoryNames);
+}
@@ -0,0 +1,16 @@
+package bookeeping.backend.database.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncFileService
+{
+	public CompletableFuture<String> createNewFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, Map<String, Object> fileProperties);
+	public CompletableFuture<Void> shareFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String shareWithUserId, String filePermission);
+	public CompletableFuture<Void> unshareFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String unshareWithUserId);
+	public CompletableFuture<Void> restoreFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String nodeIdToBeRestored);
+	public CompletableFuture<String> moveFile(String commitId, String userId, String filesystemId, int filesystemVersion, String oldFilePath, String oldFileName, String newFilePath, String newFileName);
+	public CompletableFuture<Map<String, Object>> getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName);
+	public CompletableFuture<Map<String, Map<String, Object>>> getFiles(String userId, String filesystemId, int filesystemVersion, String filePath, List<String> fileNames);
+}
@@ -0,0 +1,12 @@
+package bookeeping.backend.database.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncFilesystemService
+{
+	public CompletableFuture<String> createNewFilesystem(String userId, String filesystemId, Map<String, Object> filesystemProperties);
+	public CompletableFuture<Void> restoreFilesystem(String commitId, String userId, String filesystemId, String nodeIdToBeRestored);
+	public CompletableFuture<Map<String, Object>> getFilesystem(String userId, String filesystemId);
+	public CompletableFuture<String> getRootDirectory(String userId, String filesystemId, int filesystemVersion);
+}
@@ -0,0 +1,18 @@
+package bookeeping.backend.database.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import bookeeping.backend.database.NodeVersionResult;
+
+public interface AsyncGenericService
+{
+	public CompletableFuture<String> createNewVersion(String commitId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties);
+	public CompletableFuture<NodeVersionResult> createNewVersion(String commitId, String nodeId, int expectedVersion, Map<String, Object> changeMetadata, Map<String, Object> changedProperties);
+	public CompletableFuture<Map<String, Object>> getNode(String nodeId);
+	public CompletableFuture<Map<String, Map<String, Object>>> getNodes(List<String> nodeIds);
+	public CompletableFuture<Map<String, Object>> getNodeVersion(String nodeId, int version);
+	public CompletableFuture<Void> deleteNodeTemporarily(String commitId, String nodeId);
+	public CompletableFuture<Void> changeNodeProperties(String nodeId, Map<String, Object> properties);
+}
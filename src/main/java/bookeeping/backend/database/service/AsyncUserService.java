@@ -0,0 +1,10 @@
+package bookeeping.backend.database.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncUserService
+{
+	public CompletableFuture<Void> createNewUser(String userId, Map<String, Object> userProperties);
+	public CompletableFuture<Map<String, Object>> getUser(String userId);
+}
@@ -0,0 +1,12 @@
+package bookeeping.backend.database.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncXrayService
+{
+	public CompletableFuture<List<Map<String, Object>>> xrayNode(String nodeId);
+	public CompletableFuture<List<Map<String, Object>>> xrayVersion(String nodeId);
+	public CompletableFuture<List<Map<String, Object>>> xrayDeleted(String nodeId);
+}
@@ -0,0 +1,11 @@
+package bookeeping.backend.database.service;
+
+import java.util.List;
+
+import bookeeping.backend.database.CommitOperation;
+import bookeeping.backend.database.CommitOperationResult;
+
+public interface CommitService
+{
+	public List<CommitOperationResult> commit(String commitId, String userId, String filesystemId, int filesystemVersion, List<CommitOperation> commitOperations);
+}
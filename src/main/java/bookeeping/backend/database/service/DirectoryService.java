@@ -1,5 +1,6 @@
 package bookeeping.backend.database.service;
 
+import java.util.List;
 import java.util.Map;
 
 import bookeeping.backend.exception.DirectoryNotFound;
@@ -16,4 +17,5 @@ public interface DirectoryService
 	public void restoreDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, DuplicateDirectory, NodeNotFound, NodeUnavailable;
 	public String moveDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory;
 	public Map<String, Object> getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound;
+	public Map<String, Map<String, Object>> getDirectories(String userId, String filesystemId, int filesystemVersion, String directoryPath, List<String> directoryNames) throws UserNotFound, FilesystemNotFound, VersionNotFound;
 }
@@ -1,5 +1,6 @@
 package bookeeping.backend.database.service;
 
+import java.util.List;
 import java.util.Map;
 
 import bookeeping.backend.exception.DirectoryNotFound;
@@ -19,4 +20,5 @@ public interface FileService
 	public void restoreFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, DuplicateFile, NodeNotFound, NodeUnavailable;
 	public String moveFile(String commitId, String userId, String filesystemId, int filesystemVersion, String oldFilePath, String oldFileName, String newFilePath, String newFileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, DuplicateFile;
 	public Map<String, Object> getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound;
+	public Map<String, Map<String, Object>> getFiles(String userId, String filesystemId, int filesystemVersion, String filePath, List<String> fileNames) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound;
 }
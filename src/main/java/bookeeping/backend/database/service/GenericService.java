@@ -1,7 +1,9 @@
 package bookeeping.backend.database.service;
 
+import java.util.List;
 import java.util.Map;
 
+import bookeeping.backend.database.NodeVersionResult;
 import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.VersionNotFound;
@@ -9,7 +11,9 @@ import bookeeping.backend.exception.VersionNotFound;
 public interface GenericService
 {
 	public String createNewVersion(String commitId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable;
+	public NodeVersionResult createNewVersion(String commitId, String nodeId, int expectedVersion, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable;
 	public Map<String, Object> getNode(String nodeId) throws NodeNotFound;
+	public Map<String, Map<String, Object>> getNodes(List<String> nodeIds);
 	public Map<String, Object> getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable;
 	public void deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable;
 	public void changeNodeProperties(String nodeId, Map<String, Object> properties) throws NodeNotFound;
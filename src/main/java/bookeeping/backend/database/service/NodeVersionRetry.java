@@ -0,0 +1,103 @@
+package bookeeping.backend.database.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.NodeVersionResult;
+import bookeeping.backend.database.NodeVersionStatus;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Read, change, compare and set: reads the head of a node, works out the change from it and hands both to
+ * the expected version variant of createNewVersion. When another writer moved the head in between, the
+ * change is worked out again from the new head, up to maximumAttempts times.
+ */
+public class NodeVersionRetry
+{
+	public interface VersionChange
+	{
+		public Map<String, Object> getChangedProperties(Map<String, Object> headProperties);
+	}
+	
+	private final GenericService genericService;
+	private final int maximumAttempts;
+	private final AtomicLong attemptCount;
+	private final AtomicLong conflictCount;
+	private final AtomicLong exhaustedCount;
+	
+	public NodeVersionRetry(GenericService genericService, int maximumAttempts)
+	{
+		if(maximumAttempts < 1)
+		{
+			throw new IllegalArgumentException("ERROR: Maximum attempts must be positive! - \"" + maximumAttempts + "\"");
+		}
+		
+		this.genericService = genericService;
+		this.maximumAttempts = maximumAttempts;
+		this.attemptCount = new AtomicLong();
+		this.conflictCount = new AtomicLong();
+		this.exhaustedCount = new AtomicLong();
+	}
+	
+	/*
+	 * Returns the Created result, or the last Conflict once every attempt lost to another writer.
+	 */
+	public NodeVersionResult createNewVersion(String commitId, String nodeId, Map<String, Object> changeMetadata, VersionChange versionChange) throws NodeNotFound, NodeUnavailable
+	{
+		NodeVersionResult nodeVersionResult = null;
+		for(int attempt = 0; attempt < this.maximumAttempts; attempt++)
+		{
+			Map<String, Object> headProperties = null;
+			try
+			{
+				headProperties = this.genericService.getNodeVersion(nodeId, -1);
+			}
+			catch(VersionNotFound versionNotFound)
+			{
+				throw new NodeUnavailable("ERROR: No head version for this node! - \"" + nodeId + "\"", versionNotFound);
+			}
+			
+			/*
+			 * A head without a version is still being written by another commit, on a backend that can
+			 * show one before its properties. It is handed on with expected version -1, which no head has,
+			 * so the backend answers with a conflict after reading the head again itself.
+			 */
+			Integer headVersion = (Integer) headProperties.get(MandatoryProperties.version.name());
+			Map<String, Object> changedProperties = headVersion == null ? new HashMap<String, Object>() : versionChange.getChangedProperties(headProperties);
+			this.attemptCount.incrementAndGet();
+			nodeVersionResult = this.genericService.createNewVersion(commitId, nodeId, headVersion == null ? -1 : headVersion, changeMetadata, changedProperties);
+			if(nodeVersionResult.getNodeVersionStatus() == NodeVersionStatus.Created)
+			{
+				return nodeVersionResult;
+			}
+			this.conflictCount.incrementAndGet();
+		}
+		
+		this.exhaustedCount.incrementAndGet();
+		return nodeVersionResult;
+	}
+	
+	public int getMaximumAttempts()
+	{
+		return this.maximumAttempts;
+	}
+	
+	public long getAttemptCount()
+	{
+		return this.attemptCount.get();
+	}
+	
+	public long getConflictCount()
+	{
+		return this.conflictCount.get();
+	}
+	
+	public long getExhaustedCount()
+	{
+		return this.exhaustedCount.get();
+	}
+}
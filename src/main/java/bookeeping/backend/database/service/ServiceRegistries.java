@@ -0,0 +1,41 @@
+package bookeeping.backend.database.service;
+
+import bookeeping.backend.database.DatabaseBackend;
+import bookeeping.backend.database.service.neo4jembedded.impl.Neo4JEmbeddedServiceRegistry;
+import bookeeping.backend.database.service.neo4jrest.impl.Neo4JRestServiceRegistry;
+import bookeeping.backend.database.service.titancassandraembedded.impl.TitanCassandraEmbeddedServiceRegistry;
+import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+
+public class ServiceRegistries
+{
+	private ServiceRegistries()
+	{
+	}
+	
+	public static ServiceRegistry getServiceRegistry()
+	{
+		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
+		String databaseBackend = databaseConnectionProperty.getProperty("DatabaseBackend");
+		
+		return ServiceRegistries.getServiceRegistry(DatabaseBackend.valueOf(databaseBackend));
+	}
+	
+	/*
+	 * Only the registry of the requested backend is built, so asking for one backend never opens the
+	 * connection of another.
+	 */
+	public static ServiceRegistry getServiceRegistry(DatabaseBackend databaseBackend)
+	{
+		switch(databaseBackend)
+		{
+			case Neo4JEmbedded:
+				return Neo4JEmbeddedServiceRegistry.getInstance();
+			case Neo4JRest:
+				return Neo4JRestServiceRegistry.getInstance();
+			case TitanCassandraEmbedded:
+				return TitanCassandraEmbeddedServiceRegistry.getInstance();
+			default:
+				throw new IllegalArgumentException("ERROR: Unknown database backend! - \"" + databaseBackend + "\"");
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package bookeeping.backend.database.service;
+
+public interface ServiceRegistry
+{
+	public AutoIncrementService getAutoIncrementService();
+	public CommitService getCommitService();
+	public DirectoryService getDirectoryService();
+	public FileService getFileService();
+	public FilesystemService getFilesystemService();
+	public GenericService getGenericService();
+	public UserService getUserService();
+	public XrayService getXrayService();
+}
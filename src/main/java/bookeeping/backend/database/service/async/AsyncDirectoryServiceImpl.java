@@ -0,0 +1,86 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bookeeping.backend.database.service.AsyncDirectoryService;
+import bookeeping.backend.database.service.DirectoryService;
+
+public class AsyncDirectoryServiceImpl extends AsyncServiceSupport implements AsyncDirectoryService
+{
+	private DirectoryService directoryService;
+	
+	public AsyncDirectoryServiceImpl(DirectoryService directoryService, Executor executor)
+	{
+		super(executor);
+		this.directoryService = directoryService;
+	}
+	
+	@Override
+	public CompletableFuture<String> createNewDirectory(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String directoryPath, final String directoryName, final Map<String, Object> directoryProperties)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncDirectoryServiceImpl.this.directoryService.createNewDirectory(commitId, userId, filesystemId, filesystemVersion, directoryPath, directoryName, directoryProperties);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> restoreDirectory(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String directoryPath, final String directoryName, final String nodeIdToBeRestored)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncDirectoryServiceImpl.this.directoryService.restoreDirectory(commitId, userId, filesystemId, filesystemVersion, directoryPath, directoryName, nodeIdToBeRestored);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<String> moveDirectory(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String oldDirectoryPath, final String oldDirectoryName, final String newDirectoryPath, final String newDirectoryName)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncDirectoryServiceImpl.this.directoryService.moveDirectory(commitId, userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName, newDirectoryPath, newDirectoryName);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Object>> getDirectory(final String userId, final String filesystemId, final int filesystemVersion, final String directoryPath, final String directoryName)
+	{
+		return this.submit(new ServiceCall<Map<String, Object>>()
+		{
+			@Override
+			public Map<String, Object> call() throws Exception
+			{
+				return AsyncDirectoryServiceImpl.this.directoryService.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Map<String, Object>>> getDirectories(final String userId, final String filesystemId, final int filesystemVersion, final String directoryPath, final List<String> directoryNames)
+	{
+		return this.submit(new ServiceCall<Map<String, Map<String, Object>>>()
+		{
+			@Override
+			public Map<String, Map<String, Object>> call() throws Exception
+			{
+				return AsyncDirectoryServiceImpl.this.directoryService.getDirectories(userId, filesystemId, filesystemVersion, directoryPath, directoryNames);
+			}
+		});
+	}
+}
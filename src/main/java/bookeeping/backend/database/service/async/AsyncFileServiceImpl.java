@@ -0,0 +1,114 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bookeeping.backend.database.service.AsyncFileService;
+import bookeeping.backend.database.service.FileService;
+
+public class AsyncFileServiceImpl extends AsyncServiceSupport implements AsyncFileService
+{
+	private FileService fileService;
+	
+	public AsyncFileServiceImpl(FileService fileService, Executor executor)
+	{
+		super(executor);
+		this.fileService = fileService;
+	}
+	
+	@Override
+	public CompletableFuture<String> createNewFile(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String filePath, final String fileName, final Map<String, Object> fileProperties)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncFileServiceImpl.this.fileService.createNewFile(commitId, userId, filesystemId, filesystemVersion, filePath, fileName, fileProperties);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> shareFile(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String filePath, final String fileName, final String shareWithUserId, final String filePermission)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncFileServiceImpl.this.fileService.shareFile(commitId, userId, filesystemId, filesystemVersion, filePath, fileName, shareWithUserId, filePermission);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> unshareFile(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String filePath, final String fileName, final String unshareWithUserId)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncFileServiceImpl.this.fileService.unshareFile(commitId, userId, filesystemId, filesystemVersion, filePath, fileName, unshareWithUserId);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> restoreFile(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String filePath, final String fileName, final String nodeIdToBeRestored)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncFileServiceImpl.this.fileService.restoreFile(commitId, userId, filesystemId, filesystemVersion, filePath, fileName, nodeIdToBeRestored);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<String> moveFile(final String commitId, final String userId, final String filesystemId, final int filesystemVersion, final String oldFilePath, final String oldFileName, final String newFilePath, final String newFileName)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncFileServiceImpl.this.fileService.moveFile(commitId, userId, filesystemId, filesystemVersion, oldFilePath, oldFileName, newFilePath, newFileName);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Object>> getFile(final String userId, final String filesystemId, final int filesystemVersion, final String filePath, final String fileName)
+	{
+		return this.submit(new ServiceCall<Map<String, Object>>()
+		{
+			@Override
+			public Map<String, Object> call() throws Exception
+			{
+				return AsyncFileServiceImpl.this.fileService.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Map<String, Object>>> getFiles(final String userId, final String filesystemId, final int filesystemVersion, final String filePath, final List<String> fileNames)
+	{
+		return this.submit(new ServiceCall<Map<String, Map<String, Object>>>()
+		{
+			@Override
+			public Map<String, Map<String, Object>> call() throws Exception
+			{
+				return AsyncFileServiceImpl.this.fileService.getFiles(userId, filesystemId, filesystemVersion, filePath, fileNames);
+			}
+		});
+	}
+}
@@ -0,0 +1,72 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bookeeping.backend.database.service.AsyncFilesystemService;
+import bookeeping.backend.database.service.FilesystemService;
+
+public class AsyncFilesystemServiceImpl extends AsyncServiceSupport implements AsyncFilesystemService
+{
+	private FilesystemService filesystemService;
+	
+	public AsyncFilesystemServiceImpl(FilesystemService filesystemService, Executor executor)
+	{
+		super(executor);
+		this.filesystemService = filesystemService;
+	}
+	
+	@Override
+	public CompletableFuture<String> createNewFilesystem(final String userId, final String filesystemId, final Map<String, Object> filesystemProperties)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncFilesystemServiceImpl.this.filesystemService.createNewFilesystem(userId, filesystemId, filesystemProperties);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> restoreFilesystem(final String commitId, final String userId, final String filesystemId, final String nodeIdToBeRestored)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncFilesystemServiceImpl.this.filesystemService.restoreFilesystem(commitId, userId, filesystemId, nodeIdToBeRestored);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Object>> getFilesystem(final String userId, final String filesystemId)
+	{
+		return this.submit(new ServiceCall<Map<String, Object>>()
+		{
+			@Override
+			public Map<String, Object> call() throws Exception
+			{
+				return AsyncFilesystemServiceImpl.this.filesystemService.getFilesystem(userId, filesystemId);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<String> getRootDirectory(final String userId, final String filesystemId, final int filesystemVersion)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncFilesystemServiceImpl.this.filesystemService.getRootDirectory(userId, filesystemId, filesystemVersion);
+			}
+		});
+	}
+}
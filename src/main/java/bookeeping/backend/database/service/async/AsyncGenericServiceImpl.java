@@ -0,0 +1,114 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bookeeping.backend.database.NodeVersionResult;
+import bookeeping.backend.database.service.AsyncGenericService;
+import bookeeping.backend.database.service.GenericService;
+
+public class AsyncGenericServiceImpl extends AsyncServiceSupport implements AsyncGenericService
+{
+	private GenericService genericService;
+	
+	public AsyncGenericServiceImpl(GenericService genericService, Executor executor)
+	{
+		super(executor);
+		this.genericService = genericService;
+	}
+	
+	@Override
+	public CompletableFuture<String> createNewVersion(final String commitId, final String nodeId, final Map<String, Object> changeMetadata, final Map<String, Object> changedProperties)
+	{
+		return this.submit(new ServiceCall<String>()
+		{
+			@Override
+			public String call() throws Exception
+			{
+				return AsyncGenericServiceImpl.this.genericService.createNewVersion(commitId, nodeId, changeMetadata, changedProperties);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<NodeVersionResult> createNewVersion(final String commitId, final String nodeId, final int expectedVersion, final Map<String, Object> changeMetadata, final Map<String, Object> changedProperties)
+	{
+		return this.submit(new ServiceCall<NodeVersionResult>()
+		{
+			@Override
+			public NodeVersionResult call() throws Exception
+			{
+				return AsyncGenericServiceImpl.this.genericService.createNewVersion(commitId, nodeId, expectedVersion, changeMetadata, changedProperties);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Object>> getNode(final String nodeId)
+	{
+		return this.submit(new ServiceCall<Map<String, Object>>()
+		{
+			@Override
+			public Map<String, Object> call() throws Exception
+			{
+				return AsyncGenericServiceImpl.this.genericService.getNode(nodeId);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Map<String, Object>>> getNodes(final List<String> nodeIds)
+	{
+		return this.submit(new ServiceCall<Map<String, Map<String, Object>>>()
+		{
+			@Override
+			public Map<String, Map<String, Object>> call() throws Exception
+			{
+				return AsyncGenericServiceImpl.this.genericService.getNodes(nodeIds);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Object>> getNodeVersion(final String nodeId, final int version)
+	{
+		return this.submit(new ServiceCall<Map<String, Object>>()
+		{
+			@Override
+			public Map<String, Object> call() throws Exception
+			{
+				return AsyncGenericServiceImpl.this.genericService.getNodeVersion(nodeId, version);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> deleteNodeTemporarily(final String commitId, final String nodeId)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncGenericServiceImpl.this.genericService.deleteNodeTemporarily(commitId, nodeId);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Void> changeNodeProperties(final String nodeId, final Map<String, Object> properties)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncGenericServiceImpl.this.genericService.changeNodeProperties(nodeId, properties);
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,142 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+
+public class AsyncServiceExecutor
+{
+	public enum ExecutorType
+	{
+		ThreadPool, VirtualThreads
+	}
+	
+	private AsyncServiceExecutor()
+	{
+	}
+	
+	public static Executor newExecutor()
+	{
+		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
+		String executorType = databaseConnectionProperty.getProperty("AsyncExecutorType");
+		int maximumConcurrency = Integer.parseInt(databaseConnectionProperty.getProperty("AsyncMaximumConcurrency"));
+		int queueCapacity = Integer.parseInt(databaseConnectionProperty.getProperty("AsyncQueueCapacity"));
+		
+		return AsyncServiceExecutor.newExecutor(ExecutorType.valueOf(executorType), maximumConcurrency, queueCapacity);
+	}
+	
+	public static Executor newExecutor(ExecutorType executorType, int maximumConcurrency, int queueCapacity)
+	{
+		if(executorType == ExecutorType.VirtualThreads)
+		{
+			ExecutorService virtualThreadExecutor = AsyncServiceExecutor.newVirtualThreadExecutor();
+			if(virtualThreadExecutor != null)
+			{
+				return AsyncServiceExecutor.bounded(virtualThreadExecutor, maximumConcurrency, queueCapacity);
+			}
+		}
+		
+		return AsyncServiceExecutor.newThreadPoolExecutor(maximumConcurrency, queueCapacity);
+	}
+	
+	public static ExecutorService newThreadPoolExecutor(int maximumConcurrency, int queueCapacity)
+	{
+		final AtomicInteger threadCount = new AtomicInteger();
+		BlockingQueue<Runnable> workQueue = queueCapacity > 0 ? new ArrayBlockingQueue<Runnable>(queueCapacity) : new SynchronousQueue<Runnable>();
+		ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maximumConcurrency, maximumConcurrency, 60, TimeUnit.SECONDS, workQueue, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "async-service-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		threadPoolExecutor.allowCoreThreadTimeOut(true);
+		return threadPoolExecutor;
+	}
+	
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() only exists from JDK 21 on, so it is looked up reflectively
+	 * and null is returned on older runtimes.
+	 */
+	public static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException reflectiveOperationException)
+		{
+			return null;
+		}
+	}
+	
+	/*
+	 * Virtual threads are unbounded, but every task still holds a database transaction, so like the thread pool
+	 * at most maximumConcurrency tasks run at once. Up to queueCapacity more are accepted and wait, parked on
+	 * their virtual thread in arrival order, and the excess is rejected the same way a full thread pool queue
+	 * would be.
+	 */
+	static Executor bounded(final Executor executor, int maximumConcurrency, int queueCapacity)
+	{
+		final Semaphore semaphore = new Semaphore(maximumConcurrency + queueCapacity);
+		final Semaphore running = new Semaphore(maximumConcurrency, true);
+		
+		return new Executor()
+		{
+			@Override
+			public void execute(final Runnable runnable)
+			{
+				if(! semaphore.tryAcquire())
+				{
+					throw new RejectedExecutionException("ERROR: Async service executor saturated!");
+				}
+				
+				try
+				{
+					executor.execute(new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							try
+							{
+								running.acquireUninterruptibly();
+								try
+								{
+									runnable.run();
+								}
+								finally
+								{
+									running.release();
+								}
+							}
+							finally
+							{
+								semaphore.release();
+							}
+						}
+					});
+				}
+				catch(RejectedExecutionException rejectedExecutionException)
+				{
+					semaphore.release();
+					throw rejectedExecutionException;
+				}
+			}
+		};
+	}
+}
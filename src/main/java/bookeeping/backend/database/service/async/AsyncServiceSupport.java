@@ -0,0 +1,54 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public abstract class AsyncServiceSupport
+{
+	protected interface ServiceCall<T>
+	{
+		public T call() throws Exception;
+	}
+	
+	private Executor executor;
+	
+	protected AsyncServiceSupport(Executor executor)
+	{
+		this.executor = executor;
+	}
+	
+	/*
+	 * Checked exceptions thrown by the wrapped service (UserNotFound, DuplicateFile, ...) complete the future
+	 * exceptionally with the original exception, so callers can unwrap them from the CompletionException.
+	 */
+	protected <T> CompletableFuture<T> submit(final ServiceCall<T> serviceCall)
+	{
+		final CompletableFuture<T> completableFuture = new CompletableFuture<T>();
+		
+		try
+		{
+			this.executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						completableFuture.complete(serviceCall.call());
+					}
+					catch(Throwable throwable)
+					{
+						completableFuture.completeExceptionally(throwable);
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException rejectedExecutionException)
+		{
+			completableFuture.completeExceptionally(rejectedExecutionException);
+		}
+		
+		return completableFuture;
+	}
+}
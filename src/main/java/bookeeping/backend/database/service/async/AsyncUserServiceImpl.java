@@ -0,0 +1,46 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bookeeping.backend.database.service.AsyncUserService;
+import bookeeping.backend.database.service.UserService;
+
+public class AsyncUserServiceImpl extends AsyncServiceSupport implements AsyncUserService
+{
+	private UserService userService;
+	
+	public AsyncUserServiceImpl(UserService userService, Executor executor)
+	{
+		super(executor);
+		this.userService = userService;
+	}
+	
+	@Override
+	public CompletableFuture<Void> createNewUser(final String userId, final Map<String, Object> userProperties)
+	{
+		return this.submit(new ServiceCall<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				AsyncUserServiceImpl.this.userService.createNewUser(userId, userProperties);
+				return null;
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<Map<String, Object>> getUser(final String userId)
+	{
+		return this.submit(new ServiceCall<Map<String, Object>>()
+		{
+			@Override
+			public Map<String, Object> call() throws Exception
+			{
+				return AsyncUserServiceImpl.this.userService.getUser(userId);
+			}
+		});
+	}
+}
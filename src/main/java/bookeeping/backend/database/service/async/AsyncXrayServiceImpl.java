@@ -0,0 +1,59 @@
+package bookeeping.backend.database.service.async;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import bookeeping.backend.database.service.AsyncXrayService;
+import bookeeping.backend.database.service.XrayService;
+
+public class AsyncXrayServiceImpl extends AsyncServiceSupport implements AsyncXrayService
+{
+	private XrayService xrayService;
+	
+	public AsyncXrayServiceImpl(XrayService xrayService, Executor executor)
+	{
+		super(executor);
+		this.xrayService = xrayService;
+	}
+	
+	@Override
+	public CompletableFuture<List<Map<String, Object>>> xrayNode(final String nodeId)
+	{
+		return this.submit(new ServiceCall<List<Map<String, Object>>>()
+		{
+			@Override
+			public List<Map<String, Object>> call() throws Exception
+			{
+				return AsyncXrayServiceImpl.this.xrayService.xrayNode(nodeId);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<List<Map<String, Object>>> xrayVersion(final String nodeId)
+	{
+		return this.submit(new ServiceCall<List<Map<String, Object>>>()
+		{
+			@Override
+			public List<Map<String, Object>> call() throws Exception
+			{
+				return AsyncXrayServiceImpl.this.xrayService.xrayVersion(nodeId);
+			}
+		});
+	}
+	
+	@Override
+	public CompletableFuture<List<Map<String, Object>>> xrayDeleted(final String nodeId)
+	{
+		return this.submit(new ServiceCall<List<Map<String, Object>>>()
+		{
+			@Override
+			public List<Map<String, Object>> call() throws Exception
+			{
+				return AsyncXrayServiceImpl.this.xrayService.xrayDeleted(nodeId);
+			}
+		});
+	}
+}
@@ -2,41 +2,59 @@ package bookeeping.backend.database.service.neo4jembedded.impl;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
 import bookeeping.backend.database.service.AutoIncrementService;
-import bookeeping.backend.exception.NodeNotFound;
-import bookeeping.backend.utilities.AlphaNumericOperation;
+import bookeeping.backend.utilities.AutoIncrementLease;
+import bookeeping.backend.utilities.Base62Codec;
+import bookeeping.backend.utilities.TransactionRetry;
 
-public class AutoIncrementServiceImpl implements AutoIncrementService
+public class AutoIncrementServiceImpl implements AutoIncrementService, AutoIncrementLease.BlockReserver
 {
 	private GraphDatabaseService graphDatabaseService;
+	private AutoIncrementLease autoIncrementLease;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public AutoIncrementServiceImpl()
+	{
+		this(Neo4JEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	AutoIncrementServiceImpl(CommonCode commonCode)
 	{
 		this.graphDatabaseService = Neo4JEmbeddedConnection.getInstance().getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.autoIncrementLease = Neo4JEmbeddedConnection.getInstance().getAutoIncrementLease();
+		this.commonCode = commonCode;
+		this.transactionRetry = Neo4JEmbeddedConnection.getInstance().getTransactionRetry();
 	}
 	
 	@Override
 	public String getNextAutoIncrement()
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		return Base62Codec.encode(this.autoIncrementLease.next(this));
+	}
+	
+	@Override
+	public long reserveBlock(int blockSize)
+	{
+		for(int attempt = 1; ; attempt++)
 		{
-			Node autoIncrement = null;
-			try
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				Node autoIncrement = this.commonCode.findNode("0");
+				unitOfWork.acquireWriteLock(autoIncrement);
+				long nextAutoIncrement = Base62Codec.decode((String) autoIncrement.getProperty(MandatoryProperties.next.name()));
+				autoIncrement.setProperty(MandatoryProperties.next.name(), Base62Codec.encode(nextAutoIncrement + blockSize));
+				
+				unitOfWork.success();
+				return nextAutoIncrement;
+			}
+			catch(RuntimeException runtimeException)
 			{
-				autoIncrement = this.commonCode.getNode("0");
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
-			catch (NodeNotFound e) {}
-			String nextAutoIncrement = (String) autoIncrement.getProperty(MandatoryProperties.next.name());
-			autoIncrement.setProperty(MandatoryProperties.next.name(), AlphaNumericOperation.add(nextAutoIncrement, 1));
-			
-			transaction.success();
-			return nextAutoIncrement;
 		}
 	}
 }
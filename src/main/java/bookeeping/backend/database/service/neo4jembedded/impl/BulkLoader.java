@@ -0,0 +1,616 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.index.IndexManager;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.index.lucene.unsafe.batchinsert.LuceneBatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.neo4j.unsafe.batchinsert.BatchRelationship;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.neo4j.NodeLabels;
+import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.utilities.Base62Codec;
+import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+
+public class BulkLoader
+{
+	public interface ProgressListener
+	{
+		public void progress(long lines, long nodes, long relationships, long elapsedMillis);
+	}
+	
+	private static final String NODE_AUTO_INDEX = "node_auto_index";
+	private static final String RELATIONSHIP_AUTO_INDEX = "relationship_auto_index";
+	
+	private String databaseLocation;
+	private PathStorageMode pathStorageMode;
+	private int checkpointInterval;
+	private int progressInterval;
+	private ProgressListener progressListener;
+	
+	private BatchInserter batchInserter;
+	private LuceneBatchInserterIndexProvider batchInserterIndexProvider;
+	private BatchInserterIndex nodeIndex;
+	private BatchInserterIndex relationshipIndex;
+	private Map<String, Long> userCache;
+	private Map<String, Long> pathKeyCache;
+	private Map<Long, Long> rootDirectoryCache;
+	private Map<Long, String> nodeIdCache;
+	private long autoIncrementNode;
+	private long nextAutoIncrement;
+	private long nodes;
+	private long relationships;
+	
+	public BulkLoader(ProgressListener progressListener)
+	{
+		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
+		this.databaseLocation = databaseConnectionProperty.getProperty("Neo4JEmbeddedDatabaseLocation");
+		this.pathStorageMode = PathStorageMode.valueOf(databaseConnectionProperty.getProperty("PathStorageMode"));
+		this.checkpointInterval = Integer.parseInt(databaseConnectionProperty.getProperty("BulkLoadCheckpointInterval"));
+		this.progressInterval = Integer.parseInt(databaseConnectionProperty.getProperty("BulkLoadProgressInterval"));
+		this.progressListener = progressListener;
+	}
+	
+	public BulkLoader(String databaseLocation, PathStorageMode pathStorageMode, int checkpointInterval, int progressInterval, ProgressListener progressListener)
+	{
+		if(checkpointInterval < 1 || progressInterval < 1)
+		{
+			throw new IllegalArgumentException("ERROR: Bulk load intervals must be positive! - \"" + checkpointInterval + ", " + progressInterval + "\"");
+		}
+		
+		this.databaseLocation = databaseLocation;
+		this.pathStorageMode = pathStorageMode;
+		this.checkpointInterval = checkpointInterval;
+		this.progressInterval = progressInterval;
+		this.progressListener = progressListener;
+	}
+	
+	/*
+	 * Loads a manifest straight into the store files, without transactions, so the database must not be
+	 * running. Each line is "type<TAB>path" followed by "<TAB>key=value" properties, where type is User,
+	 * Filesystem, Directory or File and the path is /userId, /userId/filesystemId or
+	 * /userId/filesystemId/full/path. Lines have to come after the user and filesystem they belong to;
+	 * missing parent directories are created the same way the services create them.
+	 *
+	 * Every checkpoint interval the store is shut down (which flushes it and its indexes), copied next to
+	 * itself as <store>.checkpoint, and the number of loaded lines is written next to the manifest. The
+	 * first run takes a copy of the store it starts from as well. A store that was not shut down cleanly
+	 * has lost the batch index entries and the auto increment of everything loaded since the last
+	 * checkpoint, so a new run puts the copy back before it resumes after the last checkpoint. Entries
+	 * that are already present are skipped, so lines re-read after an interruption load once. Each copy
+	 * is of the whole store, so the interval should be large.
+	 */
+	public long load(String manifestLocation, String commitId) throws IOException, UserNotFound, FilesystemNotFound
+	{
+		Path manifest = Paths.get(manifestLocation);
+		Path checkpoint = Paths.get(manifestLocation + ".checkpoint");
+		long checkpointLine = 0;
+		if(Files.exists(checkpoint))
+		{
+			checkpointLine = Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim());
+			this.restoreStore();
+		}
+		else
+		{
+			this.open();
+			this.close();
+			this.writeCheckpoint(checkpoint, 0);
+		}
+		
+		long startTime = System.currentTimeMillis();
+		long line = 0;
+		
+		this.nodes = 0;
+		this.relationships = 0;
+		this.open();
+		try(BufferedReader bufferedReader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8))
+		{
+			String entry = null;
+			while((entry = bufferedReader.readLine()) != null)
+			{
+				line++;
+				if(line <= checkpointLine || entry.trim().isEmpty() || entry.startsWith("#"))
+				{
+					continue;
+				}
+				
+				this.loadEntry(line, entry, commitId);
+				
+				if(line % this.checkpointInterval == 0)
+				{
+					this.close();
+					this.writeCheckpoint(checkpoint, line);
+					this.open();
+				}
+				
+				if(line % this.progressInterval == 0 && this.progressListener != null)
+				{
+					this.progressListener.progress(line, this.nodes, this.relationships, System.currentTimeMillis() - startTime);
+				}
+			}
+		}
+		finally
+		{
+			this.close();
+		}
+		
+		this.writeCheckpoint(checkpoint, line);
+		if(this.progressListener != null)
+		{
+			this.progressListener.progress(line, this.nodes, this.relationships, System.currentTimeMillis() - startTime);
+		}
+		
+		return this.nodes;
+	}
+	
+	private void open()
+	{
+		this.batchInserter = BatchInserters.inserter(this.databaseLocation);
+		this.batchInserterIndexProvider = new LuceneBatchInserterIndexProvider(this.batchInserter);
+		this.nodeIndex = this.batchInserterIndexProvider.nodeIndex(BulkLoader.NODE_AUTO_INDEX, MapUtil.stringMap(IndexManager.PROVIDER, "lucene", "type", "exact"));
+		this.relationshipIndex = this.batchInserterIndexProvider.relationshipIndex(BulkLoader.RELATIONSHIP_AUTO_INDEX, MapUtil.stringMap(IndexManager.PROVIDER, "lucene", "type", "exact"));
+		this.userCache = new HashMap<String, Long>();
+		this.pathKeyCache = new HashMap<String, Long>();
+		this.rootDirectoryCache = new HashMap<Long, Long>();
+		this.nodeIdCache = new HashMap<Long, String>();
+		
+		Long autoIncrement = this.nodeIndex.get(MandatoryProperties.nodeId.name(), "0").getSingle();
+		if(autoIncrement == null)
+		{
+			this.autoIncrementNode = this.createIndexedNode("0", MapUtil.map(MandatoryProperties.next.name(), "2"), NodeLabels.AutoIncrement);
+			this.createIndexedNode("1", MapUtil.map(MandatoryProperties.userId.name(), "public"), NodeLabels.User);
+			this.nextAutoIncrement = 2;
+		}
+		else
+		{
+			this.autoIncrementNode = autoIncrement;
+			this.nextAutoIncrement = Base62Codec.decode((String) this.batchInserter.getNodeProperties(autoIncrement).get(MandatoryProperties.next.name()));
+		}
+	}
+	
+	private void close()
+	{
+		if(this.batchInserter == null)
+		{
+			return;
+		}
+		
+		try
+		{
+			this.batchInserter.setNodeProperty(this.autoIncrementNode, MandatoryProperties.next.name(), Base62Codec.encode(this.nextAutoIncrement));
+			this.batchInserterIndexProvider.shutdown();
+		}
+		finally
+		{
+			this.batchInserter.shutdown();
+			this.batchInserter = null;
+		}
+	}
+	
+	/*
+	 * The store is copied before the line is written, so that a copy is never older than the line it is
+	 * resumed from. A copy newer than the line only makes the next run skip lines it re-reads.
+	 */
+	private void writeCheckpoint(Path checkpoint, long line) throws IOException
+	{
+		this.copyStore();
+		
+		Path temporaryCheckpoint = Paths.get(checkpoint.toString() + ".tmp");
+		Files.write(temporaryCheckpoint, String.valueOf(line).getBytes(StandardCharsets.UTF_8));
+		Files.move(temporaryCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private void copyStore() throws IOException
+	{
+		Path store = Paths.get(this.databaseLocation);
+		Path storeCheckpoint = Paths.get(store.toString() + ".checkpoint");
+		Path temporaryStoreCheckpoint = Paths.get(store.toString() + ".checkpoint.tmp");
+		Path previousStoreCheckpoint = Paths.get(store.toString() + ".checkpoint.old");
+		
+		this.deleteDirectory(temporaryStoreCheckpoint);
+		this.copyDirectory(store, temporaryStoreCheckpoint);
+		this.deleteDirectory(previousStoreCheckpoint);
+		if(Files.exists(storeCheckpoint))
+		{
+			Files.move(storeCheckpoint, previousStoreCheckpoint, StandardCopyOption.ATOMIC_MOVE);
+		}
+		Files.move(temporaryStoreCheckpoint, storeCheckpoint, StandardCopyOption.ATOMIC_MOVE);
+		this.deleteDirectory(previousStoreCheckpoint);
+	}
+	
+	private void restoreStore() throws IOException
+	{
+		Path store = Paths.get(this.databaseLocation);
+		Path storeCheckpoint = Paths.get(store.toString() + ".checkpoint");
+		if(! Files.exists(storeCheckpoint))
+		{
+			storeCheckpoint = Paths.get(store.toString() + ".checkpoint.old");
+		}
+		
+		if(! Files.exists(storeCheckpoint))
+		{
+			throw new IllegalStateException("ERROR: Bulk load store checkpoint not found! - \"" + store.toString() + ".checkpoint\"");
+		}
+		
+		this.deleteDirectory(store);
+		this.copyDirectory(storeCheckpoint, store);
+	}
+	
+	private void copyDirectory(final Path source, final Path target) throws IOException
+	{
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes basicFileAttributes) throws IOException
+			{
+				Files.createDirectories(target.resolve(source.relativize(directory)));
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes basicFileAttributes) throws IOException
+			{
+				Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	private void deleteDirectory(Path directory) throws IOException
+	{
+		if(! Files.exists(directory))
+		{
+			return;
+		}
+		
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes basicFileAttributes) throws IOException
+			{
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult postVisitDirectory(Path visitedDirectory, IOException exception) throws IOException
+			{
+				if(exception != null)
+				{
+					throw exception;
+				}
+				
+				Files.delete(visitedDirectory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+	
+	private void loadEntry(long line, String entry, String commitId) throws UserNotFound, FilesystemNotFound
+	{
+		String[] fields = entry.split("\t");
+		if(fields.length < 2 || ! fields[1].startsWith("/"))
+		{
+			throw new IllegalArgumentException("ERROR: Malformed manifest entry! - \"" + line + "\"");
+		}
+		
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for(int i = 2; i < fields.length; i++)
+		{
+			int separator = fields[i].indexOf('=');
+			if(separator < 1)
+			{
+				throw new IllegalArgumentException("ERROR: Malformed manifest property! - \"" + line + "\"");
+			}
+			properties.put(fields[i].substring(0, separator), fields[i].substring(separator + 1));
+		}
+		
+		NodeLabels nodeLabel = NodeLabels.valueOf(fields[0]);
+		String[] segments = fields[1].substring(1).split("/");
+		if(nodeLabel == NodeLabels.User && segments.length == 1)
+		{
+			this.loadUser(segments[0], properties);
+		}
+		else if(nodeLabel == NodeLabels.Filesystem && segments.length == 2)
+		{
+			this.loadFilesystem(segments[0], segments[1], properties);
+		}
+		else if((nodeLabel == NodeLabels.Directory || nodeLabel == NodeLabels.File) && segments.length > 2)
+		{
+			long rootDirectory = this.getRootDirectory(this.getFilesystem(segments[0], segments[1]));
+			List<String> parentNames = Arrays.asList(segments).subList(2, segments.length - 1);
+			String name = segments[segments.length - 1];
+			if(nodeLabel == NodeLabels.Directory)
+			{
+				this.loadDirectory(rootDirectory, parentNames, name, properties, commitId);
+			}
+			else
+			{
+				this.loadFile(rootDirectory, parentNames, name, properties, commitId);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("ERROR: Malformed manifest entry! - \"" + line + "\"");
+		}
+	}
+	
+	private void loadUser(String userId, Map<String, Object> properties)
+	{
+		if(this.findUser(userId) == null)
+		{
+			properties.put(MandatoryProperties.userId.name(), userId);
+			this.userCache.put(userId, this.createIndexedNode(this.getNextNodeId(), properties, NodeLabels.User));
+		}
+	}
+	
+	private void loadFilesystem(String userId, String filesystemId, Map<String, Object> properties) throws UserNotFound
+	{
+		long user = this.getUser(userId);
+		if(this.findChild(user, filesystemId) != null)
+		{
+			return;
+		}
+		
+		properties.put(MandatoryProperties.filesystemId.name(), filesystemId);
+		properties.put(MandatoryProperties.version.name(), 0);
+		long filesystem = this.createIndexedNode(this.getNextNodeId(), properties, NodeLabels.Filesystem);
+		long rootDirectory = this.createIndexedNode(this.getNextNodeId(), new HashMap<String, Object>(), NodeLabels.Directory);
+		this.createIndexedRelationship(user, filesystem, filesystemId, null);
+		
+		this.batchInserter.createRelationship(filesystem, rootDirectory, RelationshipLabels.has, null);
+		this.batchInserter.setNodeProperty(filesystem, MandatoryProperties.rootNodeId.name(), this.getNodeId(rootDirectory));
+		this.rootDirectoryCache.put(filesystem, rootDirectory);
+		this.relationships++;
+	}
+	
+	private void loadDirectory(long rootDirectory, List<String> parentNames, String directoryName, Map<String, Object> properties, String commitId)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			this.getDirectory(rootDirectory, this.getPath(parentNames), directoryName, properties, commitId);
+		}
+		else
+		{
+			this.getDirectory(this.getParentDirectory(rootDirectory, parentNames, commitId), null, directoryName, properties, commitId);
+		}
+	}
+	
+	private void loadFile(long rootDirectory, List<String> parentNames, String fileName, Map<String, Object> properties, String commitId)
+	{
+		long parentDirectory = this.getParentDirectory(rootDirectory, parentNames, commitId);
+		String filePath = this.getPath(parentNames);
+		String fullPath = this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(filePath, fileName) : fileName;
+		if(this.findChild(parentDirectory, fullPath) != null)
+		{
+			return;
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			properties.put(MandatoryProperties.filePath.name(), filePath);
+		}
+		properties.put(MandatoryProperties.fileName.name(), fileName);
+		properties.put(MandatoryProperties.version.name(), 0);
+		long file = this.createIndexedNode(this.getNextNodeId(), properties, NodeLabels.File);
+		this.createIndexedRelationship(parentDirectory, file, fullPath, commitId);
+	}
+	
+	/*
+	 * With absolute paths every directory hangs under the root directory, so a file's parent is found (or
+	 * created) there by its full path. With relative paths the path is walked one directory at a time.
+	 */
+	private long getParentDirectory(long rootDirectory, List<String> parentNames, String commitId)
+	{
+		if(parentNames.isEmpty())
+		{
+			return rootDirectory;
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			return this.getDirectory(rootDirectory, this.getPath(parentNames.subList(0, parentNames.size() - 1)), parentNames.get(parentNames.size() - 1), new HashMap<String, Object>(), commitId);
+		}
+		
+		long parentDirectory = rootDirectory;
+		for(String parentName : parentNames)
+		{
+			parentDirectory = this.getDirectory(parentDirectory, null, parentName, new HashMap<String, Object>(), commitId);
+		}
+		
+		return parentDirectory;
+	}
+	
+	private long getDirectory(long parentDirectory, String directoryPath, String directoryName, Map<String, Object> properties, String commitId)
+	{
+		String fullPath = (directoryPath == null ? directoryName : this.getFullPath(directoryPath, directoryName)) + "/";
+		Long directory = this.findChild(parentDirectory, fullPath);
+		if(directory != null)
+		{
+			return directory;
+		}
+		
+		if(directoryPath != null)
+		{
+			properties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+		}
+		properties.put(MandatoryProperties.directoryName.name(), directoryName);
+		properties.put(MandatoryProperties.version.name(), 0);
+		directory = this.createIndexedNode(this.getNextNodeId(), properties, NodeLabels.Directory);
+		this.createIndexedRelationship(parentDirectory, directory, fullPath, commitId);
+		return directory;
+	}
+	
+	private long getUser(String userId) throws UserNotFound
+	{
+		Long user = this.findUser(userId);
+		if(user == null)
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		return user;
+	}
+	
+	private Long findUser(String userId)
+	{
+		Long user = this.userCache.get(userId);
+		return user != null ? user : this.nodeIndex.get(MandatoryProperties.userId.name(), userId).getSingle();
+	}
+	
+	private long getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		Long filesystem = this.findChild(this.getUser(userId), filesystemId);
+		if(filesystem == null)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", false);
+		}
+		
+		return filesystem;
+	}
+	
+	private long getRootDirectory(long filesystem)
+	{
+		Long rootDirectory = this.rootDirectoryCache.get(filesystem);
+		if(rootDirectory == null)
+		{
+			for(BatchRelationship batchRelationship : this.batchInserter.getRelationships(filesystem))
+			{
+				if(batchRelationship.getStartNode() == filesystem && batchRelationship.getType().name().equals(RelationshipLabels.has.name()))
+				{
+					rootDirectory = batchRelationship.getEndNode();
+				}
+			}
+			this.rootDirectoryCache.put(filesystem, rootDirectory);
+		}
+		
+		return rootDirectory;
+	}
+	
+	/*
+	 * Everything created since the last checkpoint is only in the caches, since batch index entries are not
+	 * visible to get() until flushed. Everything older was flushed by the checkpoint and is in the index.
+	 */
+	private Long findChild(long parentNode, String fullPath)
+	{
+		String pathKey = this.getPathKey(this.getNodeId(parentNode), fullPath);
+		Long child = this.pathKeyCache.get(pathKey);
+		if(child == null)
+		{
+			Long relationship = this.relationshipIndex.get(MandatoryProperties.pathKey.name(), pathKey).getSingle();
+			child = relationship == null ? null : this.batchInserter.getRelationshipById(relationship).getEndNode();
+		}
+		
+		return child;
+	}
+	
+	private long createIndexedNode(String nodeId, Map<String, Object> properties, NodeLabels nodeLabel)
+	{
+		properties.put(MandatoryProperties.nodeId.name(), nodeId);
+		long node = this.batchInserter.createNode(properties, nodeLabel);
+		
+		Map<String, Object> indexProperties = new HashMap<String, Object>();
+		indexProperties.put(MandatoryProperties.nodeId.name(), nodeId);
+		if(properties.containsKey(MandatoryProperties.userId.name()))
+		{
+			indexProperties.put(MandatoryProperties.userId.name(), properties.get(MandatoryProperties.userId.name()));
+		}
+		this.nodeIndex.add(node, indexProperties);
+		
+		this.nodeIdCache.put(node, nodeId);
+		this.nodes++;
+		return node;
+	}
+	
+	private long createIndexedRelationship(long parentNode, long childNode, String fullPath, String commitId)
+	{
+		String pathKey = this.getPathKey(this.getNodeId(parentNode), fullPath);
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(MandatoryProperties.pathKey.name(), pathKey);
+		if(commitId != null)
+		{
+			properties.put(MandatoryProperties.commitId.name(), commitId);
+		}
+		
+		long relationship = this.batchInserter.createRelationship(parentNode, childNode, RelationshipLabels.has, properties);
+		this.relationshipIndex.add(relationship, MapUtil.map(MandatoryProperties.pathKey.name(), pathKey));
+		this.pathKeyCache.put(pathKey, childNode);
+		this.relationships++;
+		return relationship;
+	}
+	
+	private String getNextNodeId()
+	{
+		return Base62Codec.encode(this.nextAutoIncrement++);
+	}
+	
+	private String getNodeId(long node)
+	{
+		String nodeId = this.nodeIdCache.get(node);
+		if(nodeId == null)
+		{
+			nodeId = (String) this.batchInserter.getNodeProperties(node).get(MandatoryProperties.nodeId.name());
+			this.nodeIdCache.put(node, nodeId);
+		}
+		
+		return nodeId;
+	}
+	
+	private String getPath(List<String> names)
+	{
+		StringBuilder path = new StringBuilder();
+		for(String name : names)
+		{
+			path.append("/").append(name);
+		}
+		
+		return path.length() == 0 ? "/" : path.toString();
+	}
+	
+	private String getFullPath(String path, String name)
+	{
+		return (path.equals("/") ? "" : path) + "/" + name;
+	}
+	
+	private String getPathKey(String parentNodeId, String fullPath)
+	{
+		return parentNodeId + ":" + fullPath;
+	}
+	
+	public static void main(String[] args) throws IOException, UserNotFound, FilesystemNotFound
+	{
+		BulkLoader bulkLoader = new BulkLoader(new ProgressListener()
+		{
+			@Override
+			public void progress(long lines, long nodes, long relationships, long elapsedMillis)
+			{
+				long seconds = Math.max(1, elapsedMillis / 1000);
+				System.out.println("Lines: " + lines + ", nodes: " + nodes + " (" + nodes / seconds + "/s), relationships: " + relationships + " (" + relationships / seconds + "/s)");
+			}
+		});
+		
+		long loadedNodes = bulkLoader.load(args[0], args.length > 1 ? args[1] : new File(args[0]).getName());
+		System.out.println("Loaded nodes: " + loadedNodes);
+	}
+}
@@ -0,0 +1,216 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import bookeeping.backend.database.CommitOperation;
+import bookeeping.backend.database.CommitOperationResult;
+import bookeeping.backend.database.CommitOperationStatus;
+import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
+import bookeeping.backend.database.service.CommitService;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
+
+public class CommitServiceImpl implements CommitService
+{
+	private Neo4JEmbeddedConnection neo4jEmbeddedConnection;
+	private GraphDatabaseService graphDatabaseService;
+	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	private GenericService genericService;
+	private int commitChunkSize;
+	
+	public CommitServiceImpl()
+	{
+		this(Neo4JEmbeddedConnection.getInstance().getCommitChunkSize());
+	}
+	
+	public CommitServiceImpl(int commitChunkSize)
+	{
+		this(Neo4JEmbeddedServiceRegistry.getInstance().getCommonCode(), Neo4JEmbeddedServiceRegistry.getInstance().getDirectoryService(), Neo4JEmbeddedServiceRegistry.getInstance().getFileService(), Neo4JEmbeddedServiceRegistry.getInstance().getGenericService(), commitChunkSize);
+	}
+	
+	CommitServiceImpl(CommonCode commonCode, DirectoryService directoryService, FileService fileService, GenericService genericService, int commitChunkSize)
+	{
+		this.neo4jEmbeddedConnection = Neo4JEmbeddedConnection.getInstance();
+		this.graphDatabaseService = this.neo4jEmbeddedConnection.getGraphDatabaseServiceObject();
+		this.commonCode = commonCode;
+		this.filesystemLock = this.neo4jEmbeddedConnection.getFilesystemLock();
+		this.transactionRetry = this.neo4jEmbeddedConnection.getTransactionRetry();
+		this.directoryService = directoryService;
+		this.fileService = fileService;
+		this.genericService = genericService;
+		this.commitChunkSize = commitChunkSize;
+	}
+	
+	/*
+	 * Operations run in order, each chunk in its own transaction (the whole list when the chunk size is not
+	 * positive). The service calls join that transaction. The first failure rolls its chunk back and skips
+	 * everything after it; chunks committed before it stay committed. The filesystem stays locked for the
+	 * whole list, so no other writer gets in between two chunks. A chunk that fails on a deadlock is rolled
+	 * back and run again as a whole, the service calls in it do not retry on their own.
+	 */
+	@Override
+	public List<CommitOperationResult> commit(String commitId, String userId, String filesystemId, int filesystemVersion, List<CommitOperation> commitOperations)
+	{
+		List<CommitOperationResult> commitOperationResults = new ArrayList<CommitOperationResult>(commitOperations.size());
+		int chunkSize = this.commitChunkSize > 0 ? this.commitChunkSize : commitOperations.size();
+		
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
+		{
+			int chunkStart = 0;
+			while(chunkStart < commitOperations.size())
+			{
+				int chunkEnd = Math.min(chunkStart + chunkSize, commitOperations.size());
+				if(! this.commitChunk(commitId, userId, filesystemId, filesystemVersion, commitOperations, chunkStart, chunkEnd, commitOperationResults))
+				{
+					break;
+				}
+				chunkStart = chunkEnd;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		
+		for(int index = commitOperationResults.size(); index < commitOperations.size(); index++)
+		{
+			commitOperationResults.add(new CommitOperationResult(index, commitOperations.get(index), CommitOperationStatus.Skipped, null, null));
+		}
+		
+		return commitOperationResults;
+	}
+	
+	private boolean commitChunk(String commitId, String userId, String filesystemId, int filesystemVersion, List<CommitOperation> commitOperations, int chunkStart, int chunkEnd, List<CommitOperationResult> commitOperationResults)
+	{
+		List<String> nodeIds = new ArrayList<String>(chunkEnd - chunkStart);
+		Exception failure = null;
+		
+		for(int attempt = 1; ; attempt++)
+		{
+			nodeIds.clear();
+			failure = null;
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				for(int index = chunkStart; index < chunkEnd && failure == null; index++)
+				{
+					try
+					{
+						nodeIds.add(this.apply(commitId, userId, filesystemId, filesystemVersion, commitOperations.get(index)));
+					}
+					catch(Exception exception)
+					{
+						failure = exception;
+					}
+				}
+				
+				if(failure == null)
+				{
+					unitOfWork.success();
+				}
+			}
+			catch(RuntimeException runtimeException)
+			{
+				nodeIds.clear();
+				failure = runtimeException;
+			}
+			
+			if(failure == null || ! this.transactionRetry.retry(failure, attempt))
+			{
+				break;
+			}
+			this.invalidateCaches(userId, filesystemId);
+		}
+		
+		if(failure == null)
+		{
+			for(int index = chunkStart; index < chunkEnd; index++)
+			{
+				commitOperationResults.add(new CommitOperationResult(index, commitOperations.get(index), CommitOperationStatus.Applied, nodeIds.get(index - chunkStart), null));
+			}
+			return true;
+		}
+		
+		for(int index = chunkStart; index < chunkStart + nodeIds.size(); index++)
+		{
+			commitOperationResults.add(new CommitOperationResult(index, commitOperations.get(index), CommitOperationStatus.RolledBack, null, failure));
+		}
+		
+		int failedIndex = chunkStart + nodeIds.size();
+		if(failedIndex < chunkEnd)
+		{
+			commitOperationResults.add(new CommitOperationResult(failedIndex, commitOperations.get(failedIndex), CommitOperationStatus.Failed, null, failure));
+		}
+		
+		this.invalidateCaches(userId, filesystemId);
+		return false;
+	}
+	
+	private void invalidateCaches(String userId, String filesystemId)
+	{
+		this.commonCode.invalidatePathFilter(userId, filesystemId);
+	}
+	
+	/*
+	 * The operations by nodeId are checked against the filesystem that is locked, so that a commit cannot
+	 * change a node of another filesystem without holding its lock.
+	 */
+	private void checkNodeInFilesystem(String userId, String filesystemId, String nodeId) throws UserNotFound, FilesystemNotFound, NodeNotFound
+	{
+		if(! this.commonCode.isNodeInFilesystem(userId, filesystemId, nodeId))
+		{
+			throw new NodeNotFound("ERROR: Node not found in Filesystem! - \"" + nodeId + "\"", false);
+		}
+	}
+	
+	private String apply(String commitId, String userId, String filesystemId, int filesystemVersion, CommitOperation commitOperation) throws Exception
+	{
+		switch(commitOperation.getCommitOperationType())
+		{
+			case CreateDirectory:
+				return this.directoryService.createNewDirectory(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getProperties());
+			case CreateFile:
+				return this.fileService.createNewFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getProperties());
+			case MoveDirectory:
+				return this.directoryService.moveDirectory(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNewPath(), commitOperation.getNewName());
+			case MoveFile:
+				return this.fileService.moveFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNewPath(), commitOperation.getNewName());
+			case DeleteNode:
+				this.checkNodeInFilesystem(userId, filesystemId, commitOperation.getNodeId());
+				this.genericService.deleteNodeTemporarily(commitId, commitOperation.getNodeId());
+				return commitOperation.getNodeId();
+			case RestoreDirectory:
+				this.directoryService.restoreDirectory(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNodeId());
+				return commitOperation.getNodeId();
+			case RestoreFile:
+				this.fileService.restoreFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNodeId());
+				return commitOperation.getNodeId();
+			case ShareFile:
+				this.fileService.shareFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getShareWithUserId(), commitOperation.getPermission());
+				return null;
+			case UnshareFile:
+				this.fileService.unshareFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getShareWithUserId());
+				return null;
+			case ChangeNodeProperties:
+				this.checkNodeInFilesystem(userId, filesystemId, commitOperation.getNodeId());
+				this.genericService.changeNodeProperties(commitOperation.getNodeId(), commitOperation.getProperties());
+				return commitOperation.getNodeId();
+			default:
+				throw new IllegalArgumentException("ERROR: Unknown commit operation! - \"" + commitOperation.getCommitOperationType() + "\"");
+		}
+	}
+}
@@ -2,9 +2,12 @@ package bookeeping.backend.database.service.neo4jembedded.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -12,11 +15,15 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.graphdb.index.ReadableRelationshipIndex;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.VersioningMode;
 import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
 import bookeeping.backend.database.neo4j.NodeLabels;
 import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.database.service.AutoIncrementService;
 import bookeeping.backend.exception.DirectoryNotFound;
 import bookeeping.backend.exception.FileNotFound;
 import bookeeping.backend.exception.FilesystemNotFound;
@@ -24,42 +31,134 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.NodeCache;
+import bookeeping.backend.utilities.cache.NodeSnapshot;
+import bookeeping.backend.utilities.filter.BloomFilter;
+import bookeeping.backend.utilities.filter.PathFilter;
 
 public class CommonCode
 {
 	private Neo4JEmbeddedConnection neo4jEmbeddedConnection;
 	private GraphDatabaseService graphDatabaseService;
+	private VersioningMode versioningMode;
+	private PathStorageMode pathStorageMode;
+	private NodeCache nodeCache;
+	private NodeCache versionCache;
+	private PathFilter pathFilter;
+	private AutoIncrementService autoIncrementService;
+	private TransactionRetry transactionRetry;
 	
 	public CommonCode()
 	{
 		this.neo4jEmbeddedConnection = Neo4JEmbeddedConnection.getInstance();
 		this.graphDatabaseService = this.neo4jEmbeddedConnection.getGraphDatabaseServiceObject();
+		this.versioningMode = this.neo4jEmbeddedConnection.getVersioningMode();
+		this.pathStorageMode = this.neo4jEmbeddedConnection.getPathStorageMode();
+		this.nodeCache = this.neo4jEmbeddedConnection.getNodeCache();
+		this.versionCache = this.neo4jEmbeddedConnection.getVersionCache();
+		this.pathFilter = this.neo4jEmbeddedConnection.getPathFilter();
+		this.autoIncrementService = new AutoIncrementServiceImpl(this);
+		this.transactionRetry = this.neo4jEmbeddedConnection.getTransactionRetry();
+	}
+	
+	public AutoIncrementService getAutoIncrementService()
+	{
+		return this.autoIncrementService;
+	}
+	
+	public PathStorageMode getPathStorageMode()
+	{
+		return this.pathStorageMode;
+	}
+	
+	public UnitOfWork beginUnitOfWork()
+	{
+		return UnitOfWork.begin(this.graphDatabaseService, this.transactionRetry);
+	}
+	
+	public UnitOfWork beginReadTransaction()
+	{
+		return UnitOfWork.beginRead(this.graphDatabaseService, this.transactionRetry);
 	}
 	
 	public Node createNode(NodeLabels nodeLabel)
 	{
 		Node node = this.graphDatabaseService.createNode(nodeLabel);
-		node.setProperty(MandatoryProperties.nodeId.name(), new AutoIncrementServiceImpl().getNextAutoIncrement());
+		node.setProperty(MandatoryProperties.nodeId.name(), this.autoIncrementService.getNextAutoIncrement());
 		return node;
 	}
 	
+	/*
+	 * The find methods return null for a missing node so that expected misses, such as the duplicate
+	 * checks on create, cost no exception. The get methods wrap them for callers that want one, and
+	 * those exceptions skip the stack trace since a miss is an answer, not a failure.
+	 */
 	public Node getNode(String nodeId) throws NodeNotFound
 	{
-		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
-		Node node = readableIndex.get(MandatoryProperties.nodeId.name(), nodeId).getSingle();
-		
+		Node node = this.findNode(nodeId);
 		if(node == null)
 		{
-			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"");
+			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"", false);
 		}
-		else
+		
+		return node;
+	}
+	
+	public Node findNode(String nodeId)
+	{
+		NodeSnapshot nodeSnapshot = this.nodeCache.get(nodeId);
+		if(nodeSnapshot != null)
 		{
-			return node;
+			try
+			{
+				Node node = this.graphDatabaseService.getNodeById((long) nodeSnapshot.getGraphId());
+				if(nodeId.equals(node.getProperty(MandatoryProperties.nodeId.name(), null)))
+				{
+					return node;
+				}
+			}
+			catch(NotFoundException notFoundException) {}
+			
+			this.nodeCache.invalidate(nodeId);
 		}
+		
+		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
+		return readableIndex.get(MandatoryProperties.nodeId.name(), nodeId).getSingle();
 	}
 	
 	public Map<String, Object> getNodeProperties(Node node) throws NodeNotFound
 	{
+		Map<String, Object> nodeProperties = this.findNodeProperties(node);
+		if(nodeProperties == null)
+		{
+			throw new NodeNotFound("ERROR: Node not found!", false);
+		}
+		
+		return nodeProperties;
+	}
+	
+	/*
+	 * The properties of a node that a find method returned, or null when it found none.
+	 */
+	public Map<String, Object> findNodeProperties(Node node)
+	{
+		if(node == null)
+		{
+			return null;
+		}
+		
+		String nodeId = (String) node.getProperty(MandatoryProperties.nodeId.name(), null);
+		long snapshotStamp = UnitOfWork.getSnapshotStamp();
+		if(nodeId != null && snapshotStamp != 0)
+		{
+			NodeSnapshot nodeSnapshot = this.nodeCache.get(nodeId);
+			if(nodeSnapshot != null && nodeSnapshot.getGraphId().equals(node.getId()))
+			{
+				return nodeSnapshot.getProperties();
+			}
+		}
+		
 		Map<String, Object> nodeProperties = new HashMap<String, Object>();
 		Iterable<String> nodeKeys = node.getPropertyKeys();
 		
@@ -68,18 +167,57 @@ public class CommonCode
 			nodeProperties.put(key, node.getProperty(key));
 		}
 		
-		return nodeProperties;
+		if(nodeId == null || snapshotStamp == 0)
+		{
+			return nodeProperties;
+		}
+		
+		NodeSnapshot nodeSnapshot = new NodeSnapshot(node.getId(), nodeProperties, snapshotStamp);
+		this.nodeCache.put(nodeId, nodeSnapshot);
+		return nodeSnapshot.getProperties();
+	}
+	
+	/*
+	 * Called before a node is changed. The cached snapshots are dropped once the unit of work is closed,
+	 * after the change is committed.
+	 */
+	public void invalidateNode(Node node)
+	{
+		UnitOfWork.invalidateOnClose(this.nodeCache, (String) node.getProperty(MandatoryProperties.nodeId.name()));
+		
+		String versionCacheKey = this.getVersionCacheKey(node);
+		if(versionCacheKey != null)
+		{
+			UnitOfWork.invalidateOnClose(this.versionCache, versionCacheKey);
+		}
 	}
 	
 	public Node createNodeVersion(String commidId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
 	{
-		Node node = null;
-		try
+		return this.createNodeVersion(commidId, this.getHeadVersion(nodeId), changeMetadata, changedProperties);
+	}
+	
+	/*
+	 * Adds a version after the given node, which the caller has found to be the head. The expected
+	 * version variant of createNewVersion checks that it still is before calling this.
+	 */
+	public Node createNodeVersion(String commidId, Node node, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound
+	{
+		Node originalNode = this.getOriginalNode(node);
+		if(! originalNode.equals(node) && originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING) == null)
+		{
+			this.indexVersionChain(originalNode);
+		}
+		
+		Node versionedNode = null;
+		if(this.versioningMode == VersioningMode.StructuralSharing)
+		{
+			versionedNode = this.shareNodeTree(node);
+		}
+		else
 		{
-			node = this.getNodeVersion(nodeId, -1);
+			versionedNode = this.copyNodeTree(node, new ArrayList<String>());
 		}
-		catch (VersionNotFound e) {}
-		Node versionedNode = this.copyNodeTree(node, new ArrayList<String>());
 		
 		int nodeVersion = (int) node.getProperty(MandatoryProperties.version.name());
 		versionedNode.setProperty(MandatoryProperties.version.name(), nodeVersion + 1);
@@ -95,12 +233,65 @@ public class CommonCode
 		}
 		relationship.setProperty(MandatoryProperties.commitId.name(), commidId);
 		
+		this.setHeadVersion(originalNode, versionedNode);
 		return versionedNode;
 	}
 	
+	public Node getHeadVersion(String nodeId) throws NodeNotFound, NodeUnavailable
+	{
+		try
+		{
+			return this.getNodeVersion(nodeId, -1);
+		}
+		catch(VersionNotFound versionNotFound)
+		{
+			throw new NodeUnavailable("ERROR: No head version for this node! - \"" + nodeId + "\"", versionNotFound);
+		}
+	}
+	
 	public Node getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
 	{
+		if(version != -1)
+		{
+			Node versionedNode = this.getIndexedNodeVersion(nodeId, version);
+			if(versionedNode != null)
+			{
+				return versionedNode;
+			}
+		}
+		
 		Node node = this.getNode(nodeId);
+		if(! node.hasProperty(MandatoryProperties.version.name()))
+		{
+			throw new NodeUnavailable("ERROR: No version property for this node! - \"" + nodeId + "(v=" + version + ")\"");
+		}
+		
+		Node originalNode = node.hasProperty(MandatoryProperties.versionOf.name()) ? this.getNode((String) node.getProperty(MandatoryProperties.versionOf.name())) : node;
+		Relationship headRelationship = originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING);
+		if(headRelationship != null)
+		{
+			if(version == -1)
+			{
+				return headRelationship.getEndNode();
+			}
+			
+			if(((int) originalNode.getProperty(MandatoryProperties.version.name())) == version)
+			{
+				return originalNode;
+			}
+			
+			if(! originalNode.equals(node))
+			{
+				Node versionedNode = this.getIndexedNodeVersion((String) originalNode.getProperty(MandatoryProperties.nodeId.name()), version);
+				if(versionedNode != null)
+				{
+					return versionedNode;
+				}
+			}
+			
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"", false);
+		}
+		
 		do
 		{
 			int nodeVersion = -1;
@@ -139,14 +330,135 @@ public class CommonCode
 		}
 		while(node != null);
 		
-		throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"");
+		throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"", false);
+	}
+	
+	public Node indexVersionChain(Node originalNode)
+	{
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		Node node = originalNode;
+		Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+		while(relationship != null)
+		{
+			node = relationship.getEndNode();
+			this.invalidateNode(node);
+			node.setProperty(MandatoryProperties.versionOf.name(), originalNodeId);
+			node.setProperty(MandatoryProperties.versionKey.name(), this.getVersionKey(originalNodeId, (int) node.getProperty(MandatoryProperties.version.name())));
+			relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+		}
+		
+		if(! node.equals(originalNode))
+		{
+			this.setHeadVersion(originalNode, node);
+		}
+		
+		return node;
+	}
+	
+	private void setHeadVersion(Node originalNode, Node versionedNode)
+	{
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		this.invalidateNode(versionedNode);
+		versionedNode.setProperty(MandatoryProperties.versionOf.name(), originalNodeId);
+		versionedNode.setProperty(MandatoryProperties.versionKey.name(), this.getVersionKey(originalNodeId, (int) versionedNode.getProperty(MandatoryProperties.version.name())));
+		
+		Relationship headRelationship = originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING);
+		if(headRelationship != null)
+		{
+			headRelationship.delete();
+		}
+		originalNode.createRelationshipTo(versionedNode, RelationshipLabels.hasHeadVersion);
+	}
+	
+	public Node getOriginalNode(Node node) throws NodeNotFound
+	{
+		if(node.hasProperty(MandatoryProperties.versionOf.name()))
+		{
+			return this.getNode((String) node.getProperty(MandatoryProperties.versionOf.name()));
+		}
+		
+		Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.INCOMING);
+		while(relationship != null)
+		{
+			node = relationship.getStartNode();
+			relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.INCOMING);
+		}
+		
+		return node;
+	}
+	
+	private Node getIndexedNodeVersion(String nodeId, int version)
+	{
+		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
+		return readableIndex.get(MandatoryProperties.versionKey.name(), this.getVersionKey(nodeId, version)).getSingle();
+	}
+	
+	private String getVersionKey(String originalNodeId, int version)
+	{
+		return originalNodeId + ":" + version;
+	}
+	
+	/*
+	 * Only versions that a newer one exists for are kept in the version cache; the head is always read
+	 * from the graph. Such a version still changes in place on a write by nodeId, or when its root is
+	 * unshared, and every such write goes through invalidateNode, which drops the entry after the commit.
+	 */
+	public Map<String, Object> getCachedNodeVersion(String nodeId, int version)
+	{
+		NodeSnapshot nodeSnapshot = this.versionCache.get(this.getVersionKey(nodeId, version));
+		return nodeSnapshot == null ? null : nodeSnapshot.getProperties();
+	}
+	
+	public Map<String, Object> getNodeVersionProperties(Node node) throws NodeNotFound
+	{
+		String versionCacheKey = this.getVersionCacheKey(node);
+		long snapshotStamp = UnitOfWork.getSnapshotStamp();
+		if(versionCacheKey == null || snapshotStamp == 0)
+		{
+			return this.getNodeProperties(node);
+		}
+		
+		NodeSnapshot nodeSnapshot = this.versionCache.get(versionCacheKey);
+		if(nodeSnapshot != null && nodeSnapshot.getGraphId().equals(node.getId()))
+		{
+			return nodeSnapshot.getProperties();
+		}
+		
+		Map<String, Object> nodeProperties = this.getNodeProperties(node);
+		if(node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING) != null)
+		{
+			this.versionCache.put(versionCacheKey, new NodeSnapshot(node.getId(), nodeProperties, snapshotStamp));
+		}
+		
+		return nodeProperties;
+	}
+	
+	private String getVersionCacheKey(Node node)
+	{
+		if(node.hasProperty(MandatoryProperties.versionKey.name()))
+		{
+			return (String) node.getProperty(MandatoryProperties.versionKey.name());
+		}
+		
+		if(node.hasProperty(MandatoryProperties.version.name()) && node.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING) != null)
+		{
+			return this.getVersionKey((String) node.getProperty(MandatoryProperties.nodeId.name()), (int) node.getProperty(MandatoryProperties.version.name()));
+		}
+		
+		return null;
 	}
 	
 	public List<Map<String, Object>> getNodeVersions(String nodeId) throws NodeNotFound
 	{
-		List<Map<String, Object>> versionList = new ArrayList<Map<String, Object>>();
 		Node node = this.getNode(nodeId);
-		versionList.add(this.getNodeProperties(node));
+		List<Map<String, Object>> versionList = this.getIndexedNodeVersions(node);
+		if(versionList != null)
+		{
+			return versionList;
+		}
+		
+		versionList = new ArrayList<Map<String, Object>>();
+		versionList.add(this.getNodeVersionProperties(node));
 		
 		do
 		{
@@ -154,7 +466,7 @@ public class CommonCode
 			if(relationship != null)
 			{
 				node = relationship.getEndNode();
-				versionList.add(this.getNodeProperties(node));
+				versionList.add(this.getNodeVersionProperties(node));
 			}
 			else
 			{
@@ -166,6 +478,47 @@ public class CommonCode
 		return versionList;
 	}
 	
+	private List<Map<String, Object>> getIndexedNodeVersions(Node node) throws NodeNotFound
+	{
+		if(! node.hasProperty(MandatoryProperties.version.name()))
+		{
+			return null;
+		}
+		
+		Node originalNode = node.hasProperty(MandatoryProperties.versionOf.name()) ? this.getNode((String) node.getProperty(MandatoryProperties.versionOf.name())) : node;
+		Relationship headRelationship = originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING);
+		if(headRelationship == null)
+		{
+			return null;
+		}
+		
+		List<Map<String, Object>> versionList = new ArrayList<Map<String, Object>>();
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		int originalVersion = (int) originalNode.getProperty(MandatoryProperties.version.name());
+		Node headNode = headRelationship.getEndNode();
+		int headVersion = (int) headNode.getProperty(MandatoryProperties.version.name());
+		
+		for(int version = (int) node.getProperty(MandatoryProperties.version.name()); version < headVersion; version++)
+		{
+			Map<String, Object> nodeProperties = this.getCachedNodeVersion(originalNodeId, version);
+			if(nodeProperties == null)
+			{
+				Node versionedNode = version == originalVersion ? originalNode : this.getIndexedNodeVersion(originalNodeId, version);
+				if(versionedNode == null)
+				{
+					return null;
+				}
+				
+				nodeProperties = this.getNodeVersionProperties(versionedNode);
+			}
+			
+			versionList.add(nodeProperties);
+		}
+		
+		versionList.add(this.getNodeProperties(headNode));
+		return versionList;
+	}
+	
 	public List<Node> getChildren(String nodeId) throws NodeNotFound
 	{
 		List<Node> nodeList = new ArrayList<Node>();
@@ -195,169 +548,710 @@ public class CommonCode
 	public Node deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
 	{
 		Node node = this.getNode(nodeId);
-		Relationship hasRelationship = node.getSingleRelationship(RelationshipLabels.has, Direction.INCOMING);
-		if(hasRelationship == null)
+		List<Relationship> hasRelationships = new ArrayList<Relationship>();
+		for(Relationship hasRelationship : this.getWritableParentRelationships(node, false))
 		{
-			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has already been deleted.");
+			if(! hasRelationship.isType(RelationshipLabels.has))
+			{
+				continue;
+			}
+			
+			if(hasRelationship.getStartNode().hasProperty(MandatoryProperties.filesystemId.name()))
+			{
+				throw new NodeUnavailable("ERROR: Root node cannot be deleted! - \"" + nodeId + "\"");
+			}
+			
+			hasRelationships.add(hasRelationship);
 		}
-
-		if(hasRelationship.getStartNode().hasProperty(MandatoryProperties.filesystemId.name()))
+		
+		if(hasRelationships.isEmpty())
 		{
-			throw new NodeUnavailable("ERROR: Root node cannot be deleted! - \"" + nodeId + "\"");
+			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has already been deleted.");
 		}
 		
-		Node parentNode = hasRelationship.getStartNode();
-		Relationship hadRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.had);
-		for(String key : hasRelationship.getPropertyKeys())
+		this.invalidateNode(node);
+		
+		for(Relationship hasRelationship : hasRelationships)
 		{
-			hadRelationship.setProperty(key, hasRelationship.getProperty(key));
+			Node parentNode = hasRelationship.getStartNode();
+			Relationship hadRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.had);
+			for(String key : hasRelationship.getPropertyKeys())
+			{
+				hadRelationship.setProperty(key, hasRelationship.getProperty(key));
+			}
+			hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+			this.indexPath(hadRelationship);
+			
+			hasRelationship.delete();
 		}
-		hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
 		
-		hasRelationship.delete();
 		return node;
 	}
 	
 	public Node restoreNode(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
 	{
 		Node node = this.getNode(nodeId);
-		Relationship hadRelationship = node.getSingleRelationship(RelationshipLabels.had, Direction.INCOMING);
-		if(hadRelationship == null)
+		List<Relationship> hadRelationships = new ArrayList<Relationship>();
+		for(Relationship hadRelationship : this.getWritableParentRelationships(node, false))
 		{
-			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has not been deleted.");
+			if(hadRelationship.isType(RelationshipLabels.had))
+			{
+				hadRelationships.add(hadRelationship);
+			}
 		}
 		
-		Node parentNode = hadRelationship.getStartNode();
-		Relationship hasRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.has);
-		for(String key : hadRelationship.getPropertyKeys())
+		if(hadRelationships.isEmpty())
 		{
-			hasRelationship.setProperty(key, hadRelationship.getProperty(key));
+			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has not been deleted.");
 		}
-		hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
-		
-		hadRelationship.delete();
-		return node;
-	}
-	
-	public Node getUser(String userId) throws UserNotFound
-	{
-		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
-		Node user = readableIndex.get(MandatoryProperties.userId.name(), userId).getSingle();
 		
-		if(user == null)
-		{
-			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"");
-		}
-		else
-		{
-			return user;
-		}
-	}
-	
-	public Node getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
-	{
-		Node user = this.getUser(userId);
-		Iterable<Relationship> iterable = user.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
+		this.invalidateNode(node);
 		
-		for(Relationship relationship : iterable)
+		for(Relationship hadRelationship : hadRelationships)
 		{
-			Node filesystem = relationship.getEndNode();
-			String retrievedFilesystemId = (String) filesystem.getProperty(MandatoryProperties.filesystemId.name());
-			
-			if(retrievedFilesystemId.equals(filesystemId))
+			Node parentNode = hadRelationship.getStartNode();
+			Relationship hasRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.has);
+			for(String key : hadRelationship.getPropertyKeys())
 			{
-				return filesystem;
+				hasRelationship.setProperty(key, hadRelationship.getProperty(key));
 			}
+			hasRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+			this.indexPath(hasRelationship);
+			
+			hadRelationship.delete();
 		}
 		
-		throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"");
+		return node;
 	}
 	
-	public Node getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	/*
+	 * Whether the node hangs under the filesystem in any of its versions, deleted or not. A version of
+	 * the node is followed back to the node it was made from.
+	 */
+	public boolean isNodeInFilesystem(String userId, String filesystemId, String nodeId) throws UserNotFound, FilesystemNotFound, NodeNotFound
 	{
 		Node filesystem = this.getFilesystem(userId, filesystemId);
-		Node versionedFilesystem = null;
-		try
-		{
-			versionedFilesystem = this.getNodeVersion((String) filesystem.getProperty(MandatoryProperties.nodeId.name()), filesystemVersion);
-		}
-		catch (NodeNotFound | NodeUnavailable e) {}
-		return versionedFilesystem.getSingleRelationship(RelationshipLabels.has, Direction.OUTGOING).getEndNode();
-	}
-	
-	public Node getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
-	{
-		Node rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
-		Iterable<Relationship> iterable = rootDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		
-		for(Relationship relationship : iterable)
+		Set<Node> visited = new HashSet<Node>();
+		List<Node> pendingNodeList = new ArrayList<Node>();
+		pendingNodeList.add(this.getNode(nodeId));
+		while(! pendingNodeList.isEmpty())
 		{
-			Node node = relationship.getEndNode();
-			if(node.hasLabel(NodeLabels.Directory))
+			List<Node> parentNodeList = new ArrayList<Node>();
+			for(Node pendingNode : pendingNodeList)
 			{
-				String retrievedDirectoryPath = (String) node.getProperty(MandatoryProperties.directoryPath.name());
-				String retrievedDirectoryName = (String) node.getProperty(MandatoryProperties.directoryName.name());
+				if(! visited.add(pendingNode))
+				{
+					continue;
+				}
 				
-				if(retrievedDirectoryPath.equals(directoryPath) && retrievedDirectoryName.equals(directoryName))
+				if(pendingNode.hasLabel(NodeLabels.Filesystem))
 				{
-					return node;
+					if(this.getOriginalNode(pendingNode).equals(filesystem))
+					{
+						return true;
+					}
+					continue;
+				}
+				
+				for(Relationship relationship : pendingNode.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had, RelationshipLabels.hasVersion))
+				{
+					parentNodeList.add(relationship.getStartNode());
 				}
 			}
+			
+			pendingNodeList = parentNodeList;
 		}
 		
-		throw new DirectoryNotFound("ERROR: Directory not found! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+		return false;
 	}
 	
-	public List<Node> getAllDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	/*
+	 * The node that a write by nodeId changes in place.
+	 */
+	public Node getWritableNode(String nodeId) throws NodeNotFound
 	{
-		List<Node> directoryList = new ArrayList<Node>();
-		Node rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
-		Iterable<Relationship> iterable = rootDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		
-		for(Relationship relationship : iterable)
+		Node node = this.getNode(nodeId);
+		this.getWritableParentRelationships(node, true);
+		return node;
+	}
+	
+	/*
+	 * A nodeId names a node, not a version of its filesystem, and with structural sharing one node can
+	 * hang under several versions. A write by nodeId is meant for the newest of them, so that version
+	 * takes the node's path over first: every shared node on the path, down to the node itself when
+	 * writableNode is set, is left to the newest version, and its other parents are moved over to a copy
+	 * (see unshareNode). The older versions then keep seeing the node as it was, and the node keeps its
+	 * nodeId. A write that only changes the relationship from the parent leaves the node itself shared.
+	 *
+	 * Returns the has and had relationships from the parents the write applies to: only the one from the
+	 * newest version, or every one when nothing is shared or the node is not under a filesystem version.
+	 */
+	private List<Relationship> getWritableParentRelationships(Node node, boolean writableNode)
+	{
+		List<Relationship> parentRelationships = new ArrayList<Relationship>();
+		for(Relationship parentRelationship : node.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had))
 		{
-			Node node = relationship.getEndNode();
-			if(node.hasLabel(NodeLabels.Directory))
-			{
-				directoryList.add(node);
-			}
+			parentRelationships.add(parentRelationship);
 		}
 		
+		if(this.versioningMode != VersioningMode.StructuralSharing)
+		{
+			return parentRelationships;
+		}
+		
+		Map<Node, Relationship> pathRelationships = new HashMap<Node, Relationship>();
+		Node versionedFilesystem = null;
+		List<Relationship> pendingRelationshipList = parentRelationships;
+		while(! pendingRelationshipList.isEmpty())
+		{
+			List<Relationship> parentRelationshipList = new ArrayList<Relationship>();
+			for(Relationship pendingRelationship : pendingRelationshipList)
+			{
+				Node parentNode = pendingRelationship.getStartNode();
+				if(pathRelationships.containsKey(parentNode))
+				{
+					continue;
+				}
+				
+				pathRelationships.put(parentNode, pendingRelationship);
+				if(parentNode.hasLabel(NodeLabels.Filesystem))
+				{
+					if(versionedFilesystem == null || (int) parentNode.getProperty(MandatoryProperties.version.name()) > (int) versionedFilesystem.getProperty(MandatoryProperties.version.name()))
+					{
+						versionedFilesystem = parentNode;
+					}
+				}
+				else if(parentNode.hasLabel(NodeLabels.Directory))
+				{
+					for(Relationship parentRelationship : parentNode.getRelationships(Direction.INCOMING, RelationshipLabels.has))
+					{
+						parentRelationshipList.add(parentRelationship);
+					}
+				}
+			}
+			
+			pendingRelationshipList = parentRelationshipList;
+		}
+		
+		if(versionedFilesystem == null)
+		{
+			return parentRelationships;
+		}
+		
+		Relationship pathRelationship = pathRelationships.get(versionedFilesystem);
+		Node pathNode = pathRelationship.getEndNode();
+		while(! pathNode.equals(node))
+		{
+			this.unshareNode(pathNode, pathRelationship);
+			pathRelationship = pathRelationships.get(pathNode);
+			pathNode = pathRelationship.getEndNode();
+		}
+		
+		if(writableNode)
+		{
+			this.unshareNode(node, pathRelationship);
+		}
+		
+		parentRelationships.clear();
+		parentRelationships.add(pathRelationship);
+		return parentRelationships;
+	}
+	
+	public Node getUser(String userId) throws UserNotFound
+	{
+		Node user = this.findUser(userId);
+		if(user == null)
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		return user;
+	}
+	
+	public Node findUser(String userId)
+	{
+		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
+		return readableIndex.get(MandatoryProperties.userId.name(), userId).getSingle();
+	}
+	
+	public Node getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		Node filesystem = this.findFilesystem(userId, filesystemId);
+		if(filesystem == null)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", false);
+		}
+		
+		return filesystem;
+	}
+	
+	public Node findFilesystem(String userId, String filesystemId) throws UserNotFound
+	{
+		Node user = this.getUser(userId);
+		Relationship relationship = this.getIndexedRelationship(user, filesystemId);
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	public Node getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node versionedFilesystem = this.getVersionedFilesystem(userId, filesystemId, filesystemVersion);
+		return versionedFilesystem.getSingleRelationship(RelationshipLabels.has, Direction.OUTGOING).getEndNode();
+	}
+	
+	public Node getWritableRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node versionedFilesystem = this.getVersionedFilesystem(userId, filesystemId, filesystemVersion);
+		return this.copyOnWrite(versionedFilesystem.getSingleRelationship(RelationshipLabels.has, Direction.OUTGOING));
+	}
+	
+	private Node getVersionedFilesystem(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		String nodeId = (String) this.getFilesystem(userId, filesystemId).getProperty(MandatoryProperties.nodeId.name());
+		try
+		{
+			return this.getNodeVersion(nodeId, filesystemVersion);
+		}
+		catch(NodeNotFound nodeNotFound)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", nodeNotFound);
+		}
+		catch(NodeUnavailable nodeUnavailable)
+		{
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + filesystemVersion + ")\"", nodeUnavailable);
+		}
+	}
+	
+	public Node getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		Node directory = this.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+		if(directory == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		
+		return directory;
+	}
+	
+	public Node findDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+		Relationship relationship = this.findDirectoryRelationship(rootDirectory, directoryPath, directoryName, false);
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	/*
+	 * For looking up many directories under one path: the node their pathKeys hang off (the root directory
+	 * with absolute paths, the directory at the path itself with relative paths) is resolved once, and each
+	 * name then costs one index hit. Null if the path does not exist.
+	 */
+	public Node findDirectoryParent(String userId, String filesystemId, int filesystemVersion, String directoryPath) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths || directoryPath.equals("/"))
+		{
+			return rootDirectory;
+		}
+		
+		String parentName = directoryPath.substring(directoryPath.lastIndexOf("/") + 1);
+		String parentPath = directoryPath.lastIndexOf("/") == 0 ? "/" : directoryPath.substring(0, directoryPath.lastIndexOf("/"));
+		Relationship relationship = this.findDirectoryRelationship(rootDirectory, parentPath, parentName, false);
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	public Node findDirectory(Node directoryParent, String directoryPath, String directoryName)
+	{
+		Relationship relationship = this.getIndexedRelationship(directoryParent, (this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(directoryPath, directoryName) : directoryName) + "/");
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	public Node getWritableDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		Node rootDirectory = this.getWritableRootDirectory(userId, filesystemId, filesystemVersion);
+		Relationship relationship = this.findDirectoryRelationship(rootDirectory, directoryPath, directoryName, true);
+		if(relationship == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		
+		return this.copyOnWrite(relationship);
+	}
+	
+	private DirectoryNotFound getDirectoryNotFound(String directoryPath, String directoryName)
+	{
+		return new DirectoryNotFound("ERROR: Directory not found! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"", false);
+	}
+	
+	/*
+	 * With relative paths every directory hangs under its parent directory and only knows its own name,
+	 * so the path is walked one segment (one index hit) at a time. Missing directories on the way are
+	 * created, the same way the flat layout accepts a directory whose parent was never created.
+	 */
+	public Node getWritableDirectoryParent(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node parentDirectory = this.getWritableRootDirectory(userId, filesystemId, filesystemVersion);
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths || directoryPath.equals("/"))
+		{
+			return parentDirectory;
+		}
+		
+		String parentPath = "/";
+		for(String directoryName : directoryPath.substring(1).split("/"))
+		{
+			Relationship relationship = this.getIndexedRelationship(parentDirectory, directoryName + "/");
+			if(relationship != null)
+			{
+				parentDirectory = this.copyOnWrite(relationship);
+			}
+			else
+			{
+				Node directory = this.createNode(NodeLabels.Directory);
+				directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+				directory.setProperty(MandatoryProperties.version.name(), 0);
+				
+				relationship = parentDirectory.createRelationshipTo(directory, RelationshipLabels.has);
+				relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+				this.indexPath(relationship);
+				this.addPath(userId, filesystemId, directory, parentPath);
+				parentDirectory = directory;
+			}
+			
+			parentPath = this.getFullPath(parentPath, directoryName);
+		}
+		
+		return parentDirectory;
+	}
+	
+	private Relationship findDirectoryRelationship(Node rootDirectory, String directoryPath, String directoryName, boolean writable)
+	{
+		Relationship relationship = null;
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			relationship = this.getIndexedRelationship(rootDirectory, this.getFullPath(directoryPath, directoryName) + "/");
+		}
+		else
+		{
+			Node parentDirectory = rootDirectory;
+			String[] parentNames = directoryPath.equals("/") ? new String[0] : directoryPath.substring(1).split("/");
+			for(int i = 0; i < parentNames.length && parentDirectory != null; i++)
+			{
+				Relationship parentRelationship = this.getIndexedRelationship(parentDirectory, parentNames[i] + "/");
+				parentDirectory = parentRelationship == null ? null : (writable ? this.copyOnWrite(parentRelationship) : parentRelationship.getEndNode());
+			}
+			
+			relationship = parentDirectory == null ? null : this.getIndexedRelationship(parentDirectory, directoryName + "/");
+		}
+		
+		return relationship;
+	}
+	
+	public List<Node> getAllDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		List<Node> directoryList = new ArrayList<Node>();
+		List<Node> pendingNodeList = new ArrayList<Node>();
+		pendingNodeList.add(this.getRootDirectory(userId, filesystemId, filesystemVersion));
+		
+		do
+		{
+			List<Node> childNodeList = new ArrayList<Node>();
+			for(Node pendingNode : pendingNodeList)
+			{
+				Iterable<Relationship> iterable = pendingNode.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
+				for(Relationship relationship : iterable)
+				{
+					Node node = relationship.getEndNode();
+					if(node.hasLabel(NodeLabels.Directory))
+					{
+						directoryList.add(node);
+						childNodeList.add(node);
+					}
+				}
+			}
+			
+			pendingNodeList = this.pathStorageMode == PathStorageMode.RelativePaths ? childNodeList : new ArrayList<Node>();
+		}
+		while(! pendingNodeList.isEmpty());
+		
 		return directoryList;
 	}
 	
+	public void setDirectoryPath(Node directory, String directoryPath, String directoryName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath);
+		}
+		directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+	}
+	
+	public void setFilePath(Node file, String filePath, String fileName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			file.setProperty(MandatoryProperties.filePath.name(), filePath);
+		}
+		file.setProperty(MandatoryProperties.fileName.name(), fileName);
+	}
+	
 	public Node getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
 	{
-		Node parentDirectory = null;
+		Node file = this.findFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+		if(file == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		
+		return file;
+	}
+	
+	public Node findFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		return this.findFile(this.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, false), filePath, fileName);
+	}
+	
+	public Node findFile(Node parentDirectory, String filePath, String fileName)
+	{
+		Relationship relationship = this.findFileRelationship(parentDirectory, filePath, fileName);
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	public Node getWritableFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		Node parentDirectory = this.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, true);
+		Relationship relationship = this.findFileRelationship(parentDirectory, filePath, fileName);
+		if(relationship == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		
+		return this.copyOnWrite(relationship);
+	}
+	
+	private FileNotFound getFileNotFound(String filePath, String fileName)
+	{
+		return new FileNotFound("ERROR: File not found! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"", false);
+	}
+	
+	public Node getParentDirectory(String userId, String filesystemId, int filesystemVersion, String filePath, boolean writable) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
 		if(filePath.equals("/"))
 		{
-			parentDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+			return writable ? this.getWritableRootDirectory(userId, filesystemId, filesystemVersion) : this.getRootDirectory(userId, filesystemId, filesystemVersion);
 		}
 		else
 		{
 			String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
 			String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
 			directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
-			parentDirectory = this.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+			return writable ? this.getWritableDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) : this.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+		}
+	}
+	
+	private Relationship findFileRelationship(Node parentDirectory, String filePath, String fileName)
+	{
+		return this.getIndexedRelationship(parentDirectory, this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(filePath, fileName) : fileName);
+	}
+	
+	/*
+	 * Every has relationship to a directory or a file carries pathKey (parent nodeId + full path), which is
+	 * auto indexed, so a directory is found under its root and a file under its directory with one index
+	 * hit. Directory paths end with a slash so that a directory and a file with the same name directly
+	 * under the root directory never share a key. With relative paths the name takes the place of the
+	 * full path. Filesystems are keyed under their user by filesystemId. had relationships are not indexed.
+	 */
+	public Relationship indexPath(Relationship relationship)
+	{
+		String fullPath = relationship.isType(RelationshipLabels.has) ? this.getFullPath(relationship.getEndNode()) : null;
+		if(fullPath != null)
+		{
+			relationship.setProperty(MandatoryProperties.pathKey.name(), this.getPathKey((String) relationship.getStartNode().getProperty(MandatoryProperties.nodeId.name()), fullPath));
+		}
+		else if(relationship.hasProperty(MandatoryProperties.pathKey.name()))
+		{
+			relationship.removeProperty(MandatoryProperties.pathKey.name());
 		}
 		
-		Iterable<Relationship> iterable = parentDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		for(Relationship relationship : iterable)
+		return relationship;
+	}
+	
+	private String getFullPath(Node node)
+	{
+		if(node.hasLabel(NodeLabels.Directory) && node.hasProperty(MandatoryProperties.directoryPath.name()))
+		{
+			return this.getFullPath((String) node.getProperty(MandatoryProperties.directoryPath.name()), (String) node.getProperty(MandatoryProperties.directoryName.name())) + "/";
+		}
+		else if(node.hasLabel(NodeLabels.Directory) && node.hasProperty(MandatoryProperties.directoryName.name()))
+		{
+			return (String) node.getProperty(MandatoryProperties.directoryName.name()) + "/";
+		}
+		else if(node.hasLabel(NodeLabels.File) && node.hasProperty(MandatoryProperties.filePath.name()))
+		{
+			return this.getFullPath((String) node.getProperty(MandatoryProperties.filePath.name()), (String) node.getProperty(MandatoryProperties.fileName.name()));
+		}
+		else if(node.hasLabel(NodeLabels.File))
+		{
+			return (String) node.getProperty(MandatoryProperties.fileName.name());
+		}
+		else if(node.hasLabel(NodeLabels.Filesystem))
+		{
+			return (String) node.getProperty(MandatoryProperties.filesystemId.name());
+		}
+		
+		return null;
+	}
+	
+	private String getFullPath(String path, String name)
+	{
+		return (path.equals("/") ? "" : path) + "/" + name;
+	}
+	
+	private String getPathKey(String parentNodeId, String fullPath)
+	{
+		return parentNodeId + ":" + fullPath;
+	}
+	
+	private Relationship getIndexedRelationship(Node parentNode, String fullPath)
+	{
+		ReadableRelationshipIndex readableRelationshipIndex = this.graphDatabaseService.index().getRelationshipAutoIndexer().getAutoIndex();
+		return readableRelationshipIndex.get(MandatoryProperties.pathKey.name(), this.getPathKey((String) parentNode.getProperty(MandatoryProperties.nodeId.name()), fullPath)).getSingle();
+	}
+	
+	/*
+	 * The filter holds every directory and file path that has existed in any version of a filesystem.
+	 * It is built the first time the filesystem is checked and only ever grows: a deleted path stays in
+	 * it as a false positive until the next rebuild, which keeps a negative answer always trustworthy.
+	 * A filesystem the path filter no longer keeps a filter for always may contain the path, leaving the
+	 * check to the index.
+	 */
+	public boolean mayContainPath(String userId, String filesystemId, String path, String name, boolean directory) throws UserNotFound, FilesystemNotFound
+	{
+		BloomFilter bloomFilter = this.getBloomFilter(userId, filesystemId);
+		if(bloomFilter == null)
+		{
+			return true;
+		}
+		
+		boolean mayContain = bloomFilter.mightContain(this.getFullPath(path, name) + (directory ? "/" : ""));
+		if(! mayContain)
+		{
+			this.pathFilter.recordNegative();
+		}
+		
+		return mayContain;
+	}
+	
+	public void recordPathFalsePositive(String userId, String filesystemId)
+	{
+		if(this.pathFilter.isFiltered(this.getFilesystemKey(userId, filesystemId)))
+		{
+			this.pathFilter.recordFalsePositive();
+		}
+	}
+	
+	public void addPath(String userId, String filesystemId, Node node, String parentPath)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			bloomFilter.add(this.getFilterPath(node, parentPath));
+		}
+	}
+	
+	public void addPathTree(String userId, String filesystemId, Node directory, String parentPath)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			List<String> paths = new ArrayList<String>();
+			String directoryPath = this.getFilterPath(directory, parentPath);
+			paths.add(directoryPath);
+			this.collectPaths(directory, directoryPath.substring(0, directoryPath.length() - 1), paths, new HashSet<String>());
+			
+			for(String path : paths)
+			{
+				bloomFilter.add(path);
+			}
+		}
+	}
+	
+	public void invalidatePathFilter(String userId, String filesystemId)
+	{
+		this.pathFilter.invalidate(this.getFilesystemKey(userId, filesystemId));
+	}
+	
+	private BloomFilter getBloomFilter(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		String filesystemKey = this.getFilesystemKey(userId, filesystemId);
+		if(! this.pathFilter.isFiltered(filesystemKey))
+		{
+			return null;
+		}
+		
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(filesystemKey);
+		if(bloomFilter != null && bloomFilter.getInsertions() <= bloomFilter.getExpectedInsertions())
+		{
+			return bloomFilter;
+		}
+		
+		List<String> paths = new ArrayList<String>();
+		Set<String> visited = new HashSet<String>();
+		Node versionedFilesystem = this.getFilesystem(userId, filesystemId);
+		while(versionedFilesystem != null)
+		{
+			for(Relationship relationship : versionedFilesystem.getRelationships(Direction.OUTGOING, RelationshipLabels.has))
+			{
+				this.collectPaths(relationship.getEndNode(), "/", paths, visited);
+			}
+			
+			Relationship relationship = versionedFilesystem.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+			versionedFilesystem = relationship == null ? null : relationship.getEndNode();
+		}
+		
+		bloomFilter = this.pathFilter.createBloomFilter(paths.size());
+		for(String path : paths)
+		{
+			bloomFilter.add(path);
+		}
+		
+		this.pathFilter.putBloomFilter(filesystemKey, bloomFilter);
+		return bloomFilter;
+	}
+	
+	private void collectPaths(Node directory, String directoryPath, List<String> paths, Set<String> visited)
+	{
+		for(Relationship relationship : directory.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
 		{
 			Node node = relationship.getEndNode();
-			if(node.hasLabel(NodeLabels.File))
+			String path = this.getFilterPath(node, directoryPath);
+			if(path != null && visited.add(node.getId() + ":" + path))
 			{
-				String retrievedFilePath = (String) node.getProperty(MandatoryProperties.filePath.name());
-				String retrievedFileName = (String) node.getProperty(MandatoryProperties.fileName.name());
-				
-				if(retrievedFilePath.equals(filePath) && retrievedFileName.equals(fileName))
+				paths.add(path);
+				if(path.endsWith("/"))
 				{
-					return node;
+					this.collectPaths(node, path.substring(0, path.length() - 1), paths, visited);
 				}
 			}
 		}
+	}
+	
+	private String getFilterPath(Node node, String parentPath)
+	{
+		if(node.hasLabel(NodeLabels.Directory))
+		{
+			String directoryPath = (String) node.getProperty(MandatoryProperties.directoryPath.name(), parentPath);
+			return this.getFullPath(directoryPath, (String) node.getProperty(MandatoryProperties.directoryName.name())) + "/";
+		}
+		else if(node.hasLabel(NodeLabels.File))
+		{
+			String filePath = (String) node.getProperty(MandatoryProperties.filePath.name(), parentPath);
+			return this.getFullPath(filePath, (String) node.getProperty(MandatoryProperties.fileName.name()));
+		}
 		
-		throw new FileNotFound("ERROR: File not found! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+		return null;
+	}
+	
+	private String getFilesystemKey(String userId, String filesystemId)
+	{
+		return userId + ":" + filesystemId;
 	}
 	
 	public Node copyNode(Node node)
@@ -368,7 +1262,7 @@ public class CommonCode
 		
 		for(String key : node.getPropertyKeys())
 		{
-			if(! key.equals(MandatoryProperties.nodeId.name()))
+			if(! key.equals(MandatoryProperties.nodeId.name()) && ! key.equals(MandatoryProperties.versionOf.name()) && ! key.equals(MandatoryProperties.versionKey.name()))
 			{
 				copyNode.setProperty(key, node.getProperty(key));
 			}
@@ -398,7 +1292,7 @@ public class CommonCode
 				Iterable<Relationship> currentNodeRelationships = currentNode.getRelationships(Direction.OUTGOING);
 				for(Relationship relationship : currentNodeRelationships)
 				{
-					if(ignoreRelationships.contains(relationship.getType().name()))
+					if(ignoreRelationships.contains(relationship.getType().name()) || relationship.isType(RelationshipLabels.hasHeadVersion))
 					{
 						continue;
 					}
@@ -411,6 +1305,7 @@ public class CommonCode
 					{
 						currentNodeCopyRelationship.setProperty(key, relationship.getProperty(key));
 					}
+					this.indexPath(currentNodeCopyRelationship);
 					
 					childNodeList.add(childNode);
 					childNodeCopyList.add(childNodeCopy);
@@ -426,4 +1321,92 @@ public class CommonCode
 		
 		return rootNodeCopy;
 	}
+	
+	public Node shareNodeTree(Node node)
+	{
+		Node nodeCopy = this.copyNode(node);
+		for(Relationship relationship : node.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
+		{
+			Relationship sharedRelationship = nodeCopy.createRelationshipTo(relationship.getEndNode(), relationship.getType());
+			for(String key : relationship.getPropertyKeys())
+			{
+				sharedRelationship.setProperty(key, relationship.getProperty(key));
+			}
+			this.indexPath(sharedRelationship);
+		}
+		
+		return nodeCopy;
+	}
+	
+	/*
+	 * With structural sharing a node can hang under more than one version of its parent, as has or, where
+	 * it was deleted, as had. Before such a node is changed it is copied (the copy still shares the node's
+	 * own children) and only the given parent is moved over to the copy, so every other version keeps
+	 * seeing the node as it was.
+	 */
+	public Node copyOnWrite(Relationship parentRelationship)
+	{
+		Node node = parentRelationship.getEndNode();
+		Iterator<Relationship> iterator = node.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had).iterator();
+		iterator.next();
+		if(! iterator.hasNext())
+		{
+			return node;
+		}
+		
+		Node nodeCopy = this.shareNodeTree(node);
+		this.moveParentRelationship(parentRelationship, nodeCopy);
+		return nodeCopy;
+	}
+	
+	/*
+	 * The other way round from copyOnWrite: the node stays with the given parent, and every other parent
+	 * (has or had) is moved over to one copy of it. Nothing is copied for a node with no other parent.
+	 */
+	private void unshareNode(Node node, Relationship parentRelationship)
+	{
+		List<Relationship> otherRelationships = new ArrayList<Relationship>();
+		for(Relationship relationship : node.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had))
+		{
+			if(! relationship.equals(parentRelationship))
+			{
+				otherRelationships.add(relationship);
+			}
+		}
+		
+		if(otherRelationships.isEmpty())
+		{
+			return;
+		}
+		
+		Node nodeCopy = this.shareNodeTree(node);
+		for(Relationship otherRelationship : otherRelationships)
+		{
+			this.moveParentRelationship(otherRelationship, nodeCopy);
+		}
+	}
+	
+	/*
+	 * A filesystem version names its root directory by nodeId as well, so when the root is handed over
+	 * to a copy, the version is changed to name the copy. An older version changes in place here, and
+	 * its cached snapshots go with it.
+	 */
+	private void moveParentRelationship(Relationship parentRelationship, Node node)
+	{
+		Node parentNode = parentRelationship.getStartNode();
+		if(parentNode.hasProperty(MandatoryProperties.rootNodeId.name()))
+		{
+			this.invalidateNode(parentNode);
+			parentNode.setProperty(MandatoryProperties.rootNodeId.name(), node.getProperty(MandatoryProperties.nodeId.name()));
+		}
+		
+		Relationship relationship = parentNode.createRelationshipTo(node, parentRelationship.getType());
+		for(String key : parentRelationship.getPropertyKeys())
+		{
+			relationship.setProperty(key, parentRelationship.getProperty(key));
+		}
+		this.indexPath(relationship);
+		
+		parentRelationship.delete();
+	}
 }
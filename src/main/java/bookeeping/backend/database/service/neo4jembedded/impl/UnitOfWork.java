@@ -0,0 +1,202 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Lock;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Transaction;
+
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.NodeCache;
+import bookeeping.backend.utilities.cache.NodeSnapshot;
+
+/*
+ * The transaction of one service call, shared with every service call made inside it. The outermost
+ * call begins the Neo4j transaction and a nested call joins it without beginning one of its own, so
+ * that the whole request is committed once, or not at all. Like a nested Neo4j transaction, a nested
+ * call that is closed without success() rolls the outer one back. The unit holds the retry scope while
+ * it is open, so a nested call passes its failure up instead of retrying.
+ *
+ * A read transaction is never committed: Neo4j rolls it back on close, which is cheaper than going
+ * through the commit, whether success() was called or not. A getter called inside a write reads in the
+ * write's transaction, so that it sees what was written so far.
+ *
+ * Only a read caches what it reads, under the stamp taken when the outermost read began; a getter
+ * inside a write reads past the node cache, since what it sees may still be rolled back. The snapshots
+ * of the nodes a write changed are dropped when its outermost unit is closed, after the commit, so a
+ * reader that read the node before the commit cannot leave it cached afterwards.
+ */
+public class UnitOfWork implements AutoCloseable
+{
+	private static final ThreadLocal<UnitOfWork> currentUnitOfWork = new ThreadLocal<UnitOfWork>();
+	private final UnitOfWork outerUnitOfWork;
+	private final Transaction transaction;
+	private final TransactionRetry.Scope scope;
+	private final boolean readOnly;
+	private final long snapshotStamp;
+	private Map<NodeCache, Set<String>> invalidations;
+	private boolean success;
+	private boolean rollbackOnly;
+	
+	private UnitOfWork(UnitOfWork outerUnitOfWork, Transaction transaction, TransactionRetry.Scope scope, boolean readOnly)
+	{
+		this.outerUnitOfWork = outerUnitOfWork;
+		this.transaction = transaction;
+		this.scope = scope;
+		this.readOnly = readOnly;
+		this.snapshotStamp = outerUnitOfWork == null && readOnly ? NodeSnapshot.nextStamp() : 0;
+	}
+	
+	public static UnitOfWork begin(GraphDatabaseService graphDatabaseService, TransactionRetry transactionRetry)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork != null)
+		{
+			if(currentUnitOfWork.readOnly)
+			{
+				throw new IllegalStateException("ERROR: Cannot write inside a read transaction!");
+			}
+			
+			return new UnitOfWork(currentUnitOfWork, currentUnitOfWork.transaction, transactionRetry.enter(), false);
+		}
+		
+		return UnitOfWork.beginOutermost(graphDatabaseService, transactionRetry, false);
+	}
+	
+	public static UnitOfWork beginRead(GraphDatabaseService graphDatabaseService, TransactionRetry transactionRetry)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork != null)
+		{
+			return new UnitOfWork(currentUnitOfWork, currentUnitOfWork.transaction, transactionRetry.enter(), true);
+		}
+		
+		return UnitOfWork.beginOutermost(graphDatabaseService, transactionRetry, true);
+	}
+	
+	private static UnitOfWork beginOutermost(GraphDatabaseService graphDatabaseService, TransactionRetry transactionRetry, boolean readOnly)
+	{
+		TransactionRetry.Scope scope = transactionRetry.enter();
+		try
+		{
+			UnitOfWork unitOfWork = new UnitOfWork(null, graphDatabaseService.beginTx(), scope, readOnly);
+			UnitOfWork.currentUnitOfWork.set(unitOfWork);
+			return unitOfWork;
+		}
+		catch(RuntimeException runtimeException)
+		{
+			scope.close();
+			throw runtimeException;
+		}
+	}
+	
+	/*
+	 * The stamp for snapshots read in the calling thread's unit of work, or 0 when what it reads must not
+	 * be cached.
+	 */
+	public static long getSnapshotStamp()
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		return currentUnitOfWork == null ? 0 : currentUnitOfWork.snapshotStamp;
+	}
+	
+	/*
+	 * Outside a write, for the migrations that commit on their own, the snapshot is dropped right away.
+	 */
+	public static void invalidateOnClose(NodeCache nodeCache, String nodeId)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork == null || currentUnitOfWork.readOnly)
+		{
+			nodeCache.invalidate(nodeId);
+			return;
+		}
+		
+		if(currentUnitOfWork.invalidations == null)
+		{
+			currentUnitOfWork.invalidations = new HashMap<NodeCache, Set<String>>();
+		}
+		
+		Set<String> nodeIds = currentUnitOfWork.invalidations.get(nodeCache);
+		if(nodeIds == null)
+		{
+			nodeIds = new HashSet<String>();
+			currentUnitOfWork.invalidations.put(nodeCache, nodeIds);
+		}
+		nodeIds.add(nodeId);
+	}
+	
+	public void success()
+	{
+		this.success = true;
+	}
+	
+	public Lock acquireWriteLock(PropertyContainer propertyContainer)
+	{
+		return this.transaction.acquireWriteLock(propertyContainer);
+	}
+	
+	public Lock acquireReadLock(PropertyContainer propertyContainer)
+	{
+		return this.transaction.acquireReadLock(propertyContainer);
+	}
+	
+	@Override
+	public void close()
+	{
+		try
+		{
+			if(this.outerUnitOfWork != null)
+			{
+				if(! this.success && ! this.readOnly)
+				{
+					this.outerUnitOfWork.rollbackOnly = true;
+				}
+				return;
+			}
+			
+			UnitOfWork.currentUnitOfWork.remove();
+			if(this.success && ! this.readOnly)
+			{
+				if(this.rollbackOnly)
+				{
+					this.transaction.close();
+					throw new IllegalStateException("ERROR: Transaction was marked for rollback by a nested service call!");
+				}
+				
+				this.transaction.success();
+			}
+			
+			this.transaction.close();
+		}
+		finally
+		{
+			if(this.outerUnitOfWork == null)
+			{
+				this.invalidate();
+			}
+			this.scope.close();
+		}
+	}
+	
+	private void invalidate()
+	{
+		if(this.invalidations == null)
+		{
+			return;
+		}
+		
+		for(Entry<NodeCache, Set<String>> entry : this.invalidations.entrySet())
+		{
+			for(String nodeId : entry.getValue())
+			{
+				entry.getKey().invalidate(nodeId);
+			}
+		}
+	}
+}
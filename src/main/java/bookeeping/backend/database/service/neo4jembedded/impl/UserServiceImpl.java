@@ -5,41 +5,47 @@ import java.util.Map.Entry;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
 import bookeeping.backend.database.neo4j.NodeLabels;
 import bookeeping.backend.database.service.UserService;
 import bookeeping.backend.exception.DuplicateUser;
-import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
 
 public class UserServiceImpl implements UserService
 {
 	private Neo4JEmbeddedConnection neo4jEmbeddedConnection;
 	private GraphDatabaseService graphDatabaseService;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public UserServiceImpl()
+	{
+		this(Neo4JEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	UserServiceImpl(CommonCode commonCode)
 	{
 		this.neo4jEmbeddedConnection = Neo4JEmbeddedConnection.getInstance();
 		this.graphDatabaseService = this.neo4jEmbeddedConnection.getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.commonCode = commonCode;
+		this.transactionRetry = this.neo4jEmbeddedConnection.getTransactionRetry();
 	}
 	
 	@Override
 	public void createNewUser(String userId, Map<String, Object> userProperties) throws DuplicateUser
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			try
-			{
-				this.commonCode.getUser(userId);
-				throw new DuplicateUser("ERROR: User already present! - \"" + userId + "\"");
-			}
-			catch(UserNotFound userNotFound)
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 			{
+				if(this.commonCode.findUser(userId) != null)
+				{
+					throw new DuplicateUser("ERROR: User already present! - \"" + userId + "\"");
+				}
+				
 				Node node = this.commonCode.createNode(NodeLabels.User);
 				node.setProperty(MandatoryProperties.userId.name(), userId);
 				
@@ -48,7 +54,12 @@ public class UserServiceImpl implements UserService
 					node.setProperty(userPropertiesEntry.getKey(), userPropertiesEntry.getValue());
 				}
 				
-				transaction.success();
+				unitOfWork.success();
+				return;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -56,18 +67,20 @@ public class UserServiceImpl implements UserService
 	@Override
 	public Map<String, Object> getUser(String userId) throws UserNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			Node user = this.commonCode.getUser(userId);
-			Map<String, Object> userProperties = null;
-			try
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				Node user = this.commonCode.getUser(userId);
+				Map<String, Object> userProperties = this.commonCode.findNodeProperties(user);
+				
+				unitOfWork.success();
+				return userProperties;
+			}
+			catch(RuntimeException runtimeException)
 			{
-				userProperties = this.commonCode.getNodeProperties(user);
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			transaction.success();
-			return userProperties;
 		}
 	}
 }
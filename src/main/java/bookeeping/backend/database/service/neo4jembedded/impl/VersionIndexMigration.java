@@ -0,0 +1,65 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
+import bookeeping.backend.exception.NodeNotFound;
+
+public class VersionIndexMigration
+{
+	private Neo4JEmbeddedConnection neo4jEmbeddedConnection;
+	private GraphDatabaseService graphDatabaseService;
+	private CommonCode commonCode;
+	
+	public VersionIndexMigration()
+	{
+		this.neo4jEmbeddedConnection = Neo4JEmbeddedConnection.getInstance();
+		this.graphDatabaseService = this.neo4jEmbeddedConnection.getGraphDatabaseServiceObject();
+		this.commonCode = Neo4JEmbeddedServiceRegistry.getInstance().getCommonCode();
+	}
+	
+	/*
+	 * Backfills versionOf / versionKey and the hasHeadVersion pointer for every version chain written
+	 * before the version index existed. Each chain is migrated in its own transaction, and chains that
+	 * already have a head pointer are skipped, so the migration can be re-run after a partial failure.
+	 */
+	public int migrate() throws NodeNotFound
+	{
+		List<String> originalNodeIds = new ArrayList<String>();
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			String cypherQuery = "MATCH (n)-[:hasVersion]->() WHERE NOT (()-[:hasVersion]->(n)) AND NOT (n)-[:hasHeadVersion]->() RETURN n.nodeId AS nodeId";
+			Iterator<Map<String, Object>> iterator = this.neo4jEmbeddedConnection.runCypherQuery(cypherQuery, new HashMap<String, Object>());
+			while(iterator.hasNext())
+			{
+				originalNodeIds.add((String) iterator.next().get("nodeId"));
+			}
+			
+			transaction.success();
+		}
+		
+		for(String originalNodeId : originalNodeIds)
+		{
+			try(Transaction transaction = this.graphDatabaseService.beginTx())
+			{
+				this.commonCode.indexVersionChain(this.commonCode.getNode(originalNodeId));
+				transaction.success();
+			}
+		}
+		
+		return originalNodeIds.size();
+	}
+	
+	public static void main(String[] args) throws NodeNotFound
+	{
+		int migratedChains = new VersionIndexMigration().migrate();
+		System.out.println("Migrated version chains: " + migratedChains);
+	}
+}
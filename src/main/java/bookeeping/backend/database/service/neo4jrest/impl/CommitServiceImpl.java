@@ -0,0 +1,173 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import bookeeping.backend.database.CommitOperation;
+import bookeeping.backend.database.CommitOperationResult;
+import bookeeping.backend.database.CommitOperationStatus;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.service.CommitService;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
+
+public class CommitServiceImpl implements CommitService
+{
+	private Neo4JRestConnection neo4jRestConnection;
+	private GraphDatabaseService graphDatabaseService;
+	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	private GenericService genericService;
+	
+	public CommitServiceImpl()
+	{
+		this(Neo4JRestServiceRegistry.getInstance().getCommonCode(), Neo4JRestServiceRegistry.getInstance().getDirectoryService(), Neo4JRestServiceRegistry.getInstance().getFileService(), Neo4JRestServiceRegistry.getInstance().getGenericService());
+	}
+	
+	CommitServiceImpl(CommonCode commonCode, DirectoryService directoryService, FileService fileService, GenericService genericService)
+	{
+		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
+		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
+		this.commonCode = commonCode;
+		this.filesystemLock = this.neo4jRestConnection.getFilesystemLock();
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
+		this.directoryService = directoryService;
+		this.fileService = fileService;
+		this.genericService = genericService;
+	}
+	
+	/*
+	 * Nothing is atomic over REST: every service call sends its writes to the server in requests of its own,
+	 * and each of them commits on its own, so there is no transaction to chunk the list into. Operations run
+	 * in order and the first failure stops the list. The operations before it are committed and reported
+	 * Applied, the failed one is reported Failed, and the rest Skipped. A failed operation that takes more
+	 * than one request, a move say, can leave part of its writes behind. An operation that fails on a
+	 * deadlock is run again on its own. The filesystem stays locked for the whole list, so no other writer
+	 * gets in between two operations.
+	 */
+	@Override
+	public List<CommitOperationResult> commit(String commitId, String userId, String filesystemId, int filesystemVersion, List<CommitOperation> commitOperations)
+	{
+		List<CommitOperationResult> commitOperationResults = new ArrayList<CommitOperationResult>(commitOperations.size());
+		
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
+		{
+			for(int index = 0; index < commitOperations.size(); index++)
+			{
+				CommitOperationResult commitOperationResult = this.commitOperation(commitId, userId, filesystemId, filesystemVersion, index, commitOperations.get(index));
+				commitOperationResults.add(commitOperationResult);
+				if(commitOperationResult.getCommitOperationStatus() != CommitOperationStatus.Applied)
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		
+		for(int index = commitOperationResults.size(); index < commitOperations.size(); index++)
+		{
+			commitOperationResults.add(new CommitOperationResult(index, commitOperations.get(index), CommitOperationStatus.Skipped, null, null));
+		}
+		
+		return commitOperationResults;
+	}
+	
+	private CommitOperationResult commitOperation(String commitId, String userId, String filesystemId, int filesystemVersion, int index, CommitOperation commitOperation)
+	{
+		for(int attempt = 1; ; attempt++)
+		{
+			String nodeId = null;
+			Exception failure = null;
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				nodeId = this.apply(commitId, userId, filesystemId, filesystemVersion, commitOperation);
+				unitOfWork.success();
+			}
+			catch(Exception exception)
+			{
+				failure = exception;
+			}
+			
+			if(failure == null)
+			{
+				return new CommitOperationResult(index, commitOperation, CommitOperationStatus.Applied, nodeId, null);
+			}
+			
+			this.invalidateCaches(userId, filesystemId);
+			if(! this.transactionRetry.retry(failure, attempt))
+			{
+				return new CommitOperationResult(index, commitOperation, CommitOperationStatus.Failed, null, failure);
+			}
+		}
+	}
+	
+	private void invalidateCaches(String userId, String filesystemId)
+	{
+		this.commonCode.invalidatePathFilter(userId, filesystemId);
+	}
+	
+	/*
+	 * The operations by nodeId are checked against the filesystem that is locked, so that a commit cannot
+	 * change a node of another filesystem without holding its lock.
+	 */
+	private void checkNodeInFilesystem(String userId, String filesystemId, String nodeId) throws UserNotFound, FilesystemNotFound, NodeNotFound
+	{
+		if(! this.commonCode.isNodeInFilesystem(userId, filesystemId, nodeId))
+		{
+			throw new NodeNotFound("ERROR: Node not found in Filesystem! - \"" + nodeId + "\"", false);
+		}
+	}
+	
+	private String apply(String commitId, String userId, String filesystemId, int filesystemVersion, CommitOperation commitOperation) throws Exception
+	{
+		switch(commitOperation.getCommitOperationType())
+		{
+			case CreateDirectory:
+				return this.directoryService.createNewDirectory(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getProperties());
+			case CreateFile:
+				return this.fileService.createNewFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getProperties());
+			case MoveDirectory:
+				return this.directoryService.moveDirectory(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNewPath(), commitOperation.getNewName());
+			case MoveFile:
+				return this.fileService.moveFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNewPath(), commitOperation.getNewName());
+			case DeleteNode:
+				this.checkNodeInFilesystem(userId, filesystemId, commitOperation.getNodeId());
+				this.genericService.deleteNodeTemporarily(commitId, commitOperation.getNodeId());
+				return commitOperation.getNodeId();
+			case RestoreDirectory:
+				this.directoryService.restoreDirectory(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNodeId());
+				return commitOperation.getNodeId();
+			case RestoreFile:
+				this.fileService.restoreFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getNodeId());
+				return commitOperation.getNodeId();
+			case ShareFile:
+				this.fileService.shareFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getShareWithUserId(), commitOperation.getPermission());
+				return null;
+			case UnshareFile:
+				this.fileService.unshareFile(commitId, userId, filesystemId, filesystemVersion, commitOperation.getPath(), commitOperation.getName(), commitOperation.getShareWithUserId());
+				return null;
+			case ChangeNodeProperties:
+				this.checkNodeInFilesystem(userId, filesystemId, commitOperation.getNodeId());
+				this.genericService.changeNodeProperties(commitOperation.getNodeId(), commitOperation.getProperties());
+				return commitOperation.getNodeId();
+			default:
+				throw new IllegalArgumentException("ERROR: Unknown commit operation! - \"" + commitOperation.getCommitOperationType() + "\"");
+		}
+	}
+}
@@ -2,9 +2,12 @@ package bookeeping.backend.database.service.neo4jrest.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -12,11 +15,15 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.ReadableIndex;
+import org.neo4j.graphdb.index.ReadableRelationshipIndex;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.VersioningMode;
 import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
 import bookeeping.backend.database.neo4j.NodeLabels;
 import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.database.service.AutoIncrementService;
 import bookeeping.backend.exception.DirectoryNotFound;
 import bookeeping.backend.exception.FileNotFound;
 import bookeeping.backend.exception.FilesystemNotFound;
@@ -24,406 +31,1943 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.NodeCache;
+import bookeeping.backend.utilities.cache.NodeSnapshot;
+import bookeeping.backend.utilities.filter.BloomFilter;
+import bookeeping.backend.utilities.filter.PathFilter;
 
 public class CommonCode
 {
+	/*
+	 * nodes holds the versioned filesystem, the root directory and then one node per path key (null from
+	 * the first one that is missing), relationships the has relationship leading into each of them and
+	 * parentCounts the number of has and had relationships leading into each.
+	 */
+	private static class PathLookup
+	{
+		private final List<Node> nodes;
+		private final List<Relationship> relationships;
+		private final List<Number> parentCounts;
+		
+		private PathLookup(List<Node> nodes, List<Relationship> relationships, List<Number> parentCounts)
+		{
+			this.nodes = nodes;
+			this.relationships = relationships;
+			this.parentCounts = parentCounts;
+		}
+		
+		private int getDepth()
+		{
+			return this.nodes.size() - 1;
+		}
+		
+		private Node getNode()
+		{
+			return this.nodes.get(this.getDepth());
+		}
+		
+		private Node getParentNode()
+		{
+			return this.nodes.get(this.getDepth() - 1);
+		}
+		
+		private boolean isShared()
+		{
+			for(int i = 1; i <= this.getDepth(); i++)
+			{
+				if(this.parentCounts.get(i).intValue() > 1)
+				{
+					return true;
+				}
+			}
+			
+			return false;
+		}
+	}
+	
+	static final String NODE_VERSION_QUERY = "START node=node:node_auto_index(nodeId={nodeId}) "
+			+ "OPTIONAL MATCH (node)<-[:hasVersion*0..]-(originalNode) WHERE NOT (originalNode)<-[:hasVersion]-() "
+			+ "WITH node, CASE WHEN has(node.versionOf) THEN originalNode ELSE node END AS firstNode "
+			+ "OPTIONAL MATCH (firstNode)-[:hasVersion*0..]->(versionedNode) "
+			+ "WHERE ({version} = -1 AND NOT (versionedNode)-[:hasVersion]->()) OR versionedNode.version = {version} "
+			+ "RETURN node, versionedNode";
+	private static final String NODE_VERSION_CLAIM_QUERY = "START node=node({node}), versionedNode=node({versionedNode}), originalNode=node({originalNode}) "
+			+ "SET node.version = node.version "
+			+ "WITH node, versionedNode, originalNode WHERE NOT (node)-[:hasVersion]->() "
+			+ "CREATE (node)-[:hasVersion {relationshipProperties}]->(versionedNode) "
+			+ "SET versionedNode.versionOf = {versionOf}, versionedNode.versionKey = {versionKey} "
+			+ "WITH originalNode, versionedNode "
+			+ "OPTIONAL MATCH (originalNode)-[headRelationship:hasHeadVersion]->() "
+			+ "DELETE headRelationship "
+			+ "WITH DISTINCT originalNode, versionedNode "
+			+ "CREATE (originalNode)-[:hasHeadVersion]->(versionedNode) "
+			+ "RETURN versionedNode";
+	private static final String AUTO_INCREMENT_CLAIM_QUERY = "START autoIncrement=node:node_auto_index(nodeId={nodeId}) "
+			+ "SET autoIncrement.next = autoIncrement.next "
+			+ "WITH autoIncrement, autoIncrement.next AS next "
+			+ "SET autoIncrement.next = CASE WHEN next = {next} THEN {reservedNext} ELSE next END "
+			+ "RETURN next";
+	static final String FILESYSTEM_QUERY = "START user=node:node_auto_index(userId={userId}) "
+			+ "OPTIONAL MATCH (user)-[:has]->(filesystem:Filesystem) WHERE filesystem.filesystemId = {filesystemId} "
+			+ "RETURN filesystem";
+			
 	private Neo4JRestConnection neo4jRestConnection;
 	private GraphDatabaseService graphDatabaseService;
+	private VersioningMode versioningMode;
+	private PathStorageMode pathStorageMode;
+	private NodeCache nodeCache;
+	private NodeCache versionCache;
+	private PathFilter pathFilter;
+	private AutoIncrementService autoIncrementService;
+	private TransactionRetry transactionRetry;
 	
 	public CommonCode()
 	{
 		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
 		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
+		this.versioningMode = this.neo4jRestConnection.getVersioningMode();
+		this.pathStorageMode = this.neo4jRestConnection.getPathStorageMode();
+		this.nodeCache = this.neo4jRestConnection.getNodeCache();
+		this.versionCache = this.neo4jRestConnection.getVersionCache();
+		this.pathFilter = this.neo4jRestConnection.getPathFilter();
+		this.autoIncrementService = new AutoIncrementServiceImpl(this);
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
+	}
+	
+	public AutoIncrementService getAutoIncrementService()
+	{
+		return this.autoIncrementService;
+	}
+	
+	public UnitOfWork beginUnitOfWork()
+	{
+		return UnitOfWork.begin(this.graphDatabaseService, this.transactionRetry);
+	}
+	
+	public UnitOfWork beginReadTransaction()
+	{
+		return UnitOfWork.beginRead(this.graphDatabaseService, this.transactionRetry);
 	}
 	
 	public Node createNode(NodeLabels nodeLabel)
 	{
 		Node node = this.graphDatabaseService.createNode(nodeLabel);
-		node.setProperty(MandatoryProperties.nodeId.name(), new AutoIncrementServiceImpl().getNextAutoIncrement());
+		node.setProperty(MandatoryProperties.nodeId.name(), this.autoIncrementService.getNextAutoIncrement());
 		return node;
 	}
 	
+	/*
+	 * The find methods return null for a missing node so that expected misses, such as the duplicate
+	 * checks on create, cost no exception. The get methods wrap them for callers that want one, and
+	 * those exceptions skip the stack trace since a miss is an answer, not a failure.
+	 */
 	public Node getNode(String nodeId) throws NodeNotFound
 	{
+		Node node = this.findNode(nodeId);
+		if(node == null)
+		{
+			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"", false);
+		}
+		
+		return node;
+	}
+	
+	public Node findNode(String nodeId)
+	{
+		NodeSnapshot nodeSnapshot = this.nodeCache.get(nodeId);
+		if(nodeSnapshot != null)
+		{
+			try
+			{
+				Node node = this.graphDatabaseService.getNodeById((long) nodeSnapshot.getGraphId());
+				if(nodeId.equals(node.getProperty(MandatoryProperties.nodeId.name(), null)))
+				{
+					return node;
+				}
+			}
+			catch(NotFoundException notFoundException) {}
+			
+			this.nodeCache.invalidate(nodeId);
+		}
+		
 		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
-		Node node = readableIndex.get(MandatoryProperties.nodeId.name(), nodeId).getSingle();
+		return readableIndex.get(MandatoryProperties.nodeId.name(), nodeId).getSingle();
+	}
+	
+	public Map<String, Object> getNodeProperties(Node node) throws NodeNotFound
+	{
+		Map<String, Object> nodeProperties = this.findNodeProperties(node);
+		if(nodeProperties == null)
+		{
+			throw new NodeNotFound("ERROR: Node not found!", false);
+		}
 		
+		return nodeProperties;
+	}
+	
+	/*
+	 * The properties of a node that a find method returned, or null when it found none.
+	 */
+	public Map<String, Object> findNodeProperties(Node node)
+	{
 		if(node == null)
 		{
-			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"");
+			return null;
+		}
+		
+		String nodeId = (String) node.getProperty(MandatoryProperties.nodeId.name(), null);
+		long snapshotStamp = UnitOfWork.getSnapshotStamp();
+		if(nodeId != null && snapshotStamp != 0)
+		{
+			NodeSnapshot nodeSnapshot = this.nodeCache.get(nodeId);
+			if(nodeSnapshot != null && nodeSnapshot.getGraphId().equals(node.getId()))
+			{
+				return nodeSnapshot.getProperties();
+			}
+		}
+		
+		Map<String, Object> nodeProperties = new HashMap<String, Object>();
+		Iterable<String> nodeKeys = node.getPropertyKeys();
+		
+		for(String key : nodeKeys)
+		{
+			nodeProperties.put(key, node.getProperty(key));
+		}
+		
+		if(nodeId == null || snapshotStamp == 0)
+		{
+			return nodeProperties;
+		}
+		
+		NodeSnapshot nodeSnapshot = new NodeSnapshot(node.getId(), nodeProperties, snapshotStamp);
+		this.nodeCache.put(nodeId, nodeSnapshot);
+		return nodeSnapshot.getProperties();
+	}
+	
+	/*
+	 * Called before a node is changed. The cached snapshots are dropped once the unit of work is closed,
+	 * after the change is committed.
+	 */
+	public void invalidateNode(Node node)
+	{
+		UnitOfWork.invalidateOnClose(this.nodeCache, (String) node.getProperty(MandatoryProperties.nodeId.name()));
+		
+		String versionCacheKey = this.getVersionCacheKey(node);
+		if(versionCacheKey != null)
+		{
+			UnitOfWork.invalidateOnClose(this.versionCache, versionCacheKey);
+		}
+	}
+	
+	/*
+	 * Without a transaction across requests the new version is built first, where no lookup reaches it,
+	 * and then linked to the given node in one statement. The statement takes the write lock on the node
+	 * before checking on the server that it is still the head, so of two callers only one links its
+	 * version. The other one's version is deleted again and null returned.
+	 */
+	/*
+	 * Moves the auto increment node's next value from next to reservedNext in one request, which holds the
+	 * node's write lock from the read to the write. Returns the value the node held: next itself when the
+	 * block was claimed, otherwise the value another reservation left there.
+	 */
+	public String claimAutoIncrementBlock(String next, String reservedNext)
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("nodeId", "0");
+		queryParameters.put("next", next);
+		queryParameters.put("reservedNext", reservedNext);
+		return (String) this.neo4jRestConnection.runCypherQuery(CommonCode.AUTO_INCREMENT_CLAIM_QUERY, queryParameters).next().get("next");
+	}
+	
+	public Node createNodeVersionIfHead(String commidId, Node node, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound
+	{
+		Node originalNode = this.getOriginalNode(node);
+		if(! originalNode.equals(node) && originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING) == null)
+		{
+			this.indexVersionChain(originalNode);
+		}
+		
+		Node versionedNode = this.copyNodeVersion(node, changedProperties);
+		Map<String, Object> relationshipProperties = new HashMap<String, Object>(changeMetadata);
+		relationshipProperties.put(MandatoryProperties.commitId.name(), commidId);
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("node", node.getId());
+		queryParameters.put("versionedNode", versionedNode.getId());
+		queryParameters.put("originalNode", originalNode.getId());
+		queryParameters.put("relationshipProperties", relationshipProperties);
+		queryParameters.put("versionOf", originalNodeId);
+		queryParameters.put("versionKey", this.getVersionKey(originalNodeId, (int) versionedNode.getProperty(MandatoryProperties.version.name())));
+		
+		if(! this.neo4jRestConnection.runCypherQuery(CommonCode.NODE_VERSION_CLAIM_QUERY, queryParameters).hasNext())
+		{
+			this.deleteNodeVersion(versionedNode);
+			return null;
+		}
+		
+		this.invalidateNode(versionedNode);
+		return versionedNode;
+	}
+	
+	private Node copyNodeVersion(Node node, Map<String, Object> changedProperties)
+	{
+		Node versionedNode = null;
+		if(this.versioningMode == VersioningMode.StructuralSharing)
+		{
+			versionedNode = this.shareNodeTree(node);
+		}
+		else
+		{
+			versionedNode = this.copyNodeTree(node, new ArrayList<String>());
+		}
+		
+		int nodeVersion = (int) node.getProperty(MandatoryProperties.version.name());
+		versionedNode.setProperty(MandatoryProperties.version.name(), nodeVersion + 1);
+		for(Entry<String, Object> entry : changedProperties.entrySet())
+		{
+			versionedNode.setProperty(entry.getKey(), entry.getValue());
+		}
+		
+		return versionedNode;
+	}
+	
+	/*
+	 * Deletes a version that was never linked. With structural sharing its children belong to the node it
+	 * was made from, so only its own relationships go; a copied tree is deleted as a whole.
+	 */
+	private void deleteNodeVersion(Node versionedNode)
+	{
+		List<Node> pendingNodeList = new ArrayList<Node>();
+		pendingNodeList.add(versionedNode);
+		do
+		{
+			List<Node> childNodeList = new ArrayList<Node>();
+			for(Node pendingNode : pendingNodeList)
+			{
+				for(Relationship relationship : pendingNode.getRelationships(Direction.OUTGOING))
+				{
+					if(this.versioningMode != VersioningMode.StructuralSharing)
+					{
+						childNodeList.add(relationship.getEndNode());
+					}
+					relationship.delete();
+				}
+				pendingNode.delete();
+			}
+			
+			pendingNodeList = childNodeList;
+		}
+		while(! pendingNodeList.isEmpty());
+	}
+	
+	public Node getHeadVersion(String nodeId) throws NodeNotFound, NodeUnavailable
+	{
+		try
+		{
+			return this.getNodeVersion(nodeId, -1);
+		}
+		catch(VersionNotFound versionNotFound)
+		{
+			throw new NodeUnavailable("ERROR: No head version for this node! - \"" + nodeId + "\"", versionNotFound);
+		}
+	}
+	
+	/*
+	 * The version chain is walked on the server: from the node itself, or from the original node once the
+	 * chain is indexed (versionOf is set), the same nodes the chain and index lookups would reach.
+	 */
+	public Node getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("nodeId", nodeId);
+		queryParameters.put("version", version);
+		
+		Iterator<Map<String, Object>> iterator = this.neo4jRestConnection.runCypherQuery(CommonCode.NODE_VERSION_QUERY, queryParameters);
+		if(! iterator.hasNext())
+		{
+			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"", false);
+		}
+		
+		Map<String, Object> row = iterator.next();
+		if(! ((Node) row.get("node")).hasProperty(MandatoryProperties.version.name()))
+		{
+			throw new NodeUnavailable("ERROR: No version property for this node! - \"" + nodeId + "(v=" + version + ")\"");
+		}
+		
+		Node versionedNode = (Node) row.get("versionedNode");
+		if(versionedNode == null)
+		{
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"", false);
+		}
+		
+		return versionedNode;
+	}
+	
+	public Node indexVersionChain(Node originalNode)
+	{
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		Node node = originalNode;
+		Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+		while(relationship != null)
+		{
+			node = relationship.getEndNode();
+			this.invalidateNode(node);
+			node.setProperty(MandatoryProperties.versionOf.name(), originalNodeId);
+			node.setProperty(MandatoryProperties.versionKey.name(), this.getVersionKey(originalNodeId, (int) node.getProperty(MandatoryProperties.version.name())));
+			relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+		}
+		
+		if(! node.equals(originalNode))
+		{
+			this.setHeadVersion(originalNode, node);
+		}
+		
+		return node;
+	}
+	
+	private void setHeadVersion(Node originalNode, Node versionedNode)
+	{
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		this.invalidateNode(versionedNode);
+		versionedNode.setProperty(MandatoryProperties.versionOf.name(), originalNodeId);
+		versionedNode.setProperty(MandatoryProperties.versionKey.name(), this.getVersionKey(originalNodeId, (int) versionedNode.getProperty(MandatoryProperties.version.name())));
+		
+		Relationship headRelationship = originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING);
+		if(headRelationship != null)
+		{
+			headRelationship.delete();
+		}
+		originalNode.createRelationshipTo(versionedNode, RelationshipLabels.hasHeadVersion);
+	}
+	
+	private Node getOriginalNode(Node node) throws NodeNotFound
+	{
+		if(node.hasProperty(MandatoryProperties.versionOf.name()))
+		{
+			return this.getNode((String) node.getProperty(MandatoryProperties.versionOf.name()));
+		}
+		
+		Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.INCOMING);
+		while(relationship != null)
+		{
+			node = relationship.getStartNode();
+			relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.INCOMING);
+		}
+		
+		return node;
+	}
+	
+	private Node getIndexedNodeVersion(String nodeId, int version)
+	{
+		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
+		return readableIndex.get(MandatoryProperties.versionKey.name(), this.getVersionKey(nodeId, version)).getSingle();
+	}
+	
+	private String getVersionKey(String originalNodeId, int version)
+	{
+		return originalNodeId + ":" + version;
+	}
+	
+	/*
+	 * Only versions that a newer one exists for are kept in the version cache; the head is always read
+	 * from the graph. Such a version still changes in place on a write by nodeId, or when its root is
+	 * unshared, and every such write goes through invalidateNode, which drops the entry after the commit.
+	 */
+	public Map<String, Object> getCachedNodeVersion(String nodeId, int version)
+	{
+		NodeSnapshot nodeSnapshot = this.versionCache.get(this.getVersionKey(nodeId, version));
+		return nodeSnapshot == null ? null : nodeSnapshot.getProperties();
+	}
+	
+	public Map<String, Object> getNodeVersionProperties(Node node) throws NodeNotFound
+	{
+		String versionCacheKey = this.getVersionCacheKey(node);
+		long snapshotStamp = UnitOfWork.getSnapshotStamp();
+		if(versionCacheKey == null || snapshotStamp == 0)
+		{
+			return this.getNodeProperties(node);
+		}
+		
+		NodeSnapshot nodeSnapshot = this.versionCache.get(versionCacheKey);
+		if(nodeSnapshot != null && nodeSnapshot.getGraphId().equals(node.getId()))
+		{
+			return nodeSnapshot.getProperties();
+		}
+		
+		Map<String, Object> nodeProperties = this.getNodeProperties(node);
+		if(node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING) != null)
+		{
+			this.versionCache.put(versionCacheKey, new NodeSnapshot(node.getId(), nodeProperties, snapshotStamp));
+		}
+		
+		return nodeProperties;
+	}
+	
+	private String getVersionCacheKey(Node node)
+	{
+		if(node.hasProperty(MandatoryProperties.versionKey.name()))
+		{
+			return (String) node.getProperty(MandatoryProperties.versionKey.name());
+		}
+		
+		if(node.hasProperty(MandatoryProperties.version.name()) && node.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING) != null)
+		{
+			return this.getVersionKey((String) node.getProperty(MandatoryProperties.nodeId.name()), (int) node.getProperty(MandatoryProperties.version.name()));
+		}
+		
+		return null;
+	}
+	
+	public List<Map<String, Object>> getNodeVersions(String nodeId) throws NodeNotFound
+	{
+		Node node = this.getNode(nodeId);
+		List<Map<String, Object>> versionList = this.getIndexedNodeVersions(node);
+		if(versionList != null)
+		{
+			return versionList;
+		}
+		
+		versionList = new ArrayList<Map<String, Object>>();
+		versionList.add(this.getNodeVersionProperties(node));
+		
+		do
+		{
+			Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+			if(relationship != null)
+			{
+				node = relationship.getEndNode();
+				versionList.add(this.getNodeVersionProperties(node));
+			}
+			else
+			{
+				node = null;
+			}
+		}
+		while(node != null);
+		
+		return versionList;
+	}
+	
+	private List<Map<String, Object>> getIndexedNodeVersions(Node node) throws NodeNotFound
+	{
+		if(! node.hasProperty(MandatoryProperties.version.name()))
+		{
+			return null;
+		}
+		
+		Node originalNode = node.hasProperty(MandatoryProperties.versionOf.name()) ? this.getNode((String) node.getProperty(MandatoryProperties.versionOf.name())) : node;
+		Relationship headRelationship = originalNode.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING);
+		if(headRelationship == null)
+		{
+			return null;
+		}
+		
+		List<Map<String, Object>> versionList = new ArrayList<Map<String, Object>>();
+		String originalNodeId = (String) originalNode.getProperty(MandatoryProperties.nodeId.name());
+		int originalVersion = (int) originalNode.getProperty(MandatoryProperties.version.name());
+		Node headNode = headRelationship.getEndNode();
+		int headVersion = (int) headNode.getProperty(MandatoryProperties.version.name());
+		
+		for(int version = (int) node.getProperty(MandatoryProperties.version.name()); version < headVersion; version++)
+		{
+			Map<String, Object> nodeProperties = this.getCachedNodeVersion(originalNodeId, version);
+			if(nodeProperties == null)
+			{
+				Node versionedNode = version == originalVersion ? originalNode : this.getIndexedNodeVersion(originalNodeId, version);
+				if(versionedNode == null)
+				{
+					return null;
+				}
+				
+				nodeProperties = this.getNodeVersionProperties(versionedNode);
+			}
+			
+			versionList.add(nodeProperties);
+		}
+		
+		versionList.add(this.getNodeProperties(headNode));
+		return versionList;
+	}
+	
+	public List<Node> getChildren(String nodeId) throws NodeNotFound
+	{
+		List<Node> nodeList = new ArrayList<Node>();
+		Node node = this.getNode(nodeId);
+		Iterable<Relationship> iterable = node.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
+		for(Relationship relationship : iterable)
+		{
+			nodeList.add(relationship.getEndNode());
+		}
+		
+		return nodeList;
+	}
+	
+	public List<Node> getDeletedChildren(String nodeId) throws NodeNotFound
+	{
+		List<Node> nodeList = new ArrayList<Node>();
+		Node node = this.getNode(nodeId);
+		Iterable<Relationship> iterable = node.getRelationships(Direction.OUTGOING, RelationshipLabels.had);
+		for(Relationship relationship : iterable)
+		{
+			nodeList.add(relationship.getEndNode());
+		}
+		
+		return nodeList;
+	}
+	
+	public Node deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
+	{
+		Node node = this.getNode(nodeId);
+		List<Relationship> hasRelationships = new ArrayList<Relationship>();
+		for(Relationship hasRelationship : this.getWritableParentRelationships(node, false))
+		{
+			if(! hasRelationship.isType(RelationshipLabels.has))
+			{
+				continue;
+			}
+			
+			if(hasRelationship.getStartNode().hasProperty(MandatoryProperties.filesystemId.name()))
+			{
+				throw new NodeUnavailable("ERROR: Root node cannot be deleted! - \"" + nodeId + "\"");
+			}
+			
+			hasRelationships.add(hasRelationship);
+		}
+		
+		if(hasRelationships.isEmpty())
+		{
+			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has already been deleted.");
+		}
+		
+		this.invalidateNode(node);
+		
+		for(Relationship hasRelationship : hasRelationships)
+		{
+			Node parentNode = hasRelationship.getStartNode();
+			Relationship hadRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.had);
+			for(String key : hasRelationship.getPropertyKeys())
+			{
+				hadRelationship.setProperty(key, hasRelationship.getProperty(key));
+			}
+			hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+			this.indexPath(hadRelationship);
+			
+			hasRelationship.delete();
+		}
+		
+		return node;
+	}
+	
+	public Node restoreNode(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
+	{
+		Node node = this.getNode(nodeId);
+		List<Relationship> hadRelationships = new ArrayList<Relationship>();
+		for(Relationship hadRelationship : this.getWritableParentRelationships(node, false))
+		{
+			if(hadRelationship.isType(RelationshipLabels.had))
+			{
+				hadRelationships.add(hadRelationship);
+			}
+		}
+		
+		if(hadRelationships.isEmpty())
+		{
+			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has not been deleted.");
+		}
+		
+		this.invalidateNode(node);
+		
+		for(Relationship hadRelationship : hadRelationships)
+		{
+			Node parentNode = hadRelationship.getStartNode();
+			Relationship hasRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.has);
+			for(String key : hadRelationship.getPropertyKeys())
+			{
+				hasRelationship.setProperty(key, hadRelationship.getProperty(key));
+			}
+			hasRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+			this.indexPath(hasRelationship);
+			
+			hadRelationship.delete();
+		}
+		
+		return node;
+	}
+	
+	/*
+	 * Whether the node hangs under the filesystem in any of its versions, deleted or not. A version of
+	 * the node is followed back to the node it was made from.
+	 */
+	public boolean isNodeInFilesystem(String userId, String filesystemId, String nodeId) throws UserNotFound, FilesystemNotFound, NodeNotFound
+	{
+		Node filesystem = this.getFilesystem(userId, filesystemId);
+		Set<Node> visited = new HashSet<Node>();
+		List<Node> pendingNodeList = new ArrayList<Node>();
+		pendingNodeList.add(this.getNode(nodeId));
+		while(! pendingNodeList.isEmpty())
+		{
+			List<Node> parentNodeList = new ArrayList<Node>();
+			for(Node pendingNode : pendingNodeList)
+			{
+				if(! visited.add(pendingNode))
+				{
+					continue;
+				}
+				
+				if(pendingNode.hasLabel(NodeLabels.Filesystem))
+				{
+					if(this.getOriginalNode(pendingNode).equals(filesystem))
+					{
+						return true;
+					}
+					continue;
+				}
+				
+				for(Relationship relationship : pendingNode.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had, RelationshipLabels.hasVersion))
+				{
+					parentNodeList.add(relationship.getStartNode());
+				}
+			}
+			
+			pendingNodeList = parentNodeList;
+		}
+		
+		return false;
+	}
+	
+	/*
+	 * The node that a write by nodeId changes in place.
+	 */
+	public Node getWritableNode(String nodeId) throws NodeNotFound
+	{
+		Node node = this.getNode(nodeId);
+		this.getWritableParentRelationships(node, true);
+		return node;
+	}
+	
+	/*
+	 * A nodeId names a node, not a version of its filesystem, and with structural sharing one node can
+	 * hang under several versions. A write by nodeId is meant for the newest of them, so that version
+	 * takes the node's path over first: every shared node on the path, down to the node itself when
+	 * writableNode is set, is left to the newest version, and its other parents are moved over to a copy
+	 * (see unshareNode). The older versions then keep seeing the node as it was, and the node keeps its
+	 * nodeId. A write that only changes the relationship from the parent leaves the node itself shared.
+	 *
+	 * Returns the has and had relationships from the parents the write applies to: only the one from the
+	 * newest version, or every one when nothing is shared or the node is not under a filesystem version.
+	 */
+	private List<Relationship> getWritableParentRelationships(Node node, boolean writableNode)
+	{
+		List<Relationship> parentRelationships = new ArrayList<Relationship>();
+		for(Relationship parentRelationship : node.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had))
+		{
+			parentRelationships.add(parentRelationship);
+		}
+		
+		if(this.versioningMode != VersioningMode.StructuralSharing)
+		{
+			return parentRelationships;
+		}
+		
+		Map<Node, Relationship> pathRelationships = new HashMap<Node, Relationship>();
+		Node versionedFilesystem = null;
+		List<Relationship> pendingRelationshipList = parentRelationships;
+		while(! pendingRelationshipList.isEmpty())
+		{
+			List<Relationship> parentRelationshipList = new ArrayList<Relationship>();
+			for(Relationship pendingRelationship : pendingRelationshipList)
+			{
+				Node parentNode = pendingRelationship.getStartNode();
+				if(pathRelationships.containsKey(parentNode))
+				{
+					continue;
+				}
+				
+				pathRelationships.put(parentNode, pendingRelationship);
+				if(parentNode.hasLabel(NodeLabels.Filesystem))
+				{
+					if(versionedFilesystem == null || (int) parentNode.getProperty(MandatoryProperties.version.name()) > (int) versionedFilesystem.getProperty(MandatoryProperties.version.name()))
+					{
+						versionedFilesystem = parentNode;
+					}
+				}
+				else if(parentNode.hasLabel(NodeLabels.Directory))
+				{
+					for(Relationship parentRelationship : parentNode.getRelationships(Direction.INCOMING, RelationshipLabels.has))
+					{
+						parentRelationshipList.add(parentRelationship);
+					}
+				}
+			}
+			
+			pendingRelationshipList = parentRelationshipList;
+		}
+		
+		if(versionedFilesystem == null)
+		{
+			return parentRelationships;
+		}
+		
+		Relationship pathRelationship = pathRelationships.get(versionedFilesystem);
+		Node pathNode = pathRelationship.getEndNode();
+		while(! pathNode.equals(node))
+		{
+			this.unshareNode(pathNode, pathRelationship);
+			pathRelationship = pathRelationships.get(pathNode);
+			pathNode = pathRelationship.getEndNode();
+		}
+		
+		if(writableNode)
+		{
+			this.unshareNode(node, pathRelationship);
+		}
+		
+		parentRelationships.clear();
+		parentRelationships.add(pathRelationship);
+		return parentRelationships;
+	}
+	
+	public Node getUser(String userId) throws UserNotFound
+	{
+		Node user = this.findUser(userId);
+		if(user == null)
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		return user;
+	}
+	
+	public Node findUser(String userId)
+	{
+		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
+		return readableIndex.get(MandatoryProperties.userId.name(), userId).getSingle();
+	}
+	
+	public Node getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		Node filesystem = this.findFilesystem(userId, filesystemId);
+		if(filesystem == null)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", false);
+		}
+		
+		return filesystem;
+	}
+	
+	public Node findFilesystem(String userId, String filesystemId) throws UserNotFound
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("userId", userId);
+		queryParameters.put("filesystemId", filesystemId);
+		
+		Iterator<Map<String, Object>> iterator = this.neo4jRestConnection.runCypherQuery(CommonCode.FILESYSTEM_QUERY, queryParameters);
+		if(! iterator.hasNext())
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		return (Node) iterator.next().get("filesystem");
+	}
+	
+	public Node getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		return this.lookupPath(userId, filesystemId, filesystemVersion, new ArrayList<String>()).getNode();
+	}
+	
+	public Node getWritableRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node versionedFilesystem = this.getVersionedFilesystem(userId, filesystemId, filesystemVersion);
+		return this.copyOnWrite(versionedFilesystem.getSingleRelationship(RelationshipLabels.has, Direction.OUTGOING));
+	}
+	
+	private Node getVersionedFilesystem(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		String nodeId = (String) this.getFilesystem(userId, filesystemId).getProperty(MandatoryProperties.nodeId.name());
+		try
+		{
+			return this.getNodeVersion(nodeId, filesystemVersion);
+		}
+		catch(NodeNotFound nodeNotFound)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", nodeNotFound);
+		}
+		catch(NodeUnavailable nodeUnavailable)
+		{
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + filesystemVersion + ")\"", nodeUnavailable);
+		}
+	}
+	
+	public Node getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		Node directory = this.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+		if(directory == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		
+		return directory;
+	}
+	
+	public Node findDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		return this.lookupPath(userId, filesystemId, filesystemVersion, this.getPathKeys(this.getFullPath(directoryPath, directoryName))).getNode();
+	}
+	
+	/*
+	 * For looking up many directories under one path: the node their pathKeys hang off (the root directory
+	 * with absolute paths, the directory at the path itself with relative paths) is resolved once, and each
+	 * name then costs one index hit. Null if the path does not exist.
+	 */
+	public Node findDirectoryParent(String userId, String filesystemId, int filesystemVersion, String directoryPath) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		List<String> pathKeys = this.pathStorageMode == PathStorageMode.AbsolutePaths ? new ArrayList<String>() : this.getPathKeys(directoryPath);
+		return this.lookupPath(userId, filesystemId, filesystemVersion, pathKeys).getNode();
+	}
+	
+	public Node findDirectory(Node directoryParent, String directoryPath, String directoryName)
+	{
+		Relationship relationship = this.getIndexedRelationship(directoryParent, (this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(directoryPath, directoryName) : directoryName) + "/");
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	public Node getWritableDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getPathKeys(this.getFullPath(directoryPath, directoryName)));
+		if(pathLookup.getNode() == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		else if(! pathLookup.isShared())
+		{
+			return pathLookup.getNode();
+		}
+		
+		Node rootDirectory = this.getWritableRootDirectory(userId, filesystemId, filesystemVersion);
+		Relationship relationship = this.findDirectoryRelationship(rootDirectory, directoryPath, directoryName, true);
+		if(relationship == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		
+		return this.copyOnWrite(relationship);
+	}
+	
+	private DirectoryNotFound getDirectoryNotFound(String directoryPath, String directoryName)
+	{
+		return new DirectoryNotFound("ERROR: Directory not found! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"", false);
+	}
+	
+	/*
+	 * With relative paths every directory hangs under its parent directory and only knows its own name,
+	 * so the path is walked one segment (one index hit) at a time. Missing directories on the way are
+	 * created, the same way the flat layout accepts a directory whose parent was never created.
+	 */
+	public Node getWritableDirectoryParent(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Node parentDirectory = this.getWritableRootDirectory(userId, filesystemId, filesystemVersion);
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths || directoryPath.equals("/"))
+		{
+			return parentDirectory;
+		}
+		
+		String parentPath = "/";
+		for(String directoryName : directoryPath.substring(1).split("/"))
+		{
+			Relationship relationship = this.getIndexedRelationship(parentDirectory, directoryName + "/");
+			if(relationship != null)
+			{
+				parentDirectory = this.copyOnWrite(relationship);
+			}
+			else
+			{
+				Node directory = this.createNode(NodeLabels.Directory);
+				directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+				directory.setProperty(MandatoryProperties.version.name(), 0);
+				
+				relationship = parentDirectory.createRelationshipTo(directory, RelationshipLabels.has);
+				relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+				this.indexPath(relationship);
+				this.addPath(userId, filesystemId, directory, parentPath);
+				parentDirectory = directory;
+			}
+			
+			parentPath = this.getFullPath(parentPath, directoryName);
+		}
+		
+		return parentDirectory;
+	}
+	
+	private Relationship findDirectoryRelationship(Node rootDirectory, String directoryPath, String directoryName, boolean writable)
+	{
+		Relationship relationship = null;
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			relationship = this.getIndexedRelationship(rootDirectory, this.getFullPath(directoryPath, directoryName) + "/");
+		}
+		else
+		{
+			Node parentDirectory = rootDirectory;
+			String[] parentNames = directoryPath.equals("/") ? new String[0] : directoryPath.substring(1).split("/");
+			for(int i = 0; i < parentNames.length && parentDirectory != null; i++)
+			{
+				Relationship parentRelationship = this.getIndexedRelationship(parentDirectory, parentNames[i] + "/");
+				parentDirectory = parentRelationship == null ? null : (writable ? this.copyOnWrite(parentRelationship) : parentRelationship.getEndNode());
+			}
+			
+			relationship = parentDirectory == null ? null : this.getIndexedRelationship(parentDirectory, directoryName + "/");
+		}
+		
+		return relationship;
+	}
+	
+	public List<Node> getAllDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		List<Node> directoryList = new ArrayList<Node>();
+		List<Node> pendingNodeList = new ArrayList<Node>();
+		pendingNodeList.add(this.getRootDirectory(userId, filesystemId, filesystemVersion));
+		
+		do
+		{
+			List<Node> childNodeList = new ArrayList<Node>();
+			for(Node pendingNode : pendingNodeList)
+			{
+				Iterable<Relationship> iterable = pendingNode.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
+				for(Relationship relationship : iterable)
+				{
+					Node node = relationship.getEndNode();
+					if(node.hasLabel(NodeLabels.Directory))
+					{
+						directoryList.add(node);
+						childNodeList.add(node);
+					}
+				}
+			}
+			
+			pendingNodeList = this.pathStorageMode == PathStorageMode.RelativePaths ? childNodeList : new ArrayList<Node>();
+		}
+		while(! pendingNodeList.isEmpty());
+		
+		return directoryList;
+	}
+	
+	public void setDirectoryPath(Node directory, String directoryPath, String directoryName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath);
+		}
+		directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+	}
+	
+	public void setDirectoryPath(Map<String, Object> directoryProperties, String directoryPath, String directoryName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			directoryProperties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+		}
+		directoryProperties.put(MandatoryProperties.directoryName.name(), directoryName);
+	}
+	
+	public void setFilePath(Node file, String filePath, String fileName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			file.setProperty(MandatoryProperties.filePath.name(), filePath);
+		}
+		file.setProperty(MandatoryProperties.fileName.name(), fileName);
+	}
+	
+	public void setFilePath(Map<String, Object> fileProperties, String filePath, String fileName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			fileProperties.put(MandatoryProperties.filePath.name(), filePath);
+		}
+		fileProperties.put(MandatoryProperties.fileName.name(), fileName);
+	}
+	
+	public Node getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		Node file = this.findFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+		if(file == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		
+		return file;
+	}
+	
+	public Node findFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getFilePathKeys(filePath, fileName));
+		if(pathLookup.getParentNode() == null)
+		{
+			throw this.getParentDirectoryNotFound(filePath);
+		}
+		
+		return pathLookup.getNode();
+	}
+	
+	public Node findFile(Node parentDirectory, String filePath, String fileName)
+	{
+		Relationship relationship = this.findFileRelationship(parentDirectory, filePath, fileName);
+		return relationship == null ? null : relationship.getEndNode();
+	}
+	
+	public Node getWritableFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getFilePathKeys(filePath, fileName));
+		if(pathLookup.getParentNode() == null)
+		{
+			throw this.getParentDirectoryNotFound(filePath);
+		}
+		else if(pathLookup.getNode() == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		else if(! pathLookup.isShared())
+		{
+			return pathLookup.getNode();
+		}
+		
+		Node parentDirectory = this.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, true);
+		Relationship relationship = this.findFileRelationship(parentDirectory, filePath, fileName);
+		if(relationship == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		
+		return this.copyOnWrite(relationship);
+	}
+	
+	private FileNotFound getFileNotFound(String filePath, String fileName)
+	{
+		return new FileNotFound("ERROR: File not found! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"", false);
+	}
+	
+	public Node getParentDirectory(String userId, String filesystemId, int filesystemVersion, String filePath, boolean writable) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getPathKeys(filePath));
+		if(pathLookup.getNode() == null)
+		{
+			throw this.getParentDirectoryNotFound(filePath);
+		}
+		else if(! writable || ! pathLookup.isShared())
+		{
+			return pathLookup.getNode();
+		}
+		
+		if(filePath.equals("/"))
+		{
+			return writable ? this.getWritableRootDirectory(userId, filesystemId, filesystemVersion) : this.getRootDirectory(userId, filesystemId, filesystemVersion);
+		}
+		else
+		{
+			String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
+			String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
+			directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
+			return writable ? this.getWritableDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) : this.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+		}
+	}
+	
+	private DirectoryNotFound getParentDirectoryNotFound(String filePath)
+	{
+		String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
+		String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
+		return this.getDirectoryNotFound(directoryPath.length() == 0 ? "/" : directoryPath, directoryName);
+	}
+	
+	/*
+	 * Over REST every index hit, getProperty and getRelationships is a round trip of its own, so a lookup
+	 * (user, filesystem version, root directory, then one hop per path key) goes to the server as a single
+	 * parameterized Cypher statement. Only the number of hops changes the statement text, which keeps the
+	 * server's plan cache warm. The parent counts tell writers which nodes on the path are shared and
+	 * need copyOnWrite.
+	 */
+	private PathLookup lookupPath(String userId, String filesystemId, int filesystemVersion, List<String> pathKeys) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("userId", userId);
+		queryParameters.put("filesystemId", filesystemId);
+		queryParameters.put("filesystemVersion", filesystemVersion);
+		for(int i = 0; i < pathKeys.size(); i++)
+		{
+			queryParameters.put("pathKey" + (i + 1), pathKeys.get(i));
+		}
+		
+		Iterator<Map<String, Object>> iterator = this.neo4jRestConnection.runCypherQuery(CommonCode.getPathQuery(pathKeys.size()), queryParameters);
+		if(! iterator.hasNext())
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		Map<String, Object> row = iterator.next();
+		Node filesystem = (Node) row.get("filesystem");
+		if(filesystem == null)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", false);
+		}
+		else if(row.get("versionedFilesystem") == null)
+		{
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + filesystem.getProperty(MandatoryProperties.nodeId.name()) + "(v=" + filesystemVersion + ")\"", false);
+		}
+		
+		List<Node> nodes = new ArrayList<Node>();
+		for(Object node : (Iterable<?>) row.get("nodes"))
+		{
+			nodes.add((Node) node);
+		}
+		
+		List<Relationship> relationships = new ArrayList<Relationship>();
+		for(Object relationship : (Iterable<?>) row.get("relationships"))
+		{
+			relationships.add((Relationship) relationship);
+		}
+		
+		List<Number> parentCounts = new ArrayList<Number>();
+		for(Object parentCount : (Iterable<?>) row.get("parentCounts"))
+		{
+			parentCounts.add((Number) parentCount);
+		}
+		
+		return new PathLookup(nodes, relationships, parentCounts);
+	}
+	
+	static String getPathQuery(int hops)
+	{
+		StringBuilder cypherQuery = new StringBuilder("START user=node:node_auto_index(userId={userId}) ");
+		cypherQuery.append("OPTIONAL MATCH (user)-[:has]->(filesystem:Filesystem) WHERE filesystem.filesystemId = {filesystemId} ");
+		cypherQuery.append("OPTIONAL MATCH (filesystem)-[:hasVersion*0..]->(versionedFilesystem) ");
+		cypherQuery.append("WHERE ({filesystemVersion} = -1 AND NOT (versionedFilesystem)-[:hasVersion]->()) OR versionedFilesystem.version = {filesystemVersion} ");
+		cypherQuery.append("OPTIONAL MATCH (versionedFilesystem)-[relationship0:has]->(node0) ");
+		
+		StringBuilder nodes = new StringBuilder("versionedFilesystem, node0");
+		StringBuilder relationships = new StringBuilder("null, relationship0");
+		StringBuilder parentCounts = new StringBuilder("0, CASE WHEN node0 IS NULL THEN 0 ELSE length((node0)<-[:has|had]-()) END");
+		for(int i = 1; i <= hops; i++)
+		{
+			cypherQuery.append("OPTIONAL MATCH (node" + (i - 1) + ")-[relationship" + i + ":has]->(node" + i + ") ");
+			cypherQuery.append("WHERE relationship" + i + ".pathKey = node" + (i - 1) + ".nodeId + ':' + {pathKey" + i + "} ");
+			nodes.append(", node" + i);
+			relationships.append(", relationship" + i);
+			parentCounts.append(", CASE WHEN node" + i + " IS NULL THEN 0 ELSE length((node" + i + ")<-[:has|had]-()) END");
+		}
+		
+		cypherQuery.append("RETURN filesystem, versionedFilesystem, [" + nodes + "] AS nodes, [" + relationships + "] AS relationships, [" + parentCounts + "] AS parentCounts");
+		return cypherQuery.toString();
+	}
+	
+	/*
+	 * The pathKeys leading from the root directory to the directory at the given path: its full path with
+	 * absolute paths, one name per level with relative paths.
+	 */
+	private List<String> getPathKeys(String directoryPath)
+	{
+		List<String> pathKeys = new ArrayList<String>();
+		if(directoryPath.equals("/"))
+		{
+			return pathKeys;
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			pathKeys.add(directoryPath + "/");
+		}
+		else
+		{
+			for(String directoryName : directoryPath.substring(1).split("/"))
+			{
+				pathKeys.add(directoryName + "/");
+			}
+		}
+		
+		return pathKeys;
+	}
+	
+	private List<String> getFilePathKeys(String filePath, String fileName)
+	{
+		List<String> pathKeys = this.getPathKeys(filePath);
+		pathKeys.add(this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(filePath, fileName) : fileName);
+		return pathKeys;
+	}
+	
+	private Relationship findFileRelationship(Node parentDirectory, String filePath, String fileName)
+	{
+		return this.getIndexedRelationship(parentDirectory, this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(filePath, fileName) : fileName);
+	}
+	
+	/*
+	 * Every has relationship to a directory or a file carries pathKey (parent nodeId + full path), which is
+	 * auto indexed, so a directory is found under its root and a file under its directory with one index
+	 * hit. Directory paths end with a slash so that a directory and a file with the same name directly
+	 * under the root directory never share a key. With relative paths the name takes the place of the
+	 * full path. Filesystems are keyed under their user by filesystemId. had relationships are not indexed.
+	 */
+	public Relationship indexPath(Relationship relationship)
+	{
+		String fullPath = relationship.isType(RelationshipLabels.has) ? this.getFullPath(relationship.getEndNode()) : null;
+		if(fullPath != null)
+		{
+			relationship.setProperty(MandatoryProperties.pathKey.name(), this.getPathKey((String) relationship.getStartNode().getProperty(MandatoryProperties.nodeId.name()), fullPath));
+		}
+		else if(relationship.hasProperty(MandatoryProperties.pathKey.name()))
+		{
+			relationship.removeProperty(MandatoryProperties.pathKey.name());
+		}
+		
+		return relationship;
+	}
+	
+	private String getFullPath(Node node)
+	{
+		if(node.hasLabel(NodeLabels.Directory) && node.hasProperty(MandatoryProperties.directoryPath.name()))
+		{
+			return this.getFullPath((String) node.getProperty(MandatoryProperties.directoryPath.name()), (String) node.getProperty(MandatoryProperties.directoryName.name())) + "/";
+		}
+		else if(node.hasLabel(NodeLabels.Directory) && node.hasProperty(MandatoryProperties.directoryName.name()))
+		{
+			return (String) node.getProperty(MandatoryProperties.directoryName.name()) + "/";
+		}
+		else if(node.hasLabel(NodeLabels.File) && node.hasProperty(MandatoryProperties.filePath.name()))
+		{
+			return this.getFullPath((String) node.getProperty(MandatoryProperties.filePath.name()), (String) node.getProperty(MandatoryProperties.fileName.name()));
+		}
+		else if(node.hasLabel(NodeLabels.File))
+		{
+			return (String) node.getProperty(MandatoryProperties.fileName.name());
+		}
+		else if(node.hasLabel(NodeLabels.Filesystem))
+		{
+			return (String) node.getProperty(MandatoryProperties.filesystemId.name());
+		}
+		
+		return null;
+	}
+	
+	/*
+	 * The same full path for a node that is only known by its properties, as a node recorded in a
+	 * RestBatch is. Directories, files and filesystems are told apart by their name properties.
+	 */
+	private String getFullPath(Map<String, Object> nodeProperties)
+	{
+		if(nodeProperties.containsKey(MandatoryProperties.directoryName.name()))
+		{
+			String directoryName = (String) nodeProperties.get(MandatoryProperties.directoryName.name());
+			return (nodeProperties.containsKey(MandatoryProperties.directoryPath.name()) ? this.getFullPath((String) nodeProperties.get(MandatoryProperties.directoryPath.name()), directoryName) : directoryName) + "/";
+		}
+		else if(nodeProperties.containsKey(MandatoryProperties.fileName.name()))
+		{
+			String fileName = (String) nodeProperties.get(MandatoryProperties.fileName.name());
+			return nodeProperties.containsKey(MandatoryProperties.filePath.name()) ? this.getFullPath((String) nodeProperties.get(MandatoryProperties.filePath.name()), fileName) : fileName;
+		}
+		else if(nodeProperties.containsKey(MandatoryProperties.filesystemId.name()))
+		{
+			return (String) nodeProperties.get(MandatoryProperties.filesystemId.name());
+		}
+		
+		return null;
+	}
+	
+	private String getFullPath(String path, String name)
+	{
+		return (path.equals("/") ? "" : path) + "/" + name;
+	}
+	
+	private String getPathKey(String parentNodeId, String fullPath)
+	{
+		return parentNodeId + ":" + fullPath;
+	}
+	
+	private Relationship getIndexedRelationship(Node parentNode, String fullPath)
+	{
+		ReadableRelationshipIndex readableRelationshipIndex = this.graphDatabaseService.index().getRelationshipAutoIndexer().getAutoIndex();
+		return readableRelationshipIndex.get(MandatoryProperties.pathKey.name(), this.getPathKey((String) parentNode.getProperty(MandatoryProperties.nodeId.name()), fullPath)).getSingle();
+	}
+	
+	/*
+	 * The filter holds every directory and file path that has existed in any version of a filesystem.
+	 * It is built the first time the filesystem is checked and only ever grows: a deleted path stays in
+	 * it as a false positive until the next rebuild, which keeps a negative answer always trustworthy.
+	 * A filesystem the path filter no longer keeps a filter for always may contain the path, leaving the
+	 * check to the index.
+	 */
+	public boolean mayContainPath(String userId, String filesystemId, String path, String name, boolean directory) throws UserNotFound, FilesystemNotFound
+	{
+		BloomFilter bloomFilter = this.getBloomFilter(userId, filesystemId);
+		if(bloomFilter == null)
+		{
+			return true;
+		}
+		
+		boolean mayContain = bloomFilter.mightContain(this.getFullPath(path, name) + (directory ? "/" : ""));
+		if(! mayContain)
+		{
+			this.pathFilter.recordNegative();
+		}
+		
+		return mayContain;
+	}
+	
+	public void recordPathFalsePositive(String userId, String filesystemId)
+	{
+		if(this.pathFilter.isFiltered(this.getFilesystemKey(userId, filesystemId)))
+		{
+			this.pathFilter.recordFalsePositive();
+		}
+	}
+	
+	public void addPath(String userId, String filesystemId, Node node, String parentPath)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			bloomFilter.add(this.getFilterPath(node, parentPath));
+		}
+	}
+	
+	public void addPath(String userId, String filesystemId, String path, String name, boolean directory)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			bloomFilter.add(this.getFullPath(path, name) + (directory ? "/" : ""));
+		}
+	}
+	
+	public void addPathTree(String userId, String filesystemId, Node directory, String parentPath)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			List<String> paths = new ArrayList<String>();
+			String directoryPath = this.getFilterPath(directory, parentPath);
+			paths.add(directoryPath);
+			this.collectPaths(directory, directoryPath.substring(0, directoryPath.length() - 1), paths, new HashSet<String>());
+			
+			for(String path : paths)
+			{
+				bloomFilter.add(path);
+			}
+		}
+	}
+	
+	public void invalidatePathFilter(String userId, String filesystemId)
+	{
+		this.pathFilter.invalidate(this.getFilesystemKey(userId, filesystemId));
+	}
+	
+	private BloomFilter getBloomFilter(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		String filesystemKey = this.getFilesystemKey(userId, filesystemId);
+		if(! this.pathFilter.isFiltered(filesystemKey))
+		{
+			return null;
+		}
+		
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(filesystemKey);
+		if(bloomFilter != null && bloomFilter.getInsertions() <= bloomFilter.getExpectedInsertions())
+		{
+			return bloomFilter;
+		}
+		
+		List<String> paths = new ArrayList<String>();
+		Set<String> visited = new HashSet<String>();
+		Node versionedFilesystem = this.getFilesystem(userId, filesystemId);
+		while(versionedFilesystem != null)
+		{
+			for(Relationship relationship : versionedFilesystem.getRelationships(Direction.OUTGOING, RelationshipLabels.has))
+			{
+				this.collectPaths(relationship.getEndNode(), "/", paths, visited);
+			}
+			
+			Relationship relationship = versionedFilesystem.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+			versionedFilesystem = relationship == null ? null : relationship.getEndNode();
 		}
-		else
+		
+		bloomFilter = this.pathFilter.createBloomFilter(paths.size());
+		for(String path : paths)
 		{
-			return node;
+			bloomFilter.add(path);
 		}
+		
+		this.pathFilter.putBloomFilter(filesystemKey, bloomFilter);
+		return bloomFilter;
 	}
 	
-	public Map<String, Object> getNodeProperties(Node node) throws NodeNotFound
+	private void collectPaths(Node directory, String directoryPath, List<String> paths, Set<String> visited)
 	{
-		Map<String, Object> nodeProperties = new HashMap<String, Object>();
-		Iterable<String> nodeKeys = node.getPropertyKeys();
-		
-		for(String key : nodeKeys)
+		for(Relationship relationship : directory.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
 		{
-			nodeProperties.put(key, node.getProperty(key));
+			Node node = relationship.getEndNode();
+			String path = this.getFilterPath(node, directoryPath);
+			if(path != null && visited.add(node.getId() + ":" + path))
+			{
+				paths.add(path);
+				if(path.endsWith("/"))
+				{
+					this.collectPaths(node, path.substring(0, path.length() - 1), paths, visited);
+				}
+			}
 		}
-		
-		return nodeProperties;
 	}
 	
-	public Node createNodeVersion(String commidId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
+	private String getFilterPath(Node node, String parentPath)
 	{
-		Node node = null;
-		try
+		if(node.hasLabel(NodeLabels.Directory))
 		{
-			node = this.getNodeVersion(nodeId, -1);
+			String directoryPath = (String) node.getProperty(MandatoryProperties.directoryPath.name(), parentPath);
+			return this.getFullPath(directoryPath, (String) node.getProperty(MandatoryProperties.directoryName.name())) + "/";
 		}
-		catch (VersionNotFound e) {}
-		Node versionedNode = this.copyNodeTree(node, new ArrayList<String>());
-		
-		int nodeVersion = (int) node.getProperty(MandatoryProperties.version.name());
-		versionedNode.setProperty(MandatoryProperties.version.name(), nodeVersion + 1);
-		for(Entry<String, Object> entry : changedProperties.entrySet())
+		else if(node.hasLabel(NodeLabels.File))
 		{
-			versionedNode.setProperty(entry.getKey(), entry.getValue());
+			String filePath = (String) node.getProperty(MandatoryProperties.filePath.name(), parentPath);
+			return this.getFullPath(filePath, (String) node.getProperty(MandatoryProperties.fileName.name()));
 		}
 		
-		Relationship relationship = node.createRelationshipTo(versionedNode, RelationshipLabels.hasVersion);
-		for(Entry<String, Object> entry : changeMetadata.entrySet())
+		return null;
+	}
+	
+	private String getFilesystemKey(String userId, String filesystemId)
+	{
+		return userId + ":" + filesystemId;
+	}
+	
+	public Node copyNode(Node node)
+	{
+		String label = node.getLabels().iterator().next().name();
+		NodeLabels nodeLabel = NodeLabels.valueOf(label);
+		Node copyNode = this.createNode(nodeLabel);
+		
+		for(String key : node.getPropertyKeys())
 		{
-			relationship.setProperty(entry.getKey(), entry.getValue());
+			if(! key.equals(MandatoryProperties.nodeId.name()) && ! key.equals(MandatoryProperties.versionOf.name()) && ! key.equals(MandatoryProperties.versionKey.name()))
+			{
+				copyNode.setProperty(key, node.getProperty(key));
+			}
 		}
-		relationship.setProperty(MandatoryProperties.commitId.name(), commidId);
 		
-		return versionedNode;
+		return copyNode;
 	}
 	
-	public Node getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
+	public Node copyNodeTree(Node node, List<String> ignoreRelationships)
 	{
-		Node node = this.getNode(nodeId);
+		List<Node> pendingNodeList = new ArrayList<Node>();
+		pendingNodeList.add(node);
+		
+		List<Node> pendingNodeCopyList = new ArrayList<Node>();
+		Node rootNodeCopy = this.copyNode(node);
+		pendingNodeCopyList.add(rootNodeCopy);
+		
 		do
 		{
-			int nodeVersion = -1;
-			try
-			{
-				nodeVersion = (int) node.getProperty(MandatoryProperties.version.name());
-			}
-			catch(NotFoundException notFoundException)
-			{
-				throw new NodeUnavailable("ERROR: No version property for this node! - \"" + nodeId + "(v=" + version + ")\"");
-			}
-			
-			if(nodeVersion == version)
-			{
-				return node;
-			}
-			else
+			List<Node> childNodeList = new ArrayList<Node>();
+			List<Node> childNodeCopyList = new ArrayList<Node>();
+			for(int i = 0; i < pendingNodeList.size(); i++)
 			{
-				Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
-				if(relationship != null)
-				{
-					node = relationship.getEndNode();
-				}
-				else
+				Node currentNode = pendingNodeList.get(i);
+				Node currentNodeCopy = pendingNodeCopyList.get(i);
+				
+				Iterable<Relationship> currentNodeRelationships = currentNode.getRelationships(Direction.OUTGOING);
+				for(Relationship relationship : currentNodeRelationships)
 				{
-					if(version == -1)
+					if(ignoreRelationships.contains(relationship.getType().name()) || relationship.isType(RelationshipLabels.hasHeadVersion))
 					{
-						return node;
+						continue;
 					}
-					else
+					
+					Node childNode = relationship.getEndNode();
+					Node childNodeCopy = this.copyNode(childNode);
+					Relationship currentNodeCopyRelationship = currentNodeCopy.createRelationshipTo(childNodeCopy, relationship.getType());
+					
+					for(String key : relationship.getPropertyKeys())
 					{
-						node = null;
+						currentNodeCopyRelationship.setProperty(key, relationship.getProperty(key));
 					}
+					this.indexPath(currentNodeCopyRelationship);
+					
+					childNodeList.add(childNode);
+					childNodeCopyList.add(childNodeCopy);
 				}
 			}
+			
+			pendingNodeList.clear();
+			pendingNodeList.addAll(childNodeList);
+			pendingNodeCopyList.clear();
+			pendingNodeCopyList.addAll(childNodeCopyList);
 		}
-		while(node != null);
+		while(! pendingNodeList.isEmpty());
 		
-		throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"");
+		return rootNodeCopy;
 	}
 	
-	public List<Map<String, Object>> getNodeVersions(String nodeId) throws NodeNotFound
+	public Node shareNodeTree(Node node)
 	{
-		List<Map<String, Object>> versionList = new ArrayList<Map<String, Object>>();
-		Node node = this.getNode(nodeId);
-		versionList.add(this.getNodeProperties(node));
-		
-		do
+		Node nodeCopy = this.copyNode(node);
+		for(Relationship relationship : node.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
 		{
-			Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
-			if(relationship != null)
-			{
-				node = relationship.getEndNode();
-				versionList.add(this.getNodeProperties(node));
-			}
-			else
+			Relationship sharedRelationship = nodeCopy.createRelationshipTo(relationship.getEndNode(), relationship.getType());
+			for(String key : relationship.getPropertyKeys())
 			{
-				node = null;
+				sharedRelationship.setProperty(key, relationship.getProperty(key));
 			}
+			this.indexPath(sharedRelationship);
 		}
-		while(node != null);
 		
-		return versionList;
+		return nodeCopy;
 	}
 	
-	public List<Node> getChildren(String nodeId) throws NodeNotFound
+	/*
+	 * With structural sharing a node can hang under more than one version of its parent, as has or, where
+	 * it was deleted, as had. Before such a node is changed it is copied (the copy still shares the node's
+	 * own children) and only the given parent is moved over to the copy, so every other version keeps
+	 * seeing the node as it was.
+	 */
+	public Node copyOnWrite(Relationship parentRelationship)
 	{
-		List<Node> nodeList = new ArrayList<Node>();
-		Node node = this.getNode(nodeId);
-		Iterable<Relationship> iterable = node.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		for(Relationship relationship : iterable)
+		Node node = parentRelationship.getEndNode();
+		Iterator<Relationship> iterator = node.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had).iterator();
+		iterator.next();
+		if(! iterator.hasNext())
 		{
-			nodeList.add(relationship.getEndNode());
+			return node;
 		}
 		
-		return nodeList;
+		Node nodeCopy = this.shareNodeTree(node);
+		this.moveParentRelationship(parentRelationship, nodeCopy);
+		return nodeCopy;
 	}
 	
-	public List<Node> getDeletedChildren(String nodeId) throws NodeNotFound
+	/*
+	 * The other way round from copyOnWrite: the node stays with the given parent, and every other parent
+	 * (has or had) is moved over to one copy of it. Nothing is copied for a node with no other parent.
+	 */
+	private void unshareNode(Node node, Relationship parentRelationship)
 	{
-		List<Node> nodeList = new ArrayList<Node>();
-		Node node = this.getNode(nodeId);
-		Iterable<Relationship> iterable = node.getRelationships(Direction.OUTGOING, RelationshipLabels.had);
-		for(Relationship relationship : iterable)
+		List<Relationship> otherRelationships = new ArrayList<Relationship>();
+		for(Relationship relationship : node.getRelationships(Direction.INCOMING, RelationshipLabels.has, RelationshipLabels.had))
 		{
-			nodeList.add(relationship.getEndNode());
+			if(! relationship.equals(parentRelationship))
+			{
+				otherRelationships.add(relationship);
+			}
 		}
 		
-		return nodeList;
-	}
-	
-	public Node deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
-	{
-		Node node = this.getNode(nodeId);
-		Relationship hasRelationship = node.getSingleRelationship(RelationshipLabels.has, Direction.INCOMING);
-		if(hasRelationship == null)
+		if(otherRelationships.isEmpty())
 		{
-			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has already been deleted.");
+			return;
 		}
 		
-		if(hasRelationship.getStartNode().hasProperty(MandatoryProperties.filesystemId.name()))
+		Node nodeCopy = this.shareNodeTree(node);
+		for(Relationship otherRelationship : otherRelationships)
 		{
-			throw new NodeUnavailable("ERROR: Root node cannot be deleted! - \"" + nodeId + "\"");
+			this.moveParentRelationship(otherRelationship, nodeCopy);
+		}
+	}
+	
+	/*
+	 * A filesystem version names its root directory by nodeId as well, so when the root is handed over
+	 * to a copy, the version is changed to name the copy. An older version changes in place here, and
+	 * its cached snapshots go with it.
+	 */
+	private void moveParentRelationship(Relationship parentRelationship, Node node)
+	{
+		Node parentNode = parentRelationship.getStartNode();
+		if(parentNode.hasProperty(MandatoryProperties.rootNodeId.name()))
+		{
+			this.invalidateNode(parentNode);
+			parentNode.setProperty(MandatoryProperties.rootNodeId.name(), node.getProperty(MandatoryProperties.nodeId.name()));
 		}
 		
-		Node parentNode = hasRelationship.getStartNode();
-		Relationship hadRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.had);
-		for(String key : hasRelationship.getPropertyKeys())
+		Relationship relationship = parentNode.createRelationshipTo(node, parentRelationship.getType());
+		for(String key : parentRelationship.getPropertyKeys())
 		{
-			hadRelationship.setProperty(key, hasRelationship.getProperty(key));
+			relationship.setProperty(key, parentRelationship.getProperty(key));
 		}
-		hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+		this.indexPath(relationship);
 		
-		hasRelationship.delete();
-		return node;
+		parentRelationship.delete();
 	}
 	
-	public Node restoreNode(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
+	/*
+	 * The methods below record their writes in a RestBatch instead of sending each one to the server, so
+	 * that a whole service call reaches it as one batch request. Reads still go out as they happen.
+	 */
+	public RestBatch.Reference getWritableParentDirectory(String userId, String filesystemId, int filesystemVersion, String filePath, RestBatch restBatch) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
 	{
-		Node node = this.getNode(nodeId);
-		Relationship hadRelationship = node.getSingleRelationship(RelationshipLabels.had, Direction.INCOMING);
-		if(hadRelationship == null)
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getPathKeys(filePath));
+		if(pathLookup.getNode() == null)
 		{
-			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has not been deleted.");
+			throw this.getParentDirectoryNotFound(filePath);
 		}
 		
-		Node parentNode = hadRelationship.getStartNode();
-		Relationship hasRelationship = parentNode.createRelationshipTo(node, RelationshipLabels.has);
-		for(String key : hadRelationship.getPropertyKeys())
+		return this.copyOnWrite(pathLookup, pathLookup.getDepth(), restBatch);
+	}
+	
+	public RestBatch.Reference getWritableDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, RestBatch restBatch) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getPathKeys(this.getFullPath(directoryPath, directoryName)));
+		if(pathLookup.getNode() == null)
 		{
-			hasRelationship.setProperty(key, hadRelationship.getProperty(key));
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
 		}
-		hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
 		
-		hadRelationship.delete();
-		return node;
+		return this.copyOnWrite(pathLookup, pathLookup.getDepth(), restBatch);
 	}
 	
-	public Node getUser(String userId) throws UserNotFound
+	public RestBatch.Reference getWritableDirectoryParent(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, RestBatch restBatch) throws UserNotFound, FilesystemNotFound, VersionNotFound
 	{
-		ReadableIndex<Node> readableIndex = this.graphDatabaseService.index().getNodeAutoIndexer().getAutoIndex();
-		Node user = readableIndex.get(MandatoryProperties.userId.name(), userId).getSingle();
+		List<String> pathKeys = this.pathStorageMode == PathStorageMode.AbsolutePaths ? new ArrayList<String>() : this.getPathKeys(directoryPath);
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, pathKeys);
+		int depth = pathLookup.nodes.indexOf(null);
+		depth = depth == -1 ? pathLookup.getDepth() : depth - 1;
+		RestBatch.Reference parentDirectory = this.copyOnWrite(pathLookup, depth, restBatch);
 		
-		if(user == null)
+		String[] directoryNames = directoryPath.substring(1).split("/");
+		String parentPath = "/";
+		for(int i = 0; i < depth - 1; i++)
 		{
-			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"");
+			parentPath = this.getFullPath(parentPath, directoryNames[i]);
 		}
-		else
+		
+		for(int i = depth - 1; i < pathKeys.size(); i++)
 		{
-			return user;
+			Map<String, Object> directoryProperties = new HashMap<String, Object>();
+			directoryProperties.put(MandatoryProperties.directoryName.name(), directoryNames[i]);
+			directoryProperties.put(MandatoryProperties.version.name(), 0);
+			parentDirectory = this.createChildNode(commitId, parentDirectory, NodeLabels.Directory, directoryProperties, restBatch);
+			this.addPath(userId, filesystemId, parentPath, directoryNames[i], true);
+			parentPath = this.getFullPath(parentPath, directoryNames[i]);
 		}
+		
+		return parentDirectory;
 	}
 	
-	public Node getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	public RestBatch.Reference createChildNode(String commitId, RestBatch.Reference parentNode, NodeLabels nodeLabel, Map<String, Object> nodeProperties, RestBatch restBatch)
 	{
-		Node user = this.getUser(userId);
-		Iterable<Relationship> iterable = user.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		
-		for(Relationship relationship : iterable)
-		{
-			Node filesystem = relationship.getEndNode();
-			String retrievedFilesystemId = (String) filesystem.getProperty(MandatoryProperties.filesystemId.name());
-			
-			if(retrievedFilesystemId.equals(filesystemId))
-			{
-				return filesystem;
-			}
-		}
+		Map<String, Object> properties = new HashMap<String, Object>(nodeProperties);
+		properties.put(MandatoryProperties.nodeId.name(), this.autoIncrementService.getNextAutoIncrement());
+		RestBatch.Reference node = restBatch.createNode(nodeLabel, properties, null);
 		
-		throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"");
+		Map<String, Object> relationshipProperties = new HashMap<String, Object>();
+		relationshipProperties.put(MandatoryProperties.commitId.name(), commitId);
+		restBatch.createRelationship(parentNode, node, RelationshipLabels.has, this.getPathProperties(RelationshipLabels.has, relationshipProperties, parentNode.getNodeId(), properties));
+		return node;
 	}
 	
-	public Node getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	/*
+	 * deleteNodeTemporarily for a directory reached through its path: the has relationship from its
+	 * writable parent becomes a had relationship.
+	 */
+	public RestBatch.Reference deleteDirectoryTemporarily(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, RestBatch restBatch) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
 	{
-		Node filesystem = this.getFilesystem(userId, filesystemId);
-		Node versionedFilesystem = null;
-		try
+		PathLookup pathLookup = this.lookupPath(userId, filesystemId, filesystemVersion, this.getPathKeys(this.getFullPath(directoryPath, directoryName)));
+		if(pathLookup.getNode() == null)
 		{
-			versionedFilesystem = this.getNodeVersion((String) filesystem.getProperty(MandatoryProperties.nodeId.name()), filesystemVersion);
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
 		}
-		catch (NodeNotFound | NodeUnavailable e) {}
-		return versionedFilesystem.getSingleRelationship(RelationshipLabels.has, Direction.OUTGOING).getEndNode();
-	}
-	
-	public Node getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
-	{
-		Node rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
-		Iterable<Relationship> iterable = rootDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
 		
-		for(Relationship relationship : iterable)
+		int depth = pathLookup.getDepth();
+		RestBatch.Reference parentDirectory = this.copyOnWrite(pathLookup, depth - 1, restBatch);
+		RestBatch.Reference directory = this.copyOnWrite(pathLookup, depth, restBatch);
+		Relationship relationship = pathLookup.relationships.get(depth);
+		RestBatch.Reference hasRelationship = restBatch.getCopy(relationship);
+		if(hasRelationship == null)
 		{
-			Node node = relationship.getEndNode();
-			if(node.hasLabel(NodeLabels.Directory))
-			{
-				String retrievedDirectoryPath = (String) node.getProperty(MandatoryProperties.directoryPath.name());
-				String retrievedDirectoryName = (String) node.getProperty(MandatoryProperties.directoryName.name());
-				
-				if(retrievedDirectoryPath.equals(directoryPath) && retrievedDirectoryName.equals(directoryName))
-				{
-					return node;
-				}
-			}
+			hasRelationship = restBatch.getRelationship(relationship, parentDirectory, directory);
 		}
 		
-		throw new DirectoryNotFound("ERROR: Directory not found! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+		this.invalidateNode(pathLookup.getNode());
+		Map<String, Object> relationshipProperties = new HashMap<String, Object>(hasRelationship.getProperties());
+		relationshipProperties.put(MandatoryProperties.commitId.name(), commitId);
+		restBatch.createRelationship(parentDirectory, directory, RelationshipLabels.had, this.getPathProperties(RelationshipLabels.had, relationshipProperties, parentDirectory.getNodeId(), directory.getProperties()));
+		restBatch.delete(hasRelationship);
+		return directory;
 	}
 	
-	public List<Node> getAllDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	public RestBatch.Reference indexPath(RestBatch.Reference relationship, RestBatch restBatch)
 	{
-		List<Node> directoryList = new ArrayList<Node>();
-		Node rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
-		Iterable<Relationship> iterable = rootDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		
-		for(Relationship relationship : iterable)
+		Map<String, Object> pathProperties = this.getPathProperties(RelationshipLabels.valueOf(relationship.getType()), relationship.getProperties(), relationship.getStartNode().getNodeId(), relationship.getEndNode().getProperties());
+		Object pathKey = pathProperties.get(MandatoryProperties.pathKey.name());
+		if(pathKey != null)
 		{
-			Node node = relationship.getEndNode();
-			if(node.hasLabel(NodeLabels.Directory))
-			{
-				directoryList.add(node);
-			}
+			restBatch.setProperty(relationship, MandatoryProperties.pathKey.name(), pathKey);
+		}
+		else if(relationship.getProperties().containsKey(MandatoryProperties.pathKey.name()))
+		{
+			restBatch.removeProperty(relationship, MandatoryProperties.pathKey.name());
 		}
 		
-		return directoryList;
+		return relationship;
 	}
 	
-	public Node getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	/*
+	 * The relationship properties with pathKey set the way indexPath would set it, so that a relationship
+	 * recorded in a RestBatch is created already indexed.
+	 */
+	private Map<String, Object> getPathProperties(RelationshipLabels relationshipLabel, Map<String, Object> relationshipProperties, String parentNodeId, Map<String, Object> nodeProperties)
 	{
-		Node parentDirectory = null;
-		if(filePath.equals("/"))
+		Map<String, Object> pathProperties = new HashMap<String, Object>(relationshipProperties);
+		String fullPath = relationshipLabel == RelationshipLabels.has ? this.getFullPath(nodeProperties) : null;
+		if(fullPath != null)
 		{
-			parentDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+			pathProperties.put(MandatoryProperties.pathKey.name(), this.getPathKey(parentNodeId, fullPath));
 		}
 		else
 		{
-			String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
-			String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
-			directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
-			parentDirectory = this.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+			pathProperties.remove(MandatoryProperties.pathKey.name());
 		}
 		
-		Iterable<Relationship> iterable = parentDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has);
-		for(Relationship relationship : iterable)
+		return pathProperties;
+	}
+	
+	public RestBatch.Reference copyNode(RestBatch.Reference node, NodeLabels nodeLabel, RestBatch restBatch)
+	{
+		return this.copyNode(node.getSource(), node.getProperties(), nodeLabel, restBatch);
+	}
+	
+	private RestBatch.Reference copyNode(Node source, Map<String, Object> properties, NodeLabels nodeLabel, RestBatch restBatch)
+	{
+		Map<String, Object> nodeProperties = new HashMap<String, Object>();
+		for(Entry<String, Object> entry : properties.entrySet())
 		{
-			Node node = relationship.getEndNode();
-			if(node.hasLabel(NodeLabels.File))
+			if(! entry.getKey().equals(MandatoryProperties.nodeId.name()) && ! entry.getKey().equals(MandatoryProperties.versionOf.name()) && ! entry.getKey().equals(MandatoryProperties.versionKey.name()))
 			{
-				String retrievedFilePath = (String) node.getProperty(MandatoryProperties.filePath.name());
-				String retrievedFileName = (String) node.getProperty(MandatoryProperties.fileName.name());
-				
-				if(retrievedFilePath.equals(filePath) && retrievedFileName.equals(fileName))
-				{
-					return node;
-				}
+				nodeProperties.put(entry.getKey(), entry.getValue());
 			}
 		}
+		nodeProperties.put(MandatoryProperties.nodeId.name(), this.autoIncrementService.getNextAutoIncrement());
 		
-		throw new FileNotFound("ERROR: File not found! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+		return restBatch.createNode(nodeLabel, nodeProperties, source);
 	}
 	
-	public Node copyNode(Node node)
+	/*
+	 * The children of a node recorded in a RestBatch are read from the stored node it stands for, one
+	 * statement per node. A copy shares the children of the node it was made from.
+	 */
+	public RestBatch.Reference shareNodeTree(RestBatch.Reference node, NodeLabels nodeLabel, Map<String, Object> changedProperties, RestBatch restBatch)
 	{
-		String label = node.getLabels().iterator().next().name();
-		NodeLabels nodeLabel = NodeLabels.valueOf(label);
-		Node copyNode = this.createNode(nodeLabel);
-		
-		for(String key : node.getPropertyKeys())
+		Map<String, Object> nodeProperties = new HashMap<String, Object>(node.getProperties());
+		nodeProperties.putAll(changedProperties);
+		RestBatch.Reference nodeCopy = this.copyNode(node.getSource(), nodeProperties, nodeLabel, restBatch);
+		for(Map<String, Object> row : this.getChildRelationships(node.getSource(), "has|had"))
 		{
-			if(! key.equals(MandatoryProperties.nodeId.name()))
-			{
-				copyNode.setProperty(key, node.getProperty(key));
-			}
+			Relationship relationship = (Relationship) row.get("relationship");
+			RestBatch.Reference childNode = restBatch.getNode((Node) row.get("child"));
+			RelationshipLabels relationshipLabel = RelationshipLabels.valueOf(relationship.getType().name());
+			Map<String, Object> relationshipProperties = restBatch.getRelationship(relationship, null, null).getProperties();
+			
+			RestBatch.Reference sharedRelationship = restBatch.createRelationship(nodeCopy, childNode, relationshipLabel, this.getPathProperties(relationshipLabel, relationshipProperties, nodeCopy.getNodeId(), childNode.getProperties()));
+			restBatch.putCopy(relationship, sharedRelationship);
 		}
 		
-		return copyNode;
+		return nodeCopy;
 	}
 	
-	public Node copyNodeTree(Node node, List<String> ignoreRelationships)
+	public RestBatch.Reference copyNodeTree(RestBatch.Reference node, NodeLabels nodeLabel, List<String> ignoreRelationships, RestBatch restBatch)
 	{
 		List<Node> pendingNodeList = new ArrayList<Node>();
-		pendingNodeList.add(node);
+		pendingNodeList.add(node.getSource());
 		
-		List<Node> pendingNodeCopyList = new ArrayList<Node>();
-		Node rootNodeCopy = this.copyNode(node);
+		List<RestBatch.Reference> pendingNodeCopyList = new ArrayList<RestBatch.Reference>();
+		RestBatch.Reference rootNodeCopy = this.copyNode(node, nodeLabel, restBatch);
 		pendingNodeCopyList.add(rootNodeCopy);
 		
 		do
 		{
 			List<Node> childNodeList = new ArrayList<Node>();
-			List<Node> childNodeCopyList = new ArrayList<Node>();
+			List<RestBatch.Reference> childNodeCopyList = new ArrayList<RestBatch.Reference>();
 			for(int i = 0; i < pendingNodeList.size(); i++)
 			{
-				Node currentNode = pendingNodeList.get(i);
-				Node currentNodeCopy = pendingNodeCopyList.get(i);
-				
-				Iterable<Relationship> currentNodeRelationships = currentNode.getRelationships(Direction.OUTGOING);
-				for(Relationship relationship : currentNodeRelationships)
+				RestBatch.Reference currentNodeCopy = pendingNodeCopyList.get(i);
+				for(Map<String, Object> row : this.getChildRelationships(pendingNodeList.get(i), null))
 				{
-					if(ignoreRelationships.contains(relationship.getType().name()))
+					Relationship relationship = (Relationship) row.get("relationship");
+					RelationshipLabels relationshipLabel = RelationshipLabels.valueOf(relationship.getType().name());
+					if(ignoreRelationships.contains(relationshipLabel.name()) || relationshipLabel == RelationshipLabels.hasHeadVersion)
 					{
 						continue;
 					}
 					
-					Node childNode = relationship.getEndNode();
-					Node childNodeCopy = this.copyNode(childNode);
-					Relationship currentNodeCopyRelationship = currentNodeCopy.createRelationshipTo(childNodeCopy, relationship.getType());
-					
-					for(String key : relationship.getPropertyKeys())
-					{
-						currentNodeCopyRelationship.setProperty(key, relationship.getProperty(key));
-					}
+					Node childNode = (Node) row.get("child");
+					NodeLabels childNodeLabel = NodeLabels.valueOf((String) ((List<?>) row.get("labels")).get(0));
+					RestBatch.Reference childNodeCopy = this.copyNode(restBatch.getNode(childNode), childNodeLabel, restBatch);
+					Map<String, Object> relationshipProperties = restBatch.getRelationship(relationship, null, null).getProperties();
+					restBatch.createRelationship(currentNodeCopy, childNodeCopy, relationshipLabel, this.getPathProperties(relationshipLabel, relationshipProperties, currentNodeCopy.getNodeId(), childNodeCopy.getProperties()));
 					
 					childNodeList.add(childNode);
 					childNodeCopyList.add(childNodeCopy);
 				}
 			}
 			
-			pendingNodeList.clear();
-			pendingNodeList.addAll(childNodeList);
-			pendingNodeCopyList.clear();
-			pendingNodeCopyList.addAll(childNodeCopyList);
+			pendingNodeList = childNodeList;
+			pendingNodeCopyList = childNodeCopyList;
 		}
 		while(! pendingNodeList.isEmpty());
 		
 		return rootNodeCopy;
 	}
+	
+	private List<Map<String, Object>> getChildRelationships(Node node, String relationshipTypes)
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("node", node.getId());
+		
+		String cypherQuery = "START node=node({node}) MATCH (node)-[relationship" + (relationshipTypes == null ? "" : ":" + relationshipTypes) + "]->(child) RETURN relationship, child, labels(child) AS labels";
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		Iterator<Map<String, Object>> iterator = this.neo4jRestConnection.runCypherQuery(cypherQuery, queryParameters);
+		while(iterator.hasNext())
+		{
+			rows.add(iterator.next());
+		}
+		
+		return rows;
+	}
+	
+	/*
+	 * copyOnWrite for every directory on a looked up path down to the given depth. A node that was copied
+	 * earlier in the same batch is reused, and below a copied directory every directory is copied too,
+	 * since the copy has just become one more parent of it.
+	 */
+	private RestBatch.Reference copyOnWrite(PathLookup pathLookup, int depth, RestBatch restBatch)
+	{
+		RestBatch.Reference parentNode = restBatch.getNode(pathLookup.nodes.get(0));
+		boolean parentCopied = false;
+		for(int i = 1; i <= depth; i++)
+		{
+			Node node = pathLookup.nodes.get(i);
+			RestBatch.Reference nodeCopy = restBatch.getCopy(node);
+			if(nodeCopy != null)
+			{
+				parentNode = nodeCopy;
+				parentCopied = true;
+				continue;
+			}
+			else if(! parentCopied && pathLookup.parentCounts.get(i).intValue() < 2)
+			{
+				parentNode = restBatch.getNode(node);
+				continue;
+			}
+			
+			Relationship relationship = pathLookup.relationships.get(i);
+			RestBatch.Reference parentRelationship = restBatch.getCopy(relationship);
+			if(parentRelationship == null)
+			{
+				parentRelationship = restBatch.getRelationship(relationship, parentNode, null);
+			}
+			
+			nodeCopy = this.shareNodeTree(restBatch.getNode(node), NodeLabels.Directory, new HashMap<String, Object>(), restBatch);
+			RestBatch.Reference copyRelationship = restBatch.createRelationship(parentNode, nodeCopy, RelationshipLabels.has, this.getPathProperties(RelationshipLabels.has, parentRelationship.getProperties(), parentNode.getNodeId(), nodeCopy.getProperties()));
+			restBatch.delete(parentRelationship);
+			
+			restBatch.putCopy(relationship, copyRelationship);
+			restBatch.putCopy(node, nodeCopy);
+			parentNode = nodeCopy;
+			parentCopied = true;
+		}
+		
+		return parentNode;
+	}
 }
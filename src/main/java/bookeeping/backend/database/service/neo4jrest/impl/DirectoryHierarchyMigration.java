@@ -0,0 +1,204 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.neo4j.NodeLabels;
+import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.exception.NodeNotFound;
+
+public class DirectoryHierarchyMigration
+{
+	private Neo4JRestConnection neo4jRestConnection;
+	private GraphDatabaseService graphDatabaseService;
+	private CommonCode commonCode;
+	
+	public DirectoryHierarchyMigration()
+	{
+		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
+		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
+		this.commonCode = Neo4JRestServiceRegistry.getInstance().getCommonCode();
+	}
+	
+	/*
+	 * Converts every filesystem from the flat layout (all directories under the root directory, absolute
+	 * paths on every node) to the hierarchical one used with PathStorageMode.RelativePaths. Each filesystem
+	 * is converted in its own transaction and nodes without an absolute path are left alone, so it can be
+	 * re-run after a partial failure. Switch PathStorageMode to RelativePaths once it has finished.
+	 */
+	public int migrate() throws NodeNotFound
+	{
+		List<String> filesystemNodeIds = new ArrayList<String>();
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			String cypherQuery = "MATCH (n:Filesystem) WHERE NOT (()-[:hasVersion]->(n)) RETURN n.nodeId AS nodeId";
+			Iterator<Map<String, Object>> iterator = this.neo4jRestConnection.runCypherQuery(cypherQuery, new HashMap<String, Object>());
+			while(iterator.hasNext())
+			{
+				filesystemNodeIds.add((String) iterator.next().get("nodeId"));
+			}
+			
+			transaction.success();
+		}
+		
+		for(String filesystemNodeId : filesystemNodeIds)
+		{
+			try(Transaction transaction = this.graphDatabaseService.beginTx())
+			{
+				this.migrateFilesystem(this.commonCode.getNode(filesystemNodeId));
+				transaction.success();
+			}
+		}
+		
+		return filesystemNodeIds.size();
+	}
+	
+	private void migrateFilesystem(Node filesystem)
+	{
+		List<Node> rootDirectories = new ArrayList<Node>();
+		Node versionedFilesystem = filesystem;
+		while(versionedFilesystem != null)
+		{
+			for(Relationship relationship : versionedFilesystem.getRelationships(Direction.OUTGOING, RelationshipLabels.has))
+			{
+				if(! rootDirectories.contains(relationship.getEndNode()))
+				{
+					rootDirectories.add(relationship.getEndNode());
+				}
+			}
+			
+			Relationship relationship = versionedFilesystem.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+			versionedFilesystem = relationship == null ? null : relationship.getEndNode();
+		}
+		
+		/*
+		 * Directory nodes can be shared by several root directories, so every path is read before any
+		 * node is changed.
+		 */
+		List<Map<String, Node>> directoryMaps = new ArrayList<Map<String, Node>>();
+		List<List<Relationship>> directoryRelationshipLists = new ArrayList<List<Relationship>>();
+		List<List<String>> parentPathLists = new ArrayList<List<String>>();
+		for(Node rootDirectory : rootDirectories)
+		{
+			Map<String, Node> directoryMap = new HashMap<String, Node>();
+			List<Relationship> directoryRelationships = new ArrayList<Relationship>();
+			List<String> parentPaths = new ArrayList<String>();
+			directoryMap.put("/", rootDirectory);
+			
+			for(Relationship relationship : rootDirectory.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
+			{
+				Node directory = relationship.getEndNode();
+				if(directory.hasLabel(NodeLabels.Directory) && directory.hasProperty(MandatoryProperties.directoryPath.name()))
+				{
+					String directoryPath = (String) directory.getProperty(MandatoryProperties.directoryPath.name());
+					String directoryName = (String) directory.getProperty(MandatoryProperties.directoryName.name());
+					directoryRelationships.add(relationship);
+					parentPaths.add(directoryPath);
+					
+					if(relationship.isType(RelationshipLabels.has))
+					{
+						directoryMap.put((directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName, directory);
+					}
+				}
+			}
+			
+			directoryMaps.add(directoryMap);
+			directoryRelationshipLists.add(directoryRelationships);
+			parentPathLists.add(parentPaths);
+		}
+		
+		Set<Node> directories = new LinkedHashSet<Node>();
+		for(int i = 0; i < rootDirectories.size(); i++)
+		{
+			Map<String, Node> directoryMap = directoryMaps.get(i);
+			List<Relationship> directoryRelationships = directoryRelationshipLists.get(i);
+			List<String> parentPaths = parentPathLists.get(i);
+			directories.add(rootDirectories.get(i));
+			
+			for(int j = 0; j < directoryRelationships.size(); j++)
+			{
+				Relationship relationship = directoryRelationships.get(j);
+				Node directory = relationship.getEndNode();
+				Node parentDirectory = this.getParentDirectory(directoryMap, parentPaths.get(j), directories);
+				if(! parentDirectory.equals(relationship.getStartNode()))
+				{
+					Relationship parentRelationship = parentDirectory.createRelationshipTo(directory, relationship.getType());
+					for(String key : relationship.getPropertyKeys())
+					{
+						parentRelationship.setProperty(key, relationship.getProperty(key));
+					}
+					relationship.delete();
+				}
+				
+				directories.add(directory);
+			}
+		}
+		
+		for(Node directory : directories)
+		{
+			this.commonCode.invalidateNode(directory);
+			directory.removeProperty(MandatoryProperties.directoryPath.name());
+			for(Relationship relationship : directory.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
+			{
+				Node node = relationship.getEndNode();
+				if(node.hasLabel(NodeLabels.File))
+				{
+					this.commonCode.invalidateNode(node);
+					node.removeProperty(MandatoryProperties.filePath.name());
+				}
+			}
+		}
+		
+		for(Node directory : directories)
+		{
+			for(Relationship relationship : directory.getRelationships(Direction.OUTGOING, RelationshipLabels.has, RelationshipLabels.had))
+			{
+				this.commonCode.indexPath(relationship);
+			}
+		}
+	}
+	
+	/*
+	 * The flat layout never required a parent directory to exist, so missing ones are created on the way.
+	 */
+	private Node getParentDirectory(Map<String, Node> directoryMap, String directoryPath, Set<Node> directories)
+	{
+		Node directory = directoryMap.get(directoryPath);
+		if(directory == null)
+		{
+			String directoryName = directoryPath.substring(directoryPath.lastIndexOf("/") + 1);
+			String parentPath = directoryPath.substring(0, directoryPath.lastIndexOf("/"));
+			Node parentDirectory = this.getParentDirectory(directoryMap, parentPath.length() == 0 ? "/" : parentPath, directories);
+			
+			directory = this.commonCode.createNode(NodeLabels.Directory);
+			directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+			directory.setProperty(MandatoryProperties.version.name(), 0);
+			parentDirectory.createRelationshipTo(directory, RelationshipLabels.has);
+			
+			directoryMap.put(directoryPath, directory);
+			directories.add(directory);
+		}
+		
+		return directory;
+	}
+	
+	public static void main(String[] args) throws NodeNotFound
+	{
+		int migratedFilesystems = new DirectoryHierarchyMigration().migrate();
+		System.out.println("Migrated filesystems: " + migratedFilesystems);
+		System.out.println("Set PathStorageMode=RelativePaths in databaseconnection.ini before restarting.");
+	}
+}
@@ -1,22 +1,23 @@
 package bookeeping.backend.database.service.neo4jrest.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
 import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
 import bookeeping.backend.database.neo4j.NodeLabels;
 import bookeeping.backend.database.neo4j.RelationshipLabels;
 import bookeeping.backend.database.service.DirectoryService;
-import bookeeping.backend.database.service.GenericService;
 import bookeeping.backend.exception.DirectoryNotFound;
 import bookeeping.backend.exception.DuplicateDirectory;
 import bookeeping.backend.exception.FilesystemNotFound;
@@ -24,141 +25,319 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
 
 public class DirectoryServiceImpl implements DirectoryService
 {
 	private Neo4JRestConnection neo4jRestConnection;
 	private GraphDatabaseService graphDatabaseService;
 	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
+	private PathStorageMode pathStorageMode;
 	
 	public DirectoryServiceImpl()
+	{
+		this(Neo4JRestServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	DirectoryServiceImpl(CommonCode commonCode)
 	{
 		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
 		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.commonCode = commonCode;
+		this.filesystemLock = this.neo4jRestConnection.getFilesystemLock();
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
+		this.pathStorageMode = this.neo4jRestConnection.getPathStorageMode();
 	}
 	
 	@Override
 	public String createNewDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, Map<String, Object> directoryProperties) throws UserNotFound, FilesystemNotFound, VersionNotFound, DuplicateDirectory
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			try
-			{
-				this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
-				throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
-			}
-			catch(DirectoryNotFound directoryNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				Node directory = this.commonCode.createNode(NodeLabels.Directory);
-				directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath);
-				directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
-				directory.setProperty(MandatoryProperties.version.name(), 0);
-				String directoryNodeId = (String) directory.getProperty(MandatoryProperties.nodeId.name());
-				
-				for(Entry<String, Object> directoryPropertiesEntry : directoryProperties.entrySet())
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.mayContainPath(userId, filesystemId, directoryPath, directoryName, true))
+					{
+						if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) != null)
+						{
+							throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+						}
+						
+						this.commonCode.recordPathFalsePositive(userId, filesystemId);
+					}
+					
+					RestBatch restBatch = new RestBatch();
+					RestBatch.Reference parentDirectory = this.commonCode.getWritableDirectoryParent(commitId, userId, filesystemId, filesystemVersion, directoryPath, restBatch);
+					Map<String, Object> nodeProperties = new HashMap<String, Object>();
+					this.commonCode.setDirectoryPath(nodeProperties, directoryPath, directoryName);
+					nodeProperties.put(MandatoryProperties.version.name(), 0);
+					nodeProperties.putAll(directoryProperties);
+					
+					RestBatch.Reference directory = this.commonCode.createChildNode(commitId, parentDirectory, NodeLabels.Directory, nodeProperties, restBatch);
+					restBatch.flush();
+					this.commonCode.addPath(userId, filesystemId, directoryPath, directoryName, true);
+					String directoryNodeId = directory.getNodeId();
+					unitOfWork.success();
+					return directoryNodeId;
+				}
+				catch(RuntimeException runtimeException)
 				{
-					directory.setProperty(directoryPropertiesEntry.getKey(), directoryPropertiesEntry.getValue());
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
-				
-				Node rootDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
-				rootDirectory.createRelationshipTo(directory, RelationshipLabels.has).setProperty(MandatoryProperties.commitId.name(), commitId);
-				transaction.success();
-				return directoryNodeId;
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 	
 	@Override
 	public void restoreDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, DuplicateDirectory, NodeNotFound, NodeUnavailable
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
-				throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
-			}
-			catch(DirectoryNotFound directoryNotFound)
-			{
-				this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
-				transaction.success();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) != null)
+					{
+						throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+					}
+					
+					Node directory = this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
+					this.commonCode.addPath(userId, filesystemId, directory, directoryPath);
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 	
 	@Override
 	public String moveDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		String oldPath = oldDirectoryPath.equals("/") ? "/" + oldDirectoryName : oldDirectoryPath + "/" + oldDirectoryName;
+		if((newDirectoryPath + "/").startsWith(oldPath + "/"))
 		{
-			List<String> ignoreRelationships = new ArrayList<String>();
-			ignoreRelationships.add(RelationshipLabels.hadAccess.name());
-			ignoreRelationships.add(RelationshipLabels.hasAccess.name());
-			ignoreRelationships.add(RelationshipLabels.hasVersion.name());
-			
-			Node oldDirectory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName);
-			Node newDirectory = this.commonCode.copyNodeTree(oldDirectory, ignoreRelationships);
-			newDirectory.setProperty(MandatoryProperties.directoryPath.name(), newDirectoryPath);
-			newDirectory.setProperty(MandatoryProperties.directoryName.name(), newDirectoryName);
-			newDirectory.setProperty(MandatoryProperties.version.name(), 0);
-			String newDirectoryNodeId = (String) newDirectory.getProperty(MandatoryProperties.nodeId.name());
-			
-			Node parentNode = oldDirectory.getSingleRelationship(RelationshipLabels.has, Direction.INCOMING).getStartNode();
-			parentNode.createRelationshipTo(newDirectory, RelationshipLabels.has);
-			
-			GenericService genericService = new GenericServiceImpl();
-			try
-			{
-				genericService.deleteNodeTemporarily(commitId, (String) oldDirectory.getProperty(MandatoryProperties.nodeId.name()));
-			}
-			catch (NodeNotFound | NodeUnavailable e) {}
-			
-			String oldPath = oldDirectoryPath.equals("/") ? "/" + oldDirectoryName : oldDirectoryPath + "/" + oldDirectoryName;
-			String newPath = newDirectoryPath.equals("/") ? "/" + newDirectoryName : newDirectoryPath + "/" + newDirectoryName;
-			
-			for(Relationship newRelationship : newDirectory.getRelationships(Direction.OUTGOING))
+			throw new IllegalArgumentException("ERROR: Cannot move Directory into itself! - \"" + oldPath + "\" -> \"" + newDirectoryPath + "\"");
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.RelativePaths)
+		{
+			return this.moveRelativeDirectory(commitId, userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName, newDirectoryPath, newDirectoryName);
+		}
+		
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
 			{
-				Node endNode = newRelationship.getEndNode();
-				endNode.setProperty(MandatoryProperties.filePath.name(), newPath);
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, newDirectoryPath, newDirectoryName) != null)
+					{
+						throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (newDirectoryPath.equals("/") ? "" : newDirectoryPath) + "/" + newDirectoryName + "\"");
+					}
+					
+					List<String> ignoreRelationships = new ArrayList<String>();
+					ignoreRelationships.add(RelationshipLabels.hadAccess.name());
+					ignoreRelationships.add(RelationshipLabels.hasAccess.name());
+					ignoreRelationships.add(RelationshipLabels.hasVersion.name());
+					
+					RestBatch restBatch = new RestBatch();
+					RestBatch.Reference oldDirectory = this.commonCode.deleteDirectoryTemporarily(commitId, userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName, restBatch);
+					RestBatch.Reference newDirectory = this.commonCode.copyNodeTree(oldDirectory, NodeLabels.Directory, ignoreRelationships, restBatch);
+					restBatch.setProperty(newDirectory, MandatoryProperties.directoryPath.name(), newDirectoryPath);
+					restBatch.setProperty(newDirectory, MandatoryProperties.directoryName.name(), newDirectoryName);
+					restBatch.setProperty(newDirectory, MandatoryProperties.version.name(), 0);
+					String newDirectoryNodeId = newDirectory.getNodeId();
+					
+					String newPath = newDirectoryPath.equals("/") ? "/" + newDirectoryName : newDirectoryPath + "/" + newDirectoryName;
+					
+					for(RestBatch.Reference newRelationship : restBatch.getCreatedRelationships(newDirectory))
+					{
+						restBatch.setProperty(newRelationship.getEndNode(), MandatoryProperties.filePath.name(), newPath);
+						this.commonCode.indexPath(newRelationship, restBatch);
+					}
+					
+					RestBatch.Reference parentNode = this.commonCode.getWritableDirectoryParent(commitId, userId, filesystemId, filesystemVersion, newDirectoryPath, restBatch);
+					this.commonCode.indexPath(restBatch.createRelationship(parentNode, newDirectory, RelationshipLabels.has, new HashMap<String, Object>()), restBatch);
+					
+					List<Node> directoryList = this.commonCode.getAllDirectory(userId, filesystemId, filesystemVersion);
+					for(Node directory : directoryList)
+					{
+						String directoryPath = (String) directory.getProperty(MandatoryProperties.directoryPath.name());
+						if(directoryPath.equals(oldPath) || directoryPath.startsWith(oldPath + "/"))
+						{
+							this.commonCode.invalidateNode(directory);
+							RestBatch.Reference directoryReference = restBatch.getNode(directory);
+							restBatch.setProperty(directoryReference, MandatoryProperties.directoryPath.name(), newPath + directoryPath.substring(oldPath.length()));
+							for(Relationship parentRelationship : directory.getRelationships(Direction.INCOMING, RelationshipLabels.has))
+							{
+								this.commonCode.indexPath(restBatch.getRelationship(parentRelationship, restBatch.getNode(parentRelationship.getStartNode()), directoryReference), restBatch);
+							}
+							
+							for(Relationship newRelationship : directory.getRelationships(Direction.OUTGOING))
+							{
+								Node endNode = newRelationship.getEndNode();
+								RestBatch.Reference endNodeReference = restBatch.getNode(endNode);
+								String filePath = (String) endNodeReference.getProperties().get(MandatoryProperties.filePath.name());
+								if(filePath != null && (filePath.equals(oldPath) || filePath.startsWith(oldPath + "/")))
+								{
+									this.commonCode.invalidateNode(endNode);
+									restBatch.setProperty(endNodeReference, MandatoryProperties.filePath.name(), newPath + filePath.substring(oldPath.length()));
+								}
+								this.commonCode.indexPath(restBatch.getRelationship(newRelationship, directoryReference, endNodeReference), restBatch);
+							}
+						}
+					}
+					
+					restBatch.flush();
+					this.commonCode.invalidatePathFilter(userId, filesystemId);
+					unitOfWork.success();
+					return newDirectoryNodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			
-			List<Node> directoryList = this.commonCode.getAllDirectory(userId, filesystemId, filesystemVersion);
-			for(Node directory : directoryList)
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * Paths are derived from the parent links, so a move only copies the moved directory itself (its
+	 * children are shared, not copied) and hangs the copy under the new parent. Nothing below it changes.
+	 */
+	private String moveRelativeDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory
+	{
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
 			{
-				String directoryPath = (String) directory.getProperty(MandatoryProperties.directoryPath.name());
-				if(directoryPath.startsWith(oldPath))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath.replaceFirst(oldPath, newPath));
-					for(Relationship newRelationship : directory.getRelationships(Direction.OUTGOING))
+					if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, newDirectoryPath, newDirectoryName) != null)
 					{
-						Node endNode = newRelationship.getEndNode();
-						String filePath = (String) endNode.getProperty(MandatoryProperties.filePath.name());
-						if(filePath != null) endNode.setProperty(MandatoryProperties.filePath.name(), filePath.replaceFirst(oldPath, newPath));
+						throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (newDirectoryPath.equals("/") ? "" : newDirectoryPath) + "/" + newDirectoryName + "\"");
 					}
+					
+					RestBatch restBatch = new RestBatch();
+					RestBatch.Reference oldDirectory = this.commonCode.deleteDirectoryTemporarily(commitId, userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName, restBatch);
+					Map<String, Object> changedProperties = new HashMap<String, Object>();
+					this.commonCode.setDirectoryPath(changedProperties, newDirectoryPath, newDirectoryName);
+					changedProperties.put(MandatoryProperties.version.name(), 0);
+					RestBatch.Reference newDirectory = this.commonCode.shareNodeTree(oldDirectory, NodeLabels.Directory, changedProperties, restBatch);
+					String newDirectoryNodeId = newDirectory.getNodeId();
+					
+					RestBatch.Reference parentDirectory = this.commonCode.getWritableDirectoryParent(commitId, userId, filesystemId, filesystemVersion, newDirectoryPath, restBatch);
+					Map<String, Object> relationshipProperties = new HashMap<String, Object>();
+					relationshipProperties.put(MandatoryProperties.commitId.name(), commitId);
+					this.commonCode.indexPath(restBatch.createRelationship(parentDirectory, newDirectory, RelationshipLabels.has, relationshipProperties), restBatch);
+					restBatch.flush();
+					this.commonCode.addPathTree(userId, filesystemId, this.graphDatabaseService.getNodeById(restBatch.getId(newDirectory)), newDirectoryPath);
+					
+					unitOfWork.success();
+					return newDirectoryNodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
 			}
-			
-			transaction.success();
-			return newDirectoryNodeId;
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public Map<String, Object> getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
 		{
-			Node directory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
-			Map<String, Object> directoryProperties = null;
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				directoryProperties = this.commonCode.getNodeProperties(directory);
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Node directory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+					Map<String, Object> directoryProperties = new HashMap<String, Object>(this.commonCode.findNodeProperties(directory));
+					directoryProperties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+					
+					unitOfWork.success();
+					return directoryProperties;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			transaction.success();
-			return directoryProperties;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Map<String, Map<String, Object>> getDirectories(String userId, String filesystemId, int filesystemVersion, String directoryPath, List<String> directoryNames) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
+			{
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Node directoryParent = this.commonCode.findDirectoryParent(userId, filesystemId, filesystemVersion, directoryPath);
+					Map<String, Map<String, Object>> directories = new LinkedHashMap<String, Map<String, Object>>();
+					for(int i = 0; i < directoryNames.size() && directoryParent != null; i++)
+					{
+						Map<String, Object> directoryProperties = this.commonCode.findNodeProperties(this.commonCode.findDirectory(directoryParent, directoryPath, directoryNames.get(i)));
+						if(directoryProperties != null)
+						{
+							directoryProperties = new HashMap<String, Object>(directoryProperties);
+							directoryProperties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+							directories.put(directoryNames.get(i), directoryProperties);
+						}
+					}
+					
+					unitOfWork.success();
+					return directories;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 }
@@ -1,20 +1,21 @@
 package bookeeping.backend.database.service.neo4jrest.impl;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
 import bookeeping.backend.database.neo4j.NodeLabels;
 import bookeeping.backend.database.neo4j.RelationshipLabels;
 import bookeeping.backend.database.service.FileService;
-import bookeeping.backend.database.service.GenericService;
 import bookeeping.backend.exception.DirectoryNotFound;
 import bookeeping.backend.exception.DuplicateFile;
 import bookeeping.backend.exception.FileNotFound;
@@ -23,62 +24,75 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
 
 public class FileServiceImpl implements FileService
 {
 	private Neo4JRestConnection neo4jRestConnection;
 	private GraphDatabaseService graphDatabaseService;
 	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
 	
 	public FileServiceImpl()
+	{
+		this(Neo4JRestServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	FileServiceImpl(CommonCode commonCode)
 	{
 		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
 		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.commonCode = commonCode;
+		this.filesystemLock = this.neo4jRestConnection.getFilesystemLock();
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
 	}
 
 	@Override
 	public String createNewFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, Map<String, Object> fileProperties) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, DuplicateFile
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			try
-			{
-				this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-				throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
-			}
-			catch(FileNotFound fileNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
-				String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
-				directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
-				
-				Node parentDirectory = null;
-				if(directoryPath.equals("/"))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					parentDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
-				}
-				else
-				{
-					parentDirectory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+					if(this.commonCode.mayContainPath(userId, filesystemId, filePath, fileName, false))
+					{
+						if(this.commonCode.findFile(userId, filesystemId, filesystemVersion, filePath, fileName) != null)
+						{
+							throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+						}
+						
+						this.commonCode.recordPathFalsePositive(userId, filesystemId);
+					}
+					
+					RestBatch restBatch = new RestBatch();
+					RestBatch.Reference parentDirectory = this.commonCode.getWritableParentDirectory(userId, filesystemId, filesystemVersion, filePath, restBatch);
+					Map<String, Object> nodeProperties = new HashMap<String, Object>();
+					this.commonCode.setFilePath(nodeProperties, filePath, fileName);
+					nodeProperties.put(MandatoryProperties.version.name(), 0);
+					nodeProperties.putAll(fileProperties);
+					
+					RestBatch.Reference file = this.commonCode.createChildNode(commitId, parentDirectory, NodeLabels.File, nodeProperties, restBatch);
+					restBatch.flush();
+					this.commonCode.addPath(userId, filesystemId, filePath, fileName, false);
+					String fileNodeId = file.getNodeId();
+					unitOfWork.success();
+					return fileNodeId;
 				}
-				
-				Node file = this.commonCode.createNode(NodeLabels.File);
-				file.setProperty(MandatoryProperties.filePath.name(), filePath);
-				file.setProperty(MandatoryProperties.fileName.name(), fileName);
-				file.setProperty(MandatoryProperties.version.name(), 0);
-				String fileNodeId = (String) file.getProperty(MandatoryProperties.nodeId.name());
-				
-				for(Entry<String, Object> filePropertiesEntry : fileProperties.entrySet())
+				catch(RuntimeException runtimeException)
 				{
-					file.setProperty(filePropertiesEntry.getKey(), filePropertiesEntry.getValue());
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
-				
-				parentDirectory.createRelationshipTo(file, RelationshipLabels.has).setProperty(MandatoryProperties.commitId.name(), commitId);
-				transaction.success();
-				return fileNodeId;
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 	
 	@Override
@@ -89,113 +103,226 @@ public class FileServiceImpl implements FileService
 			return;
 		}
 		
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
 		{
-			Node beneficiaryUser = this.commonCode.getUser(shareWithUserId);
-			Node fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-			
-			for(Relationship relationship : beneficiaryUser.getRelationships(Direction.OUTGOING, RelationshipLabels.hasAccess))
+			for(int attempt = 1; ; attempt++)
 			{
-				if(relationship.getEndNode().getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					relationship.delete();
-					break;
+					Node beneficiaryUser = this.commonCode.getUser(shareWithUserId);
+					Node fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+					
+					for(Relationship relationship : beneficiaryUser.getRelationships(Direction.OUTGOING, RelationshipLabels.hasAccess))
+					{
+						if(relationship.getEndNode().getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+						{
+							relationship.delete();
+							break;
+						}
+					}
+					
+					Relationship newRelationship = beneficiaryUser.createRelationshipTo(fileToBeShared, RelationshipLabels.hasAccess);
+					newRelationship.setProperty(MandatoryProperties.permission.name(), filePermission);
+					newRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+					
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
 			}
-			
-			Relationship newRelationship = beneficiaryUser.createRelationshipTo(fileToBeShared, RelationshipLabels.hasAccess);
-			newRelationship.setProperty(MandatoryProperties.permission.name(), filePermission);
-			newRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
-			
-			transaction.success();
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public void unshareFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String unshareWithUserId) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
 		{
-			Node beneficiaryUser = this.commonCode.getUser(unshareWithUserId);
-			Node fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-			
-			for(Relationship hasAccessRelationship : beneficiaryUser.getRelationships(Direction.OUTGOING, RelationshipLabels.hasAccess))
+			for(int attempt = 1; ; attempt++)
 			{
-				if(hasAccessRelationship.getEndNode().getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					Relationship hadAccessRelationship = beneficiaryUser.createRelationshipTo(fileToBeShared, RelationshipLabels.hadAccess);
-					for(String key : hasAccessRelationship.getPropertyKeys())
+					Node beneficiaryUser = this.commonCode.getUser(unshareWithUserId);
+					Node fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+					
+					for(Relationship hasAccessRelationship : beneficiaryUser.getRelationships(Direction.OUTGOING, RelationshipLabels.hasAccess))
 					{
-						hadAccessRelationship.setProperty(key, hasAccessRelationship.getProperty(key));
+						if(hasAccessRelationship.getEndNode().getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+						{
+							Relationship hadAccessRelationship = beneficiaryUser.createRelationshipTo(fileToBeShared, RelationshipLabels.hadAccess);
+							for(String key : hasAccessRelationship.getPropertyKeys())
+							{
+								hadAccessRelationship.setProperty(key, hasAccessRelationship.getProperty(key));
+							}
+							hadAccessRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+							
+							hasAccessRelationship.delete();
+							break;
+						}
 					}
-					hadAccessRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
 					
-					hasAccessRelationship.delete();
-					break;
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
 			}
-			
-			transaction.success();
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public void restoreFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			try
-			{
-				this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-				throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
-			}
-			catch(FileNotFound fileNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
-				transaction.success();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findFile(userId, filesystemId, filesystemVersion, filePath, fileName) != null)
+					{
+						throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+					}
+					
+					Node file = this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
+					this.commonCode.addPath(userId, filesystemId, file, filePath);
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 	
 	@Override
 	public String moveFile(String commitId, String userId, String filesystemId, int filesystemVersion, String oldFilePath, String oldFileName, String newFilePath, String newFileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, DuplicateFile
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			Map<String, Object> fileProperties = this.getFile(userId, filesystemId, filesystemVersion, oldFilePath, oldFileName);
-			String nodeId = (String) fileProperties.remove(MandatoryProperties.nodeId.name());
-			fileProperties.remove(MandatoryProperties.filePath.name());
-			fileProperties.remove(MandatoryProperties.fileName.name());
-			fileProperties.remove(MandatoryProperties.version.name());
-			
-			GenericService genericService = new GenericServiceImpl();
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				genericService.deleteNodeTemporarily(commitId, nodeId);
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					Node oldFile = this.commonCode.getWritableFile(userId, filesystemId, filesystemVersion, oldFilePath, oldFileName);
+					Map<String, Object> fileProperties = new HashMap<String, Object>(this.commonCode.findNodeProperties(oldFile));
+					String nodeId = (String) fileProperties.remove(MandatoryProperties.nodeId.name());
+					fileProperties.remove(MandatoryProperties.filePath.name());
+					fileProperties.remove(MandatoryProperties.fileName.name());
+					fileProperties.remove(MandatoryProperties.version.name());
+					
+					try
+					{
+						this.commonCode.deleteNodeTemporarily(commitId, nodeId);
+					}
+					catch(NodeNotFound | NodeUnavailable exception)
+					{
+						throw new FileNotFound("ERROR: File not found! - \"" + (oldFilePath.equals("/") ? "" : oldFilePath) + "/" + oldFileName + "\"", exception);
+					}
+					
+					String fileNodeId = this.createNewFile(commitId, userId, filesystemId, filesystemVersion, newFilePath, newFileName, fileProperties);
+					unitOfWork.success();
+					return fileNodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch (NodeNotFound | NodeUnavailable e) {}
-			
-			String fileNodeId = this.createNewFile(commitId, userId, filesystemId, filesystemVersion, newFilePath, newFileName, fileProperties);
-			transaction.success();
-			return fileNodeId;
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public Map<String, Object> getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
 		{
-			Node file = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-			Map<String, Object> fileProperties = null;
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				fileProperties = this.commonCode.getNodeProperties(file);
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Node file = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+					Map<String, Object> fileProperties = new HashMap<String, Object>(this.commonCode.findNodeProperties(file));
+					fileProperties.put(MandatoryProperties.filePath.name(), filePath);
+					
+					unitOfWork.success();
+					return fileProperties;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			transaction.success();
-			return fileProperties;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Map<String, Map<String, Object>> getFiles(String userId, String filesystemId, int filesystemVersion, String filePath, List<String> fileNames) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
+			{
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Node parentDirectory = this.commonCode.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, false);
+					Map<String, Map<String, Object>> files = new LinkedHashMap<String, Map<String, Object>>();
+					for(String fileName : fileNames)
+					{
+						Map<String, Object> fileProperties = this.commonCode.findNodeProperties(this.commonCode.findFile(parentDirectory, filePath, fileName));
+						if(fileProperties != null)
+						{
+							fileProperties = new HashMap<String, Object>(fileProperties);
+							fileProperties.put(MandatoryProperties.filePath.name(), filePath);
+							files.put(fileName, fileProperties);
+						}
+					}
+					
+					unitOfWork.success();
+					return files;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 }
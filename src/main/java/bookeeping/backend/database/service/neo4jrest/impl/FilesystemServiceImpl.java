@@ -2,10 +2,10 @@ package bookeeping.backend.database.service.neo4jrest.impl;
 
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
@@ -18,99 +18,160 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
 
 public class FilesystemServiceImpl implements FilesystemService
 {
 	private Neo4JRestConnection neo4jRestConnection;
 	private GraphDatabaseService graphDatabaseService;
 	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
 	
 	public FilesystemServiceImpl()
+	{
+		this(Neo4JRestServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	FilesystemServiceImpl(CommonCode commonCode)
 	{
 		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
 		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.commonCode = commonCode;
+		this.filesystemLock = this.neo4jRestConnection.getFilesystemLock();
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
 	}
 	
 	@Override
 	public String createNewFilesystem(String userId, String filesystemId, Map<String, Object> filesystemProperties) throws UserNotFound, DuplicateFilesystem
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			try
-			{
-				this.commonCode.getFilesystem(userId, filesystemId);
-				throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
-			}
-			catch(FilesystemNotFound filesystemNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				Node filesystem = this.commonCode.createNode(NodeLabels.Filesystem);
-				filesystem.setProperty(MandatoryProperties.filesystemId.name(), filesystemId);
-				filesystem.setProperty(MandatoryProperties.version.name(), 0);
-				String filesystemNodeId = (String) filesystem.getProperty(MandatoryProperties.nodeId.name());
-				
-				for(Entry<String, Object> filesystemPropertiesEntry : filesystemProperties.entrySet())
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findFilesystem(userId, filesystemId) != null)
+					{
+						throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
+					}
+					
+					Node filesystem = this.commonCode.createNode(NodeLabels.Filesystem);
+					filesystem.setProperty(MandatoryProperties.filesystemId.name(), filesystemId);
+					filesystem.setProperty(MandatoryProperties.version.name(), 0);
+					String filesystemNodeId = (String) filesystem.getProperty(MandatoryProperties.nodeId.name());
+					
+					for(Entry<String, Object> filesystemPropertiesEntry : filesystemProperties.entrySet())
+					{
+						filesystem.setProperty(filesystemPropertiesEntry.getKey(), filesystemPropertiesEntry.getValue());
+					}
+					
+					Node rootDirectory = this.commonCode.createNode(NodeLabels.Directory);
+					Node user = this.commonCode.getUser(userId);
+					this.commonCode.indexPath(user.createRelationshipTo(filesystem, RelationshipLabels.has));
+					
+					filesystem.createRelationshipTo(rootDirectory, RelationshipLabels.has);
+					filesystem.setProperty(MandatoryProperties.rootNodeId.name(), rootDirectory.getProperty(MandatoryProperties.nodeId.name()));
+					unitOfWork.success();
+					return filesystemNodeId;
+				}
+				catch(RuntimeException runtimeException)
 				{
-					filesystem.setProperty(filesystemPropertiesEntry.getKey(), filesystemPropertiesEntry.getValue());
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
-				
-				Node rootDirectory = this.commonCode.createNode(NodeLabels.Directory);
-				Node user = this.commonCode.getUser(userId);
-				user.createRelationshipTo(filesystem, RelationshipLabels.has);
-				
-				filesystem.createRelationshipTo(rootDirectory, RelationshipLabels.has);
-				filesystem.setProperty(MandatoryProperties.rootNodeId.name(), rootDirectory.getProperty(MandatoryProperties.nodeId.name()));
-				transaction.success();
-				return filesystemNodeId;
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 	
 	@Override
 	public void restoreFilesystem(String commitId, String userId, String filesystemId, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DuplicateFilesystem, NodeNotFound, NodeUnavailable
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
 		{
-			try
-			{
-				this.commonCode.getFilesystem(userId, filesystemId);
-				throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
-			}
-			catch(FilesystemNotFound filesystemNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
-				transaction.success();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findFilesystem(userId, filesystemId) != null)
+					{
+						throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
+					}
+					
+					this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public Map<String, Object> getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
 		{
-			Node filesystem = this.commonCode.getFilesystem(userId, filesystemId);
-			Map<String, Object> filesystemProperties = null;
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				filesystemProperties = this.commonCode.getNodeProperties(filesystem);
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Node filesystem = this.commonCode.getFilesystem(userId, filesystemId);
+					Map<String, Object> filesystemProperties = this.commonCode.findNodeProperties(filesystem);
+					
+					unitOfWork.success();
+					return filesystemProperties;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			transaction.success();
-			return filesystemProperties;
+		}
+		finally
+		{
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public String getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
+			{
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Node rootDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
+					String nodeId = (String) rootDirectory.getProperty(MandatoryProperties.nodeId.name());
+					unitOfWork.success();
+					return nodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
+			}
+		}
+		finally
 		{
-			Node rootDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
-			String nodeId = (String) rootDirectory.getProperty(MandatoryProperties.nodeId.name());
-			transaction.success();
-			return nodeId;
+			lock.unlock();
 		}
 	}
 }
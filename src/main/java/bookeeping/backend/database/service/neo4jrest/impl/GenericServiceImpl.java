@@ -1,104 +1,218 @@
 package bookeeping.backend.database.service.neo4jrest.impl;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.NodeVersionResult;
+import bookeeping.backend.database.NodeVersionStatus;
 import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
 import bookeeping.backend.database.service.GenericService;
 import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
 
 public class GenericServiceImpl implements GenericService
 {
 	private Neo4JRestConnection neo4jRestConnection;
 	private GraphDatabaseService graphDatabaseService;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public GenericServiceImpl()
+	{
+		this(Neo4JRestServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	GenericServiceImpl(CommonCode commonCode)
 	{
 		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
 		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.commonCode = commonCode;
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
 	}
 	
+	/*
+	 * Goes through the expected version variant below, so that two writers cannot both add a version after
+	 * the same head. It starts from -1, which no head has, so the first answer is a conflict that reads the
+	 * head, and every later attempt goes after the head that won the last one.
+	 */
 	@Override
 	public String createNewVersion(String commitId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		int expectedVersion = -1;
+		while(true)
+		{
+			NodeVersionResult nodeVersionResult = this.createNewVersion(commitId, nodeId, expectedVersion, changeMetadata, changedProperties);
+			if(nodeVersionResult.getNodeVersionStatus() == NodeVersionStatus.Created)
+			{
+				return nodeVersionResult.getNodeId();
+			}
+			expectedVersion = nodeVersionResult.getHeadVersion();
+		}
+	}
+	
+	@Override
+	public NodeVersionResult createNewVersion(String commitId, String nodeId, int expectedVersion, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
+	{
+		for(int attempt = 1; ; attempt++)
 		{
-			Node versionedNode = this.commonCode.createNodeVersion(commitId, nodeId, changeMetadata, changedProperties);
-			String versionedNodeId = (String) versionedNode.getProperty(MandatoryProperties.nodeId.name());
-			transaction.success();
-			return versionedNodeId;
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				Node node = this.commonCode.getHeadVersion(nodeId);
+				int headVersion = (int) node.getProperty(MandatoryProperties.version.name());
+				if(headVersion == expectedVersion)
+				{
+					Node versionedNode = this.commonCode.createNodeVersionIfHead(commitId, node, changeMetadata, changedProperties);
+					if(versionedNode != null)
+					{
+						String versionedNodeId = (String) versionedNode.getProperty(MandatoryProperties.nodeId.name());
+						unitOfWork.success();
+						return new NodeVersionResult(NodeVersionStatus.Created, versionedNodeId, expectedVersion + 1);
+					}
+					headVersion = (int) this.commonCode.getHeadVersion(nodeId).getProperty(MandatoryProperties.version.name());
+				}
+				
+				unitOfWork.success();
+				return new NodeVersionResult(NodeVersionStatus.Conflict, null, headVersion);
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
 		}
 	}
 	
 	@Override
 	public Map<String, Object> getNode(String nodeId) throws NodeNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			Node node = this.commonCode.getNode(nodeId);
-			Map<String, Object> nodeProperties = this.commonCode.getNodeProperties(node);
-			transaction.success();
-			return nodeProperties;
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				Node node = this.commonCode.getNode(nodeId);
+				Map<String, Object> nodeProperties = this.commonCode.getNodeProperties(node);
+				unitOfWork.success();
+				return nodeProperties;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
+		}
+	}
+	
+	@Override
+	public Map<String, Map<String, Object>> getNodes(List<String> nodeIds)
+	{
+		for(int attempt = 1; ; attempt++)
+		{
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				Map<String, Map<String, Object>> nodes = new LinkedHashMap<String, Map<String, Object>>();
+				for(String nodeId : nodeIds)
+				{
+					Map<String, Object> nodeProperties = this.commonCode.findNodeProperties(this.commonCode.findNode(nodeId));
+					if(nodeProperties != null)
+					{
+						nodes.put(nodeId, nodeProperties);
+					}
+				}
+				
+				unitOfWork.success();
+				return nodes;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
 		}
 	}
 	
 	@Override
 	public Map<String, Object> getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		Map<String, Object> cachedProperties = this.commonCode.getCachedNodeVersion(nodeId, version);
+		if(cachedProperties != null)
 		{
-			Node node = this.commonCode.getNodeVersion(nodeId, version);
-			Map<String, Object> properties = this.commonCode.getNodeProperties(node);
-			transaction.success();
-			return properties;
+			return cachedProperties;
+		}
+		
+		for(int attempt = 1; ; attempt++)
+		{
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				Node node = this.commonCode.getNodeVersion(nodeId, version);
+				Map<String, Object> properties = this.commonCode.getNodeVersionProperties(node);
+				unitOfWork.success();
+				return properties;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
 		}
 	}
 
 	@Override
 	public void deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			this.commonCode.deleteNodeTemporarily(commitId, nodeId);
-			transaction.success();
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				this.commonCode.deleteNodeTemporarily(commitId, nodeId);
+				unitOfWork.success();
+				return;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
 		}
 	}
 	
 	@Override
 	public void changeNodeProperties(String nodeId, Map<String, Object> properties) throws NodeNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			Node node = this.commonCode.getNode(nodeId);
-			for(Entry<String, Object> entry : properties.entrySet())
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 			{
-				String key = entry.getKey();
-				boolean found = false;
-				for(MandatoryProperties mandatoryProperty : MandatoryProperties.values())
+				Node node = this.commonCode.getWritableNode(nodeId);
+				this.commonCode.invalidateNode(node);
+				for(Entry<String, Object> entry : properties.entrySet())
 				{
-					if(key.equals(mandatoryProperty.name()))
+					String key = entry.getKey();
+					boolean found = false;
+					for(MandatoryProperties mandatoryProperty : MandatoryProperties.values())
 					{
-						found = true;
-						break;
+						if(key.equals(mandatoryProperty.name()))
+						{
+							found = true;
+							break;
+						}
+					}
+					
+					if(!found)
+					{
+						node.setProperty(key, entry.getValue());
 					}
 				}
 				
-				if(!found)
-				{
-					node.setProperty(key, entry.getValue());
-				}
+				unitOfWork.success();
+				return;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
-			
-			transaction.success();
 		}
 	}
 }
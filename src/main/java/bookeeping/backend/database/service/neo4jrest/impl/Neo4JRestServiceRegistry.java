@@ -0,0 +1,106 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import bookeeping.backend.database.service.AutoIncrementService;
+import bookeeping.backend.database.service.CommitService;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.ServiceRegistry;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.database.service.XrayService;
+
+/*
+ * One CommonCode and one instance of every service for the Neo4J REST backend, wired to each other, so
+ * that a service that calls another one (a move, a commit) uses the shared instance instead of
+ * building its own. None of them keep state between calls, so all threads share them. The registry is
+ * built on first use by the class loader, which also makes that first use thread-safe.
+ */
+public class Neo4JRestServiceRegistry implements ServiceRegistry
+{
+	private static class Holder
+	{
+		private static final Neo4JRestServiceRegistry neo4jRestServiceRegistry = new Neo4JRestServiceRegistry();
+	}
+	
+	private final CommonCode commonCode;
+	private final AutoIncrementService autoIncrementService;
+	private final GenericService genericService;
+	private final UserService userService;
+	private final FilesystemService filesystemService;
+	private final DirectoryService directoryService;
+	private final FileService fileService;
+	private final XrayService xrayService;
+	private final CommitService commitService;
+	
+	private Neo4JRestServiceRegistry()
+	{
+		this.commonCode = new CommonCode();
+		this.autoIncrementService = this.commonCode.getAutoIncrementService();
+		this.genericService = new GenericServiceImpl(this.commonCode);
+		this.userService = new UserServiceImpl(this.commonCode);
+		this.filesystemService = new FilesystemServiceImpl(this.commonCode);
+		this.directoryService = new DirectoryServiceImpl(this.commonCode);
+		this.fileService = new FileServiceImpl(this.commonCode);
+		this.xrayService = new XrayServiceImpl(this.commonCode);
+		this.commitService = new CommitServiceImpl(this.commonCode, this.directoryService, this.fileService, this.genericService);
+	}
+	
+	public static Neo4JRestServiceRegistry getInstance()
+	{
+		return Holder.neo4jRestServiceRegistry;
+	}
+	
+	public CommonCode getCommonCode()
+	{
+		return this.commonCode;
+	}
+	
+	@Override
+	public AutoIncrementService getAutoIncrementService()
+	{
+		return this.autoIncrementService;
+	}
+	
+	@Override
+	public CommitService getCommitService()
+	{
+		return this.commitService;
+	}
+	
+	@Override
+	public DirectoryService getDirectoryService()
+	{
+		return this.directoryService;
+	}
+	
+	@Override
+	public FileService getFileService()
+	{
+		return this.fileService;
+	}
+	
+	@Override
+	public FilesystemService getFilesystemService()
+	{
+		return this.filesystemService;
+	}
+	
+	@Override
+	public GenericService getGenericService()
+	{
+		return this.genericService;
+	}
+	
+	@Override
+	public UserService getUserService()
+	{
+		return this.userService;
+	}
+	
+	@Override
+	public XrayService getXrayService()
+	{
+		return this.xrayService;
+	}
+}
@@ -0,0 +1,72 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.exception.NodeNotFound;
+
+public class PathIndexMigration
+{
+	private Neo4JRestConnection neo4jRestConnection;
+	private GraphDatabaseService graphDatabaseService;
+	private CommonCode commonCode;
+	
+	public PathIndexMigration()
+	{
+		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
+		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
+		this.commonCode = Neo4JRestServiceRegistry.getInstance().getCommonCode();
+	}
+	
+	/*
+	 * Backfills pathKey on the has relationships written before the path index existed, one transaction
+	 * per parent node. Only parents with unindexed children are picked up, so it can be re-run. A root
+	 * directory has no name and never gets a pathKey, so it does not count as unindexed.
+	 */
+	public int migrate() throws NodeNotFound
+	{
+		List<String> parentNodeIds = new ArrayList<String>();
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			String cypherQuery = "MATCH (n)-[r:has]->(m) WHERE ((m:Directory AND has(m.directoryName)) OR m:File OR m:Filesystem) AND NOT has(r.pathKey) RETURN DISTINCT n.nodeId AS nodeId";
+			Iterator<Map<String, Object>> iterator = this.neo4jRestConnection.runCypherQuery(cypherQuery, new HashMap<String, Object>());
+			while(iterator.hasNext())
+			{
+				parentNodeIds.add((String) iterator.next().get("nodeId"));
+			}
+			
+			transaction.success();
+		}
+		
+		for(String parentNodeId : parentNodeIds)
+		{
+			try(Transaction transaction = this.graphDatabaseService.beginTx())
+			{
+				for(Relationship relationship : this.commonCode.getNode(parentNodeId).getRelationships(Direction.OUTGOING, RelationshipLabels.has))
+				{
+					this.commonCode.indexPath(relationship);
+				}
+				
+				transaction.success();
+			}
+		}
+		
+		return parentNodeIds.size();
+	}
+	
+	public static void main(String[] args) throws NodeNotFound
+	{
+		int migratedParents = new PathIndexMigration().migrate();
+		System.out.println("Migrated parent nodes: " + migratedParents);
+	}
+}
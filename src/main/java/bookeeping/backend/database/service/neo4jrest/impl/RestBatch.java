@@ -0,0 +1,338 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.neo4j.NodeLabels;
+
+/*
+ * Records the writes of one service call and sends them to the server's batch endpoint as a single
+ * request, which the server also runs as a single transaction. A node or relationship created in the
+ * batch is referenced by its job ("{3}") until the flush, after which its reference points at the
+ * stored entity.
+ */
+public class RestBatch
+{
+	public static class Reference
+	{
+		private String path;
+		private String uri;
+		private final Node source;
+		private final Map<String, Object> properties;
+		private final String type;
+		private final Reference startNode;
+		private final Reference endNode;
+		
+		private Reference(String path, String uri, Node source, Map<String, Object> properties, String type, Reference startNode, Reference endNode)
+		{
+			this.path = path;
+			this.uri = uri;
+			this.source = source;
+			this.properties = properties;
+			this.type = type;
+			this.startNode = startNode;
+			this.endNode = endNode;
+		}
+		
+		/*
+		 * The stored node this reference stands for: the node itself, or the node a copy was made from,
+		 * whose children the copy shares.
+		 */
+		public Node getSource()
+		{
+			return this.source;
+		}
+		
+		public Map<String, Object> getProperties()
+		{
+			return this.properties;
+		}
+		
+		public String getNodeId()
+		{
+			return (String) this.properties.get(MandatoryProperties.nodeId.name());
+		}
+		
+		public String getType()
+		{
+			return this.type;
+		}
+		
+		public Reference getStartNode()
+		{
+			return this.startNode;
+		}
+		
+		public Reference getEndNode()
+		{
+			return this.endNode;
+		}
+	}
+	
+	private String restEndpoint;
+	private ObjectMapper objectMapper;
+	private List<Map<String, Object>> jobs;
+	private Map<Integer, Reference> pendingReferences;
+	private Map<Long, Reference> nodeCopies;
+	private Map<Long, Reference> relationshipCopies;
+	private Map<Reference, List<Reference>> createdRelationships;
+	
+	public RestBatch()
+	{
+		this(Neo4JRestConnection.getInstance().getRestEndpoint());
+	}
+	
+	public RestBatch(String restEndpoint)
+	{
+		this.restEndpoint = restEndpoint.endsWith("/") ? restEndpoint : restEndpoint + "/";
+		this.objectMapper = new ObjectMapper();
+		this.jobs = new ArrayList<Map<String, Object>>();
+		this.pendingReferences = new HashMap<Integer, Reference>();
+		this.nodeCopies = new HashMap<Long, Reference>();
+		this.relationshipCopies = new HashMap<Long, Reference>();
+		this.createdRelationships = new HashMap<Reference, List<Reference>>();
+	}
+	
+	public Reference getNode(Node node)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for(String key : node.getPropertyKeys())
+		{
+			properties.put(key, node.getProperty(key));
+		}
+		
+		return new Reference("/node/" + node.getId(), this.restEndpoint + "node/" + node.getId(), node, properties, null, null, null);
+	}
+	
+	public Reference getRelationship(Relationship relationship, Reference startNode, Reference endNode)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for(String key : relationship.getPropertyKeys())
+		{
+			properties.put(key, relationship.getProperty(key));
+		}
+		
+		return new Reference("/relationship/" + relationship.getId(), this.restEndpoint + "relationship/" + relationship.getId(), null, properties, relationship.getType().name(), startNode, endNode);
+	}
+	
+	public Reference createNode(NodeLabels nodeLabel, Map<String, Object> nodeProperties, Node source)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>(nodeProperties);
+		Reference node = this.addJob("POST", "/node", properties, source, properties, null, null, null);
+		this.addJob("POST", node.path + "/labels", nodeLabel.name(), null, null, null, null, null);
+		return node;
+	}
+	
+	public Reference createRelationship(Reference startNode, Reference endNode, RelationshipType relationshipType, Map<String, Object> relationshipProperties)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>(relationshipProperties);
+		Map<String, Object> body = new LinkedHashMap<String, Object>();
+		body.put("to", endNode.uri);
+		body.put("type", relationshipType.name());
+		body.put("data", properties);
+		
+		Reference relationship = this.addJob("POST", startNode.path + "/relationships", body, null, properties, relationshipType.name(), startNode, endNode);
+		List<Reference> relationships = this.createdRelationships.get(startNode);
+		if(relationships == null)
+		{
+			relationships = new ArrayList<Reference>();
+			this.createdRelationships.put(startNode, relationships);
+		}
+		relationships.add(relationship);
+		return relationship;
+	}
+	
+	public List<Reference> getCreatedRelationships(Reference startNode)
+	{
+		List<Reference> relationships = this.createdRelationships.get(startNode);
+		return relationships == null ? new ArrayList<Reference>() : relationships;
+	}
+	
+	public void setProperty(Reference entity, String key, Object value)
+	{
+		entity.properties.put(key, value);
+		this.addJob("PUT", entity.path + "/properties/" + this.encode(key), value, null, null, null, null, null);
+	}
+	
+	public void removeProperty(Reference entity, String key)
+	{
+		entity.properties.remove(key);
+		this.addJob("DELETE", entity.path + "/properties/" + this.encode(key), null, null, null, null, null, null);
+	}
+	
+	public void delete(Reference entity)
+	{
+		this.addJob("DELETE", entity.path, null, null, null, null, null, null);
+	}
+	
+	/*
+	 * The copies made of stored nodes and relationships in this batch, so that a second walk through the
+	 * same node in the same call writes to the copy instead of copying it again.
+	 */
+	public Reference getCopy(Node node)
+	{
+		return this.nodeCopies.get(node.getId());
+	}
+	
+	public void putCopy(Node node, Reference copy)
+	{
+		this.nodeCopies.put(node.getId(), copy);
+	}
+	
+	public Reference getCopy(Relationship relationship)
+	{
+		return this.relationshipCopies.get(relationship.getId());
+	}
+	
+	public void putCopy(Relationship relationship, Reference copy)
+	{
+		this.relationshipCopies.put(relationship.getId(), copy);
+	}
+	
+	public int size()
+	{
+		return this.jobs.size();
+	}
+	
+	public void flush()
+	{
+		if(this.jobs.isEmpty())
+		{
+			return;
+		}
+		
+		try
+		{
+			HttpURLConnection httpURLConnection = (HttpURLConnection) new URL(this.restEndpoint + "batch").openConnection();
+			httpURLConnection.setRequestMethod("POST");
+			httpURLConnection.setDoOutput(true);
+			httpURLConnection.setRequestProperty("Content-Type", "application/json");
+			httpURLConnection.setRequestProperty("Accept", "application/json");
+			try(OutputStream outputStream = httpURLConnection.getOutputStream())
+			{
+				this.objectMapper.writeValue(outputStream, this.jobs);
+			}
+			
+			/*
+			 * The server names the exception that failed the batch (a DeadlockDetectedException, say) in the
+			 * body of the error response, which is kept in the message so that the retry policy can see it.
+			 */
+			int responseCode = httpURLConnection.getResponseCode();
+			if(responseCode != HttpURLConnection.HTTP_OK)
+			{
+				throw new IllegalStateException("ERROR: REST batch failed! - \"" + responseCode + " " + httpURLConnection.getResponseMessage() + " " + this.readError(httpURLConnection) + "\"");
+			}
+			
+			List<Map<String, Object>> results = null;
+			try(InputStream inputStream = httpURLConnection.getInputStream())
+			{
+				results = this.objectMapper.readValue(inputStream, new TypeReference<List<Map<String, Object>>>() {});
+			}
+			
+			for(Map<String, Object> result : results)
+			{
+				Reference reference = this.pendingReferences.get(((Number) result.get("id")).intValue());
+				String location = (String) result.get("location");
+				if(reference != null && location != null)
+				{
+					reference.path = location.substring(location.lastIndexOf("/", location.lastIndexOf("/") - 1));
+					reference.uri = location;
+				}
+			}
+		}
+		catch(IOException ioException)
+		{
+			throw new IllegalStateException("ERROR: REST batch failed! - \"" + this.restEndpoint + "batch\"", ioException);
+		}
+		finally
+		{
+			this.jobs.clear();
+			this.pendingReferences.clear();
+		}
+	}
+	
+	/*
+	 * The graph id of an entity, once the batch that created it has been flushed.
+	 */
+	public long getId(Reference reference)
+	{
+		if(reference.path.startsWith("{"))
+		{
+			throw new IllegalStateException("ERROR: Batch not flushed yet! - \"" + reference.path + "\"");
+		}
+		
+		return Long.parseLong(reference.path.substring(reference.path.lastIndexOf("/") + 1));
+	}
+	
+	private Reference addJob(String method, String to, Object body, Node source, Map<String, Object> properties, String type, Reference startNode, Reference endNode)
+	{
+		int jobId = this.jobs.size();
+		Map<String, Object> job = new LinkedHashMap<String, Object>();
+		job.put("method", method);
+		job.put("to", to);
+		if(body != null)
+		{
+			job.put("body", body);
+		}
+		job.put("id", jobId);
+		this.jobs.add(job);
+		
+		if(properties == null)
+		{
+			return null;
+		}
+		
+		Reference reference = new Reference("{" + jobId + "}", "{" + jobId + "}", source, properties, type, startNode, endNode);
+		this.pendingReferences.put(jobId, reference);
+		return reference;
+	}
+	
+	private String readError(HttpURLConnection httpURLConnection) throws IOException
+	{
+		ByteArrayOutputStream error = new ByteArrayOutputStream();
+		try(InputStream inputStream = httpURLConnection.getErrorStream())
+		{
+			if(inputStream == null)
+			{
+				return "";
+			}
+			
+			byte[] buffer = new byte[4096];
+			for(int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer))
+			{
+				error.write(buffer, 0, read);
+			}
+		}
+		return error.toString("UTF-8");
+	}
+	
+	private String encode(String key)
+	{
+		try
+		{
+			return URLEncoder.encode(key, "UTF-8");
+		}
+		catch(IOException ioException)
+		{
+			throw new IllegalStateException(ioException);
+		}
+	}
+}
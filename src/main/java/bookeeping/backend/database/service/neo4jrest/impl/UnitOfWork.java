@@ -0,0 +1,193 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.NodeCache;
+import bookeeping.backend.utilities.cache.NodeSnapshot;
+
+/*
+ * The unit of one service call, shared with every service call made inside it. The outermost call
+ * begins it and a nested call joins it without beginning one of its own. Unlike the embedded unit it
+ * does not make the request atomic: the REST transaction holds nothing on the server, and every
+ * service method sends its writes in a RestBatch, or in requests of their own, that the server
+ * commits as it gets them. A request that fails partway through keeps what was sent before the
+ * failure, so a moveFile that fails after deleteNodeTemporarily leaves the file deleted and not
+ * created again. A nested call that is closed without success() still marks the outer one for
+ * rollback, so that the request reports the failure, but what it sent stays. The unit holds the retry
+ * scope while it is open, so a nested call passes its failure up instead of retrying.
+ *
+ * Reads go to the server one request at a time and leave nothing behind to commit, so a read
+ * transaction is closed without success() whether the getter called it or not.
+ *
+ * Only a read caches what it reads, under the stamp taken when the outermost read began; a getter
+ * inside a write reads past the node cache, since what it sees may still be rolled back. The snapshots
+ * of the nodes a write changed are dropped when its outermost unit is closed, after the commit, so a
+ * reader that read the node before the commit cannot leave it cached afterwards.
+ */
+public class UnitOfWork implements AutoCloseable
+{
+	private static final ThreadLocal<UnitOfWork> currentUnitOfWork = new ThreadLocal<UnitOfWork>();
+	private final UnitOfWork outerUnitOfWork;
+	private final Transaction transaction;
+	private final TransactionRetry.Scope scope;
+	private final boolean readOnly;
+	private final long snapshotStamp;
+	private Map<NodeCache, Set<String>> invalidations;
+	private boolean success;
+	private boolean rollbackOnly;
+	
+	private UnitOfWork(UnitOfWork outerUnitOfWork, Transaction transaction, TransactionRetry.Scope scope, boolean readOnly)
+	{
+		this.outerUnitOfWork = outerUnitOfWork;
+		this.transaction = transaction;
+		this.scope = scope;
+		this.readOnly = readOnly;
+		this.snapshotStamp = outerUnitOfWork == null && readOnly ? NodeSnapshot.nextStamp() : 0;
+	}
+	
+	public static UnitOfWork begin(GraphDatabaseService graphDatabaseService, TransactionRetry transactionRetry)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork != null)
+		{
+			if(currentUnitOfWork.readOnly)
+			{
+				throw new IllegalStateException("ERROR: Cannot write inside a read transaction!");
+			}
+			
+			return new UnitOfWork(currentUnitOfWork, currentUnitOfWork.transaction, transactionRetry.enter(), false);
+		}
+		
+		return UnitOfWork.beginOutermost(graphDatabaseService, transactionRetry, false);
+	}
+	
+	public static UnitOfWork beginRead(GraphDatabaseService graphDatabaseService, TransactionRetry transactionRetry)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork != null)
+		{
+			return new UnitOfWork(currentUnitOfWork, currentUnitOfWork.transaction, transactionRetry.enter(), true);
+		}
+		
+		return UnitOfWork.beginOutermost(graphDatabaseService, transactionRetry, true);
+	}
+	
+	private static UnitOfWork beginOutermost(GraphDatabaseService graphDatabaseService, TransactionRetry transactionRetry, boolean readOnly)
+	{
+		TransactionRetry.Scope scope = transactionRetry.enter();
+		try
+		{
+			UnitOfWork unitOfWork = new UnitOfWork(null, graphDatabaseService.beginTx(), scope, readOnly);
+			UnitOfWork.currentUnitOfWork.set(unitOfWork);
+			return unitOfWork;
+		}
+		catch(RuntimeException runtimeException)
+		{
+			scope.close();
+			throw runtimeException;
+		}
+	}
+	
+	/*
+	 * The stamp for snapshots read in the calling thread's unit of work, or 0 when what it reads must not
+	 * be cached.
+	 */
+	public static long getSnapshotStamp()
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		return currentUnitOfWork == null ? 0 : currentUnitOfWork.snapshotStamp;
+	}
+	
+	/*
+	 * Outside a write, for the migrations that commit on their own, the snapshot is dropped right away.
+	 */
+	public static void invalidateOnClose(NodeCache nodeCache, String nodeId)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork == null || currentUnitOfWork.readOnly)
+		{
+			nodeCache.invalidate(nodeId);
+			return;
+		}
+		
+		if(currentUnitOfWork.invalidations == null)
+		{
+			currentUnitOfWork.invalidations = new HashMap<NodeCache, Set<String>>();
+		}
+		
+		Set<String> nodeIds = currentUnitOfWork.invalidations.get(nodeCache);
+		if(nodeIds == null)
+		{
+			nodeIds = new HashSet<String>();
+			currentUnitOfWork.invalidations.put(nodeCache, nodeIds);
+		}
+		nodeIds.add(nodeId);
+	}
+	
+	public void success()
+	{
+		this.success = true;
+	}
+	
+	@Override
+	public void close()
+	{
+		try
+		{
+			if(this.outerUnitOfWork != null)
+			{
+				if(! this.success && ! this.readOnly)
+				{
+					this.outerUnitOfWork.rollbackOnly = true;
+				}
+				return;
+			}
+			
+			UnitOfWork.currentUnitOfWork.remove();
+			if(this.success && ! this.readOnly)
+			{
+				if(this.rollbackOnly)
+				{
+					this.transaction.close();
+					throw new IllegalStateException("ERROR: Transaction was marked for rollback by a nested service call!");
+				}
+				
+				this.transaction.success();
+			}
+			
+			this.transaction.close();
+		}
+		finally
+		{
+			if(this.outerUnitOfWork == null)
+			{
+				this.invalidate();
+			}
+			this.scope.close();
+		}
+	}
+	
+	private void invalidate()
+	{
+		if(this.invalidations == null)
+		{
+			return;
+		}
+		
+		for(Entry<NodeCache, Set<String>> entry : this.invalidations.entrySet())
+		{
+			for(String nodeId : entry.getValue())
+			{
+				entry.getKey().invalidate(nodeId);
+			}
+		}
+	}
+}
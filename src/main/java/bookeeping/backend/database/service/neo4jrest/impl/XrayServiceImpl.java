@@ -4,53 +4,71 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
-import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.Transaction;
 
 import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
 import bookeeping.backend.database.service.XrayService;
 import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
 
 public class XrayServiceImpl implements XrayService
 {
 	private Neo4JRestConnection neo4jRestConnection;
-	private GraphDatabaseService graphDatabaseService;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public XrayServiceImpl()
+	{
+		this(Neo4JRestServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	XrayServiceImpl(CommonCode commonCode)
 	{
 		this.neo4jRestConnection = Neo4JRestConnection.getInstance();
-		this.graphDatabaseService = this.neo4jRestConnection.getGraphDatabaseServiceObject();
-		this.commonCode = new CommonCode();
+		this.commonCode = commonCode;
+		this.transactionRetry = this.neo4jRestConnection.getTransactionRetry();
 	}
 	
 	@Override
 	public List<Map<String, Object>> xrayNode(String nodeId) throws NodeNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
-			List<Node> children = this.commonCode.getChildren(nodeId);
-			
-			for(Node child : children)
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
 			{
-				xray.add(this.commonCode.getNodeProperties(child));
+				List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
+				List<Node> children = this.commonCode.getChildren(nodeId);
+				
+				for(Node child : children)
+				{
+					xray.add(this.commonCode.getNodeProperties(child));
+				}
+				
+				unitOfWork.success();
+				return xray;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
-			
-			transaction.success();
-			return xray;
 		}
 	}
 	
 	@Override
 	public List<Map<String, Object>> xrayVersion(String nodeId) throws NodeNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			List<Map<String, Object>> versions =  this.commonCode.getNodeVersions(nodeId);
-			transaction.success();
-			return versions;
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				List<Map<String, Object>> versions =  this.commonCode.getNodeVersions(nodeId);
+				unitOfWork.success();
+				return versions;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
 		}
 		
 	}
@@ -58,18 +76,25 @@ public class XrayServiceImpl implements XrayService
 	@Override
 	public List<Map<String, Object>> xrayDeleted(String nodeId) throws NodeNotFound
 	{
-		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		for(int attempt = 1; ; attempt++)
 		{
-			List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
-			List<Node> children = this.commonCode.getDeletedChildren(nodeId);
-			
-			for(Node child : children)
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
+				List<Node> children = this.commonCode.getDeletedChildren(nodeId);
+				
+				for(Node child : children)
+				{
+					xray.add(this.commonCode.getNodeProperties(child));
+				}
+				
+				unitOfWork.success();
+				return xray;
+			}
+			catch(RuntimeException runtimeException)
 			{
-				xray.add(this.commonCode.getNodeProperties(child));
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
-			
-			transaction.success();
-			return xray;
 		}
 	}
 }
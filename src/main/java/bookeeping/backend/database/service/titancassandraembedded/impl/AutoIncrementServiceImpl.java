@@ -3,48 +3,58 @@ package bookeeping.backend.database.service.titancassandraembedded.impl;
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
 import bookeeping.backend.database.service.AutoIncrementService;
-import bookeeping.backend.exception.NodeNotFound;
-import bookeeping.backend.utilities.AlphaNumericOperation;
+import bookeeping.backend.utilities.AutoIncrementLease;
+import bookeeping.backend.utilities.Base62Codec;
+import bookeeping.backend.utilities.TransactionRetry;
 
 import com.thinkaurelius.titan.core.TitanGraph;
 import com.thinkaurelius.titan.core.TitanTransaction;
 import com.tinkerpop.blueprints.Vertex;
 
-public class AutoIncrementServiceImpl implements AutoIncrementService
+public class AutoIncrementServiceImpl implements AutoIncrementService, AutoIncrementLease.BlockReserver
 {
 	private TitanGraph titanGraph;
-	private CommonCode commonCode;
+	private AutoIncrementLease autoIncrementLease;
+	private TransactionRetry transactionRetry;
 	
 	public AutoIncrementServiceImpl()
 	{
 		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this.autoIncrementLease = TitanCassandraEmbeddedConnection.getInstance().getAutoIncrementLease();
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
 	}
 	
 	@Override
 	public String getNextAutoIncrement()
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		
-		try
+		return Base62Codec.encode(this.autoIncrementLease.next(this));
+	}
+	
+	@Override
+	public long reserveBlock(int blockSize)
+	{
+		for(int attempt = 1; ; attempt++)
 		{
-			Vertex autoIncrement = null;
+			TitanTransaction titanTransaction = this.titanGraph.newTransaction();
 			try
 			{
-				autoIncrement = this.commonCode.getNode("0");
+				Vertex autoIncrement = titanTransaction.getVertices(MandatoryProperties.nodeId.name(), "0").iterator().next();
+				long nextAutoIncrement = Base62Codec.decode((String) autoIncrement.getProperty(MandatoryProperties.next.name()));
+				autoIncrement.setProperty(MandatoryProperties.next.name(), Base62Codec.encode(nextAutoIncrement + blockSize));
+				
+				titanTransaction.commit();
+				return nextAutoIncrement;
 			}
-			catch (NodeNotFound e) {}
-			String nextAutoIncrement = (String) autoIncrement.getProperty(MandatoryProperties.next.name());
-			autoIncrement.setProperty(MandatoryProperties.next.name(), AlphaNumericOperation.add(nextAutoIncrement, 1));
-			
-			titanTransaction.commit();
-			return nextAutoIncrement;
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
+			finally
 			{
-				titanTransaction.rollback();
+				if(titanTransaction.isOpen())
+				{
+					titanTransaction.rollback();
+				}
 			}
 		}
 	}
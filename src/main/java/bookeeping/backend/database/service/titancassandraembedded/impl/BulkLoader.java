@@ -0,0 +1,468 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.configuration.BaseConfiguration;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.titan.NodeLabels;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.utilities.Base62Codec;
+import bookeeping.backend.utilities.configurationproperties.DatabaseConnectionProperty;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.schema.TitanManagement;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+public class BulkLoader
+{
+	public interface ProgressListener
+	{
+		public void progress(long lines, long vertices, long edges, long elapsedMillis);
+	}
+	
+	private TitanGraph titanGraph;
+	private PathStorageMode pathStorageMode;
+	private int commitInterval;
+	private int progressInterval;
+	private ProgressListener progressListener;
+	
+	private TitanTransaction titanTransaction;
+	private Map<String, Vertex> userCache;
+	private Map<String, Vertex> pathKeyCache;
+	private Map<String, Vertex> rootDirectoryCache;
+	private Vertex autoIncrement;
+	private long nextAutoIncrement;
+	private long vertices;
+	private long edges;
+	
+	public BulkLoader(TitanGraph titanGraph, PathStorageMode pathStorageMode, int commitInterval, int progressInterval, ProgressListener progressListener)
+	{
+		if(commitInterval < 1 || progressInterval < 1)
+		{
+			throw new IllegalArgumentException("ERROR: Bulk load intervals must be positive! - \"" + commitInterval + ", " + progressInterval + "\"");
+		}
+		
+		this.titanGraph = titanGraph;
+		this.pathStorageMode = pathStorageMode;
+		this.commitInterval = commitInterval;
+		this.progressInterval = progressInterval;
+		this.progressListener = progressListener;
+	}
+	
+	/*
+	 * Streams the same manifest as the Neo4j bulk loader ("type<TAB>path" plus "<TAB>key=value"
+	 * properties) into a graph opened with TitanCassandraEmbeddedConnection.openBatchLoadingGraph.
+	 * Every commit interval the transaction is committed and the number of loaded lines is written next to
+	 * the manifest; a new run resumes after it, and entries that are already present are skipped.
+	 */
+	public long load(String manifestLocation, String commitId) throws IOException, UserNotFound, FilesystemNotFound
+	{
+		Path manifest = Paths.get(manifestLocation);
+		Path checkpoint = Paths.get(manifestLocation + ".checkpoint");
+		long checkpointLine = Files.exists(checkpoint) ? Long.parseLong(new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim()) : 0;
+		long startTime = System.currentTimeMillis();
+		long line = 0;
+		
+		this.vertices = 0;
+		this.edges = 0;
+		this.open();
+		try(BufferedReader bufferedReader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8))
+		{
+			String entry = null;
+			while((entry = bufferedReader.readLine()) != null)
+			{
+				line++;
+				if(line <= checkpointLine || entry.trim().isEmpty() || entry.startsWith("#"))
+				{
+					continue;
+				}
+				
+				this.loadEntry(line, entry, commitId);
+				
+				if(line % this.commitInterval == 0)
+				{
+					this.commit();
+					this.writeCheckpoint(checkpoint, line);
+					this.open();
+				}
+				
+				if(line % this.progressInterval == 0 && this.progressListener != null)
+				{
+					this.progressListener.progress(line, this.vertices, this.edges, System.currentTimeMillis() - startTime);
+				}
+			}
+			
+			this.commit();
+		}
+		finally
+		{
+			if(this.titanTransaction.isOpen())
+			{
+				this.titanTransaction.rollback();
+			}
+		}
+		
+		this.writeCheckpoint(checkpoint, line);
+		if(this.progressListener != null)
+		{
+			this.progressListener.progress(line, this.vertices, this.edges, System.currentTimeMillis() - startTime);
+		}
+		
+		return this.vertices;
+	}
+	
+	private void open()
+	{
+		this.titanTransaction = this.titanGraph.newTransaction();
+		this.userCache = new HashMap<String, Vertex>();
+		this.pathKeyCache = new HashMap<String, Vertex>();
+		this.rootDirectoryCache = new HashMap<String, Vertex>();
+		this.autoIncrement = this.titanTransaction.getVertices(MandatoryProperties.nodeId.name(), "0").iterator().next();
+		this.nextAutoIncrement = Base62Codec.decode((String) this.autoIncrement.getProperty(MandatoryProperties.next.name()));
+	}
+	
+	private void commit()
+	{
+		this.autoIncrement.setProperty(MandatoryProperties.next.name(), Base62Codec.encode(this.nextAutoIncrement));
+		this.titanTransaction.commit();
+	}
+	
+	private void writeCheckpoint(Path checkpoint, long line) throws IOException
+	{
+		Path temporaryCheckpoint = Paths.get(checkpoint.toString() + ".tmp");
+		Files.write(temporaryCheckpoint, String.valueOf(line).getBytes(StandardCharsets.UTF_8));
+		Files.move(temporaryCheckpoint, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	private void loadEntry(long line, String entry, String commitId) throws UserNotFound, FilesystemNotFound
+	{
+		String[] fields = entry.split("\t");
+		if(fields.length < 2 || ! fields[1].startsWith("/"))
+		{
+			throw new IllegalArgumentException("ERROR: Malformed manifest entry! - \"" + line + "\"");
+		}
+		
+		Map<String, Object> properties = new HashMap<String, Object>();
+		for(int i = 2; i < fields.length; i++)
+		{
+			int separator = fields[i].indexOf('=');
+			if(separator < 1)
+			{
+				throw new IllegalArgumentException("ERROR: Malformed manifest property! - \"" + line + "\"");
+			}
+			properties.put(fields[i].substring(0, separator), fields[i].substring(separator + 1));
+		}
+		
+		NodeLabels nodeLabel = NodeLabels.valueOf(fields[0]);
+		String[] segments = fields[1].substring(1).split("/");
+		if(nodeLabel == NodeLabels.User && segments.length == 1)
+		{
+			this.loadUser(segments[0], properties);
+		}
+		else if(nodeLabel == NodeLabels.Filesystem && segments.length == 2)
+		{
+			this.loadFilesystem(segments[0], segments[1], properties);
+		}
+		else if((nodeLabel == NodeLabels.Directory || nodeLabel == NodeLabels.File) && segments.length > 2)
+		{
+			Vertex rootDirectory = this.getRootDirectory(segments[0], segments[1]);
+			List<String> parentNames = Arrays.asList(segments).subList(2, segments.length - 1);
+			String name = segments[segments.length - 1];
+			if(nodeLabel == NodeLabels.Directory)
+			{
+				this.loadDirectory(rootDirectory, parentNames, name, properties, commitId);
+			}
+			else
+			{
+				this.loadFile(rootDirectory, parentNames, name, properties, commitId);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("ERROR: Malformed manifest entry! - \"" + line + "\"");
+		}
+	}
+	
+	private void loadUser(String userId, Map<String, Object> properties)
+	{
+		if(this.findUser(userId) == null)
+		{
+			properties.put(MandatoryProperties.userId.name(), userId);
+			this.userCache.put(userId, this.createNode(properties, NodeLabels.User));
+		}
+	}
+	
+	private void loadFilesystem(String userId, String filesystemId, Map<String, Object> properties) throws UserNotFound
+	{
+		Vertex user = this.getUser(userId);
+		if(this.findChild(user, filesystemId) != null)
+		{
+			return;
+		}
+		
+		properties.put(MandatoryProperties.filesystemId.name(), filesystemId);
+		properties.put(MandatoryProperties.version.name(), 0);
+		Vertex filesystem = this.createNode(properties, NodeLabels.Filesystem);
+		Vertex rootDirectory = this.createNode(new HashMap<String, Object>(), NodeLabels.Directory);
+		this.createIndexedRelationship(user, filesystem, filesystemId, null);
+		
+		filesystem.addEdge(RelationshipLabels.has.name(), rootDirectory);
+		filesystem.setProperty(MandatoryProperties.rootNodeId.name(), rootDirectory.getProperty(MandatoryProperties.nodeId.name()));
+		this.rootDirectoryCache.put(userId + "/" + filesystemId, rootDirectory);
+		this.edges++;
+	}
+	
+	private void loadDirectory(Vertex rootDirectory, List<String> parentNames, String directoryName, Map<String, Object> properties, String commitId)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			this.getDirectory(rootDirectory, this.getPath(parentNames), directoryName, properties, commitId);
+		}
+		else
+		{
+			this.getDirectory(this.getParentDirectory(rootDirectory, parentNames, commitId), null, directoryName, properties, commitId);
+		}
+	}
+	
+	private void loadFile(Vertex rootDirectory, List<String> parentNames, String fileName, Map<String, Object> properties, String commitId)
+	{
+		Vertex parentDirectory = this.getParentDirectory(rootDirectory, parentNames, commitId);
+		String filePath = this.getPath(parentNames);
+		String fullPath = this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(filePath, fileName) : fileName;
+		if(this.findChild(parentDirectory, fullPath) != null)
+		{
+			return;
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			properties.put(MandatoryProperties.filePath.name(), filePath);
+		}
+		properties.put(MandatoryProperties.fileName.name(), fileName);
+		properties.put(MandatoryProperties.version.name(), 0);
+		Vertex file = this.createNode(properties, NodeLabels.File);
+		this.createIndexedRelationship(parentDirectory, file, fullPath, commitId);
+	}
+	
+	private Vertex getParentDirectory(Vertex rootDirectory, List<String> parentNames, String commitId)
+	{
+		if(parentNames.isEmpty())
+		{
+			return rootDirectory;
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			return this.getDirectory(rootDirectory, this.getPath(parentNames.subList(0, parentNames.size() - 1)), parentNames.get(parentNames.size() - 1), new HashMap<String, Object>(), commitId);
+		}
+		
+		Vertex parentDirectory = rootDirectory;
+		for(String parentName : parentNames)
+		{
+			parentDirectory = this.getDirectory(parentDirectory, null, parentName, new HashMap<String, Object>(), commitId);
+		}
+		
+		return parentDirectory;
+	}
+	
+	private Vertex getDirectory(Vertex parentDirectory, String directoryPath, String directoryName, Map<String, Object> properties, String commitId)
+	{
+		String fullPath = (directoryPath == null ? directoryName : this.getFullPath(directoryPath, directoryName)) + "/";
+		Vertex directory = this.findChild(parentDirectory, fullPath);
+		if(directory != null)
+		{
+			return directory;
+		}
+		
+		if(directoryPath != null)
+		{
+			properties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+		}
+		properties.put(MandatoryProperties.directoryName.name(), directoryName);
+		properties.put(MandatoryProperties.version.name(), 0);
+		directory = this.createNode(properties, NodeLabels.Directory);
+		this.createIndexedRelationship(parentDirectory, directory, fullPath, commitId);
+		return directory;
+	}
+	
+	private Vertex getUser(String userId) throws UserNotFound
+	{
+		Vertex user = this.findUser(userId);
+		if(user == null)
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		return user;
+	}
+	
+	private Vertex findUser(String userId)
+	{
+		Vertex user = this.userCache.get(userId);
+		if(user == null)
+		{
+			Iterator<Vertex> iterator = this.titanTransaction.getVertices(MandatoryProperties.userId.name(), userId).iterator();
+			user = iterator.hasNext() ? iterator.next() : null;
+		}
+		
+		return user;
+	}
+	
+	private Vertex getRootDirectory(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		Vertex rootDirectory = this.rootDirectoryCache.get(userId + "/" + filesystemId);
+		if(rootDirectory == null)
+		{
+			Vertex filesystem = this.findChild(this.getUser(userId), filesystemId);
+			if(filesystem == null)
+			{
+				throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", false);
+			}
+			
+			rootDirectory = filesystem.getEdges(Direction.OUT, RelationshipLabels.has.name()).iterator().next().getVertex(Direction.IN);
+			this.rootDirectoryCache.put(userId + "/" + filesystemId, rootDirectory);
+		}
+		
+		return rootDirectory;
+	}
+	
+	private Vertex findChild(Vertex parentNode, String fullPath)
+	{
+		String pathKey = this.getPathKey((String) parentNode.getProperty(MandatoryProperties.nodeId.name()), fullPath);
+		Vertex child = this.pathKeyCache.get(pathKey);
+		if(child == null)
+		{
+			Iterator<Edge> iterator = this.titanTransaction.getEdges(MandatoryProperties.pathKey.name(), pathKey).iterator();
+			child = iterator.hasNext() ? iterator.next().getVertex(Direction.IN) : null;
+		}
+		
+		return child;
+	}
+	
+	private Vertex createNode(Map<String, Object> properties, NodeLabels nodeLabel)
+	{
+		Vertex node = this.titanTransaction.addVertexWithLabel(nodeLabel.name());
+		for(Entry<String, Object> propertiesEntry : properties.entrySet())
+		{
+			if(! this.titanTransaction.containsRelationType(propertiesEntry.getKey()))
+			{
+				this.makePropertyKey(propertiesEntry.getKey());
+			}
+			node.setProperty(propertiesEntry.getKey(), propertiesEntry.getValue());
+		}
+		node.setProperty(MandatoryProperties.nodeId.name(), Base62Codec.encode(this.nextAutoIncrement++));
+		
+		this.vertices++;
+		return node;
+	}
+	
+	/*
+	 * Batch loading transactions cannot create schema, so a property key first seen in the manifest is
+	 * made through the management system, the same way the default schema maker would make it.
+	 */
+	private void makePropertyKey(String name)
+	{
+		TitanManagement titanManagement = this.titanGraph.getManagementSystem();
+		try
+		{
+			if(! titanManagement.containsRelationType(name))
+			{
+				titanManagement.makePropertyKey(name).dataType(Object.class).make();
+			}
+			titanManagement.commit();
+		}
+		finally
+		{
+			if(titanManagement.isOpen())
+			{
+				titanManagement.rollback();
+			}
+		}
+	}
+	
+	private Edge createIndexedRelationship(Vertex parentNode, Vertex childNode, String fullPath, String commitId)
+	{
+		String pathKey = this.getPathKey((String) parentNode.getProperty(MandatoryProperties.nodeId.name()), fullPath);
+		Edge relationship = parentNode.addEdge(RelationshipLabels.has.name(), childNode);
+		relationship.setProperty(MandatoryProperties.pathKey.name(), pathKey);
+		if(commitId != null)
+		{
+			relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+		}
+		
+		this.pathKeyCache.put(pathKey, childNode);
+		this.edges++;
+		return relationship;
+	}
+	
+	private String getPath(List<String> names)
+	{
+		StringBuilder path = new StringBuilder();
+		for(String name : names)
+		{
+			path.append("/").append(name);
+		}
+		
+		return path.length() == 0 ? "/" : path.toString();
+	}
+	
+	private String getFullPath(String path, String name)
+	{
+		return (path.equals("/") ? "" : path) + "/" + name;
+	}
+	
+	private String getPathKey(String parentNodeId, String fullPath)
+	{
+		return parentNodeId + ":" + fullPath;
+	}
+	
+	public static void main(String[] args) throws IOException, UserNotFound, FilesystemNotFound
+	{
+		DatabaseConnectionProperty databaseConnectionProperty = new DatabaseConnectionProperty();
+		BaseConfiguration baseConfiguration = new BaseConfiguration();
+		baseConfiguration.setProperty("storage.backend", databaseConnectionProperty.getProperty("TitanCassandraEmbeddedServerBackend"));
+		baseConfiguration.setProperty("storage.hostname", databaseConnectionProperty.getProperty("TitanCassandraEmbeddedServerHostname"));
+		
+		TitanGraph titanGraph = TitanCassandraEmbeddedConnection.openBatchLoadingGraph(baseConfiguration, Integer.parseInt(databaseConnectionProperty.getProperty("TitanBatchLoadingIdBlockSize")));
+		try
+		{
+			BulkLoader bulkLoader = new BulkLoader(titanGraph, PathStorageMode.valueOf(databaseConnectionProperty.getProperty("PathStorageMode")), Integer.parseInt(databaseConnectionProperty.getProperty("TitanBatchLoadingCommitInterval")), Integer.parseInt(databaseConnectionProperty.getProperty("BulkLoadProgressInterval")), new ProgressListener()
+			{
+				@Override
+				public void progress(long lines, long vertices, long edges, long elapsedMillis)
+				{
+					double seconds = Math.max(1, elapsedMillis) / 1000.0;
+					System.out.println("Lines: " + lines + ", vertices: " + vertices + " (" + (long) (vertices / seconds) + "/s), edges: " + edges + " (" + (long) (edges / seconds) + "/s)");
+				}
+			});
+			
+			long loadedVertices = bulkLoader.load(args[0], args.length > 1 ? args[1] : new File(args[0]).getName());
+			System.out.println("Loaded vertices: " + loadedVertices);
+		}
+		finally
+		{
+			titanGraph.shutdown();
+		}
+	}
+}
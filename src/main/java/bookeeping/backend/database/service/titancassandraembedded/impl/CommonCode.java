@@ -2,15 +2,20 @@ package bookeeping.backend.database.service.titancassandraembedded.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.neo4j.graphdb.NotFoundException;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.VersioningMode;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.service.AutoIncrementService;
 import bookeeping.backend.database.titan.NodeLabels;
 import bookeeping.backend.database.titan.RelationshipLabels;
 import bookeeping.backend.exception.DirectoryNotFound;
@@ -20,8 +25,14 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.NodeCache;
+import bookeeping.backend.utilities.cache.NodeSnapshot;
+import bookeeping.backend.utilities.filter.BloomFilter;
+import bookeeping.backend.utilities.filter.PathFilter;
 
 import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanGraphTransaction;
 import com.thinkaurelius.titan.core.TitanVertex;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
@@ -30,34 +41,121 @@ import com.tinkerpop.blueprints.Vertex;
 public class CommonCode
 {
 	private TitanGraph titanGraph;
+	private VersioningMode versioningMode;
+	private PathStorageMode pathStorageMode;
+	private NodeCache nodeCache;
+	private NodeCache versionCache;
+	private PathFilter pathFilter;
+	private AutoIncrementService autoIncrementService;
+	private TransactionRetry transactionRetry;
+	private int readTransactionVertexCacheSize;
 	
 	public CommonCode()
 	{
 		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
+		this.versioningMode = TitanCassandraEmbeddedConnection.getInstance().getVersioningMode();
+		this.pathStorageMode = TitanCassandraEmbeddedConnection.getInstance().getPathStorageMode();
+		this.nodeCache = TitanCassandraEmbeddedConnection.getInstance().getNodeCache();
+		this.versionCache = TitanCassandraEmbeddedConnection.getInstance().getVersionCache();
+		this.pathFilter = TitanCassandraEmbeddedConnection.getInstance().getPathFilter();
+		this.autoIncrementService = new AutoIncrementServiceImpl();
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
+		this.readTransactionVertexCacheSize = TitanCassandraEmbeddedConnection.getInstance().getReadTransactionVertexCacheSize();
+	}
+	
+	public AutoIncrementService getAutoIncrementService()
+	{
+		return this.autoIncrementService;
+	}
+	
+	public UnitOfWork beginUnitOfWork()
+	{
+		return UnitOfWork.begin(this.titanGraph, this.transactionRetry);
+	}
+	
+	public UnitOfWork beginReadTransaction()
+	{
+		return UnitOfWork.beginRead(this.titanGraph, this.readTransactionVertexCacheSize, this.transactionRetry);
+	}
+	
+	private TitanGraphTransaction getGraph()
+	{
+		return UnitOfWork.getGraph(this.titanGraph);
 	}
 	
 	public Vertex createNode(NodeLabels nodeLabel)
 	{
-		Vertex node = this.titanGraph.addVertexWithLabel(nodeLabel.name());
-		node.setProperty(MandatoryProperties.nodeId.name(), new AutoIncrementServiceImpl().getNextAutoIncrement());
+		Vertex node = this.getGraph().addVertexWithLabel(nodeLabel.name());
+		node.setProperty(MandatoryProperties.nodeId.name(), this.autoIncrementService.getNextAutoIncrement());
 		return node;
 	}
 	
+	/*
+	 * The find methods return null for a missing node so that expected misses, such as the duplicate
+	 * checks on create, cost no exception. The get methods wrap them for callers that want one, and
+	 * those exceptions skip the stack trace since a miss is an answer, not a failure.
+	 */
 	public Vertex getNode(String nodeId) throws NodeNotFound
 	{
-		Iterator<Vertex> iterator = this.titanGraph.getVertices(MandatoryProperties.nodeId.name(), nodeId).iterator();
-		if(iterator.hasNext())
+		Vertex node = this.findNode(nodeId);
+		if(node == null)
 		{
-			return iterator.next();
+			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"", false);
 		}
-		else
+		
+		return node;
+	}
+	
+	public Vertex findNode(String nodeId)
+	{
+		NodeSnapshot nodeSnapshot = this.nodeCache.get(nodeId);
+		if(nodeSnapshot != null)
 		{
-			throw new NodeNotFound("ERROR: Node not found! - \"" + nodeId + "\"");
+			Vertex node = this.getGraph().getVertex(nodeSnapshot.getGraphId());
+			if(node != null && nodeId.equals(node.getProperty(MandatoryProperties.nodeId.name())))
+			{
+				return node;
+			}
+			
+			this.nodeCache.invalidate(nodeId);
 		}
+		
+		Iterator<Vertex> iterator = this.getGraph().getVertices(MandatoryProperties.nodeId.name(), nodeId).iterator();
+		return iterator.hasNext() ? iterator.next() : null;
 	}
 	
 	public Map<String, Object> getNodeProperties(Vertex node) throws NodeNotFound
 	{
+		Map<String, Object> nodeProperties = this.findNodeProperties(node);
+		if(nodeProperties == null)
+		{
+			throw new NodeNotFound("ERROR: Node not found!", false);
+		}
+		
+		return nodeProperties;
+	}
+	
+	/*
+	 * The properties of a node that a find method returned, or null when it found none.
+	 */
+	public Map<String, Object> findNodeProperties(Vertex node)
+	{
+		if(node == null)
+		{
+			return null;
+		}
+		
+		String nodeId = node.getProperty(MandatoryProperties.nodeId.name());
+		long snapshotStamp = UnitOfWork.getSnapshotStamp();
+		if(nodeId != null && snapshotStamp != 0)
+		{
+			NodeSnapshot nodeSnapshot = this.nodeCache.get(nodeId);
+			if(nodeSnapshot != null && nodeSnapshot.getGraphId().equals(node.getId()))
+			{
+				return nodeSnapshot.getProperties();
+			}
+		}
+		
 		Map<String, Object> nodeProperties = new HashMap<String, Object>();
 		Iterable<String> nodeKeys = node.getPropertyKeys();
 		
@@ -66,18 +164,52 @@ public class CommonCode
 			nodeProperties.put(key, node.getProperty(key));
 		}
 		
-		return nodeProperties;
+		if(nodeId == null || snapshotStamp == 0)
+		{
+			return nodeProperties;
+		}
+		
+		NodeSnapshot nodeSnapshot = new NodeSnapshot(node.getId(), nodeProperties, snapshotStamp);
+		this.nodeCache.put(nodeId, nodeSnapshot);
+		return nodeSnapshot.getProperties();
 	}
 	
-	public Vertex createNodeVersion(String commidId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
+	/*
+	 * Called before a node is changed. The cached snapshots are dropped once the unit of work is closed,
+	 * after the change is committed.
+	 */
+	public void invalidateNode(Vertex node)
 	{
-		Vertex node = null;
-		try
+		UnitOfWork.invalidateOnClose(this.nodeCache, (String) node.getProperty(MandatoryProperties.nodeId.name()));
+		
+		String versionCacheKey = this.getVersionCacheKey(node);
+		if(versionCacheKey != null)
+		{
+			UnitOfWork.invalidateOnClose(this.versionCache, versionCacheKey);
+		}
+	}
+	
+	/*
+	 * Adds a version after the given node, which the caller has found to be the head. The expected
+	 * version variant of createNewVersion checks that it still is before calling this.
+	 */
+	public Vertex createNodeVersion(String commidId, Vertex node, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound
+	{
+		Vertex originalNode = this.getOriginalNode(node);
+		if(! originalNode.equals(node) && ! originalNode.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator().hasNext())
+		{
+			this.indexVersionChain(originalNode);
+		}
+		
+		Vertex versionedNode = null;
+		if(this.versioningMode == VersioningMode.StructuralSharing)
 		{
-			node = this.getNodeVersion(nodeId, -1);
+			versionedNode = this.shareNodeTree(node);
+		}
+		else
+		{
+			versionedNode = this.copyNodeTree(node, new ArrayList<String>());
 		}
-		catch (VersionNotFound e) {}
-		Vertex versionedNode = this.copyNodeTree(node, new ArrayList<String>());
 		
 		int nodeVersion = (int) node.getProperty(MandatoryProperties.version.name());
 		versionedNode.setProperty(MandatoryProperties.version.name(), nodeVersion + 1);
@@ -93,12 +225,66 @@ public class CommonCode
 		}
 		relationship.setProperty(MandatoryProperties.commitId.name(), commidId);
 		
+		this.setHeadVersion(originalNode, versionedNode);
 		return versionedNode;
 	}
 	
+	public Vertex getHeadVersion(String nodeId) throws NodeNotFound, NodeUnavailable
+	{
+		try
+		{
+			return this.getNodeVersion(nodeId, -1);
+		}
+		catch(VersionNotFound versionNotFound)
+		{
+			throw new NodeUnavailable("ERROR: No head version for this node! - \"" + nodeId + "\"", versionNotFound);
+		}
+	}
+	
 	public Vertex getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
 	{
+		if(version != -1)
+		{
+			Vertex versionedNode = this.getIndexedNodeVersion(nodeId, version);
+			if(versionedNode != null)
+			{
+				return versionedNode;
+			}
+		}
+		
 		Vertex node = this.getNode(nodeId);
+		if(node.getProperty(MandatoryProperties.version.name()) == null)
+		{
+			throw new NodeUnavailable("ERROR: No version property for this node! - \"" + nodeId + "(v=" + version + ")\"");
+		}
+		
+		String originalNodeId = node.getProperty(MandatoryProperties.versionOf.name());
+		Vertex originalNode = originalNodeId != null ? this.getNode(originalNodeId) : node;
+		Iterator<Edge> headIterator = originalNode.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator();
+		if(headIterator.hasNext())
+		{
+			if(version == -1)
+			{
+				return headIterator.next().getVertex(Direction.IN);
+			}
+			
+			if(((int) originalNode.getProperty(MandatoryProperties.version.name())) == version)
+			{
+				return originalNode;
+			}
+			
+			if(originalNodeId != null)
+			{
+				Vertex versionedNode = this.getIndexedNodeVersion(originalNodeId, version);
+				if(versionedNode != null)
+				{
+					return versionedNode;
+				}
+			}
+			
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"", false);
+		}
+		
 		do
 		{
 			int nodeVersion = -1;
@@ -137,14 +323,135 @@ public class CommonCode
 		}
 		while(node != null);
 		
-		throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"");
+		throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + version + ")\"", false);
+	}
+	
+	public Vertex indexVersionChain(Vertex originalNode)
+	{
+		String originalNodeId = originalNode.getProperty(MandatoryProperties.nodeId.name());
+		Vertex node = originalNode;
+		Iterator<Edge> iterator = node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+		while(iterator.hasNext())
+		{
+			node = iterator.next().getVertex(Direction.IN);
+			this.invalidateNode(node);
+			node.setProperty(MandatoryProperties.versionOf.name(), originalNodeId);
+			node.setProperty(MandatoryProperties.versionKey.name(), this.getVersionKey(originalNodeId, (int) node.getProperty(MandatoryProperties.version.name())));
+			iterator = node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+		}
+		
+		if(! node.equals(originalNode))
+		{
+			this.setHeadVersion(originalNode, node);
+		}
+		
+		return node;
+	}
+	
+	private void setHeadVersion(Vertex originalNode, Vertex versionedNode)
+	{
+		String originalNodeId = originalNode.getProperty(MandatoryProperties.nodeId.name());
+		this.invalidateNode(versionedNode);
+		versionedNode.setProperty(MandatoryProperties.versionOf.name(), originalNodeId);
+		versionedNode.setProperty(MandatoryProperties.versionKey.name(), this.getVersionKey(originalNodeId, (int) versionedNode.getProperty(MandatoryProperties.version.name())));
+		
+		for(Edge headRelationship : originalNode.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()))
+		{
+			headRelationship.remove();
+		}
+		originalNode.addEdge(RelationshipLabels.hasHeadVersion.name(), versionedNode);
+	}
+	
+	private Vertex getOriginalNode(Vertex node) throws NodeNotFound
+	{
+		String originalNodeId = node.getProperty(MandatoryProperties.versionOf.name());
+		if(originalNodeId != null)
+		{
+			return this.getNode(originalNodeId);
+		}
+		
+		Iterator<Edge> iterator = node.getEdges(Direction.IN, RelationshipLabels.hasVersion.name()).iterator();
+		while(iterator.hasNext())
+		{
+			node = iterator.next().getVertex(Direction.OUT);
+			iterator = node.getEdges(Direction.IN, RelationshipLabels.hasVersion.name()).iterator();
+		}
+		
+		return node;
+	}
+	
+	private Vertex getIndexedNodeVersion(String nodeId, int version)
+	{
+		Iterator<Vertex> iterator = this.getGraph().getVertices(MandatoryProperties.versionKey.name(), this.getVersionKey(nodeId, version)).iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+	
+	private String getVersionKey(String originalNodeId, int version)
+	{
+		return originalNodeId + ":" + version;
+	}
+	
+	/*
+	 * Only versions that a newer one exists for are kept in the version cache; the head is always read
+	 * from the graph. Such a version still changes in place on a write by nodeId, or when its root is
+	 * unshared, and every such write goes through invalidateNode, which drops the entry after the commit.
+	 */
+	public Map<String, Object> getCachedNodeVersion(String nodeId, int version)
+	{
+		NodeSnapshot nodeSnapshot = this.versionCache.get(this.getVersionKey(nodeId, version));
+		return nodeSnapshot == null ? null : nodeSnapshot.getProperties();
+	}
+	
+	public Map<String, Object> getNodeVersionProperties(Vertex node) throws NodeNotFound
+	{
+		String versionCacheKey = this.getVersionCacheKey(node);
+		long snapshotStamp = UnitOfWork.getSnapshotStamp();
+		if(versionCacheKey == null || snapshotStamp == 0)
+		{
+			return this.getNodeProperties(node);
+		}
+		
+		NodeSnapshot nodeSnapshot = this.versionCache.get(versionCacheKey);
+		if(nodeSnapshot != null && nodeSnapshot.getGraphId().equals(node.getId()))
+		{
+			return nodeSnapshot.getProperties();
+		}
+		
+		Map<String, Object> nodeProperties = this.getNodeProperties(node);
+		if(node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator().hasNext())
+		{
+			this.versionCache.put(versionCacheKey, new NodeSnapshot(node.getId(), nodeProperties, snapshotStamp));
+		}
+		
+		return nodeProperties;
+	}
+	
+	private String getVersionCacheKey(Vertex node)
+	{
+		if(node.getProperty(MandatoryProperties.versionKey.name()) != null)
+		{
+			return node.getProperty(MandatoryProperties.versionKey.name());
+		}
+		
+		if(node.getProperty(MandatoryProperties.version.name()) != null && node.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator().hasNext())
+		{
+			return this.getVersionKey((String) node.getProperty(MandatoryProperties.nodeId.name()), (int) node.getProperty(MandatoryProperties.version.name()));
+		}
+		
+		return null;
 	}
 	
 	public List<Map<String, Object>> getNodeVersions(String nodeId) throws NodeNotFound
 	{
-		List<Map<String, Object>> versionList = new ArrayList<Map<String, Object>>();
 		Vertex node = this.getNode(nodeId);
-		versionList.add(this.getNodeProperties(node));
+		List<Map<String, Object>> versionList = this.getIndexedNodeVersions(node);
+		if(versionList != null)
+		{
+			return versionList;
+		}
+		
+		versionList = new ArrayList<Map<String, Object>>();
+		versionList.add(this.getNodeVersionProperties(node));
 		
 		do
 		{
@@ -152,6 +459,7 @@ public class CommonCode
 			if(iterator.hasNext())
 			{
 				node = iterator.next().getVertex(Direction.IN);
+				versionList.add(this.getNodeVersionProperties(node));
 			}
 			else
 			{
@@ -163,6 +471,47 @@ public class CommonCode
 		return versionList;
 	}
 	
+	private List<Map<String, Object>> getIndexedNodeVersions(Vertex node) throws NodeNotFound
+	{
+		if(node.getProperty(MandatoryProperties.version.name()) == null)
+		{
+			return null;
+		}
+		
+		Vertex originalNode = node.getProperty(MandatoryProperties.versionOf.name()) != null ? this.getNode((String) node.getProperty(MandatoryProperties.versionOf.name())) : node;
+		Iterator<Edge> headIterator = originalNode.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator();
+		if(! headIterator.hasNext())
+		{
+			return null;
+		}
+		
+		List<Map<String, Object>> versionList = new ArrayList<Map<String, Object>>();
+		String originalNodeId = originalNode.getProperty(MandatoryProperties.nodeId.name());
+		int originalVersion = originalNode.getProperty(MandatoryProperties.version.name());
+		Vertex headNode = headIterator.next().getVertex(Direction.IN);
+		int headVersion = headNode.getProperty(MandatoryProperties.version.name());
+		
+		for(int version = (int) node.getProperty(MandatoryProperties.version.name()); version < headVersion; version++)
+		{
+			Map<String, Object> nodeProperties = this.getCachedNodeVersion(originalNodeId, version);
+			if(nodeProperties == null)
+			{
+				Vertex versionedNode = version == originalVersion ? originalNode : this.getIndexedNodeVersion(originalNodeId, version);
+				if(versionedNode == null)
+				{
+					return null;
+				}
+				
+				nodeProperties = this.getNodeVersionProperties(versionedNode);
+			}
+			
+			versionList.add(nodeProperties);
+		}
+		
+		versionList.add(this.getNodeProperties(headNode));
+		return versionList;
+	}
+	
 	public List<Vertex> getChildren(String nodeId) throws NodeNotFound
 	{
 		List<Vertex> nodeList = new ArrayList<Vertex>();
@@ -192,180 +541,714 @@ public class CommonCode
 	public Vertex deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
 	{
 		Vertex node = this.getNode(nodeId);
-		Edge hasRelationship = null;
-		Iterator<Edge> iterator = node.getEdges(Direction.IN, RelationshipLabels.has.name()).iterator();
-		if(! iterator.hasNext())
+		List<Edge> hasRelationships = new ArrayList<Edge>();
+		for(Edge hasRelationship : this.getWritableParentRelationships(node, false))
 		{
-			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has already been deleted.");
-		}
-		else
-		{
-			hasRelationship = iterator.next();
+			if(! hasRelationship.getLabel().equals(RelationshipLabels.has.name()))
+			{
+				continue;
+			}
+			
+			if(hasRelationship.getVertex(Direction.OUT).getProperty(MandatoryProperties.filesystemId.name()) != null)
+			{
+				throw new NodeUnavailable("ERROR: Root node cannot be deleted! - \"" + nodeId + "\"");
+			}
+			
+			hasRelationships.add(hasRelationship);
 		}
-
-		if(hasRelationship.getVertex(Direction.OUT).getProperty(MandatoryProperties.filesystemId.name()) != null)
+		
+		if(hasRelationships.isEmpty())
 		{
-			throw new NodeUnavailable("ERROR: Root node cannot be deleted! - \"" + nodeId + "\"");
+			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has already been deleted.");
 		}
 		
-		Vertex parentNode = hasRelationship.getVertex(Direction.OUT);
-		Edge hadRelationship = parentNode.addEdge(RelationshipLabels.had.name(), node);
-		for(String key : hasRelationship.getPropertyKeys())
+		this.invalidateNode(node);
+		
+		for(Edge hasRelationship : hasRelationships)
 		{
-			hadRelationship.setProperty(key, hasRelationship.getProperty(key));
+			Vertex parentNode = hasRelationship.getVertex(Direction.OUT);
+			Edge hadRelationship = parentNode.addEdge(RelationshipLabels.had.name(), node);
+			for(String key : hasRelationship.getPropertyKeys())
+			{
+				hadRelationship.setProperty(key, hasRelationship.getProperty(key));
+			}
+			hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+			this.indexPath(hadRelationship);
+			
+			hasRelationship.remove();
 		}
-		hadRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
 		
-		hasRelationship.remove();
 		return node;
 	}
 	
 	public Vertex restoreNode(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
 	{
 		Vertex node = this.getNode(nodeId);
-		Edge hadRelationship = null;
-		Iterator<Edge> iterator = node.getEdges(Direction.IN, RelationshipLabels.had.name()).iterator();
-		if(! iterator.hasNext())
-		{
-			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has not been deleted.");
-		}
-		else
+		List<Edge> hadRelationships = new ArrayList<Edge>();
+		for(Edge hadRelationship : this.getWritableParentRelationships(node, false))
 		{
-			hadRelationship = iterator.next();
+			if(hadRelationship.getLabel().equals(RelationshipLabels.had.name()))
+			{
+				hadRelationships.add(hadRelationship);
+			}
 		}
 		
-		Vertex parentNode = hadRelationship.getVertex(Direction.OUT);
-		Edge hasRelationship = parentNode.addEdge(RelationshipLabels.has.name(), node);
-		for(String key : hadRelationship.getPropertyKeys())
+		if(hadRelationships.isEmpty())
 		{
-			hasRelationship.setProperty(key, hadRelationship.getProperty(key));
+			throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\". Could be it has not been deleted.");
 		}
-		hasRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
 		
-		hadRelationship.remove();
-		return node;
-	}
-	
-	public Vertex getUser(String userId) throws UserNotFound
-	{
-		Iterator<Vertex> iterator = this.titanGraph.getVertices(MandatoryProperties.userId.name(), userId).iterator();
-		if(iterator.hasNext())
-		{
-			return iterator.next();
-		}
-		else
-		{
-			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"");
-		}
-	}
-	
-	public Vertex getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
-	{
-		Vertex user = this.getUser(userId);
-		Iterable<Edge> iterable = user.getEdges(Direction.OUT, RelationshipLabels.has.name());
+		this.invalidateNode(node);
 		
-		for(Edge relationship : iterable)
+		for(Edge hadRelationship : hadRelationships)
 		{
-			Vertex filesystem = relationship.getVertex(Direction.IN);
-			String retrievedFilesystemId = (String) filesystem.getProperty(MandatoryProperties.filesystemId.name());
-			
-			if(retrievedFilesystemId.equals(filesystemId))
+			Vertex parentNode = hadRelationship.getVertex(Direction.OUT);
+			Edge hasRelationship = parentNode.addEdge(RelationshipLabels.has.name(), node);
+			for(String key : hadRelationship.getPropertyKeys())
 			{
-				return filesystem;
+				hasRelationship.setProperty(key, hadRelationship.getProperty(key));
 			}
+			hasRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+			this.indexPath(hasRelationship);
+			
+			hadRelationship.remove();
 		}
 		
-		throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"");
+		return node;
 	}
 	
-	public Vertex getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	/*
+	 * Whether the node hangs under the filesystem in any of its versions, deleted or not. A version of
+	 * the node is followed back to the node it was made from.
+	 */
+	public boolean isNodeInFilesystem(String userId, String filesystemId, String nodeId) throws UserNotFound, FilesystemNotFound, NodeNotFound
 	{
 		Vertex filesystem = this.getFilesystem(userId, filesystemId);
-		Vertex versionedFilesystem = null;
-		try
-		{
-			versionedFilesystem = this.getNodeVersion((String) filesystem.getProperty(MandatoryProperties.nodeId.name()), filesystemVersion);
-		}
-		catch (NodeNotFound | NodeUnavailable e) {}
-		return versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.has.name()).iterator().next().getVertex(Direction.IN);
-	}
-	
-	public Vertex getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
-	{
-		Vertex rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
-		Iterable<Edge> iterable = rootDirectory.getEdges(Direction.OUT, RelationshipLabels.has.name());
-		
-		for(Edge relationship : iterable)
+		Set<Vertex> visited = new HashSet<Vertex>();
+		List<Vertex> pendingNodeList = new ArrayList<Vertex>();
+		pendingNodeList.add(this.getNode(nodeId));
+		while(! pendingNodeList.isEmpty())
 		{
-			Vertex node = relationship.getVertex(Direction.IN);
-			TitanVertex vertex = (TitanVertex) node;
-			if(vertex.getLabel().equals(NodeLabels.Directory.name()))
+			List<Vertex> parentNodeList = new ArrayList<Vertex>();
+			for(Vertex pendingNode : pendingNodeList)
 			{
-				String retrievedDirectoryPath = (String) node.getProperty(MandatoryProperties.directoryPath.name());
-				String retrievedDirectoryName = (String) node.getProperty(MandatoryProperties.directoryName.name());
+				if(! visited.add(pendingNode))
+				{
+					continue;
+				}
+				
+				if(((TitanVertex) pendingNode).getLabel().equals(NodeLabels.Filesystem.name()))
+				{
+					if(this.getOriginalNode(pendingNode).equals(filesystem))
+					{
+						return true;
+					}
+					continue;
+				}
 				
-				if(retrievedDirectoryPath.equals(directoryPath) && retrievedDirectoryName.equals(directoryName))
+				for(Edge relationship : pendingNode.getEdges(Direction.IN, RelationshipLabels.has.name(), RelationshipLabels.had.name(), RelationshipLabels.hasVersion.name()))
 				{
-					return node;
+					parentNodeList.add(relationship.getVertex(Direction.OUT));
 				}
 			}
+			
+			pendingNodeList = parentNodeList;
 		}
 		
-		throw new DirectoryNotFound("ERROR: Directory not found! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+		return false;
 	}
 	
-	public List<Vertex> getAllDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	/*
+	 * The node that a write by nodeId changes in place.
+	 */
+	public Vertex getWritableNode(String nodeId) throws NodeNotFound
 	{
-		List<Vertex> directoryList = new ArrayList<Vertex>();
-		Vertex rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
-		Iterable<Edge> iterable = rootDirectory.getEdges(Direction.OUT, RelationshipLabels.has.name());
-		
-		for(Edge relationship : iterable)
-		{
-			Vertex node = relationship.getVertex(Direction.IN);
-			TitanVertex vertex = (TitanVertex) node;
-			if(vertex.getLabel().equals(NodeLabels.Directory.name()))
-			{
-				directoryList.add(node);
-			}
-		}
-		
-		return directoryList;
+		Vertex node = this.getNode(nodeId);
+		this.getWritableParentRelationships(node, true);
+		return node;
 	}
 	
-	public Vertex getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	/*
+	 * A nodeId names a node, not a version of its filesystem, and with structural sharing one node can
+	 * hang under several versions. A write by nodeId is meant for the newest of them, so that version
+	 * takes the node's path over first: every shared node on the path, down to the node itself when
+	 * writableNode is set, is left to the newest version, and its other parents are moved over to a copy
+	 * (see unshareNode). The older versions then keep seeing the node as it was, and the node keeps its
+	 * nodeId. A write that only changes the relationship from the parent leaves the node itself shared.
+	 *
+	 * Returns the has and had relationships from the parents the write applies to: only the one from the
+	 * newest version, or every one when nothing is shared or the node is not under a filesystem version.
+	 */
+	private List<Edge> getWritableParentRelationships(Vertex node, boolean writableNode)
 	{
-		Vertex parentDirectory = null;
-		if(filePath.equals("/"))
+		List<Edge> parentRelationships = new ArrayList<Edge>();
+		for(Edge parentRelationship : node.getEdges(Direction.IN, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
 		{
-			parentDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+			parentRelationships.add(parentRelationship);
 		}
-		else
+		
+		if(this.versioningMode != VersioningMode.StructuralSharing)
 		{
-			String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
-			String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
-			directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
-			parentDirectory = this.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+			return parentRelationships;
 		}
 		
-		Iterable<Edge> iterable = parentDirectory.getEdges(Direction.OUT, RelationshipLabels.has.name());
-		for(Edge relationship : iterable)
+		Map<Vertex, Edge> pathRelationships = new HashMap<Vertex, Edge>();
+		Vertex versionedFilesystem = null;
+		List<Edge> pendingRelationshipList = parentRelationships;
+		while(! pendingRelationshipList.isEmpty())
 		{
-			Vertex node = relationship.getVertex(Direction.IN);
-			TitanVertex vertex = (TitanVertex) node;
-			if(vertex.getLabel().equals(NodeLabels.File.name()))
+			List<Edge> parentRelationshipList = new ArrayList<Edge>();
+			for(Edge pendingRelationship : pendingRelationshipList)
 			{
-				String retrievedFilePath = (String) node.getProperty(MandatoryProperties.filePath.name());
-				String retrievedFileName = (String) node.getProperty(MandatoryProperties.fileName.name());
+				Vertex parentNode = pendingRelationship.getVertex(Direction.OUT);
+				if(pathRelationships.containsKey(parentNode))
+				{
+					continue;
+				}
 				
-				if(retrievedFilePath.equals(filePath) && retrievedFileName.equals(fileName))
+				pathRelationships.put(parentNode, pendingRelationship);
+				TitanVertex vertex = (TitanVertex) parentNode;
+				if(vertex.getLabel().equals(NodeLabels.Filesystem.name()))
 				{
-					return node;
+					if(versionedFilesystem == null || (int) parentNode.getProperty(MandatoryProperties.version.name()) > (int) versionedFilesystem.getProperty(MandatoryProperties.version.name()))
+					{
+						versionedFilesystem = parentNode;
+					}
+				}
+				else if(vertex.getLabel().equals(NodeLabels.Directory.name()))
+				{
+					for(Edge parentRelationship : parentNode.getEdges(Direction.IN, RelationshipLabels.has.name()))
+					{
+						parentRelationshipList.add(parentRelationship);
+					}
 				}
 			}
+			
+			pendingRelationshipList = parentRelationshipList;
+		}
+		
+		if(versionedFilesystem == null)
+		{
+			return parentRelationships;
+		}
+		
+		Edge pathRelationship = pathRelationships.get(versionedFilesystem);
+		Vertex pathNode = pathRelationship.getVertex(Direction.IN);
+		while(! pathNode.equals(node))
+		{
+			this.unshareNode(pathNode, pathRelationship);
+			pathRelationship = pathRelationships.get(pathNode);
+			pathNode = pathRelationship.getVertex(Direction.IN);
+		}
+		
+		if(writableNode)
+		{
+			this.unshareNode(node, pathRelationship);
+		}
+		
+		parentRelationships.clear();
+		parentRelationships.add(pathRelationship);
+		return parentRelationships;
+	}
+	
+	public Vertex getUser(String userId) throws UserNotFound
+	{
+		Vertex user = this.findUser(userId);
+		if(user == null)
+		{
+			throw new UserNotFound("ERROR: User not found! - \"" + userId + "\"", false);
+		}
+		
+		return user;
+	}
+	
+	public Vertex findUser(String userId)
+	{
+		Iterator<Vertex> iterator = this.getGraph().getVertices(MandatoryProperties.userId.name(), userId).iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+	
+	public Vertex getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		Vertex filesystem = this.findFilesystem(userId, filesystemId);
+		if(filesystem == null)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", false);
+		}
+		
+		return filesystem;
+	}
+	
+	public Vertex findFilesystem(String userId, String filesystemId) throws UserNotFound
+	{
+		Vertex user = this.getUser(userId);
+		Edge relationship = this.getIndexedRelationship(user, filesystemId);
+		return relationship == null ? null : relationship.getVertex(Direction.IN);
+	}
+	
+	public Vertex getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Vertex versionedFilesystem = this.getVersionedFilesystem(userId, filesystemId, filesystemVersion);
+		return versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.has.name()).iterator().next().getVertex(Direction.IN);
+	}
+	
+	public Vertex getWritableRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Vertex versionedFilesystem = this.getVersionedFilesystem(userId, filesystemId, filesystemVersion);
+		return this.copyOnWrite(versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.has.name()).iterator().next());
+	}
+	
+	private Vertex getVersionedFilesystem(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		String nodeId = (String) this.getFilesystem(userId, filesystemId).getProperty(MandatoryProperties.nodeId.name());
+		try
+		{
+			return this.getNodeVersion(nodeId, filesystemVersion);
+		}
+		catch(NodeNotFound nodeNotFound)
+		{
+			throw new FilesystemNotFound("ERROR: Filesystem not found! - \"" + filesystemId + "\"", nodeNotFound);
+		}
+		catch(NodeUnavailable nodeUnavailable)
+		{
+			throw new VersionNotFound("ERROR: Node version not found! - \"" + nodeId + "(v=" + filesystemVersion + ")\"", nodeUnavailable);
+		}
+	}
+	
+	public Vertex getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		Vertex directory = this.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+		if(directory == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		
+		return directory;
+	}
+	
+	public Vertex findDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Vertex rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+		Edge relationship = this.findDirectoryRelationship(rootDirectory, directoryPath, directoryName, false);
+		return relationship == null ? null : relationship.getVertex(Direction.IN);
+	}
+	
+	/*
+	 * For looking up many directories under one path: the node their pathKeys hang off (the root directory
+	 * with absolute paths, the directory at the path itself with relative paths) is resolved once, and each
+	 * name then costs one index hit. Null if the path does not exist.
+	 */
+	public Vertex findDirectoryParent(String userId, String filesystemId, int filesystemVersion, String directoryPath) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Vertex rootDirectory = this.getRootDirectory(userId, filesystemId, filesystemVersion);
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths || directoryPath.equals("/"))
+		{
+			return rootDirectory;
 		}
 		
-		throw new FileNotFound("ERROR: File not found! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+		String parentName = directoryPath.substring(directoryPath.lastIndexOf("/") + 1);
+		String parentPath = directoryPath.lastIndexOf("/") == 0 ? "/" : directoryPath.substring(0, directoryPath.lastIndexOf("/"));
+		Edge relationship = this.findDirectoryRelationship(rootDirectory, parentPath, parentName, false);
+		return relationship == null ? null : relationship.getVertex(Direction.IN);
+	}
+	
+	public Vertex findDirectory(Vertex directoryParent, String directoryPath, String directoryName)
+	{
+		Edge relationship = this.getIndexedRelationship(directoryParent, (this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(directoryPath, directoryName) : directoryName) + "/");
+		return relationship == null ? null : relationship.getVertex(Direction.IN);
+	}
+	
+	public Vertex getWritableDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		Vertex rootDirectory = this.getWritableRootDirectory(userId, filesystemId, filesystemVersion);
+		Edge relationship = this.findDirectoryRelationship(rootDirectory, directoryPath, directoryName, true);
+		if(relationship == null)
+		{
+			throw this.getDirectoryNotFound(directoryPath, directoryName);
+		}
+		
+		return this.copyOnWrite(relationship);
+	}
+	
+	private DirectoryNotFound getDirectoryNotFound(String directoryPath, String directoryName)
+	{
+		return new DirectoryNotFound("ERROR: Directory not found! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"", false);
+	}
+	
+	/*
+	 * With relative paths every directory hangs under its parent directory and only knows its own name,
+	 * so the path is walked one segment (one index hit) at a time. Missing directories on the way are
+	 * created, the same way the flat layout accepts a directory whose parent was never created.
+	 */
+	public Vertex getWritableDirectoryParent(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Vertex parentDirectory = this.getWritableRootDirectory(userId, filesystemId, filesystemVersion);
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths || directoryPath.equals("/"))
+		{
+			return parentDirectory;
+		}
+		
+		String parentPath = "/";
+		for(String directoryName : directoryPath.substring(1).split("/"))
+		{
+			Edge relationship = this.getIndexedRelationship(parentDirectory, directoryName + "/");
+			if(relationship != null)
+			{
+				parentDirectory = this.copyOnWrite(relationship);
+			}
+			else
+			{
+				Vertex directory = this.createNode(NodeLabels.Directory);
+				directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+				directory.setProperty(MandatoryProperties.version.name(), 0);
+				
+				relationship = parentDirectory.addEdge(RelationshipLabels.has.name(), directory);
+				relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+				this.indexPath(relationship);
+				this.addPath(userId, filesystemId, directory, parentPath);
+				parentDirectory = directory;
+			}
+			
+			parentPath = this.getFullPath(parentPath, directoryName);
+		}
+		
+		return parentDirectory;
+	}
+	
+	private Edge findDirectoryRelationship(Vertex rootDirectory, String directoryPath, String directoryName, boolean writable)
+	{
+		Edge relationship = null;
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			relationship = this.getIndexedRelationship(rootDirectory, this.getFullPath(directoryPath, directoryName) + "/");
+		}
+		else
+		{
+			Vertex parentDirectory = rootDirectory;
+			String[] parentNames = directoryPath.equals("/") ? new String[0] : directoryPath.substring(1).split("/");
+			for(int i = 0; i < parentNames.length && parentDirectory != null; i++)
+			{
+				Edge parentRelationship = this.getIndexedRelationship(parentDirectory, parentNames[i] + "/");
+				parentDirectory = parentRelationship == null ? null : (writable ? this.copyOnWrite(parentRelationship) : parentRelationship.getVertex(Direction.IN));
+			}
+			
+			relationship = parentDirectory == null ? null : this.getIndexedRelationship(parentDirectory, directoryName + "/");
+		}
+		
+		return relationship;
+	}
+	
+	public List<Vertex> getAllDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		List<Vertex> directoryList = new ArrayList<Vertex>();
+		List<Vertex> pendingNodeList = new ArrayList<Vertex>();
+		pendingNodeList.add(this.getRootDirectory(userId, filesystemId, filesystemVersion));
+		
+		do
+		{
+			List<Vertex> childNodeList = new ArrayList<Vertex>();
+			for(Vertex pendingNode : pendingNodeList)
+			{
+				Iterable<Edge> iterable = pendingNode.getEdges(Direction.OUT, RelationshipLabels.has.name());
+				for(Edge relationship : iterable)
+				{
+					Vertex node = relationship.getVertex(Direction.IN);
+					TitanVertex vertex = (TitanVertex) node;
+					if(vertex.getLabel().equals(NodeLabels.Directory.name()))
+					{
+						directoryList.add(node);
+						childNodeList.add(node);
+					}
+				}
+			}
+			
+			pendingNodeList = this.pathStorageMode == PathStorageMode.RelativePaths ? childNodeList : new ArrayList<Vertex>();
+		}
+		while(! pendingNodeList.isEmpty());
+		
+		return directoryList;
+	}
+	
+	public void setDirectoryPath(Vertex directory, String directoryPath, String directoryName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath);
+		}
+		directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+	}
+	
+	public void setFilePath(Vertex file, String filePath, String fileName)
+	{
+		if(this.pathStorageMode == PathStorageMode.AbsolutePaths)
+		{
+			file.setProperty(MandatoryProperties.filePath.name(), filePath);
+		}
+		file.setProperty(MandatoryProperties.fileName.name(), fileName);
+	}
+	
+	public Vertex getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		Vertex file = this.findFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+		if(file == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		
+		return file;
+	}
+	
+	public Vertex findFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		return this.findFile(this.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, false), filePath, fileName);
+	}
+	
+	public Vertex findFile(Vertex parentDirectory, String filePath, String fileName)
+	{
+		Edge relationship = this.findFileRelationship(parentDirectory, filePath, fileName);
+		return relationship == null ? null : relationship.getVertex(Direction.IN);
+	}
+	
+	public Vertex getWritableFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		Vertex parentDirectory = this.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, true);
+		Edge relationship = this.findFileRelationship(parentDirectory, filePath, fileName);
+		if(relationship == null)
+		{
+			throw this.getFileNotFound(filePath, fileName);
+		}
+		
+		return this.copyOnWrite(relationship);
+	}
+	
+	private FileNotFound getFileNotFound(String filePath, String fileName)
+	{
+		return new FileNotFound("ERROR: File not found! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"", false);
+	}
+	
+	public Vertex getParentDirectory(String userId, String filesystemId, int filesystemVersion, String filePath, boolean writable) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		if(filePath.equals("/"))
+		{
+			return writable ? this.getWritableRootDirectory(userId, filesystemId, filesystemVersion) : this.getRootDirectory(userId, filesystemId, filesystemVersion);
+		}
+		else
+		{
+			String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
+			String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
+			directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
+			return writable ? this.getWritableDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) : this.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+		}
+	}
+	
+	private Edge findFileRelationship(Vertex parentDirectory, String filePath, String fileName)
+	{
+		return this.getIndexedRelationship(parentDirectory, this.pathStorageMode == PathStorageMode.AbsolutePaths ? this.getFullPath(filePath, fileName) : fileName);
+	}
+	
+	/*
+	 * Every has edge to a directory or a file carries pathKey (parent nodeId + full path), which has a
+	 * composite index, so a directory is found under its root and a file under its directory with one
+	 * index hit. Directory paths end with a slash so that a directory and a file with the same name
+	 * directly under the root directory never share a key. With relative paths the name takes the place
+	 * of the full path. Filesystems are keyed under their user by filesystemId. had edges are not indexed.
+	 */
+	public Edge indexPath(Edge relationship)
+	{
+		String fullPath = relationship.getLabel().equals(RelationshipLabels.has.name()) ? this.getFullPath(relationship.getVertex(Direction.IN)) : null;
+		if(fullPath != null)
+		{
+			relationship.setProperty(MandatoryProperties.pathKey.name(), this.getPathKey((String) relationship.getVertex(Direction.OUT).getProperty(MandatoryProperties.nodeId.name()), fullPath));
+		}
+		else if(relationship.getProperty(MandatoryProperties.pathKey.name()) != null)
+		{
+			relationship.removeProperty(MandatoryProperties.pathKey.name());
+		}
+		
+		return relationship;
+	}
+	
+	private String getFullPath(Vertex node)
+	{
+		TitanVertex vertex = (TitanVertex) node;
+		if(vertex.getLabel().equals(NodeLabels.Directory.name()) && node.getProperty(MandatoryProperties.directoryPath.name()) != null)
+		{
+			return this.getFullPath((String) node.getProperty(MandatoryProperties.directoryPath.name()), (String) node.getProperty(MandatoryProperties.directoryName.name())) + "/";
+		}
+		else if(vertex.getLabel().equals(NodeLabels.Directory.name()) && node.getProperty(MandatoryProperties.directoryName.name()) != null)
+		{
+			return (String) node.getProperty(MandatoryProperties.directoryName.name()) + "/";
+		}
+		else if(vertex.getLabel().equals(NodeLabels.File.name()) && node.getProperty(MandatoryProperties.filePath.name()) != null)
+		{
+			return this.getFullPath((String) node.getProperty(MandatoryProperties.filePath.name()), (String) node.getProperty(MandatoryProperties.fileName.name()));
+		}
+		else if(vertex.getLabel().equals(NodeLabels.File.name()))
+		{
+			return (String) node.getProperty(MandatoryProperties.fileName.name());
+		}
+		else if(vertex.getLabel().equals(NodeLabels.Filesystem.name()))
+		{
+			return (String) node.getProperty(MandatoryProperties.filesystemId.name());
+		}
+		
+		return null;
+	}
+	
+	private String getFullPath(String path, String name)
+	{
+		return (path.equals("/") ? "" : path) + "/" + name;
+	}
+	
+	private String getPathKey(String parentNodeId, String fullPath)
+	{
+		return parentNodeId + ":" + fullPath;
+	}
+	
+	private Edge getIndexedRelationship(Vertex parentNode, String fullPath)
+	{
+		Iterator<Edge> iterator = this.getGraph().getEdges(MandatoryProperties.pathKey.name(), this.getPathKey((String) parentNode.getProperty(MandatoryProperties.nodeId.name()), fullPath)).iterator();
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+	
+	/*
+	 * The filter holds every directory and file path that has existed in any version of a filesystem.
+	 * It is built the first time the filesystem is checked and only ever grows: a deleted path stays in
+	 * it as a false positive until the next rebuild, which keeps a negative answer always trustworthy.
+	 * A filesystem the path filter no longer keeps a filter for always may contain the path, leaving the
+	 * check to the index.
+	 */
+	public boolean mayContainPath(String userId, String filesystemId, String path, String name, boolean directory) throws UserNotFound, FilesystemNotFound
+	{
+		BloomFilter bloomFilter = this.getBloomFilter(userId, filesystemId);
+		if(bloomFilter == null)
+		{
+			return true;
+		}
+		
+		boolean mayContain = bloomFilter.mightContain(this.getFullPath(path, name) + (directory ? "/" : ""));
+		if(! mayContain)
+		{
+			this.pathFilter.recordNegative();
+		}
+		
+		return mayContain;
+	}
+	
+	public void recordPathFalsePositive(String userId, String filesystemId)
+	{
+		if(this.pathFilter.isFiltered(this.getFilesystemKey(userId, filesystemId)))
+		{
+			this.pathFilter.recordFalsePositive();
+		}
+	}
+	
+	public void addPath(String userId, String filesystemId, Vertex node, String parentPath)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			bloomFilter.add(this.getFilterPath(node, parentPath));
+		}
+	}
+	
+	public void addPathTree(String userId, String filesystemId, Vertex directory, String parentPath)
+	{
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(this.getFilesystemKey(userId, filesystemId));
+		if(bloomFilter != null)
+		{
+			List<String> paths = new ArrayList<String>();
+			String directoryPath = this.getFilterPath(directory, parentPath);
+			paths.add(directoryPath);
+			this.collectPaths(directory, directoryPath.substring(0, directoryPath.length() - 1), paths, new HashSet<String>());
+			
+			for(String path : paths)
+			{
+				bloomFilter.add(path);
+			}
+		}
+	}
+	
+	public void invalidatePathFilter(String userId, String filesystemId)
+	{
+		this.pathFilter.invalidate(this.getFilesystemKey(userId, filesystemId));
+	}
+	
+	private BloomFilter getBloomFilter(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
+	{
+		String filesystemKey = this.getFilesystemKey(userId, filesystemId);
+		if(! this.pathFilter.isFiltered(filesystemKey))
+		{
+			return null;
+		}
+		
+		BloomFilter bloomFilter = this.pathFilter.getBloomFilter(filesystemKey);
+		if(bloomFilter != null && bloomFilter.getInsertions() <= bloomFilter.getExpectedInsertions())
+		{
+			return bloomFilter;
+		}
+		
+		List<String> paths = new ArrayList<String>();
+		Set<String> visited = new HashSet<String>();
+		Vertex versionedFilesystem = this.getFilesystem(userId, filesystemId);
+		while(versionedFilesystem != null)
+		{
+			for(Edge relationship : versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.has.name()))
+			{
+				this.collectPaths(relationship.getVertex(Direction.IN), "/", paths, visited);
+			}
+			
+			Iterator<Edge> iterator = versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+			versionedFilesystem = iterator.hasNext() ? iterator.next().getVertex(Direction.IN) : null;
+		}
+		
+		bloomFilter = this.pathFilter.createBloomFilter(paths.size());
+		for(String path : paths)
+		{
+			bloomFilter.add(path);
+		}
+		
+		this.pathFilter.putBloomFilter(filesystemKey, bloomFilter);
+		return bloomFilter;
+	}
+	
+	private void collectPaths(Vertex directory, String directoryPath, List<String> paths, Set<String> visited)
+	{
+		for(Edge relationship : directory.getEdges(Direction.OUT, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
+		{
+			Vertex node = relationship.getVertex(Direction.IN);
+			String path = this.getFilterPath(node, directoryPath);
+			if(path != null && visited.add(node.getId() + ":" + path))
+			{
+				paths.add(path);
+				if(path.endsWith("/"))
+				{
+					this.collectPaths(node, path.substring(0, path.length() - 1), paths, visited);
+				}
+			}
+		}
+	}
+	
+	private String getFilterPath(Vertex node, String parentPath)
+	{
+		TitanVertex vertex = (TitanVertex) node;
+		if(vertex.getLabel().equals(NodeLabels.Directory.name()))
+		{
+			String directoryPath = node.getProperty(MandatoryProperties.directoryPath.name());
+			return this.getFullPath(directoryPath == null ? parentPath : directoryPath, (String) node.getProperty(MandatoryProperties.directoryName.name())) + "/";
+		}
+		else if(vertex.getLabel().equals(NodeLabels.File.name()))
+		{
+			String filePath = node.getProperty(MandatoryProperties.filePath.name());
+			return this.getFullPath(filePath == null ? parentPath : filePath, (String) node.getProperty(MandatoryProperties.fileName.name()));
+		}
+		
+		return null;
+	}
+	
+	private String getFilesystemKey(String userId, String filesystemId)
+	{
+		return userId + ":" + filesystemId;
 	}
 	
 	public Vertex copyNode(Vertex node)
@@ -375,7 +1258,7 @@ public class CommonCode
 		
 		for(String key : node.getPropertyKeys())
 		{
-			if(! key.equals(MandatoryProperties.nodeId.name()))
+			if(! key.equals(MandatoryProperties.nodeId.name()) && ! key.equals(MandatoryProperties.versionOf.name()) && ! key.equals(MandatoryProperties.versionKey.name()))
 			{
 				copyNode.setProperty(key, node.getProperty(key));
 			}
@@ -404,7 +1287,7 @@ public class CommonCode
 				
 				for(RelationshipLabels relationshipLabel : RelationshipLabels.values())
 				{
-					if(ignoreRelationships.contains(relationshipLabel.name()))
+					if(ignoreRelationships.contains(relationshipLabel.name()) || relationshipLabel == RelationshipLabels.hasHeadVersion)
 					{
 						continue;
 					}
@@ -420,6 +1303,7 @@ public class CommonCode
 						{
 							currentNodeCopyRelationship.setProperty(key, relationship.getProperty(key));
 						}
+						this.indexPath(currentNodeCopyRelationship);
 						
 						childNodeList.add(childNode);
 						childNodeCopyList.add(childNodeCopy);
@@ -437,4 +1321,92 @@ public class CommonCode
 		
 		return rootNodeCopy;
 	}
+	
+	public Vertex shareNodeTree(Vertex node)
+	{
+		Vertex nodeCopy = this.copyNode(node);
+		for(Edge relationship : node.getEdges(Direction.OUT, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
+		{
+			Edge sharedRelationship = nodeCopy.addEdge(relationship.getLabel(), relationship.getVertex(Direction.IN));
+			for(String key : relationship.getPropertyKeys())
+			{
+				sharedRelationship.setProperty(key, relationship.getProperty(key));
+			}
+			this.indexPath(sharedRelationship);
+		}
+		
+		return nodeCopy;
+	}
+	
+	/*
+	 * With structural sharing a node can hang under more than one version of its parent, as has or, where
+	 * it was deleted, as had. Before such a node is changed it is copied (the copy still shares the node's
+	 * own children) and only the given parent is moved over to the copy, so every other version keeps
+	 * seeing the node as it was.
+	 */
+	public Vertex copyOnWrite(Edge parentRelationship)
+	{
+		Vertex node = parentRelationship.getVertex(Direction.IN);
+		Iterator<Edge> iterator = node.getEdges(Direction.IN, RelationshipLabels.has.name(), RelationshipLabels.had.name()).iterator();
+		iterator.next();
+		if(! iterator.hasNext())
+		{
+			return node;
+		}
+		
+		Vertex nodeCopy = this.shareNodeTree(node);
+		this.moveParentRelationship(parentRelationship, nodeCopy);
+		return nodeCopy;
+	}
+	
+	/*
+	 * The other way round from copyOnWrite: the node stays with the given parent, and every other parent
+	 * (has or had) is moved over to one copy of it. Nothing is copied for a node with no other parent.
+	 */
+	private void unshareNode(Vertex node, Edge parentRelationship)
+	{
+		List<Edge> otherRelationships = new ArrayList<Edge>();
+		for(Edge relationship : node.getEdges(Direction.IN, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
+		{
+			if(! relationship.equals(parentRelationship))
+			{
+				otherRelationships.add(relationship);
+			}
+		}
+		
+		if(otherRelationships.isEmpty())
+		{
+			return;
+		}
+		
+		Vertex nodeCopy = this.shareNodeTree(node);
+		for(Edge otherRelationship : otherRelationships)
+		{
+			this.moveParentRelationship(otherRelationship, nodeCopy);
+		}
+	}
+	
+	/*
+	 * A filesystem version names its root directory by nodeId as well, so when the root is handed over
+	 * to a copy, the version is changed to name the copy. An older version changes in place here, and
+	 * its cached snapshots go with it.
+	 */
+	private void moveParentRelationship(Edge parentRelationship, Vertex node)
+	{
+		Vertex parentNode = parentRelationship.getVertex(Direction.OUT);
+		if(parentNode.getProperty(MandatoryProperties.rootNodeId.name()) != null)
+		{
+			this.invalidateNode(parentNode);
+			parentNode.setProperty(MandatoryProperties.rootNodeId.name(), node.getProperty(MandatoryProperties.nodeId.name()));
+		}
+		
+		Edge relationship = parentNode.addEdge(parentRelationship.getLabel(), node);
+		for(String key : parentRelationship.getPropertyKeys())
+		{
+			relationship.setProperty(key, parentRelationship.getProperty(key));
+		}
+		this.indexPath(relationship);
+		
+		parentRelationship.remove();
+	}
 }
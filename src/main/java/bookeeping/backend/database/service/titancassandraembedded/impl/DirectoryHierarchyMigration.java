@@ -0,0 +1,204 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.titan.NodeLabels;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.exception.NodeNotFound;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+public class DirectoryHierarchyMigration
+{
+	private TitanGraph titanGraph;
+	private CommonCode commonCode;
+	
+	public DirectoryHierarchyMigration()
+	{
+		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
+		this.commonCode = TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode();
+	}
+	
+	/*
+	 * Converts every filesystem from the flat layout (all directories under the root directory, absolute
+	 * paths on every node) to the hierarchical one used with PathStorageMode.RelativePaths. Each filesystem
+	 * is converted in its own transaction and nodes without an absolute path are left alone, so it can be
+	 * re-run after a partial failure. Switch PathStorageMode to RelativePaths once it has finished.
+	 */
+	public int migrate() throws NodeNotFound
+	{
+		List<String> filesystemNodeIds = new ArrayList<String>();
+		for(Vertex node : this.titanGraph.getVertices())
+		{
+			if(((TitanVertex) node).getLabel().equals(NodeLabels.Filesystem.name()) && ! node.getEdges(Direction.IN, RelationshipLabels.hasVersion.name()).iterator().hasNext())
+			{
+				filesystemNodeIds.add((String) node.getProperty(MandatoryProperties.nodeId.name()));
+			}
+		}
+		this.titanGraph.commit();
+		
+		for(String filesystemNodeId : filesystemNodeIds)
+		{
+			try
+			{
+				this.migrateFilesystem(this.commonCode.getNode(filesystemNodeId));
+				this.titanGraph.commit();
+			}
+			catch(NodeNotFound | RuntimeException exception)
+			{
+				this.titanGraph.rollback();
+				throw exception;
+			}
+		}
+		
+		return filesystemNodeIds.size();
+	}
+	
+	private void migrateFilesystem(Vertex filesystem)
+	{
+		List<Vertex> rootDirectories = new ArrayList<Vertex>();
+		Vertex versionedFilesystem = filesystem;
+		while(versionedFilesystem != null)
+		{
+			for(Edge relationship : versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.has.name()))
+			{
+				if(! rootDirectories.contains(relationship.getVertex(Direction.IN)))
+				{
+					rootDirectories.add(relationship.getVertex(Direction.IN));
+				}
+			}
+			
+			Iterator<Edge> iterator = versionedFilesystem.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+			versionedFilesystem = iterator.hasNext() ? iterator.next().getVertex(Direction.IN) : null;
+		}
+		
+		/*
+		 * Directory nodes can be shared by several root directories, so every path is read before any
+		 * node is changed.
+		 */
+		List<Map<String, Vertex>> directoryMaps = new ArrayList<Map<String, Vertex>>();
+		List<List<Edge>> directoryRelationshipLists = new ArrayList<List<Edge>>();
+		List<List<String>> parentPathLists = new ArrayList<List<String>>();
+		for(Vertex rootDirectory : rootDirectories)
+		{
+			Map<String, Vertex> directoryMap = new HashMap<String, Vertex>();
+			List<Edge> directoryRelationships = new ArrayList<Edge>();
+			List<String> parentPaths = new ArrayList<String>();
+			directoryMap.put("/", rootDirectory);
+			
+			for(Edge relationship : rootDirectory.getEdges(Direction.OUT, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
+			{
+				Vertex directory = relationship.getVertex(Direction.IN);
+				if(((TitanVertex) directory).getLabel().equals(NodeLabels.Directory.name()) && directory.getProperty(MandatoryProperties.directoryPath.name()) != null)
+				{
+					String directoryPath = directory.getProperty(MandatoryProperties.directoryPath.name());
+					String directoryName = directory.getProperty(MandatoryProperties.directoryName.name());
+					directoryRelationships.add(relationship);
+					parentPaths.add(directoryPath);
+					
+					if(relationship.getLabel().equals(RelationshipLabels.has.name()))
+					{
+						directoryMap.put((directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName, directory);
+					}
+				}
+			}
+			
+			directoryMaps.add(directoryMap);
+			directoryRelationshipLists.add(directoryRelationships);
+			parentPathLists.add(parentPaths);
+		}
+		
+		Set<Vertex> directories = new LinkedHashSet<Vertex>();
+		for(int i = 0; i < rootDirectories.size(); i++)
+		{
+			Map<String, Vertex> directoryMap = directoryMaps.get(i);
+			List<Edge> directoryRelationships = directoryRelationshipLists.get(i);
+			List<String> parentPaths = parentPathLists.get(i);
+			directories.add(rootDirectories.get(i));
+			
+			for(int j = 0; j < directoryRelationships.size(); j++)
+			{
+				Edge relationship = directoryRelationships.get(j);
+				Vertex directory = relationship.getVertex(Direction.IN);
+				Vertex parentDirectory = this.getParentDirectory(directoryMap, parentPaths.get(j), directories);
+				if(! parentDirectory.equals(relationship.getVertex(Direction.OUT)))
+				{
+					Edge parentRelationship = parentDirectory.addEdge(relationship.getLabel(), directory);
+					for(String key : relationship.getPropertyKeys())
+					{
+						parentRelationship.setProperty(key, relationship.getProperty(key));
+					}
+					relationship.remove();
+				}
+				
+				directories.add(directory);
+			}
+		}
+		
+		for(Vertex directory : directories)
+		{
+			this.commonCode.invalidateNode(directory);
+			directory.removeProperty(MandatoryProperties.directoryPath.name());
+			for(Edge relationship : directory.getEdges(Direction.OUT, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
+			{
+				Vertex node = relationship.getVertex(Direction.IN);
+				if(((TitanVertex) node).getLabel().equals(NodeLabels.File.name()))
+				{
+					this.commonCode.invalidateNode(node);
+					node.removeProperty(MandatoryProperties.filePath.name());
+				}
+			}
+		}
+		
+		for(Vertex directory : directories)
+		{
+			for(Edge relationship : directory.getEdges(Direction.OUT, RelationshipLabels.has.name(), RelationshipLabels.had.name()))
+			{
+				this.commonCode.indexPath(relationship);
+			}
+		}
+	}
+	
+	/*
+	 * The flat layout never required a parent directory to exist, so missing ones are created on the way.
+	 */
+	private Vertex getParentDirectory(Map<String, Vertex> directoryMap, String directoryPath, Set<Vertex> directories)
+	{
+		Vertex directory = directoryMap.get(directoryPath);
+		if(directory == null)
+		{
+			String directoryName = directoryPath.substring(directoryPath.lastIndexOf("/") + 1);
+			String parentPath = directoryPath.substring(0, directoryPath.lastIndexOf("/"));
+			Vertex parentDirectory = this.getParentDirectory(directoryMap, parentPath.length() == 0 ? "/" : parentPath, directories);
+			
+			directory = this.commonCode.createNode(NodeLabels.Directory);
+			directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
+			directory.setProperty(MandatoryProperties.version.name(), 0);
+			parentDirectory.addEdge(RelationshipLabels.has.name(), directory);
+			
+			directoryMap.put(directoryPath, directory);
+			directories.add(directory);
+		}
+		
+		return directory;
+	}
+	
+	public static void main(String[] args) throws NodeNotFound
+	{
+		int migratedFilesystems = new DirectoryHierarchyMigration().migrate();
+		System.out.println("Migrated filesystems: " + migratedFilesystems);
+		System.out.println("Set PathStorageMode=RelativePaths in databaseconnection.ini before restarting.");
+	}
+}
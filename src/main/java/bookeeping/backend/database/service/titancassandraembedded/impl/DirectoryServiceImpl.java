@@ -1,14 +1,17 @@
 package bookeeping.backend.database.service.titancassandraembedded.impl;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
 import bookeeping.backend.database.service.DirectoryService;
-import bookeeping.backend.database.service.GenericService;
 import bookeeping.backend.database.titan.NodeLabels;
 import bookeeping.backend.database.titan.RelationshipLabels;
 import bookeeping.backend.exception.DirectoryNotFound;
@@ -18,183 +21,342 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
 
-import com.thinkaurelius.titan.core.TitanGraph;
-import com.thinkaurelius.titan.core.TitanTransaction;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
 public class DirectoryServiceImpl implements DirectoryService
 {
-	private TitanGraph titanGraph;
 	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
+	private PathStorageMode pathStorageMode;
 	
 	public DirectoryServiceImpl()
 	{
-		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this(TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	DirectoryServiceImpl(CommonCode commonCode)
+	{
+		this.commonCode = commonCode;
+		this.filesystemLock = TitanCassandraEmbeddedConnection.getInstance().getFilesystemLock();
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
+		this.pathStorageMode = TitanCassandraEmbeddedConnection.getInstance().getPathStorageMode();
 	}
 	
 	@Override
 	public String createNewDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, Map<String, Object> directoryProperties) throws UserNotFound, FilesystemNotFound, VersionNotFound, DuplicateDirectory
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
-				throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
-			}
-			catch(DirectoryNotFound directoryNotFound)
-			{
-				Vertex directory = this.commonCode.createNode(NodeLabels.Directory);
-				directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath);
-				directory.setProperty(MandatoryProperties.directoryName.name(), directoryName);
-				directory.setProperty(MandatoryProperties.version.name(), 0);
-				String directoryNodeId = (String) directory.getProperty(MandatoryProperties.nodeId.name());
-				
-				for(Entry<String, Object> directoryPropertiesEntry : directoryProperties.entrySet())
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.mayContainPath(userId, filesystemId, directoryPath, directoryName, true))
+					{
+						if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) != null)
+						{
+							throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+						}
+						
+						this.commonCode.recordPathFalsePositive(userId, filesystemId);
+					}
+					
+					Vertex directory = this.commonCode.createNode(NodeLabels.Directory);
+					this.commonCode.setDirectoryPath(directory, directoryPath, directoryName);
+					directory.setProperty(MandatoryProperties.version.name(), 0);
+					String directoryNodeId = (String) directory.getProperty(MandatoryProperties.nodeId.name());
+					
+					for(Entry<String, Object> directoryPropertiesEntry : directoryProperties.entrySet())
+					{
+						directory.setProperty(directoryPropertiesEntry.getKey(), directoryPropertiesEntry.getValue());
+					}
+					
+					Vertex parentDirectory = this.commonCode.getWritableDirectoryParent(commitId, userId, filesystemId, filesystemVersion, directoryPath);
+					Edge relationship = parentDirectory.addEdge(RelationshipLabels.has.name(), directory);
+					relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+					this.commonCode.indexPath(relationship);
+					this.commonCode.addPath(userId, filesystemId, directory, directoryPath);
+					unitOfWork.success();
+					return directoryNodeId;
+				}
+				catch(RuntimeException runtimeException)
 				{
-					directory.setProperty(directoryPropertiesEntry.getKey(), directoryPropertiesEntry.getValue());
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
-				
-				Vertex rootDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
-				rootDirectory.addEdge(RelationshipLabels.has.name(), directory).setProperty(MandatoryProperties.commitId.name(), commitId);
-				titanTransaction.commit();
-				return directoryNodeId;
 			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public void restoreDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, DuplicateDirectory, NodeNotFound, NodeUnavailable
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			try
-			{
-				this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
-				throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
-			}
-			catch(DirectoryNotFound directoryNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
-				titanTransaction.commit();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName) != null)
+					{
+						throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (directoryPath.equals("/") ? "" : directoryPath) + "/" + directoryName + "\"");
+					}
+					
+					Vertex directory = this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
+					this.commonCode.addPath(userId, filesystemId, directory, directoryPath);
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public String moveDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		String oldPath = oldDirectoryPath.equals("/") ? "/" + oldDirectoryName : oldDirectoryPath + "/" + oldDirectoryName;
+		if((newDirectoryPath + "/").startsWith(oldPath + "/"))
+		{
+			throw new IllegalArgumentException("ERROR: Cannot move Directory into itself! - \"" + oldPath + "\" -> \"" + newDirectoryPath + "\"");
+		}
+		
+		if(this.pathStorageMode == PathStorageMode.RelativePaths)
+		{
+			return this.moveRelativeDirectory(commitId, userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName, newDirectoryPath, newDirectoryName);
+		}
+		
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			List<String> ignoreRelationships = new ArrayList<String>();
-			ignoreRelationships.add(RelationshipLabels.hadAccess.name());
-			ignoreRelationships.add(RelationshipLabels.hasAccess.name());
-			ignoreRelationships.add(RelationshipLabels.hasVersion.name());
-			
-			Vertex oldDirectory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName);
-			Vertex newDirectory = this.commonCode.copyNodeTree(oldDirectory, ignoreRelationships);
-			newDirectory.setProperty(MandatoryProperties.directoryPath.name(), newDirectoryPath);
-			newDirectory.setProperty(MandatoryProperties.directoryName.name(), newDirectoryName);
-			newDirectory.setProperty(MandatoryProperties.version.name(), 0);
-			String newDirectoryNodeId = (String) newDirectory.getProperty(MandatoryProperties.nodeId.name());
-			
-			Vertex parentNode = oldDirectory.getEdges(Direction.IN, RelationshipLabels.has.name()).iterator().next().getVertex(Direction.OUT);
-			parentNode.addEdge(RelationshipLabels.has.name(), newDirectory);
-			
-			GenericService genericService = new GenericServiceImpl();
-			try
-			{
-				genericService.deleteNodeTemporarily(commitId, (String) oldDirectory.getProperty(MandatoryProperties.nodeId.name()));
-			}
-			catch (NodeNotFound | NodeUnavailable e) {}
-			
-			String oldPath = oldDirectoryPath.equals("/") ? "/" + oldDirectoryName : oldDirectoryPath + "/" + oldDirectoryName;
-			String newPath = newDirectoryPath.equals("/") ? "/" + newDirectoryName : newDirectoryPath + "/" + newDirectoryName;
-			
-			for(RelationshipLabels relationshipLabel : RelationshipLabels.values())
-			{
-				for(Edge newRelationship : newDirectory.getEdges(Direction.OUT, relationshipLabel.name()))
-				{
-					Vertex endNode = newRelationship.getVertex(Direction.IN);
-					endNode.setProperty(MandatoryProperties.filePath.name(), newPath);
-				}
-			}
-			
-			List<Vertex> directoryList = this.commonCode.getAllDirectory(userId, filesystemId, filesystemVersion);
-			for(Vertex directory : directoryList)
+			for(int attempt = 1; ; attempt++)
 			{
-				String directoryPath = (String) directory.getProperty(MandatoryProperties.directoryPath.name());
-				if(directoryPath.startsWith(oldPath))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					directory.setProperty(MandatoryProperties.directoryPath.name(), directoryPath.replaceFirst(oldPath, newPath));
+					if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, newDirectoryPath, newDirectoryName) != null)
+					{
+						throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (newDirectoryPath.equals("/") ? "" : newDirectoryPath) + "/" + newDirectoryName + "\"");
+					}
+					
+					List<String> ignoreRelationships = new ArrayList<String>();
+					ignoreRelationships.add(RelationshipLabels.hadAccess.name());
+					ignoreRelationships.add(RelationshipLabels.hasAccess.name());
+					ignoreRelationships.add(RelationshipLabels.hasVersion.name());
+					
+					Vertex oldDirectory = this.commonCode.getWritableDirectory(userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName);
+					Vertex newDirectory = this.commonCode.copyNodeTree(oldDirectory, ignoreRelationships);
+					newDirectory.setProperty(MandatoryProperties.directoryPath.name(), newDirectoryPath);
+					newDirectory.setProperty(MandatoryProperties.directoryName.name(), newDirectoryName);
+					newDirectory.setProperty(MandatoryProperties.version.name(), 0);
+					String newDirectoryNodeId = (String) newDirectory.getProperty(MandatoryProperties.nodeId.name());
+					
+					Vertex parentNode = oldDirectory.getEdges(Direction.IN, RelationshipLabels.has.name()).iterator().next().getVertex(Direction.OUT);
+					this.commonCode.indexPath(parentNode.addEdge(RelationshipLabels.has.name(), newDirectory));
+					
+					try
+					{
+						this.commonCode.deleteNodeTemporarily(commitId, (String) oldDirectory.getProperty(MandatoryProperties.nodeId.name()));
+					}
+					catch(NodeNotFound | NodeUnavailable exception)
+					{
+						throw new DirectoryNotFound("ERROR: Directory not found! - \"" + (oldDirectoryPath.equals("/") ? "" : oldDirectoryPath) + "/" + oldDirectoryName + "\"", exception);
+					}
+					
+					String newPath = newDirectoryPath.equals("/") ? "/" + newDirectoryName : newDirectoryPath + "/" + newDirectoryName;
+					
 					for(RelationshipLabels relationshipLabel : RelationshipLabels.values())
 					{
 						for(Edge newRelationship : newDirectory.getEdges(Direction.OUT, relationshipLabel.name()))
 						{
 							Vertex endNode = newRelationship.getVertex(Direction.IN);
-							String filePath = (String) endNode.getProperty(MandatoryProperties.filePath.name());
-							if(filePath != null) endNode.setProperty(MandatoryProperties.filePath.name(), filePath.replaceFirst(oldPath, newPath));
+							this.commonCode.invalidateNode(endNode);
+							endNode.setProperty(MandatoryProperties.filePath.name(), newPath);
+							this.commonCode.indexPath(newRelationship);
+						}
+					}
+					
+					List<Vertex> directoryList = this.commonCode.getAllDirectory(userId, filesystemId, filesystemVersion);
+					for(Vertex directory : directoryList)
+					{
+						String directoryPath = (String) directory.getProperty(MandatoryProperties.directoryPath.name());
+						if(directoryPath.equals(oldPath) || directoryPath.startsWith(oldPath + "/"))
+						{
+							this.commonCode.invalidateNode(directory);
+							directory.setProperty(MandatoryProperties.directoryPath.name(), newPath + directoryPath.substring(oldPath.length()));
+							for(Edge parentRelationship : directory.getEdges(Direction.IN, RelationshipLabels.has.name()))
+							{
+								this.commonCode.indexPath(parentRelationship);
+							}
+							
+							for(RelationshipLabels relationshipLabel : RelationshipLabels.values())
+							{
+								for(Edge newRelationship : directory.getEdges(Direction.OUT, relationshipLabel.name()))
+								{
+									Vertex endNode = newRelationship.getVertex(Direction.IN);
+									String filePath = (String) endNode.getProperty(MandatoryProperties.filePath.name());
+									if(filePath != null && (filePath.equals(oldPath) || filePath.startsWith(oldPath + "/")))
+									{
+										this.commonCode.invalidateNode(endNode);
+										endNode.setProperty(MandatoryProperties.filePath.name(), newPath + filePath.substring(oldPath.length()));
+									}
+									this.commonCode.indexPath(newRelationship);
+								}
+							}
 						}
 					}
+					
+					this.commonCode.invalidatePathFilter(userId, filesystemId);
+					unitOfWork.success();
+					return newDirectoryNodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
 			}
-			
-			titanTransaction.commit();
-			return newDirectoryNodeId;
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * Paths are derived from the parent links, so a move only copies the moved directory itself (its
+	 * children are shared, not copied) and hangs the copy under the new parent. Nothing below it changes.
+	 */
+	private String moveRelativeDirectory(String commitId, String userId, String filesystemId, int filesystemVersion, String oldDirectoryPath, String oldDirectoryName, String newDirectoryPath, String newDirectoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory
+	{
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
 			{
-				titanTransaction.rollback();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findDirectory(userId, filesystemId, filesystemVersion, newDirectoryPath, newDirectoryName) != null)
+					{
+						throw new DuplicateDirectory("ERROR: Directory already present! - \"" + (newDirectoryPath.equals("/") ? "" : newDirectoryPath) + "/" + newDirectoryName + "\"");
+					}
+					
+					Vertex oldDirectory = this.commonCode.getWritableDirectory(userId, filesystemId, filesystemVersion, oldDirectoryPath, oldDirectoryName);
+					Vertex newDirectory = this.commonCode.shareNodeTree(oldDirectory);
+					this.commonCode.setDirectoryPath(newDirectory, newDirectoryPath, newDirectoryName);
+					newDirectory.setProperty(MandatoryProperties.version.name(), 0);
+					String newDirectoryNodeId = (String) newDirectory.getProperty(MandatoryProperties.nodeId.name());
+					
+					try
+					{
+						this.commonCode.deleteNodeTemporarily(commitId, (String) oldDirectory.getProperty(MandatoryProperties.nodeId.name()));
+					}
+					catch(NodeNotFound | NodeUnavailable exception)
+					{
+						throw new DirectoryNotFound("ERROR: Directory not found! - \"" + (oldDirectoryPath.equals("/") ? "" : oldDirectoryPath) + "/" + oldDirectoryName + "\"", exception);
+					}
+					
+					Vertex parentDirectory = this.commonCode.getWritableDirectoryParent(commitId, userId, filesystemId, filesystemVersion, newDirectoryPath);
+					Edge relationship = parentDirectory.addEdge(RelationshipLabels.has.name(), newDirectory);
+					relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+					this.commonCode.indexPath(relationship);
+					this.commonCode.addPathTree(userId, filesystemId, newDirectory, newDirectoryPath);
+					
+					unitOfWork.success();
+					return newDirectoryNodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public Map<String, Object> getDirectory(String userId, String filesystemId, int filesystemVersion, String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
 		try
 		{
-			Vertex directory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
-			Map<String, Object> directoryProperties = null;
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				directoryProperties = this.commonCode.getNodeProperties(directory);
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Vertex directory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+					Map<String, Object> directoryProperties = new HashMap<String, Object>(this.commonCode.findNodeProperties(directory));
+					directoryProperties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+					
+					unitOfWork.success();
+					return directoryProperties;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			titanTransaction.commit();
-			return directoryProperties;
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Map<String, Map<String, Object>> getDirectories(String userId, String filesystemId, int filesystemVersion, String directoryPath, List<String> directoryNames) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
 			{
-				titanTransaction.rollback();
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Vertex directoryParent = this.commonCode.findDirectoryParent(userId, filesystemId, filesystemVersion, directoryPath);
+					Map<String, Map<String, Object>> directories = new LinkedHashMap<String, Map<String, Object>>();
+					for(int i = 0; i < directoryNames.size() && directoryParent != null; i++)
+					{
+						Map<String, Object> directoryProperties = this.commonCode.findNodeProperties(this.commonCode.findDirectory(directoryParent, directoryPath, directoryNames.get(i)));
+						if(directoryProperties != null)
+						{
+							directoryProperties = new HashMap<String, Object>(directoryProperties);
+							directoryProperties.put(MandatoryProperties.directoryPath.name(), directoryPath);
+							directories.put(directoryNames.get(i), directoryProperties);
+						}
+					}
+					
+					unitOfWork.success();
+					return directories;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 }
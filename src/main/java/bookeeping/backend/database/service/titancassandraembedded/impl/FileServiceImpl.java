@@ -1,12 +1,15 @@
 package bookeeping.backend.database.service.titancassandraembedded.impl;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
 
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
 import bookeeping.backend.database.service.FileService;
-import bookeeping.backend.database.service.GenericService;
 import bookeeping.backend.database.titan.NodeLabels;
 import bookeeping.backend.database.titan.RelationshipLabels;
 import bookeeping.backend.exception.DirectoryNotFound;
@@ -17,73 +20,78 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
 
-import com.thinkaurelius.titan.core.TitanGraph;
-import com.thinkaurelius.titan.core.TitanTransaction;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Vertex;
 
 public class FileServiceImpl implements FileService
 {
-	private TitanGraph titanGraph;
 	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
 	
 	public FileServiceImpl()
 	{
-		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this(TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	FileServiceImpl(CommonCode commonCode)
+	{
+		this.commonCode = commonCode;
+		this.filesystemLock = TitanCassandraEmbeddedConnection.getInstance().getFilesystemLock();
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
 	}
 	
 	@Override
 	public String createNewFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, Map<String, Object> fileProperties) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, DuplicateFile
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			try
-			{
-				this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-				throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
-			}
-			catch(FileNotFound fileNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				String directoryName = filePath.substring(filePath.lastIndexOf("/") + 1, filePath.length());
-				String directoryPath = filePath.substring(0, filePath.lastIndexOf("/" + directoryName));
-				directoryPath = directoryPath.length() == 0 ? "/" : directoryPath;
-				
-				Vertex parentDirectory = null;
-				if(directoryPath.equals("/"))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					parentDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
-				}
-				else
-				{
-					parentDirectory = this.commonCode.getDirectory(userId, filesystemId, filesystemVersion, directoryPath, directoryName);
+					if(this.commonCode.mayContainPath(userId, filesystemId, filePath, fileName, false))
+					{
+						if(this.commonCode.findFile(userId, filesystemId, filesystemVersion, filePath, fileName) != null)
+						{
+							throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+						}
+						
+						this.commonCode.recordPathFalsePositive(userId, filesystemId);
+					}
+					
+					Vertex parentDirectory = this.commonCode.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, true);
+					Vertex file = this.commonCode.createNode(NodeLabels.File);
+					this.commonCode.setFilePath(file, filePath, fileName);
+					file.setProperty(MandatoryProperties.version.name(), 0);
+					String fileNodeId = (String) file.getProperty(MandatoryProperties.nodeId.name());
+					
+					for(Entry<String, Object> filePropertiesEntry : fileProperties.entrySet())
+					{
+						file.setProperty(filePropertiesEntry.getKey(), filePropertiesEntry.getValue());
+					}
+					
+					Edge relationship = parentDirectory.addEdge(RelationshipLabels.has.name(), file);
+					relationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+					this.commonCode.indexPath(relationship);
+					this.commonCode.addPath(userId, filesystemId, file, filePath);
+					unitOfWork.success();
+					return fileNodeId;
 				}
-				
-				Vertex file = this.commonCode.createNode(NodeLabels.File);
-				file.setProperty(MandatoryProperties.filePath.name(), filePath);
-				file.setProperty(MandatoryProperties.fileName.name(), fileName);
-				file.setProperty(MandatoryProperties.version.name(), 0);
-				String fileNodeId = (String) file.getProperty(MandatoryProperties.nodeId.name());
-				
-				for(Entry<String, Object> filePropertiesEntry : fileProperties.entrySet())
+				catch(RuntimeException runtimeException)
 				{
-					file.setProperty(filePropertiesEntry.getKey(), filePropertiesEntry.getValue());
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
-				
-				parentDirectory.addEdge(RelationshipLabels.has.name(), file).setProperty(MandatoryProperties.commitId.name(), commitId);
-				titanTransaction.commit();
-				return fileNodeId;
 			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 	
@@ -95,153 +103,226 @@ public class FileServiceImpl implements FileService
 			return;
 		}
 		
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
 		try
 		{
-			Vertex beneficiaryUser = this.commonCode.getUser(shareWithUserId);
-			Vertex fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-			
-			for(Edge relationship : beneficiaryUser.getEdges(Direction.OUT, RelationshipLabels.hasAccess.name()))
+			for(int attempt = 1; ; attempt++)
 			{
-				if(relationship.getVertex(Direction.IN).getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					Vertex beneficiaryUser = this.commonCode.getUser(shareWithUserId);
+					Vertex fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+					
+					for(Edge relationship : beneficiaryUser.getEdges(Direction.OUT, RelationshipLabels.hasAccess.name()))
+					{
+						if(relationship.getVertex(Direction.IN).getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+						{
+							relationship.remove();
+							break;
+						}
+					}
+					
+					Edge newRelationship = beneficiaryUser.addEdge(RelationshipLabels.hasAccess.name(), fileToBeShared);
+					newRelationship.setProperty(MandatoryProperties.permission.name(), filePermission);
+					newRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+					
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
 				{
-					relationship.remove();
-					break;
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
 			}
-			
-			Edge newRelationship = beneficiaryUser.addEdge(RelationshipLabels.hasAccess.name(), fileToBeShared);
-			newRelationship.setProperty(MandatoryProperties.permission.name(), filePermission);
-			newRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
-			
-			titanTransaction.commit();
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public void unshareFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String unshareWithUserId) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
 		try
 		{
-			Vertex beneficiaryUser = this.commonCode.getUser(unshareWithUserId);
-			Vertex fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-			
-			for(Edge hasAccessRelationship : beneficiaryUser.getEdges(Direction.OUT, RelationshipLabels.hasAccess.name()))
+			for(int attempt = 1; ; attempt++)
 			{
-				if(hasAccessRelationship.getVertex(Direction.IN).getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 				{
-					Edge hadAccessRelationship = beneficiaryUser.addEdge(RelationshipLabels.hadAccess.name(), fileToBeShared);
-					for(String key : hasAccessRelationship.getPropertyKeys())
+					Vertex beneficiaryUser = this.commonCode.getUser(unshareWithUserId);
+					Vertex fileToBeShared = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+					
+					for(Edge hasAccessRelationship : beneficiaryUser.getEdges(Direction.OUT, RelationshipLabels.hasAccess.name()))
 					{
-						hadAccessRelationship.setProperty(key, hasAccessRelationship.getProperty(key));
+						if(hasAccessRelationship.getVertex(Direction.IN).getProperty(MandatoryProperties.nodeId.name()).equals(fileToBeShared.getProperty(MandatoryProperties.nodeId.name())))
+						{
+							Edge hadAccessRelationship = beneficiaryUser.addEdge(RelationshipLabels.hadAccess.name(), fileToBeShared);
+							for(String key : hasAccessRelationship.getPropertyKeys())
+							{
+								hadAccessRelationship.setProperty(key, hasAccessRelationship.getProperty(key));
+							}
+							hadAccessRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
+							
+							hasAccessRelationship.remove();
+							break;
+						}
 					}
-					hadAccessRelationship.setProperty(MandatoryProperties.commitId.name(), commitId);
 					
-					hasAccessRelationship.remove();
-					break;
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
 			}
-			
-			titanTransaction.commit();
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public void restoreFile(String commitId, String userId, String filesystemId, int filesystemVersion, String filePath, String fileName, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			try
-			{
-				this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-				throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
-			}
-			catch(FileNotFound fileNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
-				titanTransaction.commit();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findFile(userId, filesystemId, filesystemVersion, filePath, fileName) != null)
+					{
+						throw new DuplicateFile("ERROR: File already present! - \"" + (filePath.equals("/") ? "" : filePath) + "/" + fileName + "\"");
+					}
+					
+					Vertex file = this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
+					this.commonCode.addPath(userId, filesystemId, file, filePath);
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public String moveFile(String commitId, String userId, String filesystemId, int filesystemVersion, String oldFilePath, String oldFileName, String newFilePath, String newFileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, DuplicateFile
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			Map<String, Object> fileProperties = this.getFile(userId, filesystemId, filesystemVersion, oldFilePath, oldFileName);
-			String nodeId = (String) fileProperties.remove(MandatoryProperties.nodeId.name());
-			fileProperties.remove(MandatoryProperties.filePath.name());
-			fileProperties.remove(MandatoryProperties.fileName.name());
-			fileProperties.remove(MandatoryProperties.version.name());
-			
-			GenericService genericService = new GenericServiceImpl();
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				genericService.deleteNodeTemporarily(commitId, nodeId);
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					Vertex oldFile = this.commonCode.getWritableFile(userId, filesystemId, filesystemVersion, oldFilePath, oldFileName);
+					Map<String, Object> fileProperties = new HashMap<String, Object>(this.commonCode.findNodeProperties(oldFile));
+					String nodeId = (String) fileProperties.remove(MandatoryProperties.nodeId.name());
+					fileProperties.remove(MandatoryProperties.filePath.name());
+					fileProperties.remove(MandatoryProperties.fileName.name());
+					fileProperties.remove(MandatoryProperties.version.name());
+					
+					try
+					{
+						this.commonCode.deleteNodeTemporarily(commitId, nodeId);
+					}
+					catch(NodeNotFound | NodeUnavailable exception)
+					{
+						throw new FileNotFound("ERROR: File not found! - \"" + (oldFilePath.equals("/") ? "" : oldFilePath) + "/" + oldFileName + "\"", exception);
+					}
+					
+					String fileNodeId = this.createNewFile(commitId, userId, filesystemId, filesystemVersion, newFilePath, newFileName, fileProperties);
+					unitOfWork.success();
+					return fileNodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch (NodeNotFound | NodeUnavailable e) {}
-			
-			String fileNodeId = this.createNewFile(commitId, userId, filesystemId, filesystemVersion, newFilePath, newFileName, fileProperties);
-			titanTransaction.commit();
-			return fileNodeId;
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public Map<String, Object> getFile(String userId, String filesystemId, int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
 		try
 		{
-			Vertex file = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
-			Map<String, Object> fileProperties = null;
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				fileProperties = this.commonCode.getNodeProperties(file);
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Vertex file = this.commonCode.getFile(userId, filesystemId, filesystemVersion, filePath, fileName);
+					Map<String, Object> fileProperties = new HashMap<String, Object>(this.commonCode.findNodeProperties(file));
+					fileProperties.put(MandatoryProperties.filePath.name(), filePath);
+					
+					unitOfWork.success();
+					return fileProperties;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			titanTransaction.commit();
-			return fileProperties;
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public Map<String, Map<String, Object>> getFiles(String userId, String filesystemId, int filesystemVersion, String filePath, List<String> fileNames) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
+		try
+		{
+			for(int attempt = 1; ; attempt++)
 			{
-				titanTransaction.rollback();
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Vertex parentDirectory = this.commonCode.getParentDirectory(userId, filesystemId, filesystemVersion, filePath, false);
+					Map<String, Map<String, Object>> files = new LinkedHashMap<String, Map<String, Object>>();
+					for(String fileName : fileNames)
+					{
+						Map<String, Object> fileProperties = this.commonCode.findNodeProperties(this.commonCode.findFile(parentDirectory, filePath, fileName));
+						if(fileProperties != null)
+						{
+							fileProperties = new HashMap<String, Object>(fileProperties);
+							fileProperties.put(MandatoryProperties.filePath.name(), filePath);
+							files.put(fileName, fileProperties);
+						}
+					}
+					
+					unitOfWork.success();
+					return files;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
+		finally
+		{
+			lock.unlock();
+		}
 	}
 }
@@ -2,6 +2,7 @@ package bookeeping.backend.database.service.titancassandraembedded.impl;
 
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.locks.Lock;
 
 import bookeeping.backend.database.MandatoryProperties;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
@@ -14,133 +15,158 @@ import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.UserNotFound;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.TransactionRetry;
 
-import com.thinkaurelius.titan.core.TitanGraph;
-import com.thinkaurelius.titan.core.TitanTransaction;
 import com.tinkerpop.blueprints.Vertex;
 
 public class FilesystemServiceImpl implements FilesystemService
 {
-	private TitanGraph titanGraph;
 	private CommonCode commonCode;
+	private FilesystemLock filesystemLock;
+	private TransactionRetry transactionRetry;
 	
 	public FilesystemServiceImpl()
 	{
-		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this(TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	FilesystemServiceImpl(CommonCode commonCode)
+	{
+		this.commonCode = commonCode;
+		this.filesystemLock = TitanCassandraEmbeddedConnection.getInstance().getFilesystemLock();
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
 	}
 	
 	@Override
 	public String createNewFilesystem(String userId, String filesystemId, Map<String, Object> filesystemProperties) throws UserNotFound, DuplicateFilesystem
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			try
-			{
-				this.commonCode.getFilesystem(userId, filesystemId);
-				throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
-			}
-			catch(FilesystemNotFound filesystemNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				Vertex filesystem = this.commonCode.createNode(NodeLabels.Filesystem);
-				filesystem.setProperty(MandatoryProperties.filesystemId.name(), filesystemId);
-				filesystem.setProperty(MandatoryProperties.version.name(), 0);
-				String filesystemNodeId = (String) filesystem.getProperty(MandatoryProperties.nodeId.name());
-				
-				for(Entry<String, Object> filesystemPropertiesEntry : filesystemProperties.entrySet())
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findFilesystem(userId, filesystemId) != null)
+					{
+						throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
+					}
+					
+					Vertex filesystem = this.commonCode.createNode(NodeLabels.Filesystem);
+					filesystem.setProperty(MandatoryProperties.filesystemId.name(), filesystemId);
+					filesystem.setProperty(MandatoryProperties.version.name(), 0);
+					String filesystemNodeId = (String) filesystem.getProperty(MandatoryProperties.nodeId.name());
+					
+					for(Entry<String, Object> filesystemPropertiesEntry : filesystemProperties.entrySet())
+					{
+						filesystem.setProperty(filesystemPropertiesEntry.getKey(), filesystemPropertiesEntry.getValue());
+					}
+					
+					Vertex rootDirectory = this.commonCode.createNode(NodeLabels.Directory);
+					Vertex user = this.commonCode.getUser(userId);
+					this.commonCode.indexPath(user.addEdge(RelationshipLabels.has.name(), filesystem));
+					
+					filesystem.addEdge(RelationshipLabels.has.name(), rootDirectory);
+					filesystem.setProperty(MandatoryProperties.rootNodeId.name(), rootDirectory.getProperty(MandatoryProperties.nodeId.name()));
+					unitOfWork.success();
+					return filesystemNodeId;
+				}
+				catch(RuntimeException runtimeException)
 				{
-					filesystem.setProperty(filesystemPropertiesEntry.getKey(), filesystemPropertiesEntry.getValue());
+					this.transactionRetry.backoff(runtimeException, attempt);
 				}
-				
-				Vertex rootDirectory = this.commonCode.createNode(NodeLabels.Directory);
-				Vertex user = this.commonCode.getUser(userId);
-				user.addEdge(RelationshipLabels.has.name(), filesystem);
-				
-				filesystem.addEdge(RelationshipLabels.has.name(), rootDirectory);
-				filesystem.setProperty(MandatoryProperties.rootNodeId.name(), rootDirectory.getProperty(MandatoryProperties.nodeId.name()));
-				titanTransaction.commit();
-				return filesystemNodeId;
 			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 	
 	@Override
 	public void restoreFilesystem(String commitId, String userId, String filesystemId, String nodeIdToBeRestored) throws UserNotFound, FilesystemNotFound, DuplicateFilesystem, NodeNotFound, NodeUnavailable
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockExclusive(userId, filesystemId);
 		try
 		{
-			try
-			{
-				this.commonCode.getFilesystem(userId, filesystemId);
-				throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
-			}
-			catch(FilesystemNotFound filesystemNotFound)
+			for(int attempt = 1; ; attempt++)
 			{
-				this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
-				titanTransaction.commit();
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					if(this.commonCode.findFilesystem(userId, filesystemId) != null)
+					{
+						throw new DuplicateFilesystem("ERROR: Filesystem already present! - \"" + filesystemId + "\"");
+					}
+					
+					this.commonCode.restoreNode(commitId, nodeIdToBeRestored);
+					unitOfWork.success();
+					return;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public Map<String, Object> getFilesystem(String userId, String filesystemId) throws UserNotFound, FilesystemNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
 		try
 		{
-			Vertex filesystem = this.commonCode.getFilesystem(userId, filesystemId);
-			Map<String, Object> filesystemProperties = null;
-			try
+			for(int attempt = 1; ; attempt++)
 			{
-				filesystemProperties = this.commonCode.getNodeProperties(filesystem);
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Vertex filesystem = this.commonCode.getFilesystem(userId, filesystemId);
+					Map<String, Object> filesystemProperties = this.commonCode.findNodeProperties(filesystem);
+					
+					unitOfWork.success();
+					return filesystemProperties;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			titanTransaction.commit();
-			return filesystemProperties;
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 
 	@Override
 	public String getRootDirectory(String userId, String filesystemId, int filesystemVersion) throws UserNotFound, FilesystemNotFound, VersionNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		Lock lock = this.filesystemLock.lockShared(userId, filesystemId);
 		try
 		{
-			Vertex rootDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
-			String nodeId = (String) rootDirectory.getProperty(MandatoryProperties.nodeId.name());
-			titanTransaction.commit();
-			return nodeId;
+			for(int attempt = 1; ; attempt++)
+			{
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Vertex rootDirectory = this.commonCode.getRootDirectory(userId, filesystemId, filesystemVersion);
+					String nodeId = (String) rootDirectory.getProperty(MandatoryProperties.nodeId.name());
+					unitOfWork.success();
+					return nodeId;
+				}
+				catch(RuntimeException runtimeException)
+				{
+					this.transactionRetry.backoff(runtimeException, attempt);
+				}
+			}
 		}
 		finally
 		{
-			if(titanTransaction.isOpen())
-			{
-				titanTransaction.rollback();
-			}
+			lock.unlock();
 		}
 	}
 }
@@ -1,66 +1,174 @@
 package bookeeping.backend.database.service.titancassandraembedded.impl;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.NodeVersionResult;
+import bookeeping.backend.database.NodeVersionStatus;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
 import bookeeping.backend.database.service.GenericService;
 import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.NodeUnavailable;
 import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
 
-import com.thinkaurelius.titan.core.TitanGraph;
-import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.SchemaViolationException;
+import com.thinkaurelius.titan.core.TitanException;
+import com.thinkaurelius.titan.diskstorage.locking.PermanentLockingException;
 import com.tinkerpop.blueprints.Vertex;
 
 public class GenericServiceImpl implements GenericService
 {
-	private TitanGraph titanGraph;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public GenericServiceImpl()
 	{
-		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this(TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
 	}
 	
+	GenericServiceImpl(CommonCode commonCode)
+	{
+		this.commonCode = commonCode;
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
+	}
+	
+	/*
+	 * Goes through the expected version variant below, so that two writers cannot both add a version after
+	 * the same head. It starts from -1, which no head has, so the first answer is a conflict that reads the
+	 * head, and every later attempt goes after the head that won the last one.
+	 */
 	@Override
 	public String createNewVersion(String commitId, String nodeId, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		int expectedVersion = -1;
+		while(true)
 		{
-			Vertex versionedNode = this.commonCode.createNodeVersion(commitId, nodeId, changeMetadata, changedProperties);
-			String versionedNodeId = (String) versionedNode.getProperty(MandatoryProperties.nodeId.name());
-			titanTransaction.commit();
-			return versionedNodeId;
+			NodeVersionResult nodeVersionResult = this.createNewVersion(commitId, nodeId, expectedVersion, changeMetadata, changedProperties);
+			if(nodeVersionResult.getNodeVersionStatus() == NodeVersionStatus.Created)
+			{
+				return nodeVersionResult.getNodeId();
+			}
+			expectedVersion = nodeVersionResult.getHeadVersion();
 		}
-		finally
+	}
+	
+	/*
+	 * Two versions after the same head would share a versionKey, and the versionKey index is unique and
+	 * locked, so the second commit fails on the lock instead of forking the chain. The commit happens when
+	 * the unit of work is closed, so the conflict is caught around it.
+	 */
+	@Override
+	public NodeVersionResult createNewVersion(String commitId, String nodeId, int expectedVersion, Map<String, Object> changeMetadata, Map<String, Object> changedProperties) throws NodeNotFound, NodeUnavailable
+	{
+		for(int attempt = 1; ; attempt++)
 		{
-			if(titanTransaction.isOpen())
+			try
+			{
+				String versionedNodeId = null;
+				try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+				{
+					Vertex node = this.commonCode.getHeadVersion(nodeId);
+					Integer nodeVersion = node.getProperty(MandatoryProperties.version.name());
+					if(nodeVersion != null && nodeVersion == expectedVersion)
+					{
+						Vertex versionedNode = this.commonCode.createNodeVersion(commitId, node, changeMetadata, changedProperties);
+						versionedNodeId = (String) versionedNode.getProperty(MandatoryProperties.nodeId.name());
+						unitOfWork.success();
+					}
+				}
+				catch(TitanException titanException)
+				{
+					if(! this.isConflict(titanException))
+					{
+						throw titanException;
+					}
+					versionedNodeId = null;
+				}
+				
+				if(versionedNodeId != null)
+				{
+					return new NodeVersionResult(NodeVersionStatus.Created, versionedNodeId, expectedVersion + 1);
+				}
+				
+				/*
+				 * The unit of work above saw the head as it was when it first read it, so the current head is
+				 * read in a fresh transaction. A commit is written row by row, so a head that is still being
+				 * written can be reachable before its properties are; its version is reported as -1.
+				 */
+				try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+				{
+					Integer headVersion = this.commonCode.getHeadVersion(nodeId).getProperty(MandatoryProperties.version.name());
+					unitOfWork.success();
+					return new NodeVersionResult(NodeVersionStatus.Conflict, null, headVersion == null ? -1 : headVersion);
+				}
+			}
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
 	
+	private boolean isConflict(Throwable throwable)
+	{
+		while(throwable != null)
+		{
+			if(throwable instanceof PermanentLockingException || throwable instanceof SchemaViolationException)
+			{
+				return true;
+			}
+			throwable = throwable.getCause();
+		}
+		
+		return false;
+	}
+	
 	@Override
 	public Map<String, Object> getNode(String nodeId) throws NodeNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			Vertex node = this.commonCode.getNode(nodeId);
-			Map<String, Object> nodeProperties = this.commonCode.getNodeProperties(node);
-			titanTransaction.commit();
-			return nodeProperties;
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				Vertex node = this.commonCode.getNode(nodeId);
+				Map<String, Object> nodeProperties = this.commonCode.getNodeProperties(node);
+				unitOfWork.success();
+				return nodeProperties;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
+			}
 		}
-		finally
+	}
+	
+	@Override
+	public Map<String, Map<String, Object>> getNodes(List<String> nodeIds)
+	{
+		for(int attempt = 1; ; attempt++)
 		{
-			if(titanTransaction.isOpen())
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
 			{
-				titanTransaction.rollback();
+				Map<String, Map<String, Object>> nodes = new LinkedHashMap<String, Map<String, Object>>();
+				for(String nodeId : nodeIds)
+				{
+					Map<String, Object> nodeProperties = this.commonCode.findNodeProperties(this.commonCode.findNode(nodeId));
+					if(nodeProperties != null)
+					{
+						nodes.put(nodeId, nodeProperties);
+					}
+				}
+				
+				unitOfWork.success();
+				return nodes;
+			}
+			catch(RuntimeException runtimeException)
+			{
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -68,19 +176,24 @@ public class GenericServiceImpl implements GenericService
 	@Override
 	public Map<String, Object> getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		Map<String, Object> cachedProperties = this.commonCode.getCachedNodeVersion(nodeId, version);
+		if(cachedProperties != null)
 		{
-			Vertex node = this.commonCode.getNodeVersion(nodeId, version);
-			Map<String, Object> properties = this.commonCode.getNodeProperties(node);
-			titanTransaction.commit();
-			return properties;
+			return cachedProperties;
 		}
-		finally
+		
+		for(int attempt = 1; ; attempt++)
 		{
-			if(titanTransaction.isOpen())
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				Vertex node = this.commonCode.getNodeVersion(nodeId, version);
+				Map<String, Object> properties = this.commonCode.getNodeVersionProperties(node);
+				unitOfWork.success();
+				return properties;
+			}
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -88,17 +201,17 @@ public class GenericServiceImpl implements GenericService
 	@Override
 	public void deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			this.commonCode.deleteNodeTemporarily(commitId, nodeId);
-			titanTransaction.commit();
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				this.commonCode.deleteNodeTemporarily(commitId, nodeId);
+				unitOfWork.success();
+				return;
+			}
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -106,36 +219,37 @@ public class GenericServiceImpl implements GenericService
 	@Override
 	public void changeNodeProperties(String nodeId, Map<String, Object> properties) throws NodeNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			Vertex node = this.commonCode.getNode(nodeId);
-			for(Entry<String, Object> entry : properties.entrySet())
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 			{
-				String key = entry.getKey();
-				boolean found = false;
-				for(MandatoryProperties mandatoryProperty : MandatoryProperties.values())
+				Vertex node = this.commonCode.getWritableNode(nodeId);
+				this.commonCode.invalidateNode(node);
+				for(Entry<String, Object> entry : properties.entrySet())
 				{
-					if(key.equals(mandatoryProperty.name()))
+					String key = entry.getKey();
+					boolean found = false;
+					for(MandatoryProperties mandatoryProperty : MandatoryProperties.values())
+					{
+						if(key.equals(mandatoryProperty.name()))
+						{
+							found = true;
+							break;
+						}
+					}
+					
+					if(!found)
 					{
-						found = true;
-						break;
+						node.setProperty(key, entry.getValue());
 					}
 				}
 				
-				if(!found)
-				{
-					node.setProperty(key, entry.getValue());
-				}
+				unitOfWork.success();
+				return;
 			}
-			
-			titanTransaction.commit();
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
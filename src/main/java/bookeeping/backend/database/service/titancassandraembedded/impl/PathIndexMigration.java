@@ -0,0 +1,94 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.titan.NodeLabels;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.exception.NodeNotFound;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+public class PathIndexMigration
+{
+	private TitanGraph titanGraph;
+	private CommonCode commonCode;
+	
+	public PathIndexMigration()
+	{
+		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
+		this.commonCode = TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode();
+	}
+	
+	/*
+	 * Backfills pathKey on the has edges written before the path index existed, one transaction per
+	 * parent node. Only parents with unindexed children are picked up, so it can be re-run. A root
+	 * directory has no name and never gets a pathKey, so it does not count as unindexed.
+	 */
+	public int migrate() throws NodeNotFound
+	{
+		List<String> parentNodeIds = new ArrayList<String>();
+		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		try
+		{
+			for(Vertex node : this.titanGraph.getVertices())
+			{
+				for(Edge relationship : node.getEdges(Direction.OUT, RelationshipLabels.has.name()))
+				{
+					TitanVertex childNode = (TitanVertex) relationship.getVertex(Direction.IN);
+					boolean rootDirectory = childNode.getLabel().equals(NodeLabels.Directory.name()) && childNode.getProperty(MandatoryProperties.directoryName.name()) == null;
+					if(! rootDirectory && relationship.getProperty(MandatoryProperties.pathKey.name()) == null)
+					{
+						parentNodeIds.add((String) node.getProperty(MandatoryProperties.nodeId.name()));
+						break;
+					}
+				}
+			}
+			
+			titanTransaction.commit();
+		}
+		finally
+		{
+			if(titanTransaction.isOpen())
+			{
+				titanTransaction.rollback();
+			}
+		}
+		
+		/*
+		 * Outside a unit of work CommonCode works on the graph's thread bound transaction, so that is the
+		 * one committed for every parent node.
+		 */
+		for(String parentNodeId : parentNodeIds)
+		{
+			try
+			{
+				for(Edge relationship : this.commonCode.getNode(parentNodeId).getEdges(Direction.OUT, RelationshipLabels.has.name()))
+				{
+					this.commonCode.indexPath(relationship);
+				}
+				this.titanGraph.commit();
+			}
+			catch(NodeNotFound | RuntimeException exception)
+			{
+				this.titanGraph.rollback();
+				throw exception;
+			}
+		}
+		
+		return parentNodeIds.size();
+	}
+	
+	public static void main(String[] args) throws NodeNotFound
+	{
+		int migratedParents = new PathIndexMigration().migrate();
+		System.out.println("Migrated parent nodes: " + migratedParents);
+	}
+}
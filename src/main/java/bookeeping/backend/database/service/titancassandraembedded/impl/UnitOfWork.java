@@ -0,0 +1,214 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanGraphTransaction;
+import com.thinkaurelius.titan.core.TitanTransaction;
+
+import bookeeping.backend.utilities.TransactionRetry;
+import bookeeping.backend.utilities.cache.NodeCache;
+import bookeeping.backend.utilities.cache.NodeSnapshot;
+
+/*
+ * The transaction of one service call, shared with every service call made inside it. The outermost
+ * call starts it and CommonCode reads and writes through it until it is closed; a nested call joins it,
+ * so that the whole request is committed once, or not at all. Like a nested Neo4j transaction, a nested
+ * call that is closed without success() rolls the outer one back. The unit holds the retry scope while
+ * it is open, so a nested call passes its failure up instead of retrying.
+ *
+ * A read transaction is started read-only, with a vertex cache sized for the handful of vertices a
+ * getter touches. A getter called inside a write reads in the write's transaction, so that it sees what
+ * was written so far.
+ *
+ * Only a read caches what it reads, under the stamp taken when the outermost read began; a getter
+ * inside a write reads past the node cache, since what it sees may still be rolled back. The snapshots
+ * of the nodes a write changed are dropped when its outermost unit is closed, after the commit, so a
+ * reader that read the node before the commit cannot leave it cached afterwards.
+ */
+public class UnitOfWork implements AutoCloseable
+{
+	private static final ThreadLocal<UnitOfWork> currentUnitOfWork = new ThreadLocal<UnitOfWork>();
+	private final UnitOfWork outerUnitOfWork;
+	private final TitanTransaction titanTransaction;
+	private final TransactionRetry.Scope scope;
+	private final boolean readOnly;
+	private final long snapshotStamp;
+	private Map<NodeCache, Set<String>> invalidations;
+	private boolean success;
+	private boolean rollbackOnly;
+	
+	private UnitOfWork(UnitOfWork outerUnitOfWork, TitanTransaction titanTransaction, TransactionRetry.Scope scope, boolean readOnly)
+	{
+		this.outerUnitOfWork = outerUnitOfWork;
+		this.titanTransaction = titanTransaction;
+		this.scope = scope;
+		this.readOnly = readOnly;
+		this.snapshotStamp = outerUnitOfWork == null && readOnly ? NodeSnapshot.nextStamp() : 0;
+	}
+	
+	public static UnitOfWork begin(TitanGraph titanGraph, TransactionRetry transactionRetry)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork != null)
+		{
+			if(currentUnitOfWork.readOnly)
+			{
+				throw new IllegalStateException("ERROR: Cannot write inside a read transaction!");
+			}
+			
+			return new UnitOfWork(currentUnitOfWork, currentUnitOfWork.titanTransaction, transactionRetry.enter(), false);
+		}
+		
+		TransactionRetry.Scope scope = transactionRetry.enter();
+		try
+		{
+			UnitOfWork unitOfWork = new UnitOfWork(null, titanGraph.newTransaction(), scope, false);
+			UnitOfWork.currentUnitOfWork.set(unitOfWork);
+			return unitOfWork;
+		}
+		catch(RuntimeException runtimeException)
+		{
+			scope.close();
+			throw runtimeException;
+		}
+	}
+	
+	public static UnitOfWork beginRead(TitanGraph titanGraph, int vertexCacheSize, TransactionRetry transactionRetry)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork != null)
+		{
+			return new UnitOfWork(currentUnitOfWork, currentUnitOfWork.titanTransaction, transactionRetry.enter(), true);
+		}
+		
+		TransactionRetry.Scope scope = transactionRetry.enter();
+		try
+		{
+			UnitOfWork unitOfWork = new UnitOfWork(null, titanGraph.buildTransaction().readOnly().setVertexCacheSize(vertexCacheSize).start(), scope, true);
+			UnitOfWork.currentUnitOfWork.set(unitOfWork);
+			return unitOfWork;
+		}
+		catch(RuntimeException runtimeException)
+		{
+			scope.close();
+			throw runtimeException;
+		}
+	}
+	
+	/*
+	 * The transaction the calling thread works in: its open unit of work if it has one, otherwise the
+	 * graph's thread-bound transaction, which the migrations commit themselves.
+	 */
+	public static TitanGraphTransaction getGraph(TitanGraph titanGraph)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		return currentUnitOfWork == null ? titanGraph : currentUnitOfWork.titanTransaction;
+	}
+	
+	/*
+	 * The stamp for snapshots read in the calling thread's unit of work, or 0 when what it reads must not
+	 * be cached.
+	 */
+	public static long getSnapshotStamp()
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		return currentUnitOfWork == null ? 0 : currentUnitOfWork.snapshotStamp;
+	}
+	
+	/*
+	 * Outside a write, for the migrations that commit on their own, the snapshot is dropped right away.
+	 */
+	public static void invalidateOnClose(NodeCache nodeCache, String nodeId)
+	{
+		UnitOfWork currentUnitOfWork = UnitOfWork.currentUnitOfWork.get();
+		if(currentUnitOfWork == null || currentUnitOfWork.readOnly)
+		{
+			nodeCache.invalidate(nodeId);
+			return;
+		}
+		
+		if(currentUnitOfWork.invalidations == null)
+		{
+			currentUnitOfWork.invalidations = new HashMap<NodeCache, Set<String>>();
+		}
+		
+		Set<String> nodeIds = currentUnitOfWork.invalidations.get(nodeCache);
+		if(nodeIds == null)
+		{
+			nodeIds = new HashSet<String>();
+			currentUnitOfWork.invalidations.put(nodeCache, nodeIds);
+		}
+		nodeIds.add(nodeId);
+	}
+	
+	public void success()
+	{
+		this.success = true;
+	}
+	
+	@Override
+	public void close()
+	{
+		try
+		{
+			if(this.outerUnitOfWork != null)
+			{
+				if(! this.success && ! this.readOnly)
+				{
+					this.outerUnitOfWork.rollbackOnly = true;
+				}
+				return;
+			}
+			
+			UnitOfWork.currentUnitOfWork.remove();
+			try
+			{
+				if(this.success && ! this.readOnly)
+				{
+					if(this.rollbackOnly)
+					{
+						throw new IllegalStateException("ERROR: Transaction was marked for rollback by a nested service call!");
+					}
+					
+					this.titanTransaction.commit();
+				}
+			}
+			finally
+			{
+				if(this.titanTransaction.isOpen())
+				{
+					this.titanTransaction.rollback();
+				}
+			}
+		}
+		finally
+		{
+			if(this.outerUnitOfWork == null)
+			{
+				this.invalidate();
+			}
+			this.scope.close();
+		}
+	}
+	
+	private void invalidate()
+	{
+		if(this.invalidations == null)
+		{
+			return;
+		}
+		
+		for(Entry<NodeCache, Set<String>> entry : this.invalidations.entrySet())
+		{
+			for(String nodeId : entry.getValue())
+			{
+				entry.getKey().invalidate(nodeId);
+			}
+		}
+	}
+}
@@ -8,38 +8,39 @@ import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedCo
 import bookeeping.backend.database.service.UserService;
 import bookeeping.backend.database.titan.NodeLabels;
 import bookeeping.backend.exception.DuplicateUser;
-import bookeeping.backend.exception.NodeNotFound;
 import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
 
-import com.thinkaurelius.titan.core.TitanGraph;
-import com.thinkaurelius.titan.core.TitanTransaction;
 import com.tinkerpop.blueprints.Vertex;
 
 public class UserServiceImpl implements UserService
 {
-	private TitanGraph titanGraph;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public UserServiceImpl()
 	{
-		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this(TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	UserServiceImpl(CommonCode commonCode)
+	{
+		this.commonCode = commonCode;
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
 	}
 	
 	@Override
 	public void createNewUser(String userId, Map<String, Object> userProperties) throws DuplicateUser
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			try
-			{
-				this.commonCode.getUser(userId);
-				throw new DuplicateUser("ERROR: User already present! - \"" + userId + "\"");
-			}
-			catch(UserNotFound userNotFound)
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
 			{
+				if(this.commonCode.findUser(userId) != null)
+				{
+					throw new DuplicateUser("ERROR: User already present! - \"" + userId + "\"");
+				}
+				
 				Vertex node = this.commonCode.createNode(NodeLabels.User);
 				node.setProperty(MandatoryProperties.userId.name(), userId);
 				
@@ -48,14 +49,12 @@ public class UserServiceImpl implements UserService
 					node.setProperty(userPropertiesEntry.getKey(), userPropertiesEntry.getValue());
 				}
 				
-				titanTransaction.commit();
+				unitOfWork.success();
+				return;
 			}
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -63,26 +62,19 @@ public class UserServiceImpl implements UserService
 	@Override
 	public Map<String, Object> getUser(String userId) throws UserNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			Vertex user = this.commonCode.getUser(userId);
-			Map<String, Object> userProperties = null;
-			try
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
 			{
-				userProperties = this.commonCode.getNodeProperties(user);
+				Vertex user = this.commonCode.getUser(userId);
+				Map<String, Object> userProperties = this.commonCode.findNodeProperties(user);
+				
+				unitOfWork.success();
+				return userProperties;
 			}
-			catch(NodeNotFound nodeNotFound) {}
-			
-			titanTransaction.commit();
-			return userProperties;
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -0,0 +1,84 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.exception.NodeNotFound;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Vertex;
+
+public class VersionIndexMigration
+{
+	private TitanGraph titanGraph;
+	private CommonCode commonCode;
+	
+	public VersionIndexMigration()
+	{
+		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
+		this.commonCode = TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode();
+	}
+	
+	/*
+	 * Backfills versionOf / versionKey and the hasHeadVersion pointer for every version chain written
+	 * before the version index existed. Each chain is migrated in its own transaction, and chains that
+	 * already have a head pointer are skipped, so the migration can be re-run after a partial failure.
+	 */
+	public int migrate() throws NodeNotFound
+	{
+		List<String> originalNodeIds = new ArrayList<String>();
+		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		try
+		{
+			for(Vertex node : this.titanGraph.getVertices())
+			{
+				if(node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator().hasNext()
+						&& ! node.getEdges(Direction.IN, RelationshipLabels.hasVersion.name()).iterator().hasNext()
+						&& ! node.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator().hasNext())
+				{
+					originalNodeIds.add((String) node.getProperty(MandatoryProperties.nodeId.name()));
+				}
+			}
+			
+			titanTransaction.commit();
+		}
+		finally
+		{
+			if(titanTransaction.isOpen())
+			{
+				titanTransaction.rollback();
+			}
+		}
+		
+		/*
+		 * Outside a unit of work CommonCode works on the graph's thread bound transaction, so that is the
+		 * one committed per chain.
+		 */
+		for(String originalNodeId : originalNodeIds)
+		{
+			try
+			{
+				this.commonCode.indexVersionChain(this.commonCode.getNode(originalNodeId));
+				this.titanGraph.commit();
+			}
+			catch(NodeNotFound | RuntimeException exception)
+			{
+				this.titanGraph.rollback();
+				throw exception;
+			}
+		}
+		
+		return originalNodeIds.size();
+	}
+	
+	public static void main(String[] args) throws NodeNotFound
+	{
+		int migratedChains = new VersionIndexMigration().migrate();
+		System.out.println("Migrated version chains: " + migratedChains);
+	}
+}
@@ -7,44 +7,47 @@ import java.util.Map;
 import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
 import bookeeping.backend.database.service.XrayService;
 import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.utilities.TransactionRetry;
 
-import com.thinkaurelius.titan.core.TitanGraph;
-import com.thinkaurelius.titan.core.TitanTransaction;
 import com.tinkerpop.blueprints.Vertex;
 
 public class XrayServiceImpl implements XrayService
 {
-	private TitanGraph titanGraph;
 	private CommonCode commonCode;
+	private TransactionRetry transactionRetry;
 	
 	public XrayServiceImpl()
 	{
-		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
-		this.commonCode = new CommonCode();
+		this(TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
+	}
+	
+	XrayServiceImpl(CommonCode commonCode)
+	{
+		this.commonCode = commonCode;
+		this.transactionRetry = TitanCassandraEmbeddedConnection.getInstance().getTransactionRetry();
 	}
 	
 	@Override
 	public List<Map<String, Object>> xrayNode(String nodeId) throws NodeNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
-			List<Vertex> children = this.commonCode.getChildren(nodeId);
-			
-			for(Vertex child : children)
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
 			{
-				xray.add(this.commonCode.getNodeProperties(child));
+				List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
+				List<Vertex> children = this.commonCode.getChildren(nodeId);
+				
+				for(Vertex child : children)
+				{
+					xray.add(this.commonCode.getNodeProperties(child));
+				}
+				
+				unitOfWork.success();
+				return xray;
 			}
-			
-			titanTransaction.commit();
-			return xray;
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
@@ -52,18 +55,17 @@ public class XrayServiceImpl implements XrayService
 	@Override
 	public List<Map<String, Object>> xrayVersion(String nodeId) throws NodeNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			List<Map<String, Object>> versions =  this.commonCode.getNodeVersions(nodeId);
-			titanTransaction.commit();
-			return versions;
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+			{
+				List<Map<String, Object>> versions =  this.commonCode.getNodeVersions(nodeId);
+				unitOfWork.success();
+				return versions;
+			}
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 		
@@ -72,25 +74,24 @@ public class XrayServiceImpl implements XrayService
 	@Override
 	public List<Map<String, Object>> xrayDeleted(String nodeId) throws NodeNotFound
 	{
-		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
-		try
+		for(int attempt = 1; ; attempt++)
 		{
-			List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
-			List<Vertex> children = this.commonCode.getDeletedChildren(nodeId);
-			
-			for(Vertex child : children)
+			try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
 			{
-				xray.add(this.commonCode.getNodeProperties(child));
+				List<Map<String, Object>> xray = new ArrayList<Map<String, Object>>();
+				List<Vertex> children = this.commonCode.getDeletedChildren(nodeId);
+				
+				for(Vertex child : children)
+				{
+					xray.add(this.commonCode.getNodeProperties(child));
+				}
+				
+				unitOfWork.success();
+				return xray;
 			}
-			
-			titanTransaction.commit();
-			return xray;
-		}
-		finally
-		{
-			if(titanTransaction.isOpen())
+			catch(RuntimeException runtimeException)
 			{
-				titanTransaction.rollback();
+				this.transactionRetry.backoff(runtimeException, attempt);
 			}
 		}
 	}
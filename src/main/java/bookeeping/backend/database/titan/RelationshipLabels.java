@@ -2,5 +2,5 @@ package bookeeping.backend.database.titan;
 
 public enum RelationshipLabels
 {
-	has, hasVersion, had, hasAccess, hadAccess
+	has, hasVersion, hasHeadVersion, had, hasAccess, hadAccess
 }
@@ -13,6 +13,11 @@ public class DirectoryNotFound extends Exception
 		super(message);
 	}
 	
+	public DirectoryNotFound(String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+	}
+	
 	public DirectoryNotFound(String message, Throwable throwable)
 	{
 		super(message, throwable);
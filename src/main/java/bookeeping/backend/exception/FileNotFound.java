@@ -13,6 +13,11 @@ public class FileNotFound extends Exception
 		super(message);
 	}
 	
+	public FileNotFound(String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+	}
+	
 	public FileNotFound(String message, Throwable throwable)
 	{
 		super(message, throwable);
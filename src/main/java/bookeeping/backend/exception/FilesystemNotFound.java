@@ -13,6 +13,11 @@ public class FilesystemNotFound extends Exception
 		super(message);
 	}
 	
+	public FilesystemNotFound(String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+	}
+	
 	public FilesystemNotFound(String message, Throwable throwable)
 	{
 		super(message, throwable);
@@ -13,6 +13,11 @@ public class NodeNotFound extends Exception
 		super(message);
 	}
 	
+	public NodeNotFound(String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+	}
+	
 	public NodeNotFound(String message, Throwable throwable)
 	{
 		super(message, throwable);
@@ -13,6 +13,11 @@ public class UserNotFound extends Exception
 		super(message);
 	}
 	
+	public UserNotFound(String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+	}
+	
 	public UserNotFound(String message, Throwable throwable)
 	{
 		super(message, throwable);
@@ -13,6 +13,11 @@ public class VersionNotFound extends Exception
 		super(message);
 	}
 	
+	public VersionNotFound(String message, boolean writableStackTrace)
+	{
+		super(message, null, false, writableStackTrace);
+	}
+	
 	public VersionNotFound(String message, Throwable throwable)
 	{
 		super(message, throwable);
@@ -0,0 +1,110 @@
+package bookeeping.backend.utilities;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AutoIncrementLease
+{
+	public interface BlockReserver
+	{
+		public long reserveBlock(int blockSize);
+	}
+	
+	private static class Block
+	{
+		private final AtomicLong next;
+		private final long end;
+		
+		private Block(long start, long end)
+		{
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+	
+	private final int blockSize;
+	private final AtomicReference<Block> currentBlock;
+	private final ExecutorService reservationExecutor;
+	
+	public AutoIncrementLease(int blockSize)
+	{
+		if(blockSize < 1)
+		{
+			throw new IllegalArgumentException("ERROR: Auto increment block size must be positive! - \"" + blockSize + "\"");
+		}
+		
+		this.blockSize = blockSize;
+		this.currentBlock = new AtomicReference<Block>(new Block(0, 0));
+		this.reservationExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "auto-increment-lease");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	public int getBlockSize()
+	{
+		return this.blockSize;
+	}
+	
+	public long next(BlockReserver blockReserver)
+	{
+		while(true)
+		{
+			Block block = this.currentBlock.get();
+			long next = block.next.getAndIncrement();
+			if(next < block.end)
+			{
+				return next;
+			}
+			
+			synchronized(this)
+			{
+				if(this.currentBlock.get() == block)
+				{
+					long start = this.reserve(blockReserver);
+					this.currentBlock.set(new Block(start, start + this.blockSize));
+				}
+			}
+		}
+	}
+	
+	/*
+	 * The reservation is committed on the lease's own thread so that it never joins the caller's
+	 * (thread bound) transaction. A block is therefore durable before any of its ids are handed out,
+	 * and a crash or rollback can only leave gaps, never hand out the same id twice.
+	 */
+	private long reserve(final BlockReserver blockReserver)
+	{
+		try
+		{
+			return this.reservationExecutor.submit(new Callable<Long>()
+			{
+				@Override
+				public Long call() throws Exception
+				{
+					return blockReserver.reserveBlock(AutoIncrementLease.this.blockSize);
+				}
+			}).get();
+		}
+		catch(InterruptedException interruptedException)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("ERROR: Interrupted while reserving auto increment block!", interruptedException);
+		}
+		catch(ExecutionException executionException)
+		{
+			throw new IllegalStateException("ERROR: Could not reserve auto increment block!", executionException.getCause());
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package bookeeping.backend.utilities;
+
+import java.util.Arrays;
+
+public class Base62Codec
+{
+	public static final int BASE = 62;
+	public static final int MAXIMUM_LENGTH = 11;
+	
+	private static final char[] digits = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+	private static final byte[] values = new byte[128];
+	private static final ThreadLocal<char[]> buffers = new ThreadLocal<char[]>()
+	{
+		@Override
+		protected char[] initialValue()
+		{
+			return new char[Base62Codec.MAXIMUM_LENGTH];
+		}
+	};
+	
+	static
+	{
+		Arrays.fill(Base62Codec.values, (byte) -1);
+		for(int i = 0; i < Base62Codec.digits.length; i++)
+		{
+			Base62Codec.values[Base62Codec.digits[i]] = (byte) i;
+		}
+	}
+	
+	/*
+	 * Writes the digits right aligned so that the last one lands on buffer[end - 1] and returns the
+	 * index of the first one. The buffer never needs clearing, so callers can keep reusing it.
+	 */
+	public static int encode(long number, char[] buffer, int end)
+	{
+		if(number < 0)
+		{
+			throw new NumberFormatException("ERROR: Negative numbers cannot be encoded! - \"" + number + "\"");
+		}
+		
+		int position = end;
+		do
+		{
+			buffer[--position] = Base62Codec.digits[(int) (number % Base62Codec.BASE)];
+			number = number / Base62Codec.BASE;
+		}
+		while(number > 0);
+		
+		return position;
+	}
+	
+	public static String encode(long number)
+	{
+		char[] buffer = Base62Codec.buffers.get();
+		int start = Base62Codec.encode(number, buffer, buffer.length);
+		return new String(buffer, start, buffer.length - start);
+	}
+	
+	public static long decode(CharSequence number)
+	{
+		int length = number.length();
+		if(length == 0)
+		{
+			throw new NumberFormatException("ERROR: Empty alphanumeric number!");
+		}
+		
+		long decodedNumber = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char character = number.charAt(i);
+			int value = character < Base62Codec.values.length ? Base62Codec.values[character] : -1;
+			if(value < 0)
+			{
+				throw new NumberFormatException("ERROR: Not an alphanumeric number! - \"" + number + "\"");
+			}
+			
+			if(decodedNumber > (Long.MAX_VALUE - value) / Base62Codec.BASE)
+			{
+				throw new NumberFormatException("ERROR: Alphanumeric number is too large! - \"" + number + "\"");
+			}
+			decodedNumber = decodedNumber * Base62Codec.BASE + value;
+		}
+		
+		return decodedNumber;
+	}
+}
@@ -0,0 +1,164 @@
+package bookeeping.backend.utilities;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Serializes structural writes per (userId, filesystemId) in front of the backend transaction, so that
+ * two writers on the same filesystem queue up here instead of deadlocking or conflicting on its root
+ * directory. Reads share the lock. Filesystems are spread over a fixed number of stripes, so two
+ * filesystems on the same stripe also wait for each other. The contention numbers show whether the
+ * stripe count is too low.
+ *
+ * The writes of GenericService (deleteNodeTemporarily, changeNodeProperties and createNewVersion) are
+ * addressed by nodeId alone and are not covered: a node does not name its filesystem, and finding it
+ * would cost a walk up the graph, through every version the node is shared with, before each write. Called
+ * from a filesystem service or from CommitService they run under the caller's exclusive lock. Called
+ * directly they rely on the backend's own locking of the nodes they change, so they can still conflict
+ * with a structural write on the same filesystem and be retried.
+ */
+public class FilesystemLock
+{
+	private final ReentrantReadWriteLock[] stripes;
+	private final long timeout;
+	private final AtomicLong acquireCount;
+	private final AtomicLong contendedCount;
+	private final AtomicLong timeoutCount;
+	private final AtomicLong waitNanos;
+	private final AtomicLong maximumWaitNanos;
+	
+	public FilesystemLock(int stripeCount, long timeout)
+	{
+		if(stripeCount < 1)
+		{
+			throw new IllegalArgumentException("ERROR: Filesystem lock stripe count must be positive! - \"" + stripeCount + "\"");
+		}
+		
+		this.stripes = new ReentrantReadWriteLock[stripeCount];
+		for(int i = 0; i < stripeCount; i++)
+		{
+			this.stripes[i] = new ReentrantReadWriteLock();
+		}
+		this.timeout = timeout;
+		this.acquireCount = new AtomicLong();
+		this.contendedCount = new AtomicLong();
+		this.timeoutCount = new AtomicLong();
+		this.waitNanos = new AtomicLong();
+		this.maximumWaitNanos = new AtomicLong();
+	}
+	
+	public Lock lockShared(String userId, String filesystemId)
+	{
+		return this.lock(this.getStripe(userId, filesystemId).readLock(), userId, filesystemId);
+	}
+	
+	/*
+	 * A thread that holds the exclusive lock can take it (or the shared lock) again, so nested service
+	 * calls on the same filesystem go through. Taking the exclusive lock while holding only the shared
+	 * one cannot succeed and ends in a timeout.
+	 */
+	public Lock lockExclusive(String userId, String filesystemId)
+	{
+		return this.lock(this.getStripe(userId, filesystemId).writeLock(), userId, filesystemId);
+	}
+	
+	private Lock lock(Lock lock, String userId, String filesystemId)
+	{
+		this.acquireCount.incrementAndGet();
+		if(lock.tryLock())
+		{
+			return lock;
+		}
+		
+		this.contendedCount.incrementAndGet();
+		long start = System.nanoTime();
+		boolean locked = false;
+		try
+		{
+			locked = lock.tryLock(this.timeout, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException interruptedException)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("ERROR: Interrupted while waiting for filesystem lock! - \"" + userId + ":" + filesystemId + "\"", interruptedException);
+		}
+		finally
+		{
+			this.recordWait(System.nanoTime() - start);
+		}
+		
+		if(! locked)
+		{
+			this.timeoutCount.incrementAndGet();
+			throw new IllegalStateException("ERROR: Timed out waiting for filesystem lock! - \"" + userId + ":" + filesystemId + "\"");
+		}
+		
+		return lock;
+	}
+	
+	private void recordWait(long nanos)
+	{
+		this.waitNanos.addAndGet(nanos);
+		long maximumWaitNanos = this.maximumWaitNanos.get();
+		while(nanos > maximumWaitNanos && ! this.maximumWaitNanos.compareAndSet(maximumWaitNanos, nanos))
+		{
+			maximumWaitNanos = this.maximumWaitNanos.get();
+		}
+	}
+	
+	private ReentrantReadWriteLock getStripe(String userId, String filesystemId)
+	{
+		int hash = 31 * userId.hashCode() + filesystemId.hashCode();
+		hash ^= hash >>> 16;
+		return this.stripes[(hash & Integer.MAX_VALUE) % this.stripes.length];
+	}
+	
+	public int getStripeCount()
+	{
+		return this.stripes.length;
+	}
+	
+	public long getTimeout()
+	{
+		return this.timeout;
+	}
+	
+	public long getAcquireCount()
+	{
+		return this.acquireCount.get();
+	}
+	
+	public long getContendedCount()
+	{
+		return this.contendedCount.get();
+	}
+	
+	public long getTimeoutCount()
+	{
+		return this.timeoutCount.get();
+	}
+	
+	public double getContentionRate()
+	{
+		long acquireCount = this.acquireCount.get();
+		return acquireCount == 0 ? 0 : (double) this.contendedCount.get() / acquireCount;
+	}
+	
+	public long getWaitNanos()
+	{
+		return this.waitNanos.get();
+	}
+	
+	public long getAverageWaitNanos()
+	{
+		long contendedCount = this.contendedCount.get();
+		return contendedCount == 0 ? 0 : this.waitNanos.get() / contendedCount;
+	}
+	
+	public long getMaximumWaitNanos()
+	{
+		return this.maximumWaitNanos.get();
+	}
+}
@@ -0,0 +1,175 @@
+package bookeeping.backend.utilities;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Retry policy for the transaction of one service call. A failure whose cause chain holds one of the
+ * transient exception types (a deadlock, a lock that could not be taken, a backend that was briefly
+ * unavailable) rolls the whole unit of work back and runs it again after a random pause of up to
+ * initialBackoff * 2^(attempt - 1), capped at maximumBackoff. Any other failure, and the last attempt,
+ * goes to the caller unchanged.
+ *
+ * A service call made inside another service call joins the outer transaction, so only the outermost
+ * call retries; the nested one passes its failure up.
+ */
+public class TransactionRetry
+{
+	public class Scope implements AutoCloseable
+	{
+		private Scope()
+		{
+			TransactionRetry.this.depth.set(TransactionRetry.this.depth.get() + 1);
+		}
+		
+		@Override
+		public void close()
+		{
+			TransactionRetry.this.depth.set(TransactionRetry.this.depth.get() - 1);
+		}
+	}
+	
+	private final int maximumAttempts;
+	private final long initialBackoff;
+	private final long maximumBackoff;
+	private final Class<?>[] transientExceptions;
+	private final ThreadLocal<Integer> depth;
+	private final AtomicLong retryCount;
+	private final AtomicLong giveUpCount;
+	private final AtomicLong backoffMillis;
+	
+	public TransactionRetry(int maximumAttempts, long initialBackoff, long maximumBackoff, Class<?>... transientExceptions)
+	{
+		if(maximumAttempts < 1)
+		{
+			throw new IllegalArgumentException("ERROR: Transaction retry attempts must be positive! - \"" + maximumAttempts + "\"");
+		}
+		
+		this.maximumAttempts = maximumAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maximumBackoff = maximumBackoff;
+		this.transientExceptions = transientExceptions;
+		this.depth = new ThreadLocal<Integer>()
+		{
+			@Override
+			protected Integer initialValue()
+			{
+				return 0;
+			}
+		};
+		this.retryCount = new AtomicLong();
+		this.giveUpCount = new AtomicLong();
+		this.backoffMillis = new AtomicLong();
+	}
+	
+	/*
+	 * Marks the calling thread as inside a service transaction until the scope is closed. The unit of work
+	 * of each backend enters it when it begins and closes it when it is closed, so it is closed before
+	 * backoff() runs.
+	 */
+	public Scope enter()
+	{
+		return new Scope();
+	}
+	
+	/*
+	 * Called with the failure of the given attempt (starting at 1). Returns after the pause when the
+	 * attempt should be run again, otherwise throws the failure.
+	 */
+	public void backoff(RuntimeException runtimeException, int attempt)
+	{
+		if(! this.retry(runtimeException, attempt))
+		{
+			throw runtimeException;
+		}
+	}
+	
+	/*
+	 * Same as backoff(), for callers that keep the failure instead of throwing it: returns false when the
+	 * attempt should not be run again.
+	 */
+	public boolean retry(Exception exception, int attempt)
+	{
+		if(! this.isTransient(exception) || this.depth.get() > 0)
+		{
+			return false;
+		}
+		
+		if(attempt >= this.maximumAttempts)
+		{
+			this.giveUpCount.incrementAndGet();
+			return false;
+		}
+		
+		this.retryCount.incrementAndGet();
+		long ceiling = this.initialBackoff << Math.min(attempt - 1, 30);
+		if(ceiling <= 0 || ceiling > this.maximumBackoff)
+		{
+			ceiling = this.maximumBackoff;
+		}
+		
+		long pause = ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+		this.backoffMillis.addAndGet(pause);
+		try
+		{
+			Thread.sleep(pause);
+		}
+		catch(InterruptedException interruptedException)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("ERROR: Interrupted while waiting to retry transaction! - \"" + attempt + "\"", interruptedException);
+		}
+		
+		return true;
+	}
+	
+	/*
+	 * Errors relayed by a remote server arrive as plain exceptions that only name the server side type,
+	 * so the message is checked for the type name as well.
+	 */
+	public boolean isTransient(Throwable throwable)
+	{
+		for(Throwable cause = throwable; cause != null; cause = cause.getCause())
+		{
+			for(Class<?> transientException : this.transientExceptions)
+			{
+				if(transientException.isInstance(cause) || (cause.getMessage() != null && cause.getMessage().contains(transientException.getSimpleName())))
+				{
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	public int getMaximumAttempts()
+	{
+		return this.maximumAttempts;
+	}
+	
+	public long getInitialBackoff()
+	{
+		return this.initialBackoff;
+	}
+	
+	public long getMaximumBackoff()
+	{
+		return this.maximumBackoff;
+	}
+	
+	public long getRetryCount()
+	{
+		return this.retryCount.get();
+	}
+	
+	public long getGiveUpCount()
+	{
+		return this.giveUpCount.get();
+	}
+	
+	public long getBackoffMillis()
+	{
+		return this.backoffMillis.get();
+	}
+}
@@ -0,0 +1,137 @@
+package bookeeping.backend.utilities.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Keeps the stamp of the last invalidation of each node, for the most recent MAXIMUM_INVALIDATIONS
+ * nodes, so that a snapshot read before an invalidation cannot be put back after it. A snapshot older
+ * than the invalidations that were dropped from that list is not cached at all.
+ */
+public class LruNodeCache implements NodeCache
+{
+	private static final int MAXIMUM_INVALIDATIONS = 4096;
+	private final long maximumWeight;
+	private final LinkedHashMap<String, NodeSnapshot> snapshots;
+	private final LinkedHashMap<String, Long> invalidations;
+	private final AtomicLong hitCount;
+	private final AtomicLong missCount;
+	private long weight;
+	private long invalidatedBefore;
+	
+	public LruNodeCache(long maximumWeight)
+	{
+		if(maximumWeight < 0)
+		{
+			throw new IllegalArgumentException("ERROR: Node cache size cannot be negative! - \"" + maximumWeight + "\"");
+		}
+		
+		this.maximumWeight = maximumWeight;
+		this.snapshots = new LinkedHashMap<String, NodeSnapshot>(16, 0.75f, true);
+		this.invalidations = new LinkedHashMap<String, Long>();
+		this.hitCount = new AtomicLong();
+		this.missCount = new AtomicLong();
+		this.weight = 0;
+		this.invalidatedBefore = 0;
+	}
+	
+	@Override
+	public NodeSnapshot get(String nodeId)
+	{
+		NodeSnapshot nodeSnapshot = null;
+		synchronized(this)
+		{
+			nodeSnapshot = this.snapshots.get(nodeId);
+		}
+		
+		if(nodeSnapshot == null)
+		{
+			this.missCount.incrementAndGet();
+		}
+		else
+		{
+			this.hitCount.incrementAndGet();
+		}
+		
+		return nodeSnapshot;
+	}
+	
+	@Override
+	public void put(String nodeId, NodeSnapshot nodeSnapshot)
+	{
+		if(nodeSnapshot.getWeight() > this.maximumWeight)
+		{
+			return;
+		}
+		
+		synchronized(this)
+		{
+			Long invalidated = this.invalidations.get(nodeId);
+			if(nodeSnapshot.getStamp() <= this.invalidatedBefore || (invalidated != null && nodeSnapshot.getStamp() <= invalidated))
+			{
+				return;
+			}
+			
+			NodeSnapshot previousSnapshot = this.snapshots.put(nodeId, nodeSnapshot);
+			if(previousSnapshot != null)
+			{
+				this.weight -= previousSnapshot.getWeight();
+			}
+			this.weight += nodeSnapshot.getWeight();
+			
+			Iterator<Entry<String, NodeSnapshot>> iterator = this.snapshots.entrySet().iterator();
+			while(this.weight > this.maximumWeight && iterator.hasNext())
+			{
+				this.weight -= iterator.next().getValue().getWeight();
+				iterator.remove();
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void invalidate(String nodeId)
+	{
+		NodeSnapshot nodeSnapshot = this.snapshots.remove(nodeId);
+		if(nodeSnapshot != null)
+		{
+			this.weight -= nodeSnapshot.getWeight();
+		}
+		
+		this.invalidations.remove(nodeId);
+		this.invalidations.put(nodeId, NodeSnapshot.nextStamp());
+		if(this.invalidations.size() > LruNodeCache.MAXIMUM_INVALIDATIONS)
+		{
+			Iterator<Entry<String, Long>> iterator = this.invalidations.entrySet().iterator();
+			this.invalidatedBefore = iterator.next().getValue();
+			iterator.remove();
+		}
+	}
+	
+	@Override
+	public synchronized void invalidateAll()
+	{
+		this.snapshots.clear();
+		this.invalidations.clear();
+		this.weight = 0;
+		this.invalidatedBefore = NodeSnapshot.nextStamp();
+	}
+	
+	@Override
+	public long getHitCount()
+	{
+		return this.hitCount.get();
+	}
+	
+	@Override
+	public long getMissCount()
+	{
+		return this.missCount.get();
+	}
+	
+	public synchronized long getWeight()
+	{
+		return this.weight;
+	}
+}
@@ -0,0 +1,11 @@
+package bookeeping.backend.utilities.cache;
+
+public interface NodeCache
+{
+	public NodeSnapshot get(String nodeId);
+	public void put(String nodeId, NodeSnapshot nodeSnapshot);
+	public void invalidate(String nodeId);
+	public void invalidateAll();
+	public long getHitCount();
+	public long getMissCount();
+}
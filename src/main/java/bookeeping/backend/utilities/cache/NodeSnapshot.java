@@ -0,0 +1,90 @@
+package bookeeping.backend.utilities.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The stamp orders a snapshot against invalidations: it is taken before the read the snapshot was made
+ * from, and a cache drops a snapshot whose node was invalidated after its stamp, since the read may have
+ * seen the node as it was before that write committed.
+ */
+public final class NodeSnapshot
+{
+	private static final AtomicLong stamps = new AtomicLong();
+	private final Object graphId;
+	private final Map<String, Object> properties;
+	private final long stamp;
+	private final long weight;
+	
+	public NodeSnapshot(Object graphId, Map<String, Object> properties, long stamp)
+	{
+		this.graphId = graphId;
+		this.properties = Collections.unmodifiableMap(new HashMap<String, Object>(properties));
+		this.stamp = stamp;
+		this.weight = NodeSnapshot.estimateWeight(this.properties);
+	}
+	
+	/*
+	 * Strictly increasing across the JVM, so a stamp taken after another one is always larger.
+	 */
+	public static long nextStamp()
+	{
+		return NodeSnapshot.stamps.incrementAndGet();
+	}
+	
+	public Object getGraphId()
+	{
+		return this.graphId;
+	}
+	
+	public Map<String, Object> getProperties()
+	{
+		return this.properties;
+	}
+	
+	public long getStamp()
+	{
+		return this.stamp;
+	}
+	
+	public long getWeight()
+	{
+		return this.weight;
+	}
+	
+	/*
+	 * Rough heap footprint in bytes, good enough to keep the cache within its budget without walking
+	 * object graphs. Unknown value types are charged a flat amount.
+	 */
+	private static long estimateWeight(Map<String, Object> properties)
+	{
+		long weight = 96;
+		for(Entry<String, Object> entry : properties.entrySet())
+		{
+			weight += 48 + 2 * entry.getKey().length();
+			
+			Object value = entry.getValue();
+			if(value instanceof String)
+			{
+				weight += 40 + 2 * ((String) value).length();
+			}
+			else if(value instanceof Object[])
+			{
+				weight += 16 + 48 * ((Object[]) value).length;
+			}
+			else if(value != null && value.getClass().isArray())
+			{
+				weight += 16 + 8 * java.lang.reflect.Array.getLength(value);
+			}
+			else
+			{
+				weight += 24;
+			}
+		}
+		
+		return weight;
+	}
+}
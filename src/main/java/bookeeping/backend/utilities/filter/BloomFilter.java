@@ -0,0 +1,97 @@
+package bookeeping.backend.utilities.filter;
+
+public class BloomFilter
+{
+	private final long[] bits;
+	private final int bitCount;
+	private final int hashCount;
+	private final int expectedInsertions;
+	private int insertions;
+	
+	public BloomFilter(int expectedInsertions, double falsePositiveRate)
+	{
+		if(expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+		{
+			throw new IllegalArgumentException("ERROR: Invalid bloom filter size! - \"" + expectedInsertions + ", " + falsePositiveRate + "\"");
+		}
+		
+		long bitCount = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		this.bitCount = (int) Math.min(Math.max(bitCount, 64), Integer.MAX_VALUE - 63);
+		this.hashCount = Math.max(1, (int) Math.round((double) this.bitCount / expectedInsertions * Math.log(2)));
+		this.bits = new long[(this.bitCount + 63) / 64];
+		this.expectedInsertions = expectedInsertions;
+		this.insertions = 0;
+	}
+	
+	public synchronized void add(String element)
+	{
+		int firstHash = element.hashCode();
+		int secondHash = BloomFilter.fnvHash(element);
+		boolean changed = false;
+		
+		for(int i = 0; i < this.hashCount; i++)
+		{
+			int bit = ((firstHash + i * secondHash) & Integer.MAX_VALUE) % this.bitCount;
+			long mask = 1L << bit;
+			if((this.bits[bit >>> 6] & mask) == 0)
+			{
+				this.bits[bit >>> 6] |= mask;
+				changed = true;
+			}
+		}
+		
+		if(changed)
+		{
+			this.insertions++;
+		}
+	}
+	
+	public synchronized boolean mightContain(String element)
+	{
+		int firstHash = element.hashCode();
+		int secondHash = BloomFilter.fnvHash(element);
+		
+		for(int i = 0; i < this.hashCount; i++)
+		{
+			int bit = ((firstHash + i * secondHash) & Integer.MAX_VALUE) % this.bitCount;
+			if((this.bits[bit >>> 6] & (1L << bit)) == 0)
+			{
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	public synchronized int getInsertions()
+	{
+		return this.insertions;
+	}
+	
+	public int getExpectedInsertions()
+	{
+		return this.expectedInsertions;
+	}
+	
+	public long getByteSize()
+	{
+		return 8L * this.bits.length;
+	}
+	
+	public synchronized double getExpectedFalsePositiveRate()
+	{
+		return Math.pow(1 - Math.exp(-(double) this.hashCount * this.insertions / this.bitCount), this.hashCount);
+	}
+	
+	private static int fnvHash(String element)
+	{
+		int hash = 0x811c9dc5;
+		for(int i = 0; i < element.length(); i++)
+		{
+			hash ^= element.charAt(i);
+			hash *= 0x01000193;
+		}
+		
+		return hash | 1;
+	}
+}
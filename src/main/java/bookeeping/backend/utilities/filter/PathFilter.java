@@ -0,0 +1,142 @@
+package bookeeping.backend.utilities.filter;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Keeps the bloom filters of the filesystems checked most recently, within a budget in bytes. Each
+ * filter is sized for twice the paths it was built from, so that it can take new paths for a while
+ * before it has to be rebuilt.
+ * 
+ * A filesystem whose filter is larger than the whole budget, or whose filter was evicted to make room
+ * for another, is remembered as unfiltered: its paths are then checked through the index alone rather
+ * than rescanning the filesystem on every check only to have the filter dropped again.
+ */
+public class PathFilter
+{
+	private static final int MINIMUM_INSERTIONS = 64;
+	private final long maximumBytes;
+	private final double falsePositiveRate;
+	private final LinkedHashMap<String, BloomFilter> bloomFilters;
+	private final Set<String> unfilteredFilesystemKeys;
+	private final AtomicLong negativeCount;
+	private final AtomicLong falsePositiveCount;
+	private long bytes;
+	private long buildCount;
+	
+	public PathFilter(long maximumBytes, double falsePositiveRate)
+	{
+		if(maximumBytes < 0)
+		{
+			throw new IllegalArgumentException("ERROR: Path filter size cannot be negative! - \"" + maximumBytes + "\"");
+		}
+		
+		this.maximumBytes = maximumBytes;
+		this.falsePositiveRate = falsePositiveRate;
+		this.bloomFilters = new LinkedHashMap<String, BloomFilter>(16, 0.75f, true);
+		this.unfilteredFilesystemKeys = new HashSet<String>();
+		this.negativeCount = new AtomicLong();
+		this.falsePositiveCount = new AtomicLong();
+		this.bytes = 0;
+		this.buildCount = 0;
+	}
+	
+	public synchronized BloomFilter getBloomFilter(String filesystemKey)
+	{
+		return this.bloomFilters.get(filesystemKey);
+	}
+	
+	public synchronized boolean isFiltered(String filesystemKey)
+	{
+		return ! this.unfilteredFilesystemKeys.contains(filesystemKey);
+	}
+	
+	public BloomFilter createBloomFilter(int insertions)
+	{
+		return new BloomFilter(Math.max(PathFilter.MINIMUM_INSERTIONS, 2 * insertions), this.falsePositiveRate);
+	}
+	
+	public synchronized void putBloomFilter(String filesystemKey, BloomFilter bloomFilter)
+	{
+		this.buildCount++;
+		this.removeBloomFilter(filesystemKey);
+		if(bloomFilter.getByteSize() > this.maximumBytes)
+		{
+			this.unfilteredFilesystemKeys.add(filesystemKey);
+			return;
+		}
+		
+		this.bloomFilters.put(filesystemKey, bloomFilter);
+		this.bytes += bloomFilter.getByteSize();
+		
+		Iterator<Entry<String, BloomFilter>> iterator = this.bloomFilters.entrySet().iterator();
+		while(this.bytes > this.maximumBytes && iterator.hasNext())
+		{
+			Entry<String, BloomFilter> entry = iterator.next();
+			this.bytes -= entry.getValue().getByteSize();
+			this.unfilteredFilesystemKeys.add(entry.getKey());
+			iterator.remove();
+		}
+	}
+	
+	public synchronized void invalidate(String filesystemKey)
+	{
+		this.removeBloomFilter(filesystemKey);
+	}
+	
+	public void recordNegative()
+	{
+		this.negativeCount.incrementAndGet();
+	}
+	
+	public void recordFalsePositive()
+	{
+		this.falsePositiveCount.incrementAndGet();
+	}
+	
+	public long getNegativeCount()
+	{
+		return this.negativeCount.get();
+	}
+	
+	public long getFalsePositiveCount()
+	{
+		return this.falsePositiveCount.get();
+	}
+	
+	public double getFalsePositiveRate()
+	{
+		long falsePositiveCount = this.falsePositiveCount.get();
+		long checkCount = falsePositiveCount + this.negativeCount.get();
+		return checkCount == 0 ? 0 : (double) falsePositiveCount / checkCount;
+	}
+	
+	public synchronized double getExpectedFalsePositiveRate(String filesystemKey)
+	{
+		BloomFilter bloomFilter = this.bloomFilters.get(filesystemKey);
+		return bloomFilter == null ? 0 : bloomFilter.getExpectedFalsePositiveRate();
+	}
+	
+	public synchronized long getBytes()
+	{
+		return this.bytes;
+	}
+	
+	public synchronized long getBuildCount()
+	{
+		return this.buildCount;
+	}
+	
+	private void removeBloomFilter(String filesystemKey)
+	{
+		BloomFilter bloomFilter = this.bloomFilters.remove(filesystemKey);
+		if(bloomFilter != null)
+		{
+			this.bytes -= bloomFilter.getByteSize();
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package bookeeping.backend.database.service.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncServiceExecutorTest
+{
+	private ExecutorService unboundedExecutor;
+	
+	@Before
+	public void setup()
+	{
+		this.unboundedExecutor = Executors.newCachedThreadPool();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		this.unboundedExecutor.shutdownNow();
+	}
+	
+	@Test
+	public void testBoundedConcurrency() throws InterruptedException
+	{
+		Executor executor = AsyncServiceExecutor.bounded(this.unboundedExecutor, 2, 3);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(5);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maximumRunning = new AtomicInteger();
+		
+		for(int i = 0; i < 5; i++)
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					int nowRunning = running.incrementAndGet();
+					while(true)
+					{
+						int maximum = maximumRunning.get();
+						if(nowRunning <= maximum || maximumRunning.compareAndSet(maximum, nowRunning))
+						{
+							break;
+						}
+					}
+					
+					try
+					{
+						release.await();
+					}
+					catch(InterruptedException interruptedException)
+					{
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+					finished.countDown();
+				}
+			});
+		}
+		
+		Thread.sleep(200);
+		assertEquals(2, running.get());
+		
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+				}
+			});
+			assertTrue("Was expecting RejectedExecutionException error because 2 tasks run and 3 wait.", false);
+		}
+		catch(RejectedExecutionException rejectedExecutionException)
+		{
+			assertTrue(true);
+		}
+		
+		release.countDown();
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(2, maximumRunning.get());
+	}
+	
+	@Test
+	public void testAcceptsAgainAfterCompletion() throws InterruptedException
+	{
+		Executor executor = AsyncServiceExecutor.bounded(this.unboundedExecutor, 1, 0);
+		for(int i = 0; i < 3; i++)
+		{
+			final CountDownLatch finished = new CountDownLatch(1);
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					finished.countDown();
+				}
+			});
+			assertTrue(finished.await(10, TimeUnit.SECONDS));
+			Thread.sleep(50);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bookeeping.backend.database.DatabaseBackend;
+import bookeeping.backend.database.service.ServiceRegistries;
+import bookeeping.backend.database.service.ServiceRegistry;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Run with the GC profiler (main() adds it): gc.alloc.rate.norm is the number of bytes one call
+ * allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark
+{
+	private ServiceRegistry serviceRegistry;
+	private String userId;
+	private String filesystemId;
+	
+	@Setup
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory
+	{
+		this.serviceRegistry = ServiceRegistries.getServiceRegistry(DatabaseBackend.Neo4JEmbedded);
+		this.userId = "benchmark" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		this.serviceRegistry.getUserService().createNewUser(this.userId, new HashMap<String, Object>());
+		this.serviceRegistry.getFilesystemService().createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.serviceRegistry.getDirectoryService().createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/", "directory", new HashMap<String, Object>());
+	}
+	
+	/*
+	 * The service as it was built before the registry: per call, with a CommonCode of its own and one for
+	 * the GenericService it moves through.
+	 */
+	@Benchmark
+	public Map<String, Object> getDirectoryConstructed() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		return new DirectoryServiceImpl(new CommonCode()).getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+	}
+	
+	@Benchmark
+	public Map<String, Object> getDirectory() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		return this.serviceRegistry.getDirectoryService().getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(AllocationBenchmark.class.getName()).addProfiler(GCProfiler.class).build()).run();
+	}
+}
@@ -0,0 +1,102 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bookeeping.backend.database.service.AsyncFileService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.async.AsyncFileServiceImpl;
+import bookeeping.backend.database.service.async.AsyncServiceExecutor;
+import bookeeping.backend.database.service.async.AsyncServiceExecutor.ExecutorType;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Run through main() to compare the sync and async paths at 1, 16 and 256 concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncBenchmark
+{
+	@Param({"ThreadPool", "VirtualThreads"})
+	private String executorType;
+	
+	private ExecutorService executorService;
+	private FileService fileService;
+	private AsyncFileService asyncFileService;
+	private String userId;
+	private String filesystemId;
+	
+	@Setup
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateFile
+	{
+		this.executorService = ExecutorType.valueOf(this.executorType) == ExecutorType.VirtualThreads ? AsyncServiceExecutor.newVirtualThreadExecutor() : null;
+		if(this.executorService == null)
+		{
+			this.executorService = AsyncServiceExecutor.newThreadPoolExecutor(16, 1024);
+		}
+		
+		this.fileService = new FileServiceImpl();
+		this.asyncFileService = new AsyncFileServiceImpl(this.fileService, this.executorService);
+		this.userId = "benchmark" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		new UserServiceImpl().createNewUser(this.userId, new HashMap<String, Object>());
+		new FilesystemServiceImpl().createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.fileService.createNewFile("benchmark", this.userId, this.filesystemId, -1, "/", "file", new HashMap<String, Object>());
+	}
+	
+	@TearDown
+	public void teardown()
+	{
+		this.executorService.shutdown();
+	}
+	
+	@Benchmark
+	public Map<String, Object> syncGetFile() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
+	{
+		return this.fileService.getFile(this.userId, this.filesystemId, -1, "/", "file");
+	}
+	
+	@Benchmark
+	public Map<String, Object> asyncGetFile()
+	{
+		return this.asyncFileService.getFile(this.userId, this.filesystemId, -1, "/", "file").join();
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		for(int callers : new int[] {1, 16, 256})
+		{
+			new Runner(new OptionsBuilder().include(AsyncBenchmark.class.getSimpleName()).threads(callers).build()).run();
+		}
+	}
+}
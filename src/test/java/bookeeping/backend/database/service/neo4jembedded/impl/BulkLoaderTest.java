@@ -0,0 +1,164 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+
+public class BulkLoaderTest
+{
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	private String databaseLocation;
+	private File manifest;
+	
+	@Before
+	public void setup() throws IOException
+	{
+		this.databaseLocation = new File(this.temporaryFolder.getRoot(), "graph.db").getPath();
+		this.manifest = this.temporaryFolder.newFile("manifest.txt");
+		String entries = "User\t/rash\tfirstName=Rahul\n"
+				+ "Filesystem\t/rash/laptop\n"
+				+ "Directory\t/rash/laptop/docs\n"
+				+ "File\t/rash/laptop/docs/resume.pdf\tsize=42\n"
+				+ "File\t/rash/laptop/music/rock/song.mp3\n";
+		Files.write(this.manifest.toPath(), entries.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testLoad() throws IOException, UserNotFound, FilesystemNotFound
+	{
+		assertEquals(8, new BulkLoader(this.databaseLocation, PathStorageMode.RelativePaths, 2, 1, null).load(this.manifest.getPath(), "import"));
+		assertEquals(0, new BulkLoader(this.databaseLocation, PathStorageMode.RelativePaths, 2, 1, null).load(this.manifest.getPath(), "import"));
+		
+		Map<String, Integer> labelCounts = this.getLabelCounts();
+		assertEquals(2, (int) labelCounts.get("User"));
+		assertEquals(4, (int) labelCounts.get("Directory"));
+		assertEquals(2, (int) labelCounts.get("File"));
+	}
+	
+	/*
+	 * A run that stops after a checkpoint leaves a store that cannot be trusted, here one that is gone
+	 * altogether. The next run has to start from the copy taken at the checkpoint.
+	 */
+	@Test
+	public void testResumeFromCheckpoint() throws IOException, UserNotFound, FilesystemNotFound
+	{
+		BulkLoader.ProgressListener progressListener = new BulkLoader.ProgressListener()
+		{
+			@Override
+			public void progress(long lines, long nodes, long relationships, long elapsedMillis)
+			{
+				if(lines == 3)
+				{
+					throw new IllegalStateException("ERROR: Interrupted!");
+				}
+			}
+		};
+		
+		try
+		{
+			new BulkLoader(this.databaseLocation, PathStorageMode.AbsolutePaths, 2, 1, progressListener).load(this.manifest.getPath(), "import");
+			assertTrue("Was expecting IllegalStateException error because the load was interrupted.", false);
+		}
+		catch(IllegalStateException illegalStateException)
+		{
+			assertTrue(true);
+		}
+		
+		this.deleteStore();
+		assertEquals(4, new BulkLoader(this.databaseLocation, PathStorageMode.AbsolutePaths, 2, 1, null).load(this.manifest.getPath(), "import"));
+		
+		Map<String, Integer> labelCounts = this.getLabelCounts();
+		assertEquals(2, (int) labelCounts.get("User"));
+		assertEquals(3, (int) labelCounts.get("Directory"));
+		assertEquals(2, (int) labelCounts.get("File"));
+		assertEquals("9", this.getNextAutoIncrement());
+	}
+	
+	private Map<String, Integer> getLabelCounts()
+	{
+		Map<String, Integer> labelCounts = new HashMap<String, Integer>();
+		GraphDatabaseService graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase(this.databaseLocation);
+		try(Transaction transaction = graphDatabaseService.beginTx())
+		{
+			for(Node node : GlobalGraphOperations.at(graphDatabaseService).getAllNodes())
+			{
+				for(Label label : node.getLabels())
+				{
+					Integer labelCount = labelCounts.get(label.name());
+					labelCounts.put(label.name(), labelCount == null ? 1 : labelCount + 1);
+				}
+			}
+			transaction.success();
+		}
+		finally
+		{
+			graphDatabaseService.shutdown();
+		}
+		
+		return labelCounts;
+	}
+	
+	private String getNextAutoIncrement()
+	{
+		GraphDatabaseService graphDatabaseService = new GraphDatabaseFactory().newEmbeddedDatabase(this.databaseLocation);
+		try(Transaction transaction = graphDatabaseService.beginTx())
+		{
+			Node autoIncrement = graphDatabaseService.index().forNodes("node_auto_index").get(MandatoryProperties.nodeId.name(), "0").getSingle();
+			String nextAutoIncrement = (String) autoIncrement.getProperty(MandatoryProperties.next.name());
+			transaction.success();
+			return nextAutoIncrement;
+		}
+		finally
+		{
+			graphDatabaseService.shutdown();
+		}
+	}
+	
+	private void deleteStore() throws IOException
+	{
+		Files.walkFileTree(new File(this.databaseLocation).toPath(), new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes basicFileAttributes) throws IOException
+			{
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+			
+			@Override
+			public FileVisitResult postVisitDirectory(Path directory, IOException exception) throws IOException
+			{
+				Files.delete(directory);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
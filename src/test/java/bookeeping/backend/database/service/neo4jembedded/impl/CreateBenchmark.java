@@ -0,0 +1,123 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateBenchmark
+{
+	private CommonCode commonCode;
+	private DirectoryService directoryService;
+	private String userId;
+	private String filesystemId;
+	private long directoryCount;
+	
+	@Setup
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem
+	{
+		this.commonCode = new CommonCode();
+		this.directoryService = new DirectoryServiceImpl();
+		this.userId = "benchmark" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		this.directoryCount = 0;
+		
+		new UserServiceImpl().createNewUser(this.userId, new HashMap<String, Object>());
+		new FilesystemServiceImpl().createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+	}
+	
+	@Benchmark
+	public String createNewDirectory() throws UserNotFound, FilesystemNotFound, VersionNotFound, DuplicateDirectory
+	{
+		return this.directoryService.createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/", "directory" + this.directoryCount++, new HashMap<String, Object>());
+	}
+	
+	/*
+	 * The duplicate check as it was before the find methods: a miss surfaces as a thrown exception that
+	 * fills in its stack trace.
+	 */
+	@Benchmark
+	public boolean missWithStackTrace() throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+		{
+			try
+			{
+				if(this.commonCode.findDirectory(this.userId, this.filesystemId, -1, "/", "missing") == null)
+				{
+					throw new DirectoryNotFound("ERROR: Directory not found! - \"/missing\"");
+				}
+				
+				unitOfWork.success();
+				return true;
+			}
+			catch(DirectoryNotFound directoryNotFound)
+			{
+				unitOfWork.success();
+				return false;
+			}
+		}
+	}
+	
+	@Benchmark
+	public boolean missWithoutStackTrace() throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+		{
+			try
+			{
+				this.commonCode.getDirectory(this.userId, this.filesystemId, -1, "/", "missing");
+				unitOfWork.success();
+				return true;
+			}
+			catch(DirectoryNotFound directoryNotFound)
+			{
+				unitOfWork.success();
+				return false;
+			}
+		}
+	}
+	
+	@Benchmark
+	public boolean missWithFind() throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+		{
+			boolean found = this.commonCode.findDirectory(this.userId, this.filesystemId, -1, "/", "missing") != null;
+			unitOfWork.success();
+			return found;
+		}
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(CreateBenchmark.class.getSimpleName()).build()).run();
+	}
+}
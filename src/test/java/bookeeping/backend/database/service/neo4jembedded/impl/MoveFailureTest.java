@@ -0,0 +1,111 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class MoveFailureTest
+{
+	private DirectoryService directoryService;
+	private FileService fileService;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		/* Fails every delete, the way a node that is no longer reachable from its parent would. */
+		CommonCode commonCode = new CommonCode()
+		{
+			@Override
+			public Node deleteNodeTemporarily(String commitId, String nodeId) throws NodeNotFound, NodeUnavailable
+			{
+				throw new NodeUnavailable("ERROR: Node is unavailable! - \"" + nodeId + "\"");
+			}
+		};
+		UserService userService = new UserServiceImpl(commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(commonCode);
+		this.directoryService = new DirectoryServiceImpl(commonCode);
+		this.fileService = new FileServiceImpl(commonCode);
+		
+		this.userId = "movefailure" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Music", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents", "notes.txt", new HashMap<String, Object>());
+	}
+	
+	@Test
+	public void testMoveFileFailure() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		try
+		{
+			this.fileService.moveFile("Second Commit", this.userId, this.filesystemId, 0, "/Documents", "notes.txt", "/Music", "notes.txt");
+			assertTrue("Was expecting FileNotFound error because the File could not be deleted from \"/Documents\".", false);
+		}
+		catch(FileNotFound fileNotFound)
+		{
+			assertTrue(true);
+		}
+		
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents", "notes.txt");
+		try
+		{
+			this.fileService.getFile(this.userId, this.filesystemId, 0, "/Music", "notes.txt");
+			assertTrue("Was expecting FileNotFound error because the failed move was rolled back.", false);
+		}
+		catch(FileNotFound fileNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+	
+	@Test
+	public void testMoveDirectoryFailure() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory, FileNotFound
+	{
+		try
+		{
+			this.directoryService.moveDirectory("Second Commit", this.userId, this.filesystemId, 0, "/", "Documents", "/Music", "Documents");
+			assertTrue("Was expecting DirectoryNotFound error because the Directory could not be deleted from \"/\".", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+		
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents", "notes.txt");
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/Music", "Documents");
+			assertTrue("Was expecting DirectoryNotFound error because the failed move was rolled back.", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import bookeeping.backend.database.DatabaseBackend;
+import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
+import bookeeping.backend.database.service.ServiceRegistries;
+import bookeeping.backend.database.service.ServiceRegistry;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.cache.NodeCache;
+
+public class Neo4JEmbeddedServiceRegistryTest
+{
+	@Test
+	public void testServiceRegistries()
+	{
+		Neo4JEmbeddedServiceRegistry neo4jEmbeddedServiceRegistry = Neo4JEmbeddedServiceRegistry.getInstance();
+		assertSame(neo4jEmbeddedServiceRegistry, ServiceRegistries.getServiceRegistry(DatabaseBackend.Neo4JEmbedded));
+		
+		/* The ini selects Neo4JEmbedded. */
+		assertSame(neo4jEmbeddedServiceRegistry, ServiceRegistries.getServiceRegistry());
+	}
+	
+	@Test
+	public void testSharedInstances()
+	{
+		Neo4JEmbeddedServiceRegistry neo4jEmbeddedServiceRegistry = Neo4JEmbeddedServiceRegistry.getInstance();
+		ServiceRegistry serviceRegistry = ServiceRegistries.getServiceRegistry(DatabaseBackend.Neo4JEmbedded);
+		
+		assertSame(neo4jEmbeddedServiceRegistry.getCommonCode(), Neo4JEmbeddedServiceRegistry.getInstance().getCommonCode());
+		assertSame(neo4jEmbeddedServiceRegistry.getCommonCode().getAutoIncrementService(), serviceRegistry.getAutoIncrementService());
+		assertSame(neo4jEmbeddedServiceRegistry.getCommitService(), serviceRegistry.getCommitService());
+		assertSame(neo4jEmbeddedServiceRegistry.getDirectoryService(), serviceRegistry.getDirectoryService());
+		assertSame(neo4jEmbeddedServiceRegistry.getFileService(), serviceRegistry.getFileService());
+		assertSame(neo4jEmbeddedServiceRegistry.getFilesystemService(), serviceRegistry.getFilesystemService());
+		assertSame(neo4jEmbeddedServiceRegistry.getGenericService(), serviceRegistry.getGenericService());
+		assertSame(neo4jEmbeddedServiceRegistry.getUserService(), serviceRegistry.getUserService());
+		assertSame(neo4jEmbeddedServiceRegistry.getXrayService(), serviceRegistry.getXrayService());
+	}
+	
+	@Test
+	public void testConcurrentGetServiceRegistry() throws InterruptedException, ExecutionException
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<ServiceRegistry>> futures = new ArrayList<Future<ServiceRegistry>>();
+			for(int i = 0; i < 8; i++)
+			{
+				futures.add(executorService.submit(new Callable<ServiceRegistry>()
+				{
+					@Override
+					public ServiceRegistry call()
+					{
+						return ServiceRegistries.getServiceRegistry(DatabaseBackend.Neo4JEmbedded);
+					}
+				}));
+			}
+			
+			for(Future<ServiceRegistry> future : futures)
+			{
+				assertSame(Neo4JEmbeddedServiceRegistry.getInstance(), future.get());
+			}
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+	}
+	
+	/*
+	 * A node read through the registry is cached where a change through a service built with the public
+	 * constructor invalidates it, and both take the one filesystem lock of the backend.
+	 */
+	@Test
+	public void testSharedCacheAndLock() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, NodeNotFound
+	{
+		Neo4JEmbeddedServiceRegistry neo4jEmbeddedServiceRegistry = Neo4JEmbeddedServiceRegistry.getInstance();
+		NodeCache nodeCache = Neo4JEmbeddedConnection.getInstance().getNodeCache();
+		FilesystemLock filesystemLock = Neo4JEmbeddedConnection.getInstance().getFilesystemLock();
+		
+		String userId = "registry" + System.nanoTime();
+		neo4jEmbeddedServiceRegistry.getUserService().createNewUser(userId, new HashMap<String, Object>());
+		String nodeId = neo4jEmbeddedServiceRegistry.getFilesystemService().createNewFilesystem(userId, "filesystem", new HashMap<String, Object>());
+		
+		neo4jEmbeddedServiceRegistry.getGenericService().getNode(nodeId);
+		assertNotNull(nodeCache.get(nodeId));
+		
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("content", "changed");
+		new GenericServiceImpl().changeNodeProperties(nodeId, properties);
+		assertNull(nodeCache.get(nodeId));
+		assertEquals("changed", neo4jEmbeddedServiceRegistry.getGenericService().getNode(nodeId).get("content"));
+		
+		long acquireCount = filesystemLock.getAcquireCount();
+		neo4jEmbeddedServiceRegistry.getDirectoryService().createNewDirectory("First Commit", userId, "filesystem", 0, "/", "Documents", new HashMap<String, Object>());
+		new DirectoryServiceImpl().createNewDirectory("First Commit", userId, "filesystem", 0, "/", "Music", new HashMap<String, Object>());
+		assertTrue(filesystemLock.getAcquireCount() >= acquireCount + 2);
+	}
+}
@@ -0,0 +1,151 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.NodeVersionResult;
+import bookeeping.backend.database.NodeVersionStatus;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.NodeVersionRetry;
+
+/*
+ * Writers race to add versions to the same node, each one counting up from the head it read. A forked
+ * chain would lose increments, so with no forks every version n holds counter n.
+ */
+public class NodeVersionStressTest
+{
+	private static final int THREAD_COUNT = 8;
+	private static final int VERSIONS_PER_THREAD = 25;
+	
+	private GenericService genericService;
+	private ExecutorService executorService;
+	private String nodeId;
+	
+	@Before
+	public void setup() throws Exception
+	{
+		this.genericService = new GenericServiceImpl();
+		this.executorService = Executors.newFixedThreadPool(NodeVersionStressTest.THREAD_COUNT);
+		
+		String userId = "stress-" + System.nanoTime();
+		new UserServiceImpl().createNewUser(userId, new HashMap<String, Object>());
+		this.nodeId = new FilesystemServiceImpl().createNewFilesystem(userId, "stress-filesystem", new HashMap<String, Object>());
+	}
+	
+	@After
+	public void tearDown()
+	{
+		this.executorService.shutdownNow();
+	}
+	
+	@Test
+	public void testConflict() throws Exception
+	{
+		Map<String, Object> changedProperties = new HashMap<String, Object>();
+		NodeVersionResult created = this.genericService.createNewVersion("first", this.nodeId, 0, new HashMap<String, Object>(), changedProperties);
+		assertEquals(NodeVersionStatus.Created, created.getNodeVersionStatus());
+		assertEquals(1, created.getHeadVersion());
+		
+		NodeVersionResult conflict = this.genericService.createNewVersion("second", this.nodeId, 0, new HashMap<String, Object>(), changedProperties);
+		assertEquals(NodeVersionStatus.Conflict, conflict.getNodeVersionStatus());
+		assertEquals(null, conflict.getNodeId());
+		assertEquals(1, conflict.getHeadVersion());
+	}
+	
+	@Test
+	public void testNoForkedChains() throws Exception
+	{
+		final NodeVersionRetry nodeVersionRetry = new NodeVersionRetry(this.genericService, Integer.MAX_VALUE);
+		final NodeVersionRetry.VersionChange increment = new NodeVersionRetry.VersionChange()
+		{
+			@Override
+			public Map<String, Object> getChangedProperties(Map<String, Object> headProperties)
+			{
+				Map<String, Object> changedProperties = new HashMap<String, Object>();
+				Object counter = headProperties.get("counter");
+				changedProperties.put("counter", counter == null ? 1 : (int) counter + 1);
+				return changedProperties;
+			}
+		};
+		
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(int i = 0; i < NodeVersionStressTest.THREAD_COUNT; i++)
+		{
+			futures.add(this.executorService.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					for(int j = 0; j < NodeVersionStressTest.VERSIONS_PER_THREAD; j++)
+					{
+						NodeVersionResult nodeVersionResult = nodeVersionRetry.createNewVersion("stress", NodeVersionStressTest.this.nodeId, new HashMap<String, Object>(), increment);
+						assertEquals(NodeVersionStatus.Created, nodeVersionResult.getNodeVersionStatus());
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<Void> future : futures)
+		{
+			future.get();
+		}
+		
+		int versionCount = NodeVersionStressTest.THREAD_COUNT * NodeVersionStressTest.VERSIONS_PER_THREAD;
+		Map<String, Object> headProperties = this.genericService.getNodeVersion(this.nodeId, -1);
+		assertEquals(versionCount, headProperties.get(MandatoryProperties.version.name()));
+		for(int version = 1; version <= versionCount; version++)
+		{
+			assertEquals(version, this.genericService.getNodeVersion(this.nodeId, version).get("counter"));
+		}
+		assertEquals(versionCount + nodeVersionRetry.getConflictCount(), nodeVersionRetry.getAttemptCount());
+	}
+	
+	/*
+	 * The variant without an expected version always goes after the current head, so no version is
+	 * lost and every version number is taken once.
+	 */
+	@Test
+	public void testNoForkedChainsWithoutExpectedVersion() throws Exception
+	{
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for(int i = 0; i < NodeVersionStressTest.THREAD_COUNT; i++)
+		{
+			futures.add(this.executorService.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					for(int j = 0; j < NodeVersionStressTest.VERSIONS_PER_THREAD; j++)
+					{
+						NodeVersionStressTest.this.genericService.createNewVersion("stress", NodeVersionStressTest.this.nodeId, new HashMap<String, Object>(), new HashMap<String, Object>());
+					}
+					return null;
+				}
+			}));
+		}
+		for(Future<Void> future : futures)
+		{
+			future.get();
+		}
+		
+		int versionCount = NodeVersionStressTest.THREAD_COUNT * NodeVersionStressTest.VERSIONS_PER_THREAD;
+		assertEquals(versionCount, this.genericService.getNodeVersion(this.nodeId, -1).get(MandatoryProperties.version.name()));
+		for(int version = 1; version <= versionCount; version++)
+		{
+			assertEquals(version, this.genericService.getNodeVersion(this.nodeId, version).get(MandatoryProperties.version.name()));
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark
+{
+	private GraphDatabaseService graphDatabaseService;
+	private CommonCode commonCode;
+	private DirectoryService directoryService;
+	private String userId;
+	private String filesystemId;
+	
+	@Setup
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory
+	{
+		this.graphDatabaseService = Neo4JEmbeddedConnection.getInstance().getGraphDatabaseServiceObject();
+		this.commonCode = new CommonCode();
+		this.directoryService = new DirectoryServiceImpl();
+		this.userId = "benchmark" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		new UserServiceImpl().createNewUser(this.userId, new HashMap<String, Object>());
+		new FilesystemServiceImpl().createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/", "directory", new HashMap<String, Object>());
+	}
+	
+	/*
+	 * The getter as it was before the read path: the transaction is marked successful and committed.
+	 */
+	@Benchmark
+	public Map<String, Object> getDirectoryCommitted() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, NodeNotFound
+	{
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			Node directory = this.commonCode.getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+			Map<String, Object> directoryProperties = this.commonCode.getNodeProperties(directory);
+			transaction.success();
+			return directoryProperties;
+		}
+	}
+	
+	@Benchmark
+	public Map<String, Object> getDirectoryReadOnly() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, NodeNotFound
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+		{
+			Node directory = this.commonCode.getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+			Map<String, Object> directoryProperties = this.commonCode.getNodeProperties(directory);
+			unitOfWork.success();
+			return directoryProperties;
+		}
+	}
+	
+	@Benchmark
+	public Map<String, Object> getDirectory() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		return this.directoryService.getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(ReadBenchmark.class.getName()).build()).run();
+	}
+}
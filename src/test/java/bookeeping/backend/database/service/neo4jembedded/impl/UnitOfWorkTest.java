@@ -0,0 +1,87 @@
+package bookeeping.backend.database.service.neo4jembedded.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.neo4j.NodeLabels;
+
+public class UnitOfWorkTest
+{
+	private CommonCode commonCode;
+	
+	@Before
+	public void setup()
+	{
+		this.commonCode = new CommonCode();
+	}
+	
+	@Test
+	public void testNestedReadKeepsOuterWrite()
+	{
+		String nodeId = null;
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			nodeId = (String) this.commonCode.createNode(NodeLabels.File).getProperty(MandatoryProperties.nodeId.name());
+			try(UnitOfWork nestedUnitOfWork = this.commonCode.beginReadTransaction())
+			{
+				assertNotNull(this.commonCode.findNode(nodeId));
+				nestedUnitOfWork.success();
+			}
+			unitOfWork.success();
+		}
+		
+		assertNotNull(this.findNode(nodeId));
+	}
+	
+	@Test
+	public void testNestedWriteFailureRollsBackOuter()
+	{
+		String nodeId = null;
+		try
+		{
+			try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				nodeId = (String) this.commonCode.createNode(NodeLabels.File).getProperty(MandatoryProperties.nodeId.name());
+				UnitOfWork nestedUnitOfWork = this.commonCode.beginUnitOfWork();
+				this.commonCode.createNode(NodeLabels.File);
+				nestedUnitOfWork.close();
+				unitOfWork.success();
+			}
+			assertTrue("Was expecting IllegalStateException error because the nested unit of work failed.", false);
+		}
+		catch(IllegalStateException illegalStateException)
+		{
+			assertTrue(true);
+		}
+		
+		assertNull(this.findNode(nodeId));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testWriteInsideRead()
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+		{
+			try(UnitOfWork nestedUnitOfWork = this.commonCode.beginUnitOfWork())
+			{
+				nestedUnitOfWork.success();
+			}
+			unitOfWork.success();
+		}
+	}
+	
+	private Object findNode(String nodeId)
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginReadTransaction())
+		{
+			Object node = this.commonCode.findNode(nodeId);
+			unitOfWork.success();
+			return node;
+		}
+	}
+}
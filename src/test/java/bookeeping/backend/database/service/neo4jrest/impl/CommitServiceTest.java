@@ -0,0 +1,169 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.CommitOperation;
+import bookeeping.backend.database.CommitOperationResult;
+import bookeeping.backend.database.CommitOperationStatus;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class CommitServiceTest
+{
+	private CommonCode commonCode;
+	private GenericService genericService;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	
+	private String userId;
+	private String filesystemId;
+	private String fileNodeId;
+	private String otherFileNodeId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		this.commonCode = new CommonCode();
+		this.genericService = new GenericServiceImpl(this.commonCode);
+		UserService userService = new UserServiceImpl(this.commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(this.commonCode);
+		this.directoryService = new DirectoryServiceImpl(this.commonCode);
+		this.fileService = new FileServiceImpl(this.commonCode);
+		
+		this.userId = "commit" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		String otherUserId = "other" + System.nanoTime();
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.fileNodeId = this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/", "notes.txt", new HashMap<String, Object>());
+		
+		userService.createNewUser(otherUserId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(otherUserId, this.filesystemId, new HashMap<String, Object>());
+		this.otherFileNodeId = this.fileService.createNewFile("First Commit", otherUserId, this.filesystemId, 0, "/", "notes.txt", new HashMap<String, Object>());
+	}
+	
+	@Test
+	public void testApplied() throws NodeNotFound, UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		List<CommitOperation> commitOperations = new ArrayList<CommitOperation>();
+		commitOperations.add(CommitOperation.createDirectory("/", "Documents", new HashMap<String, Object>()));
+		commitOperations.add(CommitOperation.createFile("/Documents", "to-do.txt", new HashMap<String, Object>()));
+		commitOperations.add(CommitOperation.changeNodeProperties(this.fileNodeId, this.getProperties("changed")));
+		
+		List<CommitOperationResult> commitOperationResults = this.commit(commitOperations);
+		this.assertStatus(commitOperationResults, CommitOperationStatus.Applied, CommitOperationStatus.Applied, CommitOperationStatus.Applied);
+		assertEquals(this.fileNodeId, commitOperationResults.get(2).getNodeId());
+		assertEquals(commitOperationResults.get(1).getNodeId(), this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents", "to-do.txt").get("nodeId"));
+		assertEquals("changed", this.genericService.getNode(this.fileNodeId).get("content"));
+	}
+	
+	/*
+	 * Over REST every operation commits on its own, so the ones before a failure stay and are reported
+	 * Applied instead of being rolled back.
+	 */
+	@Test
+	public void testFailureKeepsAppliedOperations() throws NodeNotFound, UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		List<CommitOperation> commitOperations = new ArrayList<CommitOperation>();
+		commitOperations.add(CommitOperation.createDirectory("/", "Documents", new HashMap<String, Object>()));
+		commitOperations.add(CommitOperation.createDirectory("/", "Music", new HashMap<String, Object>()));
+		commitOperations.add(CommitOperation.changeNodeProperties(this.otherFileNodeId, this.getProperties("changed")));
+		commitOperations.add(CommitOperation.createDirectory("/", "Archive", new HashMap<String, Object>()));
+		
+		List<CommitOperationResult> commitOperationResults = this.commit(commitOperations);
+		this.assertStatus(commitOperationResults, CommitOperationStatus.Applied, CommitOperationStatus.Applied, CommitOperationStatus.Failed, CommitOperationStatus.Skipped);
+		for(int index = 0; index < commitOperationResults.size(); index++)
+		{
+			assertEquals(index, commitOperationResults.get(index).getIndex());
+		}
+		assertTrue(commitOperationResults.get(2).getException() instanceof NodeNotFound);
+		
+		assertEquals(commitOperationResults.get(0).getNodeId(), this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/", "Documents").get("nodeId"));
+		assertEquals(commitOperationResults.get(1).getNodeId(), this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/", "Music").get("nodeId"));
+		assertNull(this.genericService.getNode(this.otherFileNodeId).get("content"));
+		this.assertDirectoryNotFound("Archive");
+	}
+	
+	@Test
+	public void testDeleteNodeOfOtherFilesystem() throws NodeNotFound, UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		List<CommitOperation> commitOperations = new ArrayList<CommitOperation>();
+		commitOperations.add(CommitOperation.deleteNode(this.otherFileNodeId));
+		commitOperations.add(CommitOperation.deleteNode(this.fileNodeId));
+		
+		List<CommitOperationResult> commitOperationResults = this.commit(commitOperations);
+		this.assertStatus(commitOperationResults, CommitOperationStatus.Failed, CommitOperationStatus.Skipped);
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/", "notes.txt");
+		
+		commitOperationResults = this.commit(commitOperations.subList(1, 2));
+		this.assertStatus(commitOperationResults, CommitOperationStatus.Applied);
+		try
+		{
+			this.fileService.getFile(this.userId, this.filesystemId, 0, "/", "notes.txt");
+			assertTrue("Was expecting FileNotFound error because File is deleted.", false);
+		}
+		catch(FileNotFound fileNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+	
+	private List<CommitOperationResult> commit(List<CommitOperation> commitOperations)
+	{
+		CommitServiceImpl commitService = new CommitServiceImpl(this.commonCode, this.directoryService, this.fileService, this.genericService);
+		return commitService.commit("Second Commit", this.userId, this.filesystemId, 0, commitOperations);
+	}
+	
+	private Map<String, Object> getProperties(String content)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("content", content);
+		return properties;
+	}
+	
+	private void assertStatus(List<CommitOperationResult> commitOperationResults, CommitOperationStatus... commitOperationStatuses)
+	{
+		assertEquals(commitOperationStatuses.length, commitOperationResults.size());
+		for(int index = 0; index < commitOperationStatuses.length; index++)
+		{
+			assertEquals(commitOperationStatuses[index], commitOperationResults.get(index).getCommitOperationStatus());
+		}
+	}
+	
+	private void assertDirectoryNotFound(String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/", directoryName);
+			assertTrue("Was expecting DirectoryNotFound error because Directory \"" + directoryName + "\" was never created.", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.Neo4JEmbeddedConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.neo4jembedded.impl.Neo4JEmbeddedServiceRegistry;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * The REST lookups send their Cypher to a server that the build does not have. The same statements are
+ * run here against an embedded graph built by the embedded services, and have to find the nodes the
+ * embedded lookups find.
+ */
+public class CypherQueryTest
+{
+	private GraphDatabaseService graphDatabaseService;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	private GenericService genericService;
+	
+	private String userId;
+	private String filesystemId;
+	private String filesystemNodeId;
+	
+	@Before
+	public void setup()
+	{
+		this.graphDatabaseService = Neo4JEmbeddedConnection.getInstance().getGraphDatabaseServiceObject();
+		this.userId = "cypher" + System.nanoTime();
+		this.filesystemId = "filesystem";
+	}
+	
+	/* The keys follow the mode the embedded services wrote the graph in. */
+	@Test
+	public void testPathQuery() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound, NodeNotFound, NodeUnavailable
+	{
+		this.createFilesystem();
+		if(Neo4JEmbeddedServiceRegistry.getInstance().getCommonCode().getPathStorageMode() == PathStorageMode.AbsolutePaths)
+		{
+			this.assertPathQuery(Arrays.asList("/Documents/Archive/"), Arrays.asList("/Documents/Archive/", "/Documents/Archive/notes.txt"), Arrays.asList("/readme.txt"), Arrays.asList("/Music/"));
+		}
+		else
+		{
+			this.assertPathQuery(Arrays.asList("Documents/", "Archive/"), Arrays.asList("Documents/", "Archive/", "notes.txt"), Arrays.asList("readme.txt"), Arrays.asList("Music/"));
+		}
+	}
+	
+	@Test
+	public void testNodeVersionQuery() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
+	{
+		this.createFilesystem();
+		
+		for(int version : new int[] {0, 1, -1})
+		{
+			assertEquals(this.genericService.getNodeVersion(this.filesystemNodeId, version).get(MandatoryProperties.nodeId.name()), this.runNodeVersionQuery(this.filesystemNodeId, version));
+		}
+		
+		/* From a later version the chain is walked from the original node, which versionOf points to. */
+		String versionedNodeId = (String) this.genericService.getNodeVersion(this.filesystemNodeId, 1).get(MandatoryProperties.nodeId.name());
+		assertEquals(this.filesystemNodeId, this.runNodeVersionQuery(versionedNodeId, 0));
+		assertEquals(versionedNodeId, this.runNodeVersionQuery(versionedNodeId, -1));
+		
+		assertNull(this.runNodeVersionQuery(this.filesystemNodeId, 5));
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			Map<String, Object> queryParameters = new HashMap<String, Object>();
+			queryParameters.put("nodeId", "missing" + System.nanoTime());
+			queryParameters.put("version", 0);
+			assertFalse(Neo4JEmbeddedConnection.getInstance().runCypherQuery(CommonCode.NODE_VERSION_QUERY, queryParameters).hasNext());
+			transaction.success();
+		}
+	}
+	
+	@Test
+	public void testFilesystemQuery() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
+	{
+		this.createFilesystem();
+		
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			Map<String, Object> queryParameters = new HashMap<String, Object>();
+			queryParameters.put("userId", this.userId);
+			queryParameters.put("filesystemId", this.filesystemId);
+			assertEquals(this.filesystemNodeId, this.getNodeId(Neo4JEmbeddedConnection.getInstance().runCypherQuery(CommonCode.FILESYSTEM_QUERY, queryParameters).next().get("filesystem")));
+			
+			queryParameters.put("filesystemId", "missing");
+			assertNull(Neo4JEmbeddedConnection.getInstance().runCypherQuery(CommonCode.FILESYSTEM_QUERY, queryParameters).next().get("filesystem"));
+			transaction.success();
+		}
+	}
+	
+	/*
+	 * "/Documents/Archive/notes.txt" and "/readme.txt" are written in version 0, "/Music" only in
+	 * version 1.
+	 */
+	private void createFilesystem() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
+	{
+		Neo4JEmbeddedServiceRegistry neo4jEmbeddedServiceRegistry = Neo4JEmbeddedServiceRegistry.getInstance();
+		this.directoryService = neo4jEmbeddedServiceRegistry.getDirectoryService();
+		this.fileService = neo4jEmbeddedServiceRegistry.getFileService();
+		this.genericService = neo4jEmbeddedServiceRegistry.getGenericService();
+		
+		neo4jEmbeddedServiceRegistry.getUserService().createNewUser(this.userId, new HashMap<String, Object>());
+		this.filesystemNodeId = neo4jEmbeddedServiceRegistry.getFilesystemService().createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Documents", "Archive", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/", "readme.txt", new HashMap<String, Object>());
+		
+		this.genericService.createNewVersion("Second Commit", this.filesystemNodeId, new HashMap<String, Object>(), new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("Second Commit", this.userId, this.filesystemId, 1, "/", "Music", new HashMap<String, Object>());
+	}
+	
+	private void assertPathQuery(List<String> directoryPathKeys, List<String> filePathKeys, List<String> rootFilePathKeys, List<String> newDirectoryPathKeys) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		for(int version : new int[] {0, 1, -1})
+		{
+			assertEquals(this.directoryService.getDirectory(this.userId, this.filesystemId, version, "/Documents", "Archive").get(MandatoryProperties.nodeId.name()), this.runPathQuery(this.userId, this.filesystemId, version, directoryPathKeys).get(directoryPathKeys.size() + 2));
+			assertEquals(this.fileService.getFile(this.userId, this.filesystemId, version, "/Documents/Archive", "notes.txt").get(MandatoryProperties.nodeId.name()), this.runPathQuery(this.userId, this.filesystemId, version, filePathKeys).get(filePathKeys.size() + 2));
+			assertEquals(this.fileService.getFile(this.userId, this.filesystemId, version, "/", "readme.txt").get(MandatoryProperties.nodeId.name()), this.runPathQuery(this.userId, this.filesystemId, version, rootFilePathKeys).get(rootFilePathKeys.size() + 2));
+		}
+		
+		assertEquals(this.directoryService.getDirectory(this.userId, this.filesystemId, 1, "/", "Music").get(MandatoryProperties.nodeId.name()), this.runPathQuery(this.userId, this.filesystemId, 1, newDirectoryPathKeys).get(newDirectoryPathKeys.size() + 2));
+		assertNull(this.runPathQuery(this.userId, this.filesystemId, 0, newDirectoryPathKeys).get(newDirectoryPathKeys.size() + 2));
+		assertNull(this.runPathQuery(this.userId, this.filesystemId, 0, Arrays.asList("Missing/")).get(3));
+		
+		/* The first two entries are the filesystem and its version, null when they are missing. */
+		List<String> nodeIds = this.runPathQuery(this.userId, this.filesystemId, 5, directoryPathKeys);
+		assertEquals(this.filesystemNodeId, nodeIds.get(0));
+		assertNull(nodeIds.get(1));
+		assertNull(this.runPathQuery(this.userId, "missing", 0, directoryPathKeys).get(0));
+		assertEquals(0, this.runPathQuery("missing" + System.nanoTime(), this.filesystemId, 0, directoryPathKeys).size());
+	}
+	
+	/*
+	 * The nodeIds of the filesystem, its version and every node on the path from the root directory, or an
+	 * empty list when the user is missing.
+	 */
+	private List<String> runPathQuery(String userId, String filesystemId, int filesystemVersion, List<String> pathKeys)
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("userId", userId);
+		queryParameters.put("filesystemId", filesystemId);
+		queryParameters.put("filesystemVersion", filesystemVersion);
+		for(int i = 0; i < pathKeys.size(); i++)
+		{
+			queryParameters.put("pathKey" + (i + 1), pathKeys.get(i));
+		}
+		
+		List<String> nodeIds = new ArrayList<String>();
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			Iterator<Map<String, Object>> iterator = Neo4JEmbeddedConnection.getInstance().runCypherQuery(CommonCode.getPathQuery(pathKeys.size()), queryParameters);
+			if(iterator.hasNext())
+			{
+				Map<String, Object> row = iterator.next();
+				nodeIds.add(this.getNodeId(row.get("filesystem")));
+				for(Object node : (Iterable<?>) row.get("nodes"))
+				{
+					nodeIds.add(this.getNodeId(node));
+				}
+			}
+			
+			transaction.success();
+		}
+		
+		return nodeIds;
+	}
+	
+	private String runNodeVersionQuery(String nodeId, int version)
+	{
+		Map<String, Object> queryParameters = new HashMap<String, Object>();
+		queryParameters.put("nodeId", nodeId);
+		queryParameters.put("version", version);
+		
+		try(Transaction transaction = this.graphDatabaseService.beginTx())
+		{
+			String versionedNodeId = this.getNodeId(Neo4JEmbeddedConnection.getInstance().runCypherQuery(CommonCode.NODE_VERSION_QUERY, queryParameters).next().get("versionedNode"));
+			transaction.success();
+			return versionedNodeId;
+		}
+	}
+	
+	private String getNodeId(Object node)
+	{
+		return node == null ? null : (String) ((Node) node).getProperty(MandatoryProperties.nodeId.name());
+	}
+}
@@ -0,0 +1,176 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Fills a filesystem with two versions in the flat layout, migrates it to the hierarchical one and then
+ * works on it with PathStorageMode.RelativePaths, the way a deployment would after the switch.
+ */
+public class DirectoryHierarchyMigrationTest
+{
+	private PathStorageMode pathStorageMode;
+	private CommonCode commonCode;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
+	{
+		Neo4JRestConnection neo4jRestConnection = Neo4JRestConnection.getInstance();
+		this.pathStorageMode = neo4jRestConnection.getPathStorageMode();
+		neo4jRestConnection.setPathStorageMode(PathStorageMode.AbsolutePaths);
+		
+		CommonCode commonCode = new CommonCode();
+		DirectoryService directoryService = new DirectoryServiceImpl(commonCode);
+		FileService fileService = new FileServiceImpl(commonCode);
+		
+		this.userId = "hierarchy" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		Map<String, Object> fileProperties = new HashMap<String, Object>();
+		fileProperties.put("content", "written-in-v0");
+		
+		new UserServiceImpl(commonCode).createNewUser(this.userId, new HashMap<String, Object>());
+		String filesystemNodeId = new FilesystemServiceImpl(commonCode).createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Documents", "Archive", new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Music", new HashMap<String, Object>());
+		fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt", fileProperties);
+		fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/", "readme.txt", new HashMap<String, Object>());
+		
+		new GenericServiceImpl(commonCode).createNewVersion("Second Commit", filesystemNodeId, new HashMap<String, Object>(), new HashMap<String, Object>());
+		directoryService.createNewDirectory("Second Commit", this.userId, this.filesystemId, 1, "/Documents/Archive", "2019", new HashMap<String, Object>());
+		fileService.createNewFile("Second Commit", this.userId, this.filesystemId, 1, "/Music", "song.mp3", new HashMap<String, Object>());
+		
+		/* Run twice: what the first run converted has no absolute paths left for the second to change. */
+		assertTrue(new DirectoryHierarchyMigration().migrate() >= 1);
+		new DirectoryHierarchyMigration().migrate();
+		
+		neo4jRestConnection.setPathStorageMode(PathStorageMode.RelativePaths);
+		this.commonCode = new CommonCode();
+		this.directoryService = new DirectoryServiceImpl(this.commonCode);
+		this.fileService = new FileServiceImpl(this.commonCode);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		Neo4JRestConnection.getInstance().setPathStorageMode(this.pathStorageMode);
+	}
+	
+	@Test
+	public void testLookups() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		for(int version = 0; version < 2; version++)
+		{
+			Map<String, Object> directory = this.directoryService.getDirectory(this.userId, this.filesystemId, version, "/Documents", "Archive");
+			assertEquals("/Documents", directory.get(MandatoryProperties.directoryPath.name()));
+			
+			Map<String, Object> file = this.fileService.getFile(this.userId, this.filesystemId, version, "/Documents/Archive", "notes.txt");
+			assertEquals("/Documents/Archive", file.get(MandatoryProperties.filePath.name()));
+			assertEquals("written-in-v0", file.get("content"));
+			
+			this.fileService.getFile(this.userId, this.filesystemId, version, "/", "readme.txt");
+			this.directoryService.getDirectory(this.userId, this.filesystemId, version, "/", "Music");
+		}
+		
+		/* The services put the path back into what they return; the nodes themselves no longer hold it. */
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			assertFalse(this.commonCode.getDirectory(this.userId, this.filesystemId, 1, "/Documents", "Archive").hasProperty(MandatoryProperties.directoryPath.name()));
+			assertFalse(this.commonCode.getFile(this.userId, this.filesystemId, 1, "/Documents/Archive", "notes.txt").hasProperty(MandatoryProperties.filePath.name()));
+			unitOfWork.success();
+		}
+	}
+	
+	@Test
+	public void testVersions() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		this.directoryService.getDirectory(this.userId, this.filesystemId, 1, "/Documents/Archive", "2019");
+		this.fileService.getFile(this.userId, this.filesystemId, 1, "/Music", "song.mp3");
+		
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/Documents/Archive", "2019");
+			assertTrue("Was expecting DirectoryNotFound error because \"/Documents/Archive/2019\" was created in version 1.", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+		
+		try
+		{
+			this.fileService.getFile(this.userId, this.filesystemId, 0, "/Music", "song.mp3");
+			assertTrue("Was expecting FileNotFound error because \"/Music/song.mp3\" was created in version 1.", false);
+		}
+		catch(FileNotFound fileNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+	
+	@Test
+	public void testMoves() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory, DuplicateFile, FileNotFound
+	{
+		this.directoryService.moveDirectory("Third Commit", this.userId, this.filesystemId, 1, "/Documents", "Archive", "/Music", "Archive");
+		this.fileService.moveFile("Third Commit", this.userId, this.filesystemId, 1, "/", "readme.txt", "/Documents", "readme.txt");
+		
+		assertEquals("written-in-v0", this.fileService.getFile(this.userId, this.filesystemId, 1, "/Music/Archive", "notes.txt").get("content"));
+		this.directoryService.getDirectory(this.userId, this.filesystemId, 1, "/Music/Archive", "2019");
+		this.fileService.getFile(this.userId, this.filesystemId, 1, "/Documents", "readme.txt");
+		
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 1, "/Documents", "Archive");
+			assertTrue("Was expecting DirectoryNotFound error because \"/Documents/Archive\" was moved to \"/Music\".", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+		
+		try
+		{
+			this.fileService.getFile(this.userId, this.filesystemId, 1, "/", "readme.txt");
+			assertTrue("Was expecting FileNotFound error because \"/readme.txt\" was moved to \"/Documents\".", false);
+		}
+		catch(FileNotFound fileNotFound)
+		{
+			assertTrue(true);
+		}
+		
+		/* The moves were made in version 1, so version 0 keeps the old layout. */
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt");
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/", "readme.txt");
+	}
+}
@@ -0,0 +1,130 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Runs against the server at Neo4JRestEndpoint. Point it at a local Neo4j server so that the numbers
+ * reflect the number of round trips per call rather than the network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyBenchmark
+{
+	private FilesystemService filesystemService;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	private GenericService genericService;
+	private String userId;
+	private String filesystemId;
+	private String fileNodeId;
+	private long fileCount;
+	private boolean moved;
+	
+	@Setup
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
+	{
+		this.filesystemService = new FilesystemServiceImpl();
+		this.directoryService = new DirectoryServiceImpl();
+		this.fileService = new FileServiceImpl();
+		this.genericService = new GenericServiceImpl();
+		this.userId = "benchmark" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		this.fileCount = 0;
+		this.moved = false;
+		
+		new UserServiceImpl().createNewUser(this.userId, new HashMap<String, Object>());
+		this.filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/", "documents", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/documents", "reports", new HashMap<String, Object>());
+		this.fileNodeId = this.fileService.createNewFile("benchmark", this.userId, this.filesystemId, -1, "/documents/reports", "report.txt", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/documents", "archive", new HashMap<String, Object>());
+		this.fileService.createNewFile("benchmark", this.userId, this.filesystemId, -1, "/documents/archive", "archive.txt", new HashMap<String, Object>());
+		this.genericService.createNewVersion("benchmark", this.fileNodeId, new HashMap<String, Object>(), new HashMap<String, Object>());
+	}
+	
+	@Benchmark
+	public Map<String, Object> getFilesystem() throws UserNotFound, FilesystemNotFound
+	{
+		return this.filesystemService.getFilesystem(this.userId, this.filesystemId);
+	}
+	
+	@Benchmark
+	public Map<String, Object> getDirectory() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound
+	{
+		return this.directoryService.getDirectory(this.userId, this.filesystemId, -1, "/documents", "reports");
+	}
+	
+	@Benchmark
+	public Map<String, Object> getFile() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
+	{
+		return this.fileService.getFile(this.userId, this.filesystemId, -1, "/documents/reports", "report.txt");
+	}
+	
+	@Benchmark
+	public Map<String, Object> getNodeVersion() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		return this.genericService.getNodeVersion(this.fileNodeId, 0);
+	}
+	
+	@Benchmark
+	public String createNewFile() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, DuplicateFile
+	{
+		return this.fileService.createNewFile("benchmark", this.userId, this.filesystemId, -1, "/documents/reports", "file" + this.fileCount++, new HashMap<String, Object>());
+	}
+	
+	/*
+	 * Moves the archive directory back and forth, so every invocation is a move of the same tree.
+	 */
+	@Benchmark
+	public String moveDirectory() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory
+	{
+		this.moved = ! this.moved;
+		if(this.moved)
+		{
+			return this.directoryService.moveDirectory("benchmark", this.userId, this.filesystemId, -1, "/documents", "archive", "/", "archive");
+		}
+		
+		return this.directoryService.moveDirectory("benchmark", this.userId, this.filesystemId, -1, "/", "archive", "/documents", "archive");
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(LatencyBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,91 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class MultiGetTest
+{
+	private GenericService genericService;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	
+	private String userId;
+	private String filesystemId;
+	private String directoryNodeId;
+	private String fileNodeId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		CommonCode commonCode = new CommonCode();
+		this.genericService = new GenericServiceImpl(commonCode);
+		UserService userService = new UserServiceImpl(commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(commonCode);
+		this.directoryService = new DirectoryServiceImpl(commonCode);
+		this.fileService = new FileServiceImpl(commonCode);
+		
+		this.userId = "multiget" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryNodeId = this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Music", new HashMap<String, Object>());
+		this.fileNodeId = this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents", "notes.txt", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents", "to-do.txt", new HashMap<String, Object>());
+	}
+	
+	@Test
+	public void testGetNodes()
+	{
+		Map<String, Map<String, Object>> nodes = this.genericService.getNodes(Arrays.asList(this.fileNodeId, "missing" + System.nanoTime(), this.directoryNodeId));
+		
+		assertEquals(Arrays.asList(this.fileNodeId, this.directoryNodeId), new ArrayList<String>(nodes.keySet()));
+		assertEquals("notes.txt", nodes.get(this.fileNodeId).get(MandatoryProperties.fileName.name()));
+		assertEquals("Documents", nodes.get(this.directoryNodeId).get(MandatoryProperties.directoryName.name()));
+	}
+	
+	@Test
+	public void testGetFiles() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		Map<String, Map<String, Object>> files = this.fileService.getFiles(this.userId, this.filesystemId, 0, "/Documents", Arrays.asList("to-do.txt", "missing.txt", "notes.txt"));
+		
+		assertEquals(Arrays.asList("to-do.txt", "notes.txt"), new ArrayList<String>(files.keySet()));
+		assertEquals(this.fileNodeId, files.get("notes.txt").get(MandatoryProperties.nodeId.name()));
+		assertEquals("/Documents", files.get("notes.txt").get(MandatoryProperties.filePath.name()));
+	}
+	
+	@Test
+	public void testGetDirectories() throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		Map<String, Map<String, Object>> directories = this.directoryService.getDirectories(this.userId, this.filesystemId, 0, "/", Arrays.asList("Music", "Missing", "Documents"));
+		
+		assertEquals(Arrays.asList("Music", "Documents"), new ArrayList<String>(directories.keySet()));
+		assertEquals(this.directoryNodeId, directories.get("Documents").get(MandatoryProperties.nodeId.name()));
+		assertEquals("/", directories.get("Documents").get(MandatoryProperties.directoryPath.name()));
+		assertTrue(this.directoryService.getDirectories(this.userId, this.filesystemId, 0, "/Missing", Arrays.asList("Documents")).isEmpty());
+	}
+}
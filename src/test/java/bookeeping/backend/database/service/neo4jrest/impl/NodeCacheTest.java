@@ -0,0 +1,107 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+
+/*
+ * A node read while another thread changes it must not stay cached with what it held before the change
+ * committed, nor with what a rolled back change wrote.
+ */
+public class NodeCacheTest
+{
+	private CommonCode commonCode;
+	private GenericService genericService;
+	private ExecutorService reader;
+	private String nodeId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem
+	{
+		this.commonCode = new CommonCode();
+		this.genericService = new GenericServiceImpl(this.commonCode);
+		UserService userService = new UserServiceImpl(this.commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(this.commonCode);
+		this.reader = Executors.newSingleThreadExecutor();
+		
+		String userId = "cache" + System.nanoTime();
+		Map<String, Object> filesystemProperties = new HashMap<String, Object>();
+		filesystemProperties.put("content", "before");
+		
+		userService.createNewUser(userId, new HashMap<String, Object>());
+		this.nodeId = filesystemService.createNewFilesystem(userId, "filesystem", filesystemProperties);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		this.reader.shutdown();
+	}
+	
+	@Test
+	public void testReadDuringWrite() throws NodeNotFound, InterruptedException, ExecutionException
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			this.changeContent("after");
+			assertEquals("before", this.readInOtherThread());
+			unitOfWork.success();
+		}
+		
+		assertEquals("after", this.genericService.getNode(this.nodeId).get("content"));
+		assertEquals("after", this.readInOtherThread());
+	}
+	
+	@Test
+	public void testReadInsideRolledBackWrite() throws NodeNotFound
+	{
+		UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork();
+		try
+		{
+			this.changeContent("rolled-back");
+			assertEquals("rolled-back", this.genericService.getNode(this.nodeId).get("content"));
+		}
+		finally
+		{
+			unitOfWork.close();
+		}
+		
+		assertEquals("before", this.genericService.getNode(this.nodeId).get("content"));
+	}
+	
+	private void changeContent(String content) throws NodeNotFound
+	{
+		Map<String, Object> changedProperties = new HashMap<String, Object>();
+		changedProperties.put("content", content);
+		this.genericService.changeNodeProperties(this.nodeId, changedProperties);
+	}
+	
+	private Object readInOtherThread() throws InterruptedException, ExecutionException
+	{
+		return this.reader.submit(new Callable<Object>()
+		{
+			@Override
+			public Object call() throws NodeNotFound
+			{
+				return NodeCacheTest.this.genericService.getNode(NodeCacheTest.this.nodeId).get("content");
+			}
+		}).get();
+	}
+}
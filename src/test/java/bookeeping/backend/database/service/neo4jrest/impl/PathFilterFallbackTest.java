@@ -0,0 +1,109 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.filter.PathFilter;
+
+public class PathFilterFallbackTest
+{
+	private PathFilter originalPathFilter;
+	private PathFilter pathFilter;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	
+	private String userId;
+	
+	@Before
+	public void setup()
+	{
+		this.originalPathFilter = Neo4JRestConnection.getInstance().getPathFilter();
+		this.userId = "pathfilter" + System.nanoTime();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		Neo4JRestConnection.getInstance().setPathFilter(this.originalPathFilter);
+	}
+	
+	@Test
+	public void testOversizeFilterBuiltOnce() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		this.createServices(0);
+		
+		for(int i = 0; i < 5; i++)
+		{
+			this.directoryService.createNewDirectory("First Commit", this.userId, "first", 0, "/", "Directory" + i, new HashMap<String, Object>());
+			this.fileService.createNewFile("First Commit", this.userId, "first", 0, "/", "File" + i, new HashMap<String, Object>());
+		}
+		
+		assertEquals(1, this.pathFilter.getBuildCount());
+		this.assertDuplicateDirectory("first", "Directory3");
+		assertEquals(0, this.pathFilter.getFalsePositiveCount());
+	}
+	
+	@Test
+	public void testEvictedFilterBuiltOnce() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		this.createServices(new PathFilter(0, 0.01).createBloomFilter(0).getByteSize());
+		
+		for(int i = 0; i < 5; i++)
+		{
+			this.directoryService.createNewDirectory("First Commit", this.userId, "first", 0, "/", "Directory" + i, new HashMap<String, Object>());
+			this.directoryService.createNewDirectory("First Commit", this.userId, "second", 0, "/", "Directory" + i, new HashMap<String, Object>());
+		}
+		
+		assertEquals(2, this.pathFilter.getBuildCount());
+		this.assertDuplicateDirectory("first", "Directory3");
+		this.assertDuplicateDirectory("second", "Directory3");
+	}
+	
+	private void createServices(long pathFilterMaximumBytes) throws DuplicateUser, UserNotFound, DuplicateFilesystem
+	{
+		this.pathFilter = new PathFilter(pathFilterMaximumBytes, 0.01);
+		Neo4JRestConnection.getInstance().setPathFilter(this.pathFilter);
+		
+		CommonCode commonCode = new CommonCode();
+		UserService userService = new UserServiceImpl(commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(commonCode);
+		this.directoryService = new DirectoryServiceImpl(commonCode);
+		this.fileService = new FileServiceImpl(commonCode);
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, "first", new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, "second", new HashMap<String, Object>());
+	}
+	
+	private void assertDuplicateDirectory(String filesystemId, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try
+		{
+			this.directoryService.createNewDirectory("Second Commit", this.userId, filesystemId, 0, "/", directoryName, new HashMap<String, Object>());
+			assertTrue("Was expecting DuplicateDirectory error because \"/" + directoryName + "\" is already present.", false);
+		}
+		catch(DuplicateDirectory duplicateDirectory)
+		{
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.neo4j.NodeLabels;
+import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class PathIndexMigrationTest
+{
+	private PathStorageMode pathStorageMode;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup()
+	{
+		this.pathStorageMode = Neo4JRestConnection.getInstance().getPathStorageMode();
+		this.userId = "pathindex" + System.nanoTime();
+		this.filesystemId = "filesystem";
+	}
+	
+	@After
+	public void tearDown()
+	{
+		Neo4JRestConnection.getInstance().setPathStorageMode(this.pathStorageMode);
+	}
+	
+	@Test
+	public void testSameNameAbsolutePaths() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		this.assertSameNameDoNotCollide(PathStorageMode.AbsolutePaths);
+	}
+	
+	@Test
+	public void testSameNameRelativePaths() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		this.assertSameNameDoNotCollide(PathStorageMode.RelativePaths);
+	}
+	
+	@Test
+	public void testMigrate() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound, NodeNotFound
+	{
+		CommonCode commonCode = Neo4JRestServiceRegistry.getInstance().getCommonCode();
+		this.createTree(commonCode, Neo4JRestServiceRegistry.getInstance().getDirectoryService(), Neo4JRestServiceRegistry.getInstance().getFileService());
+		
+		/* Strips pathKey from every has relationship of the user, the way they were written before the index. */
+		Map<String, Object> pathKeys = null;
+		try(UnitOfWork unitOfWork = commonCode.beginUnitOfWork())
+		{
+			List<Relationship> relationships = new ArrayList<Relationship>();
+			this.collectRelationships(commonCode.getUser(this.userId), relationships);
+			pathKeys = this.getPathKeys(relationships);
+			for(Relationship relationship : relationships)
+			{
+				relationship.removeProperty(MandatoryProperties.pathKey.name());
+			}
+			
+			unitOfWork.success();
+		}
+		
+		assertTrue(new PathIndexMigration().migrate() >= 1);
+		
+		try(UnitOfWork unitOfWork = commonCode.beginUnitOfWork())
+		{
+			List<Relationship> relationships = new ArrayList<Relationship>();
+			this.collectRelationships(commonCode.getUser(this.userId), relationships);
+			assertEquals(pathKeys, this.getPathKeys(relationships));
+			
+			this.assertSameName(commonCode, "/", "Reports");
+			this.assertSameName(commonCode, "/Reports", "2019");
+			unitOfWork.success();
+		}
+		
+		/* Parents whose children all have a pathKey are skipped. */
+		assertEquals(0, new PathIndexMigration().migrate());
+	}
+	
+	private void assertSameNameDoNotCollide(PathStorageMode pathStorageMode) throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		Neo4JRestConnection.getInstance().setPathStorageMode(pathStorageMode);
+		CommonCode commonCode = new CommonCode();
+		this.createTree(commonCode, new DirectoryServiceImpl(commonCode), new FileServiceImpl(commonCode));
+		
+		try(UnitOfWork unitOfWork = commonCode.beginUnitOfWork())
+		{
+			this.assertSameName(commonCode, "/", "Reports");
+			this.assertSameName(commonCode, "/Reports", "2019");
+			
+			try
+			{
+				commonCode.getFile(this.userId, this.filesystemId, 0, "/", "Archive");
+				assertTrue("Was expecting FileNotFound error because \"/Archive\" is a Directory.", false);
+			}
+			catch(FileNotFound fileNotFound)
+			{
+				assertTrue(true);
+			}
+			
+			unitOfWork.success();
+		}
+	}
+	
+	/*
+	 * "/Reports" and "/Reports/2019" are each both a Directory and a File, and "/Archive" is only a
+	 * Directory.
+	 */
+	private void createTree(CommonCode commonCode, DirectoryService directoryService, FileService fileService) throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		new UserServiceImpl(commonCode).createNewUser(this.userId, new HashMap<String, Object>());
+		new FilesystemServiceImpl(commonCode).createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Reports", new HashMap<String, Object>());
+		fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/", "Reports", new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Reports", "2019", new HashMap<String, Object>());
+		fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Reports", "2019", new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Archive", new HashMap<String, Object>());
+	}
+	
+	private void assertSameName(CommonCode commonCode, String path, String name) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		Node directory = commonCode.getDirectory(this.userId, this.filesystemId, 0, path, name);
+		Node file = commonCode.getFile(this.userId, this.filesystemId, 0, path, name);
+		assertTrue(directory.hasLabel(NodeLabels.Directory));
+		assertTrue(file.hasLabel(NodeLabels.File));
+		
+		String directoryPathKey = (String) directory.getSingleRelationship(RelationshipLabels.has, Direction.INCOMING).getProperty(MandatoryProperties.pathKey.name());
+		String filePathKey = (String) file.getSingleRelationship(RelationshipLabels.has, Direction.INCOMING).getProperty(MandatoryProperties.pathKey.name());
+		assertTrue(directoryPathKey.endsWith(name + "/"));
+		assertTrue(filePathKey.endsWith(name));
+		assertNotEquals(directoryPathKey, filePathKey);
+	}
+	
+	private void collectRelationships(Node node, List<Relationship> relationships)
+	{
+		for(Relationship relationship : node.getRelationships(Direction.OUTGOING, RelationshipLabels.has))
+		{
+			relationships.add(relationship);
+			this.collectRelationships(relationship.getEndNode(), relationships);
+		}
+	}
+	
+	/* The pathKey of each relationship, by the nodeIds it connects. */
+	private Map<String, Object> getPathKeys(List<Relationship> relationships)
+	{
+		Map<String, Object> pathKeys = new HashMap<String, Object>();
+		for(Relationship relationship : relationships)
+		{
+			String startNodeId = (String) relationship.getStartNode().getProperty(MandatoryProperties.nodeId.name());
+			String endNodeId = (String) relationship.getEndNode().getProperty(MandatoryProperties.nodeId.name());
+			pathKeys.put(startNodeId + "->" + endNodeId, relationship.getProperty(MandatoryProperties.pathKey.name(), null));
+		}
+		
+		return pathKeys;
+	}
+}
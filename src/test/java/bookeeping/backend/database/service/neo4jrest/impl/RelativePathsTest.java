@@ -0,0 +1,113 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class RelativePathsTest
+{
+	private PathStorageMode pathStorageMode;
+	private FileService fileService;
+	private DirectoryService directoryService;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		Neo4JRestConnection neo4jRestConnection = Neo4JRestConnection.getInstance();
+		this.pathStorageMode = neo4jRestConnection.getPathStorageMode();
+		neo4jRestConnection.setPathStorageMode(PathStorageMode.RelativePaths);
+		
+		CommonCode commonCode = new CommonCode();
+		UserService userService = new UserServiceImpl(commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(commonCode);
+		this.directoryService = new DirectoryServiceImpl(commonCode);
+		this.fileService = new FileServiceImpl(commonCode);
+		
+		this.userId = "relative" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Documents", "Archive", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents.old", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt", new HashMap<String, Object>());
+	}
+	
+	@After
+	public void tearDown()
+	{
+		Neo4JRestConnection.getInstance().setPathStorageMode(this.pathStorageMode);
+	}
+	
+	@Test
+	public void testMoveDirectory() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory, FileNotFound
+	{
+		this.directoryService.moveDirectory("Second Commit", this.userId, this.filesystemId, 0, "/", "Documents", "/Documents.old", "Documents");
+		
+		Map<String, Object> file = this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents.old/Documents/Archive", "notes.txt");
+		assertEquals("notes.txt", file.get(MandatoryProperties.fileName.name()));
+		this.assertDirectoryNotFound("/", "Documents");
+	}
+	
+	@Test
+	public void testMoveDirectoryIntoItself() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory, FileNotFound
+	{
+		String[] newDirectoryPaths = {"/Documents", "/Documents/Archive"};
+		for(String newDirectoryPath : newDirectoryPaths)
+		{
+			try
+			{
+				this.directoryService.moveDirectory("Second Commit", this.userId, this.filesystemId, 0, "/", "Documents", newDirectoryPath, "Documents");
+				assertTrue("Was expecting IllegalArgumentException error because \"" + newDirectoryPath + "\" is inside the moved Directory.", false);
+			}
+			catch(IllegalArgumentException illegalArgumentException)
+			{
+				assertTrue(true);
+			}
+		}
+		
+		this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/Documents", "Archive");
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt");
+		this.assertDirectoryNotFound("/Documents/Archive", "Documents");
+	}
+	
+	private void assertDirectoryNotFound(String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 0, directoryPath, directoryName);
+			assertTrue("Was expecting DirectoryNotFound error because no Directory is at \"" + directoryPath + "\".", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+}
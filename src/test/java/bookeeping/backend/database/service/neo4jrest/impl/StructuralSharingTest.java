@@ -0,0 +1,180 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.VersioningMode;
+import bookeeping.backend.database.connection.singleton.Neo4JRestConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Writes by nodeId go to the newest filesystem version that holds the node; every older version must
+ * keep reading what it read before.
+ */
+public class StructuralSharingTest
+{
+	private VersioningMode versioningMode;
+	private UserService userService;
+	private FilesystemService filesystemService;
+	private DirectoryService directoryService;
+	private FileService fileService;
+	private GenericService genericService;
+	
+	private String userId;
+	private String filesystemId;
+	private String filesystemNodeId;
+	private String directoryNodeId;
+	private String fileNodeId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, NodeNotFound, NodeUnavailable
+	{
+		Neo4JRestConnection neo4jRestConnection = Neo4JRestConnection.getInstance();
+		this.versioningMode = neo4jRestConnection.getVersioningMode();
+		neo4jRestConnection.setVersioningMode(VersioningMode.StructuralSharing);
+		
+		CommonCode commonCode = new CommonCode();
+		this.genericService = new GenericServiceImpl(commonCode);
+		this.userService = new UserServiceImpl(commonCode);
+		this.filesystemService = new FilesystemServiceImpl(commonCode);
+		this.directoryService = new DirectoryServiceImpl(commonCode);
+		this.fileService = new FileServiceImpl(commonCode);
+		
+		this.userId = "sharing" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		Map<String, Object> fileProperties = new HashMap<String, Object>();
+		fileProperties.put("content", "written-in-v0");
+		
+		this.userService.createNewUser(this.userId, new HashMap<String, Object>());
+		this.filesystemNodeId = this.filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryNodeId = this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		this.fileNodeId = this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents", "notes.txt", fileProperties);
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/", "to-do.txt", new HashMap<String, Object>());
+		
+		this.genericService.createNewVersion("Second Commit", this.filesystemNodeId, new HashMap<String, Object>(), new HashMap<String, Object>());
+	}
+	
+	@After
+	public void tearDown()
+	{
+		Neo4JRestConnection.getInstance().setVersioningMode(this.versioningMode);
+	}
+	
+	@Test
+	public void testWritesByNodeIdLeaveOlderVersions() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, NodeNotFound, NodeUnavailable, DuplicateFile
+	{
+		assertEquals(this.fileNodeId, this.getFile(1, "/Documents", "notes.txt").get(MandatoryProperties.nodeId.name()));
+		
+		Map<String, Object> changedProperties = new HashMap<String, Object>();
+		changedProperties.put("content", "changed-in-v1");
+		this.genericService.changeNodeProperties(this.fileNodeId, changedProperties);
+		
+		assertEquals("changed-in-v1", this.getFile(1, "/Documents", "notes.txt").get("content"));
+		assertEquals(this.fileNodeId, this.getFile(1, "/Documents", "notes.txt").get(MandatoryProperties.nodeId.name()));
+		assertEquals("written-in-v0", this.getFile(0, "/Documents", "notes.txt").get("content"));
+		
+		this.genericService.deleteNodeTemporarily("Third Commit", this.fileNodeId);
+		
+		this.assertFileNotFound(1, "/Documents", "notes.txt");
+		assertEquals("written-in-v0", this.getFile(0, "/Documents", "notes.txt").get("content"));
+		
+		this.fileService.restoreFile("Fourth Commit", this.userId, this.filesystemId, 1, "/Documents", "notes.txt", this.fileNodeId);
+		
+		assertEquals("changed-in-v1", this.getFile(1, "/Documents", "notes.txt").get("content"));
+		assertEquals("written-in-v0", this.getFile(0, "/Documents", "notes.txt").get("content"));
+	}
+	
+	@Test
+	public void testDeleteDirectoryByNodeIdLeavesOlderVersions() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, NodeNotFound, NodeUnavailable
+	{
+		this.genericService.deleteNodeTemporarily("Third Commit", this.directoryNodeId);
+		
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 1, "/", "Documents");
+			assertTrue("Was expecting DirectoryNotFound error because Directory is deleted in version 1.", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+		
+		assertEquals("Documents", this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/", "Documents").get(MandatoryProperties.directoryName.name()));
+		assertEquals("written-in-v0", this.getFile(0, "/Documents", "notes.txt").get("content"));
+		this.getFile(1, "/", "to-do.txt");
+	}
+	
+	@Test
+	public void testWritesByNodeIdInOlderVersionOnly() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound, NodeNotFound, NodeUnavailable
+	{
+		Map<String, Object> changedProperties = new HashMap<String, Object>();
+		changedProperties.put("content", "changed-in-v1");
+		this.genericService.changeNodeProperties(this.fileNodeId, changedProperties);
+		String olderFileNodeId = (String) this.getFile(0, "/Documents", "notes.txt").get(MandatoryProperties.nodeId.name());
+		
+		changedProperties.put("content", "changed-in-v0");
+		this.genericService.changeNodeProperties(olderFileNodeId, changedProperties);
+		
+		assertEquals("changed-in-v0", this.getFile(0, "/Documents", "notes.txt").get("content"));
+		assertEquals("changed-in-v1", this.getFile(1, "/Documents", "notes.txt").get("content"));
+	}
+	
+	@Test
+	public void testOlderFilesystemVersionNamesItsOwnRoot() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		String rootNodeId = (String) this.genericService.getNodeVersion(this.filesystemNodeId, 0).get(MandatoryProperties.rootNodeId.name());
+		assertEquals(rootNodeId, this.genericService.getNodeVersion(this.filesystemNodeId, 1).get(MandatoryProperties.rootNodeId.name()));
+		
+		Map<String, Object> changedProperties = new HashMap<String, Object>();
+		changedProperties.put("content", "changed-in-v1");
+		this.genericService.changeNodeProperties(this.fileNodeId, changedProperties);
+		
+		String olderRootNodeId = (String) this.genericService.getNodeVersion(this.filesystemNodeId, 0).get(MandatoryProperties.rootNodeId.name());
+		assertNotEquals(rootNodeId, olderRootNodeId);
+		assertEquals(rootNodeId, this.genericService.getNodeVersion(this.filesystemNodeId, 1).get(MandatoryProperties.rootNodeId.name()));
+		assertEquals(olderRootNodeId, this.genericService.getNode(olderRootNodeId).get(MandatoryProperties.nodeId.name()));
+	}
+	
+	private Map<String, Object> getFile(int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, FileNotFound, VersionNotFound
+	{
+		return this.fileService.getFile(this.userId, this.filesystemId, filesystemVersion, filePath, fileName);
+	}
+	
+	private void assertFileNotFound(int filesystemVersion, String filePath, String fileName) throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		try
+		{
+			this.getFile(filesystemVersion, filePath, fileName);
+			assertTrue("Was expecting FileNotFound error because File is deleted in version " + filesystemVersion + ".", false);
+		}
+		catch(FileNotFound fileNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package bookeeping.backend.database.service.neo4jrest.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.neo4j.RelationshipLabels;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+/*
+ * Builds a version chain, strips the version index from it so that it looks like a chain written before
+ * the index existed, and migrates it. The REST unit of work cannot roll back, so unlike the embedded
+ * test this one leaves the hasVersion chain in place.
+ */
+public class VersionIndexMigrationTest
+{
+	private static final int VERSION_COUNT = 4;
+	
+	private CommonCode commonCode;
+	private String nodeId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, NodeNotFound, NodeUnavailable
+	{
+		this.commonCode = Neo4JRestServiceRegistry.getInstance().getCommonCode();
+		GenericService genericService = Neo4JRestServiceRegistry.getInstance().getGenericService();
+		
+		String userId = "versionindex" + System.nanoTime();
+		Neo4JRestServiceRegistry.getInstance().getUserService().createNewUser(userId, new HashMap<String, Object>());
+		this.nodeId = Neo4JRestServiceRegistry.getInstance().getFilesystemService().createNewFilesystem(userId, "filesystem", new HashMap<String, Object>());
+		for(int i = 1; i < VersionIndexMigrationTest.VERSION_COUNT; i++)
+		{
+			Map<String, Object> changedProperties = new HashMap<String, Object>();
+			changedProperties.put("counter", i);
+			genericService.createNewVersion("Commit " + i, this.nodeId, new HashMap<String, Object>(), changedProperties);
+		}
+		
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			Node node = this.commonCode.getNode(this.nodeId);
+			node.getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING).delete();
+			Relationship relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+			while(relationship != null)
+			{
+				node = relationship.getEndNode();
+				this.commonCode.invalidateNode(node);
+				node.removeProperty(MandatoryProperties.versionOf.name());
+				node.removeProperty(MandatoryProperties.versionKey.name());
+				relationship = node.getSingleRelationship(RelationshipLabels.hasVersion, Direction.OUTGOING);
+			}
+			
+			unitOfWork.success();
+		}
+	}
+	
+	@Test
+	public void testMigrate() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		long[] walkedNodes = this.getNodeVersions();
+		
+		assertTrue(new VersionIndexMigration().migrate() >= 1);
+		
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			Relationship headRelationship = this.commonCode.getNode(this.nodeId).getSingleRelationship(RelationshipLabels.hasHeadVersion, Direction.OUTGOING);
+			assertNotNull(headRelationship);
+			assertEquals(walkedNodes[VersionIndexMigrationTest.VERSION_COUNT - 1], headRelationship.getEndNode().getId());
+			for(int version = 1; version < VersionIndexMigrationTest.VERSION_COUNT; version++)
+			{
+				Node node = this.commonCode.getNodeVersion(this.nodeId, version);
+				assertEquals(this.nodeId, node.getProperty(MandatoryProperties.versionOf.name()));
+				assertEquals(this.nodeId + ":" + version, node.getProperty(MandatoryProperties.versionKey.name()));
+			}
+			
+			unitOfWork.success();
+		}
+		
+		assertArrayEquals(walkedNodes, this.getNodeVersions());
+		
+		/* Chains that already have a head pointer are skipped. */
+		assertEquals(0, new VersionIndexMigration().migrate());
+	}
+	
+	/* The graph ids of versions 0 to VERSION_COUNT - 1, followed by the head. */
+	private long[] getNodeVersions() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		long[] nodes = new long[VersionIndexMigrationTest.VERSION_COUNT + 1];
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			for(int version = 0; version < VersionIndexMigrationTest.VERSION_COUNT; version++)
+			{
+				Node node = this.commonCode.getNodeVersion(this.nodeId, version);
+				assertEquals(version, node.getProperty(MandatoryProperties.version.name()));
+				nodes[version] = node.getId();
+			}
+			nodes[VersionIndexMigrationTest.VERSION_COUNT] = this.commonCode.getNodeVersion(this.nodeId, -1).getId();
+			
+			unitOfWork.success();
+		}
+		
+		return nodes;
+	}
+}
@@ -0,0 +1,132 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class AbsolutePathsTest
+{
+	private PathStorageMode pathStorageMode;
+	private FileService fileService;
+	private DirectoryService directoryService;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		TitanCassandraEmbeddedConnection titanCassandraEmbeddedConnection = TitanCassandraEmbeddedConnection.getInstance();
+		this.pathStorageMode = titanCassandraEmbeddedConnection.getPathStorageMode();
+		titanCassandraEmbeddedConnection.setPathStorageMode(PathStorageMode.AbsolutePaths);
+		
+		CommonCode commonCode = new CommonCode();
+		UserService userService = new UserServiceImpl(commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(commonCode);
+		this.directoryService = new DirectoryServiceImpl(commonCode);
+		this.fileService = new FileServiceImpl(commonCode);
+		
+		this.userId = "absolute" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Documents", "Archive", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Documents.old", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Documents.old", "Backup", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Music", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt", new HashMap<String, Object>());
+		this.fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Documents.old/Backup", "backup.txt", new HashMap<String, Object>());
+	}
+	
+	@After
+	public void tearDown()
+	{
+		TitanCassandraEmbeddedConnection.getInstance().setPathStorageMode(this.pathStorageMode);
+	}
+	
+	@Test
+	public void testMoveDirectoryLeavesSiblingPrefix() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory, FileNotFound
+	{
+		this.directoryService.moveDirectory("Second Commit", this.userId, this.filesystemId, 0, "/", "Documents", "/Music", "Documents");
+		
+		Map<String, Object> file = this.fileService.getFile(this.userId, this.filesystemId, 0, "/Music/Documents/Archive", "notes.txt");
+		assertEquals("/Music/Documents/Archive", file.get(MandatoryProperties.filePath.name()));
+		this.assertDirectoryNotFound("/", "Documents");
+		
+		Map<String, Object> directory = this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/Documents.old", "Backup");
+		assertEquals("/Documents.old", directory.get(MandatoryProperties.directoryPath.name()));
+		file = this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents.old/Backup", "backup.txt");
+		assertEquals("/Documents.old/Backup", file.get(MandatoryProperties.filePath.name()));
+	}
+	
+	@Test
+	public void testMoveDirectoryWithRegexCharacters() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, DuplicateDirectory, DuplicateFile, FileNotFound
+	{
+		this.directoryService.createNewDirectory("Second Commit", this.userId, this.filesystemId, 0, "/", "Notes (2019)", new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("Second Commit", this.userId, this.filesystemId, 0, "/Notes (2019)", "Drafts", new HashMap<String, Object>());
+		this.fileService.createNewFile("Second Commit", this.userId, this.filesystemId, 0, "/Notes (2019)/Drafts", "draft.txt", new HashMap<String, Object>());
+		
+		this.directoryService.moveDirectory("Third Commit", this.userId, this.filesystemId, 0, "/", "Notes (2019)", "/Music", "Notes $1");
+		
+		Map<String, Object> directory = this.directoryService.getDirectory(this.userId, this.filesystemId, 0, "/Music/Notes $1", "Drafts");
+		assertEquals("/Music/Notes $1", directory.get(MandatoryProperties.directoryPath.name()));
+		Map<String, Object> file = this.fileService.getFile(this.userId, this.filesystemId, 0, "/Music/Notes $1/Drafts", "draft.txt");
+		assertEquals("/Music/Notes $1/Drafts", file.get(MandatoryProperties.filePath.name()));
+		this.assertDirectoryNotFound("/", "Notes (2019)");
+	}
+	
+	@Test
+	public void testMoveDirectoryOntoExisting() throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		try
+		{
+			this.directoryService.moveDirectory("Second Commit", this.userId, this.filesystemId, 0, "/", "Documents", "/", "Documents.old");
+			assertTrue("Was expecting DuplicateDirectory error because \"/Documents.old\" is already present.", false);
+		}
+		catch(DuplicateDirectory duplicateDirectory)
+		{
+			assertTrue(true);
+		}
+		
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents/Archive", "notes.txt");
+		this.fileService.getFile(this.userId, this.filesystemId, 0, "/Documents.old/Backup", "backup.txt");
+	}
+	
+	private void assertDirectoryNotFound(String directoryPath, String directoryName) throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try
+		{
+			this.directoryService.getDirectory(this.userId, this.filesystemId, 0, directoryPath, directoryName);
+			assertTrue("Was expecting DirectoryNotFound error because no Directory is at \"" + directoryPath + "\".", false);
+		}
+		catch(DirectoryNotFound directoryNotFound)
+		{
+			assertTrue(true);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.utilities.AutoIncrementLease;
+import bookeeping.backend.utilities.Base62Codec;
+
+public class AutoIncrementServiceTest
+{
+	private AutoIncrementServiceImpl autoIncrementService;
+	
+	@Before
+	public void setup()
+	{
+		this.autoIncrementService = new AutoIncrementServiceImpl();
+	}
+	
+	@Test
+	public void testReserveBlock()
+	{
+		long start = this.autoIncrementService.reserveBlock(5);
+		assertEquals(start + 5, this.autoIncrementService.reserveBlock(7));
+		assertEquals(start + 12, this.autoIncrementService.reserveBlock(1));
+	}
+	
+	@Test
+	public void testConcurrentNextIsUnique() throws InterruptedException
+	{
+		final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		final AtomicInteger duplicateCount = new AtomicInteger();
+		final AtomicInteger failureCount = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		/*
+		 * Two leases over the same node stand for a restart overlapping the leases it replaced. A
+		 * reservation that loses every retry fails, which hands out no id at all.
+		 */
+		final AutoIncrementLease[] autoIncrementLeases = {new AutoIncrementLease(50), new AutoIncrementLease(50)};
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < 8; i++)
+		{
+			final AutoIncrementLease autoIncrementLease = autoIncrementLeases[i % 2];
+			Thread thread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+					}
+					catch(InterruptedException interruptedException)
+					{
+						return;
+					}
+					
+					for(int j = 0; j < 200; j++)
+					{
+						try
+						{
+							if(! ids.add(autoIncrementLease.next(AutoIncrementServiceTest.this.autoIncrementService)))
+							{
+								duplicateCount.incrementAndGet();
+							}
+						}
+						catch(IllegalStateException illegalStateException)
+						{
+							failureCount.incrementAndGet();
+						}
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		
+		start.countDown();
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertEquals(0, duplicateCount.get());
+		assertEquals(1600, ids.size() + failureCount.get());
+	}
+	
+	@Test
+	public void testNoReuseAfterRestart()
+	{
+		long lastId = Base62Codec.decode(this.autoIncrementService.getNextAutoIncrement());
+		AutoIncrementLease autoIncrementLease = new AutoIncrementLease(3);
+		List<Long> ids = new ArrayList<Long>();
+		for(int i = 0; i < 4; i++)
+		{
+			ids.add(autoIncrementLease.next(this.autoIncrementService));
+		}
+		
+		assertTrue(ids.get(0) > lastId);
+		assertEquals(ids.get(0) + 1, (long) ids.get(1));
+		assertEquals(ids.get(0) + 2, (long) ids.get(2));
+		assertTrue(ids.get(3) >= ids.get(0) + 3);
+		
+		/* A new lease is a restart: it never reaches back into the blocks reserved before it. */
+		long id = new AutoIncrementLease(3).next(this.autoIncrementService);
+		assertTrue(id >= ids.get(3) + 3);
+	}
+}
@@ -0,0 +1,90 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.UserNotFound;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+public class BulkLoaderTest
+{
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
+	private TitanGraph titanGraph;
+	private File manifest;
+	
+	@Before
+	public void setup() throws IOException
+	{
+		BaseConfiguration baseConfiguration = new BaseConfiguration();
+		baseConfiguration.setProperty("storage.backend", "inmemory");
+		this.titanGraph = TitanCassandraEmbeddedConnection.openBatchLoadingGraph(baseConfiguration, 100000);
+		
+		this.manifest = this.temporaryFolder.newFile("manifest.txt");
+		String entries = "User\t/rash\tfirstName=Rahul\n"
+				+ "Filesystem\t/rash/laptop\n"
+				+ "Directory\t/rash/laptop/docs\n"
+				+ "File\t/rash/laptop/docs/resume.pdf\tsize=42\n"
+				+ "File\t/rash/laptop/music/rock/song.mp3\n";
+		Files.write(this.manifest.toPath(), entries.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@After
+	public void teardown()
+	{
+		this.titanGraph.shutdown();
+	}
+	
+	@Test
+	public void testLoad() throws IOException, UserNotFound, FilesystemNotFound
+	{
+		BulkLoader bulkLoader = new BulkLoader(this.titanGraph, PathStorageMode.RelativePaths, 2, 1, null);
+		assertEquals(8, bulkLoader.load(this.manifest.getPath(), "import"));
+		
+		Vertex user = this.titanGraph.getVertices(MandatoryProperties.userId.name(), "rash").iterator().next();
+		assertEquals("Rahul", user.getProperty("firstName"));
+		
+		Edge filesystemRelationship = this.titanGraph.getEdges(MandatoryProperties.pathKey.name(), user.getProperty(MandatoryProperties.nodeId.name()) + ":laptop").iterator().next();
+		Vertex rootDirectory = filesystemRelationship.getVertex(Direction.IN).getEdges(Direction.OUT, "has").iterator().next().getVertex(Direction.IN);
+		Edge directoryRelationship = this.titanGraph.getEdges(MandatoryProperties.pathKey.name(), rootDirectory.getProperty(MandatoryProperties.nodeId.name()) + ":docs/").iterator().next();
+		Edge fileRelationship = this.titanGraph.getEdges(MandatoryProperties.pathKey.name(), directoryRelationship.getVertex(Direction.IN).getProperty(MandatoryProperties.nodeId.name()) + ":resume.pdf").iterator().next();
+		assertEquals("42", fileRelationship.getVertex(Direction.IN).getProperty("size"));
+		assertEquals("import", fileRelationship.getProperty(MandatoryProperties.commitId.name()));
+		this.titanGraph.commit();
+	}
+	
+	@Test
+	public void testResume() throws IOException, UserNotFound, FilesystemNotFound
+	{
+		new BulkLoader(this.titanGraph, PathStorageMode.AbsolutePaths, 2, 1, null).load(this.manifest.getPath(), "import");
+		assertEquals(0, new BulkLoader(this.titanGraph, PathStorageMode.AbsolutePaths, 2, 1, null).load(this.manifest.getPath(), "import"));
+		
+		Files.delete(new File(this.manifest.getPath() + ".checkpoint").toPath());
+		assertEquals(0, new BulkLoader(this.titanGraph, PathStorageMode.AbsolutePaths, 2, 1, null).load(this.manifest.getPath(), "import"));
+		
+		Vertex autoIncrement = this.titanGraph.getVertices(MandatoryProperties.nodeId.name(), "0").iterator().next();
+		assertTrue(autoIncrement.getProperty(MandatoryProperties.next.name()).equals("9"));
+		this.titanGraph.commit();
+	}
+}
@@ -0,0 +1,186 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.PathStorageMode;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.titan.NodeLabels;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.database.service.FileService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFile;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FileNotFound;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+import com.thinkaurelius.titan.core.TitanVertex;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+public class PathIndexMigrationTest
+{
+	private PathStorageMode pathStorageMode;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup()
+	{
+		this.pathStorageMode = TitanCassandraEmbeddedConnection.getInstance().getPathStorageMode();
+		this.userId = "pathindex" + System.nanoTime();
+		this.filesystemId = "filesystem";
+	}
+	
+	@After
+	public void tearDown()
+	{
+		TitanCassandraEmbeddedConnection.getInstance().setPathStorageMode(this.pathStorageMode);
+	}
+	
+	@Test
+	public void testSameNameAbsolutePaths() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		this.assertSameNameDoNotCollide(PathStorageMode.AbsolutePaths);
+	}
+	
+	@Test
+	public void testSameNameRelativePaths() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		this.assertSameNameDoNotCollide(PathStorageMode.RelativePaths);
+	}
+	
+	@Test
+	public void testMigrate() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound, NodeNotFound
+	{
+		CommonCode commonCode = TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode();
+		this.createTree(commonCode, TitanCassandraEmbeddedServiceRegistry.getInstance().getDirectoryService(), TitanCassandraEmbeddedServiceRegistry.getInstance().getFileService());
+		
+		/* Strips pathKey from every has relationship of the user, the way they were written before the index. */
+		Map<String, Object> pathKeys = null;
+		try(UnitOfWork unitOfWork = commonCode.beginUnitOfWork())
+		{
+			List<Edge> relationships = new ArrayList<Edge>();
+			this.collectRelationships(commonCode.getUser(this.userId), relationships);
+			pathKeys = this.getPathKeys(relationships);
+			for(Edge relationship : relationships)
+			{
+				relationship.removeProperty(MandatoryProperties.pathKey.name());
+			}
+			
+			unitOfWork.success();
+		}
+		
+		assertTrue(new PathIndexMigration().migrate() >= 1);
+		
+		try(UnitOfWork unitOfWork = commonCode.beginUnitOfWork())
+		{
+			List<Edge> relationships = new ArrayList<Edge>();
+			this.collectRelationships(commonCode.getUser(this.userId), relationships);
+			assertEquals(pathKeys, this.getPathKeys(relationships));
+			
+			this.assertSameName(commonCode, "/", "Reports");
+			this.assertSameName(commonCode, "/Reports", "2019");
+			unitOfWork.success();
+		}
+		
+		/* Parents whose children all have a pathKey are skipped. */
+		assertEquals(0, new PathIndexMigration().migrate());
+	}
+	
+	private void assertSameNameDoNotCollide(PathStorageMode pathStorageMode) throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile, FileNotFound
+	{
+		TitanCassandraEmbeddedConnection.getInstance().setPathStorageMode(pathStorageMode);
+		CommonCode commonCode = new CommonCode();
+		this.createTree(commonCode, new DirectoryServiceImpl(commonCode), new FileServiceImpl(commonCode));
+		
+		try(UnitOfWork unitOfWork = commonCode.beginUnitOfWork())
+		{
+			this.assertSameName(commonCode, "/", "Reports");
+			this.assertSameName(commonCode, "/Reports", "2019");
+			
+			try
+			{
+				commonCode.getFile(this.userId, this.filesystemId, 0, "/", "Archive");
+				assertTrue("Was expecting FileNotFound error because \"/Archive\" is a Directory.", false);
+			}
+			catch(FileNotFound fileNotFound)
+			{
+				assertTrue(true);
+			}
+			
+			unitOfWork.success();
+		}
+	}
+	
+	/*
+	 * "/Reports" and "/Reports/2019" are each both a Directory and a File, and "/Archive" is only a
+	 * Directory.
+	 */
+	private void createTree(CommonCode commonCode, DirectoryService directoryService, FileService fileService) throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, DirectoryNotFound, DuplicateFile
+	{
+		new UserServiceImpl(commonCode).createNewUser(this.userId, new HashMap<String, Object>());
+		new FilesystemServiceImpl(commonCode).createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Reports", new HashMap<String, Object>());
+		fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/", "Reports", new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/Reports", "2019", new HashMap<String, Object>());
+		fileService.createNewFile("First Commit", this.userId, this.filesystemId, 0, "/Reports", "2019", new HashMap<String, Object>());
+		directoryService.createNewDirectory("First Commit", this.userId, this.filesystemId, 0, "/", "Archive", new HashMap<String, Object>());
+	}
+	
+	private void assertSameName(CommonCode commonCode, String path, String name) throws UserNotFound, FilesystemNotFound, VersionNotFound, DirectoryNotFound, FileNotFound
+	{
+		Vertex directory = commonCode.getDirectory(this.userId, this.filesystemId, 0, path, name);
+		Vertex file = commonCode.getFile(this.userId, this.filesystemId, 0, path, name);
+		assertEquals(NodeLabels.Directory.name(), ((TitanVertex) directory).getLabel());
+		assertEquals(NodeLabels.File.name(), ((TitanVertex) file).getLabel());
+		
+		String directoryPathKey = directory.getEdges(Direction.IN, RelationshipLabels.has.name()).iterator().next().getProperty(MandatoryProperties.pathKey.name());
+		String filePathKey = file.getEdges(Direction.IN, RelationshipLabels.has.name()).iterator().next().getProperty(MandatoryProperties.pathKey.name());
+		assertTrue(directoryPathKey.endsWith(name + "/"));
+		assertTrue(filePathKey.endsWith(name));
+		assertNotEquals(directoryPathKey, filePathKey);
+	}
+	
+	private void collectRelationships(Vertex node, List<Edge> relationships)
+	{
+		for(Edge relationship : node.getEdges(Direction.OUT, RelationshipLabels.has.name()))
+		{
+			relationships.add(relationship);
+			this.collectRelationships(relationship.getVertex(Direction.IN), relationships);
+		}
+	}
+	
+	/* The pathKey of each relationship, by the nodeIds it connects. */
+	private Map<String, Object> getPathKeys(List<Edge> relationships)
+	{
+		Map<String, Object> pathKeys = new HashMap<String, Object>();
+		for(Edge relationship : relationships)
+		{
+			String startNodeId = relationship.getVertex(Direction.OUT).getProperty(MandatoryProperties.nodeId.name());
+			String endNodeId = relationship.getVertex(Direction.IN).getProperty(MandatoryProperties.nodeId.name());
+			pathKeys.put(startNodeId + "->" + endNodeId, relationship.getProperty(MandatoryProperties.pathKey.name()));
+		}
+		
+		return pathKeys;
+	}
+}
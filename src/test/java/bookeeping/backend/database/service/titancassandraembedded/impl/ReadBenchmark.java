@@ -0,0 +1,101 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.service.DirectoryService;
+import bookeeping.backend.exception.DirectoryNotFound;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.tinkerpop.blueprints.Vertex;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark
+{
+	private TitanGraph titanGraph;
+	private CommonCode commonCode;
+	private DirectoryService directoryService;
+	private String userId;
+	private String filesystemId;
+	
+	@Setup
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory
+	{
+		this.titanGraph = TitanCassandraEmbeddedConnection.getInstance().getTitanGraphObject();
+		this.commonCode = new CommonCode();
+		this.directoryService = new DirectoryServiceImpl();
+		this.userId = "benchmark" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		new UserServiceImpl().createNewUser(this.userId, new HashMap<String, Object>());
+		new FilesystemServiceImpl().createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+		this.directoryService.createNewDirectory("benchmark", this.userId, this.filesystemId, -1, "/", "directory", new HashMap<String, Object>());
+	}
+	
+	/*
+	 * The getter as it was before the read path: the reads go through the thread-bound transaction next
+	 * to a read-write transaction that is committed at the end. The thread-bound transaction is closed
+	 * after each call, so that every call sees current data like the read path does; left open, it keeps
+	 * answering from the vertices it loaded first.
+	 */
+	@Benchmark
+	public Map<String, Object> getDirectoryCommitted() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound, NodeNotFound
+	{
+		TitanTransaction titanTransaction = this.titanGraph.newTransaction();
+		try
+		{
+			Vertex directory = this.commonCode.getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+			Map<String, Object> directoryProperties = this.commonCode.getNodeProperties(directory);
+			titanTransaction.commit();
+			return directoryProperties;
+		}
+		finally
+		{
+			if(titanTransaction.isOpen())
+			{
+				titanTransaction.rollback();
+			}
+			this.titanGraph.rollback();
+		}
+	}
+	
+	@Benchmark
+	public Map<String, Object> getDirectory() throws UserNotFound, FilesystemNotFound, DirectoryNotFound, VersionNotFound
+	{
+		return this.directoryService.getDirectory(this.userId, this.filesystemId, -1, "/", "directory");
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(ReadBenchmark.class.getName()).build()).run();
+	}
+}
@@ -0,0 +1,134 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Vertex;
+
+import bookeeping.backend.database.service.FilesystemService;
+import bookeeping.backend.database.service.UserService;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+public class RootDirectoryTest
+{
+	private Exception nodeVersionFailure;
+	private CommonCode commonCode;
+	
+	private String userId;
+	private String filesystemId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem
+	{
+		/* Fails the filesystem version lookup with whichever exception the test sets. */
+		this.commonCode = new CommonCode()
+		{
+			@Override
+			public Vertex getNodeVersion(String nodeId, int version) throws NodeNotFound, VersionNotFound, NodeUnavailable
+			{
+				Exception nodeVersionFailure = RootDirectoryTest.this.nodeVersionFailure;
+				if(nodeVersionFailure instanceof NodeNotFound)
+				{
+					throw (NodeNotFound) nodeVersionFailure;
+				}
+				
+				if(nodeVersionFailure instanceof NodeUnavailable)
+				{
+					throw (NodeUnavailable) nodeVersionFailure;
+				}
+				
+				return super.getNodeVersion(nodeId, version);
+			}
+		};
+		UserService userService = new UserServiceImpl(this.commonCode);
+		FilesystemService filesystemService = new FilesystemServiceImpl(this.commonCode);
+		
+		this.userId = "rootdirectory" + System.nanoTime();
+		this.filesystemId = "filesystem";
+		
+		userService.createNewUser(this.userId, new HashMap<String, Object>());
+		filesystemService.createNewFilesystem(this.userId, this.filesystemId, new HashMap<String, Object>());
+	}
+	
+	@Test
+	public void testRootDirectory() throws UserNotFound, FilesystemNotFound, VersionNotFound
+	{
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			assertNotNull(this.commonCode.getRootDirectory(this.userId, this.filesystemId, 0));
+			assertNotNull(this.commonCode.getWritableRootDirectory(this.userId, this.filesystemId, 0));
+			unitOfWork.success();
+		}
+	}
+	
+	@Test
+	public void testUnavailableVersion() throws UserNotFound, FilesystemNotFound
+	{
+		this.nodeVersionFailure = new NodeUnavailable("ERROR: No version property for this node!");
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			try
+			{
+				this.commonCode.getRootDirectory(this.userId, this.filesystemId, 0);
+				assertTrue("Was expecting VersionNotFound error because the Filesystem has no version.", false);
+			}
+			catch(VersionNotFound versionNotFound)
+			{
+				assertTrue(true);
+			}
+			
+			try
+			{
+				this.commonCode.getWritableRootDirectory(this.userId, this.filesystemId, 0);
+				assertTrue("Was expecting VersionNotFound error because the Filesystem has no version.", false);
+			}
+			catch(VersionNotFound versionNotFound)
+			{
+				assertTrue(true);
+			}
+			
+			unitOfWork.success();
+		}
+	}
+	
+	@Test
+	public void testMissingFilesystemNode() throws UserNotFound, VersionNotFound
+	{
+		this.nodeVersionFailure = new NodeNotFound("ERROR: Node not found!");
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			try
+			{
+				this.commonCode.getRootDirectory(this.userId, this.filesystemId, 0);
+				assertTrue("Was expecting FilesystemNotFound error because the Filesystem node is gone.", false);
+			}
+			catch(FilesystemNotFound filesystemNotFound)
+			{
+				assertTrue(true);
+			}
+			
+			try
+			{
+				this.commonCode.getWritableRootDirectory(this.userId, this.filesystemId, 0);
+				assertTrue("Was expecting FilesystemNotFound error because the Filesystem node is gone.", false);
+			}
+			catch(FilesystemNotFound filesystemNotFound)
+			{
+				assertTrue(true);
+			}
+			
+			unitOfWork.success();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import bookeeping.backend.database.DatabaseBackend;
+import bookeeping.backend.database.connection.singleton.TitanCassandraEmbeddedConnection;
+import bookeeping.backend.database.service.ServiceRegistries;
+import bookeeping.backend.database.service.ServiceRegistry;
+import bookeeping.backend.exception.DuplicateDirectory;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.FilesystemNotFound;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+import bookeeping.backend.utilities.FilesystemLock;
+import bookeeping.backend.utilities.cache.NodeCache;
+
+public class TitanCassandraEmbeddedServiceRegistryTest
+{
+	@Test
+	public void testServiceRegistries()
+	{
+		TitanCassandraEmbeddedServiceRegistry titanCassandraEmbeddedServiceRegistry = TitanCassandraEmbeddedServiceRegistry.getInstance();
+		assertSame(titanCassandraEmbeddedServiceRegistry, ServiceRegistries.getServiceRegistry(DatabaseBackend.TitanCassandraEmbedded));
+		assertNotSame(titanCassandraEmbeddedServiceRegistry, ServiceRegistries.getServiceRegistry(DatabaseBackend.Neo4JEmbedded));
+	}
+	
+	@Test
+	public void testSharedInstances()
+	{
+		TitanCassandraEmbeddedServiceRegistry titanCassandraEmbeddedServiceRegistry = TitanCassandraEmbeddedServiceRegistry.getInstance();
+		ServiceRegistry serviceRegistry = ServiceRegistries.getServiceRegistry(DatabaseBackend.TitanCassandraEmbedded);
+		
+		assertSame(titanCassandraEmbeddedServiceRegistry.getCommonCode(), TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getCommonCode().getAutoIncrementService(), serviceRegistry.getAutoIncrementService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getCommitService(), serviceRegistry.getCommitService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getDirectoryService(), serviceRegistry.getDirectoryService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getFileService(), serviceRegistry.getFileService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getFilesystemService(), serviceRegistry.getFilesystemService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getGenericService(), serviceRegistry.getGenericService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getUserService(), serviceRegistry.getUserService());
+		assertSame(titanCassandraEmbeddedServiceRegistry.getXrayService(), serviceRegistry.getXrayService());
+	}
+	
+	@Test
+	public void testConcurrentGetServiceRegistry() throws InterruptedException, ExecutionException
+	{
+		ExecutorService executorService = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<ServiceRegistry>> futures = new ArrayList<Future<ServiceRegistry>>();
+			for(int i = 0; i < 8; i++)
+			{
+				futures.add(executorService.submit(new Callable<ServiceRegistry>()
+				{
+					@Override
+					public ServiceRegistry call()
+					{
+						return ServiceRegistries.getServiceRegistry(DatabaseBackend.TitanCassandraEmbedded);
+					}
+				}));
+			}
+			
+			for(Future<ServiceRegistry> future : futures)
+			{
+				assertSame(TitanCassandraEmbeddedServiceRegistry.getInstance(), future.get());
+			}
+		}
+		finally
+		{
+			executorService.shutdown();
+		}
+	}
+	
+	/*
+	 * A node read through the registry is cached where a change through a service built with the public
+	 * constructor invalidates it, and both take the one filesystem lock of the backend.
+	 */
+	@Test
+	public void testSharedCacheAndLock() throws DuplicateUser, UserNotFound, DuplicateFilesystem, FilesystemNotFound, VersionNotFound, DuplicateDirectory, NodeNotFound
+	{
+		TitanCassandraEmbeddedServiceRegistry titanCassandraEmbeddedServiceRegistry = TitanCassandraEmbeddedServiceRegistry.getInstance();
+		NodeCache nodeCache = TitanCassandraEmbeddedConnection.getInstance().getNodeCache();
+		FilesystemLock filesystemLock = TitanCassandraEmbeddedConnection.getInstance().getFilesystemLock();
+		
+		String userId = "registry" + System.nanoTime();
+		titanCassandraEmbeddedServiceRegistry.getUserService().createNewUser(userId, new HashMap<String, Object>());
+		String nodeId = titanCassandraEmbeddedServiceRegistry.getFilesystemService().createNewFilesystem(userId, "filesystem", new HashMap<String, Object>());
+		
+		titanCassandraEmbeddedServiceRegistry.getGenericService().getNode(nodeId);
+		assertNotNull(nodeCache.get(nodeId));
+		
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("content", "changed");
+		new GenericServiceImpl().changeNodeProperties(nodeId, properties);
+		assertNull(nodeCache.get(nodeId));
+		assertEquals("changed", titanCassandraEmbeddedServiceRegistry.getGenericService().getNode(nodeId).get("content"));
+		
+		long acquireCount = filesystemLock.getAcquireCount();
+		titanCassandraEmbeddedServiceRegistry.getDirectoryService().createNewDirectory("First Commit", userId, "filesystem", 0, "/", "Documents", new HashMap<String, Object>());
+		new DirectoryServiceImpl().createNewDirectory("First Commit", userId, "filesystem", 0, "/", "Music", new HashMap<String, Object>());
+		assertTrue(filesystemLock.getAcquireCount() >= acquireCount + 2);
+	}
+}
@@ -0,0 +1,157 @@
+package bookeeping.backend.database.service.titancassandraembedded.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bookeeping.backend.database.MandatoryProperties;
+import bookeeping.backend.database.titan.RelationshipLabels;
+import bookeeping.backend.database.service.GenericService;
+import bookeeping.backend.exception.DuplicateFilesystem;
+import bookeeping.backend.exception.DuplicateUser;
+import bookeeping.backend.exception.NodeNotFound;
+import bookeeping.backend.exception.NodeUnavailable;
+import bookeeping.backend.exception.UserNotFound;
+import bookeeping.backend.exception.VersionNotFound;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/*
+ * Builds a version chain, strips the version index from it so that it looks like a chain written before
+ * the index existed, and migrates it.
+ */
+public class VersionIndexMigrationTest
+{
+	private static final int VERSION_COUNT = 4;
+	
+	private CommonCode commonCode;
+	private String nodeId;
+	
+	@Before
+	public void setup() throws DuplicateUser, UserNotFound, DuplicateFilesystem, NodeNotFound, NodeUnavailable
+	{
+		this.commonCode = TitanCassandraEmbeddedServiceRegistry.getInstance().getCommonCode();
+		GenericService genericService = TitanCassandraEmbeddedServiceRegistry.getInstance().getGenericService();
+		
+		String userId = "versionindex" + System.nanoTime();
+		TitanCassandraEmbeddedServiceRegistry.getInstance().getUserService().createNewUser(userId, new HashMap<String, Object>());
+		this.nodeId = TitanCassandraEmbeddedServiceRegistry.getInstance().getFilesystemService().createNewFilesystem(userId, "filesystem", new HashMap<String, Object>());
+		for(int i = 1; i < VersionIndexMigrationTest.VERSION_COUNT; i++)
+		{
+			Map<String, Object> changedProperties = new HashMap<String, Object>();
+			changedProperties.put("counter", i);
+			genericService.createNewVersion("Commit " + i, this.nodeId, new HashMap<String, Object>(), changedProperties);
+		}
+		
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			Vertex node = this.commonCode.getNode(this.nodeId);
+			node.getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator().next().remove();
+			Iterator<Edge> iterator = node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+			while(iterator.hasNext())
+			{
+				node = iterator.next().getVertex(Direction.IN);
+				this.commonCode.invalidateNode(node);
+				node.removeProperty(MandatoryProperties.versionOf.name());
+				node.removeProperty(MandatoryProperties.versionKey.name());
+				iterator = node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+			}
+			
+			unitOfWork.success();
+		}
+	}
+	
+	@Test
+	public void testMigrate() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		Object[] walkedNodes = this.getNodeVersions();
+		
+		assertTrue(new VersionIndexMigration().migrate() >= 1);
+		
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			Iterator<Edge> headIterator = this.commonCode.getNode(this.nodeId).getEdges(Direction.OUT, RelationshipLabels.hasHeadVersion.name()).iterator();
+			assertTrue(headIterator.hasNext());
+			assertEquals(walkedNodes[VersionIndexMigrationTest.VERSION_COUNT - 1], headIterator.next().getVertex(Direction.IN).getId());
+			for(int version = 1; version < VersionIndexMigrationTest.VERSION_COUNT; version++)
+			{
+				Vertex node = this.commonCode.getNodeVersion(this.nodeId, version);
+				assertEquals(this.nodeId, node.getProperty(MandatoryProperties.versionOf.name()));
+				assertEquals(this.nodeId + ":" + version, node.getProperty(MandatoryProperties.versionKey.name()));
+			}
+			
+			unitOfWork.success();
+		}
+		
+		assertArrayEquals(walkedNodes, this.getNodeVersions());
+		
+		/* Chains that already have a head pointer are skipped. */
+		assertEquals(0, new VersionIndexMigration().migrate());
+	}
+	
+	@Test
+	public void testMigratedChainSkipsWalk() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		Object[] walkedNodes = this.getNodeVersions();
+		new VersionIndexMigration().migrate();
+		
+		/*
+		 * With the hasVersion chain cut, only the index and the head pointer can still find the versions.
+		 * The unit of work is never successful, so the cut is rolled back.
+		 */
+		UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork();
+		try
+		{
+			Vertex node = this.commonCode.getNode(this.nodeId);
+			Iterator<Edge> iterator = node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+			while(iterator.hasNext())
+			{
+				Edge relationship = iterator.next();
+				node = relationship.getVertex(Direction.IN);
+				relationship.remove();
+				iterator = node.getEdges(Direction.OUT, RelationshipLabels.hasVersion.name()).iterator();
+			}
+			
+			for(int version = 1; version < VersionIndexMigrationTest.VERSION_COUNT; version++)
+			{
+				assertEquals(walkedNodes[version], this.commonCode.getNodeVersion(this.nodeId, version).getId());
+			}
+			assertEquals(walkedNodes[VersionIndexMigrationTest.VERSION_COUNT], this.commonCode.getNodeVersion(this.nodeId, -1).getId());
+		}
+		finally
+		{
+			unitOfWork.close();
+		}
+		
+		assertArrayEquals(walkedNodes, this.getNodeVersions());
+	}
+	
+	/* The graph ids of versions 0 to VERSION_COUNT - 1, followed by the head. */
+	private Object[] getNodeVersions() throws NodeNotFound, VersionNotFound, NodeUnavailable
+	{
+		Object[] nodes = new Object[VersionIndexMigrationTest.VERSION_COUNT + 1];
+		try(UnitOfWork unitOfWork = this.commonCode.beginUnitOfWork())
+		{
+			for(int version = 0; version < VersionIndexMigrationTest.VERSION_COUNT; version++)
+			{
+				Vertex node = this.commonCode.getNodeVersion(this.nodeId, version);
+				assertEquals(version, (int) node.getProperty(MandatoryProperties.version.name()));
+				nodes[version] = node.getId();
+			}
+			nodes[VersionIndexMigrationTest.VERSION_COUNT] = this.commonCode.getNodeVersion(this.nodeId, -1).getId();
+			
+			unitOfWork.success();
+		}
+		
+		return nodes;
+	}
+}
@@ -0,0 +1,170 @@
+package bookeeping.backend.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class AutoIncrementLeaseTest
+{
+	/*
+	 * Stands in for the auto increment node: hands out consecutive blocks and remembers the thread
+	 * each one was reserved on.
+	 */
+	private static class CountingBlockReserver implements AutoIncrementLease.BlockReserver
+	{
+		private final AtomicLong next;
+		private final AtomicInteger reservationCount;
+		private volatile Thread reservationThread;
+		
+		private CountingBlockReserver(long start)
+		{
+			this.next = new AtomicLong(start);
+			this.reservationCount = new AtomicInteger();
+		}
+		
+		@Override
+		public long reserveBlock(int blockSize)
+		{
+			this.reservationCount.incrementAndGet();
+			this.reservationThread = Thread.currentThread();
+			return this.next.getAndAdd(blockSize);
+		}
+	}
+	
+	@Test
+	public void testReservesNewBlockWhenExhausted()
+	{
+		CountingBlockReserver blockReserver = new CountingBlockReserver(100);
+		AutoIncrementLease autoIncrementLease = new AutoIncrementLease(3);
+		
+		List<Long> ids = new ArrayList<Long>();
+		for(int i = 0; i < 7; i++)
+		{
+			ids.add(autoIncrementLease.next(blockReserver));
+		}
+		
+		assertEquals(3, blockReserver.reservationCount.get());
+		for(int i = 0; i < ids.size(); i++)
+		{
+			assertEquals(100L + i, (long) ids.get(i));
+		}
+		assertNotEquals(Thread.currentThread(), blockReserver.reservationThread);
+	}
+	
+	@Test
+	public void testConcurrentNextIsUnique() throws InterruptedException
+	{
+		final CountingBlockReserver blockReserver = new CountingBlockReserver(0);
+		final AutoIncrementLease autoIncrementLease = new AutoIncrementLease(10);
+		final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		final AtomicInteger duplicateCount = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < 8; i++)
+		{
+			Thread thread = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						start.await();
+					}
+					catch(InterruptedException interruptedException)
+					{
+						return;
+					}
+					
+					for(int j = 0; j < 1000; j++)
+					{
+						if(! ids.add(autoIncrementLease.next(blockReserver)))
+						{
+							duplicateCount.incrementAndGet();
+						}
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		
+		start.countDown();
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		
+		assertEquals(0, duplicateCount.get());
+		assertEquals(8000, ids.size());
+		assertEquals(800, blockReserver.reservationCount.get());
+	}
+	
+	@Test
+	public void testNoReuseAfterRestart()
+	{
+		CountingBlockReserver blockReserver = new CountingBlockReserver(0);
+		AutoIncrementLease autoIncrementLease = new AutoIncrementLease(10);
+		long lastId = -1;
+		for(int i = 0; i < 15; i++)
+		{
+			lastId = autoIncrementLease.next(blockReserver);
+		}
+		
+		/* A new lease over the same reserver is a restart: the rest of the dropped block is a gap. */
+		AutoIncrementLease restartedAutoIncrementLease = new AutoIncrementLease(10);
+		long id = restartedAutoIncrementLease.next(blockReserver);
+		assertTrue(id > lastId);
+		assertEquals(20L, id);
+	}
+	
+	@Test
+	public void testReservationFailure()
+	{
+		final AtomicInteger attemptCount = new AtomicInteger();
+		AutoIncrementLease.BlockReserver blockReserver = new AutoIncrementLease.BlockReserver()
+		{
+			@Override
+			public long reserveBlock(int blockSize)
+			{
+				if(attemptCount.incrementAndGet() == 1)
+				{
+					throw new IllegalStateException("ERROR: Auto increment node not found!");
+				}
+				
+				return 50;
+			}
+		};
+		AutoIncrementLease autoIncrementLease = new AutoIncrementLease(10);
+		
+		try
+		{
+			autoIncrementLease.next(blockReserver);
+			assertTrue("Was expecting IllegalStateException error because the first reservation failed.", false);
+		}
+		catch(IllegalStateException illegalStateException)
+		{
+			assertTrue(true);
+		}
+		
+		assertEquals(50L, autoIncrementLease.next(blockReserver));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBlockSize()
+	{
+		new AutoIncrementLease(0);
+	}
+}
@@ -0,0 +1,65 @@
+package bookeeping.backend.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base62CodecBenchmark
+{
+	private String legacyNext;
+	private String codecStringNext;
+	private long codecNext;
+	private char[] buffer;
+	
+	@Setup
+	public void setup()
+	{
+		this.legacyNext = "2";
+		this.codecStringNext = "2";
+		this.codecNext = 2;
+		this.buffer = new char[Base62Codec.MAXIMUM_LENGTH];
+	}
+	
+	@Benchmark
+	public String legacyStringAdd()
+	{
+		this.legacyNext = LegacyAlphaNumericOperation.add(this.legacyNext, 1);
+		return this.legacyNext;
+	}
+	
+	@Benchmark
+	public String codecStringAdd()
+	{
+		this.codecStringNext = Base62Codec.encode(Base62Codec.decode(this.codecStringNext) + 1);
+		return this.codecStringNext;
+	}
+	
+	@Benchmark
+	public int codecBufferEncode()
+	{
+		return Base62Codec.encode(this.codecNext++, this.buffer, this.buffer.length);
+	}
+	
+	public static void main(String[] args) throws RunnerException
+	{
+		new Runner(new OptionsBuilder().include(Base62CodecBenchmark.class.getSimpleName()).build()).run();
+	}
+}
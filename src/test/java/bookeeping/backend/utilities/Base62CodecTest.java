@@ -0,0 +1,94 @@
+package bookeeping.backend.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class Base62CodecTest
+{
+	private static final int[] increments = {1, 2, 61, 62, 63, 1000, 3844};
+	
+	@Test
+	public void testRoundTrip()
+	{
+		for(long number = 0; number < 250000; number++)
+		{
+			assertEquals(number, Base62Codec.decode(Base62Codec.encode(number)));
+		}
+		
+		for(long power = 1; power > 0 && power <= Long.MAX_VALUE / Base62Codec.BASE; power *= Base62Codec.BASE)
+		{
+			assertEquals(power - 1, Base62Codec.decode(Base62Codec.encode(power - 1)));
+			assertEquals(power, Base62Codec.decode(Base62Codec.encode(power)));
+			assertEquals(power + 1, Base62Codec.decode(Base62Codec.encode(power + 1)));
+		}
+		
+		assertEquals(Long.MAX_VALUE, Base62Codec.decode(Base62Codec.encode(Long.MAX_VALUE)));
+		assertEquals(Base62Codec.MAXIMUM_LENGTH, Base62Codec.encode(Long.MAX_VALUE).length());
+	}
+	
+	@Test
+	public void testBufferEncode()
+	{
+		char[] buffer = new char[Base62Codec.MAXIMUM_LENGTH + 2];
+		int start = Base62Codec.encode(Long.MAX_VALUE, buffer, buffer.length);
+		assertEquals(Base62Codec.encode(Long.MAX_VALUE), new String(buffer, start, buffer.length - start));
+		
+		start = Base62Codec.encode(62, buffer, buffer.length - 1);
+		assertEquals("10", new String(buffer, start, buffer.length - 1 - start));
+		
+		start = Base62Codec.encode(0, buffer, buffer.length);
+		assertEquals("0", new String(buffer, start, buffer.length - start));
+	}
+	
+	/*
+	 * Stored next values were written by the string arithmetic, so both must agree on every value it
+	 * could have produced.
+	 */
+	@Test
+	public void testLegacyAgreement()
+	{
+		for(int number = 0; number < 250000; number++)
+		{
+			assertEquals(LegacyAlphaNumericOperation.convertFromBase10(number), Base62Codec.encode(number));
+		}
+		
+		String next = "2";
+		for(int i = 0; i < 20000; i++)
+		{
+			for(int increment : Base62CodecTest.increments)
+			{
+				assertEquals(LegacyAlphaNumericOperation.add(next, increment), AlphaNumericOperation.add(next, increment));
+			}
+			
+			next = LegacyAlphaNumericOperation.add(next, 997);
+		}
+		
+		assertEquals(LegacyAlphaNumericOperation.convertFromBase10(Integer.MAX_VALUE), AlphaNumericOperation.convertFromBase10(Integer.MAX_VALUE));
+		assertEquals(LegacyAlphaNumericOperation.add("ZZZZZZ", 1), AlphaNumericOperation.add("ZZZZZZ", 1));
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void testEmptyNumber()
+	{
+		Base62Codec.decode("");
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidDigit()
+	{
+		Base62Codec.decode("ab-c");
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void testTooLargeNumber()
+	{
+		Base62Codec.decode(Base62Codec.encode(Long.MAX_VALUE) + "0");
+	}
+	
+	@Test(expected = NumberFormatException.class)
+	public void testNegativeNumber()
+	{
+		Base62Codec.encode(-1);
+	}
+}
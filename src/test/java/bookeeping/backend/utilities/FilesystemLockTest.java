@@ -0,0 +1,114 @@
+package bookeeping.backend.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.Test;
+
+public class FilesystemLockTest
+{
+	@Test
+	public void testUncontended()
+	{
+		FilesystemLock filesystemLock = new FilesystemLock(4, 100);
+		
+		Lock lock = filesystemLock.lockExclusive("user", "filesystem");
+		Lock nestedLock = filesystemLock.lockShared("user", "filesystem");
+		nestedLock.unlock();
+		lock.unlock();
+		
+		assertEquals(2, filesystemLock.getAcquireCount());
+		assertEquals(0, filesystemLock.getContendedCount());
+		assertEquals(0, filesystemLock.getTimeoutCount());
+		assertEquals(0, filesystemLock.getContentionRate(), 0);
+		assertEquals(0, filesystemLock.getAverageWaitNanos());
+	}
+	
+	@Test
+	public void testTimeout() throws InterruptedException
+	{
+		FilesystemLock filesystemLock = new FilesystemLock(1, 50);
+		Thread holder = this.holdExclusive(filesystemLock, "user", "filesystem", 1000);
+		try
+		{
+			try
+			{
+				filesystemLock.lockShared("other", "filesystem");
+				assertTrue("Was expecting IllegalStateException error because the only stripe is held for longer than the timeout.", false);
+			}
+			catch(IllegalStateException illegalStateException)
+			{
+				assertTrue(true);
+			}
+		}
+		finally
+		{
+			holder.interrupt();
+			holder.join();
+		}
+		
+		assertEquals(2, filesystemLock.getAcquireCount());
+		assertEquals(1, filesystemLock.getContendedCount());
+		assertEquals(1, filesystemLock.getTimeoutCount());
+		assertEquals(0.5, filesystemLock.getContentionRate(), 0);
+		assertTrue(filesystemLock.getMaximumWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+	
+	@Test
+	public void testContendedWait() throws InterruptedException
+	{
+		FilesystemLock filesystemLock = new FilesystemLock(1, 10000);
+		Thread holder = this.holdExclusive(filesystemLock, "user", "filesystem", 100);
+		
+		Lock lock = filesystemLock.lockExclusive("user", "filesystem");
+		lock.unlock();
+		holder.join();
+		
+		assertEquals(2, filesystemLock.getAcquireCount());
+		assertEquals(1, filesystemLock.getContendedCount());
+		assertEquals(0, filesystemLock.getTimeoutCount());
+		assertTrue(filesystemLock.getWaitNanos() > 0);
+		assertEquals(filesystemLock.getWaitNanos(), filesystemLock.getAverageWaitNanos());
+		assertEquals(filesystemLock.getWaitNanos(), filesystemLock.getMaximumWaitNanos());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidStripeCount()
+	{
+		new FilesystemLock(0, 100);
+	}
+	
+	/*
+	 * Starts a thread that holds the exclusive lock for the given time, or until it is interrupted, and
+	 * returns once the lock is taken.
+	 */
+	private Thread holdExclusive(final FilesystemLock filesystemLock, final String userId, final String filesystemId, final long millis) throws InterruptedException
+	{
+		final CountDownLatch locked = new CountDownLatch(1);
+		Thread holder = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Lock lock = filesystemLock.lockExclusive(userId, filesystemId);
+				try
+				{
+					locked.countDown();
+					Thread.sleep(millis);
+				}
+				catch(InterruptedException interruptedException) {}
+				finally
+				{
+					lock.unlock();
+				}
+			}
+		});
+		holder.start();
+		locked.await();
+		return holder;
+	}
+}
@@ -0,0 +1,88 @@
+package bookeeping.backend.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ConcurrentModificationException;
+
+import org.junit.Test;
+
+public class TransactionRetryTest
+{
+	@Test
+	public void testTransientExceptions()
+	{
+		TransactionRetry transactionRetry = new TransactionRetry(3, 0, 0, ConcurrentModificationException.class);
+		
+		assertTrue(transactionRetry.isTransient(new ConcurrentModificationException()));
+		assertTrue(transactionRetry.isTransient(new IllegalStateException(new RuntimeException(new ConcurrentModificationException()))));
+		assertTrue(transactionRetry.isTransient(new RuntimeException("Server failed: java.util.ConcurrentModificationException")));
+		assertFalse(transactionRetry.isTransient(new IllegalStateException("ERROR: Not transient!")));
+		assertFalse(transactionRetry.isTransient(new RuntimeException(new IllegalArgumentException())));
+	}
+	
+	@Test
+	public void testRetryLimit()
+	{
+		TransactionRetry transactionRetry = new TransactionRetry(4, 1, 2, ConcurrentModificationException.class);
+		ConcurrentModificationException failure = new ConcurrentModificationException();
+		
+		int attempt = 1;
+		try
+		{
+			for(; ; attempt++)
+			{
+				transactionRetry.backoff(failure, attempt);
+			}
+		}
+		catch(ConcurrentModificationException concurrentModificationException)
+		{
+			assertSame(failure, concurrentModificationException);
+		}
+		
+		assertEquals(4, attempt);
+		assertEquals(3, transactionRetry.getRetryCount());
+		assertEquals(1, transactionRetry.getGiveUpCount());
+		assertTrue(transactionRetry.getBackoffMillis() <= 1 + 2 + 2);
+	}
+	
+	@Test
+	public void testNoRetryOfOtherExceptions()
+	{
+		TransactionRetry transactionRetry = new TransactionRetry(4, 0, 0, ConcurrentModificationException.class);
+		
+		assertFalse(transactionRetry.retry(new IllegalStateException(), 1));
+		assertEquals(0, transactionRetry.getRetryCount());
+		assertEquals(0, transactionRetry.getGiveUpCount());
+	}
+	
+	@Test
+	public void testNoRetryWhenNested()
+	{
+		TransactionRetry transactionRetry = new TransactionRetry(4, 0, 0, ConcurrentModificationException.class);
+		
+		TransactionRetry.Scope outerScope = transactionRetry.enter();
+		try
+		{
+			TransactionRetry.Scope innerScope = transactionRetry.enter();
+			innerScope.close();
+			assertFalse(transactionRetry.retry(new ConcurrentModificationException(), 1));
+		}
+		finally
+		{
+			outerScope.close();
+		}
+		
+		assertEquals(0, transactionRetry.getRetryCount());
+		assertTrue(transactionRetry.retry(new ConcurrentModificationException(), 1));
+		assertEquals(1, transactionRetry.getRetryCount());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidAttempts()
+	{
+		new TransactionRetry(0, 0, 0);
+	}
+}
@@ -0,0 +1,81 @@
+package bookeeping.backend.utilities.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LruNodeCacheTest
+{
+	@Test
+	public void testEvictionWithinWeight()
+	{
+		NodeSnapshot nodeSnapshot = this.createSnapshot(NodeSnapshot.nextStamp());
+		LruNodeCache lruNodeCache = new LruNodeCache(3 * nodeSnapshot.getWeight());
+		
+		lruNodeCache.put("a", nodeSnapshot);
+		lruNodeCache.put("b", this.createSnapshot(NodeSnapshot.nextStamp()));
+		lruNodeCache.put("c", this.createSnapshot(NodeSnapshot.nextStamp()));
+		assertNotNull(lruNodeCache.get("a"));
+		lruNodeCache.put("d", this.createSnapshot(NodeSnapshot.nextStamp()));
+		
+		assertNotNull(lruNodeCache.get("a"));
+		assertNull(lruNodeCache.get("b"));
+		assertNotNull(lruNodeCache.get("c"));
+		assertNotNull(lruNodeCache.get("d"));
+		assertEquals(3 * nodeSnapshot.getWeight(), lruNodeCache.getWeight());
+		assertEquals(4, lruNodeCache.getHitCount());
+		assertEquals(1, lruNodeCache.getMissCount());
+	}
+	
+	@Test
+	public void testSnapshotLargerThanWeight()
+	{
+		NodeSnapshot nodeSnapshot = this.createSnapshot(NodeSnapshot.nextStamp());
+		LruNodeCache lruNodeCache = new LruNodeCache(nodeSnapshot.getWeight() - 1);
+		
+		lruNodeCache.put("a", nodeSnapshot);
+		assertNull(lruNodeCache.get("a"));
+		assertEquals(0, lruNodeCache.getWeight());
+	}
+	
+	@Test
+	public void testSnapshotReadBeforeInvalidation()
+	{
+		LruNodeCache lruNodeCache = new LruNodeCache(1024 * 1024);
+		long stamp = NodeSnapshot.nextStamp();
+		
+		lruNodeCache.put("a", this.createSnapshot(stamp));
+		lruNodeCache.invalidate("a");
+		lruNodeCache.put("a", this.createSnapshot(stamp));
+		assertNull(lruNodeCache.get("a"));
+		
+		lruNodeCache.put("a", this.createSnapshot(NodeSnapshot.nextStamp()));
+		assertNotNull(lruNodeCache.get("a"));
+	}
+	
+	@Test
+	public void testSnapshotReadBeforeInvalidateAll()
+	{
+		LruNodeCache lruNodeCache = new LruNodeCache(1024 * 1024);
+		long stamp = NodeSnapshot.nextStamp();
+		
+		lruNodeCache.invalidateAll();
+		lruNodeCache.put("a", this.createSnapshot(stamp));
+		assertNull(lruNodeCache.get("a"));
+		
+		lruNodeCache.put("a", this.createSnapshot(NodeSnapshot.nextStamp()));
+		assertNotNull(lruNodeCache.get("a"));
+	}
+	
+	private NodeSnapshot createSnapshot(long stamp)
+	{
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("nodeId", "a");
+		return new NodeSnapshot(0L, properties, stamp);
+	}
+}
@@ -0,0 +1,61 @@
+package bookeeping.backend.utilities.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BloomFilterTest
+{
+	@Test
+	public void testNoFalseNegatives()
+	{
+		BloomFilter bloomFilter = new BloomFilter(10000, 0.01);
+		for(int i = 0; i < 10000; i++)
+		{
+			bloomFilter.add("/Documents/" + i + "/notes.txt");
+		}
+		
+		for(int i = 0; i < 10000; i++)
+		{
+			assertTrue(bloomFilter.mightContain("/Documents/" + i + "/notes.txt"));
+		}
+	}
+	
+	@Test
+	public void testFalsePositiveRate()
+	{
+		BloomFilter bloomFilter = new BloomFilter(10000, 0.01);
+		for(int i = 0; i < 10000; i++)
+		{
+			bloomFilter.add("/Documents/" + i + "/notes.txt");
+		}
+		
+		int falsePositives = 0;
+		for(int i = 0; i < 10000; i++)
+		{
+			if(bloomFilter.mightContain("/Archive/" + i + "/notes.txt"))
+			{
+				falsePositives++;
+			}
+		}
+		
+		assertTrue(falsePositives < 300);
+		assertTrue(bloomFilter.getExpectedFalsePositiveRate() < 0.03);
+	}
+	
+	@Test
+	public void testSizedFromExpectedInsertions()
+	{
+		BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+		assertEquals(1000, bloomFilter.getExpectedInsertions());
+		assertTrue(bloomFilter.getByteSize() >= 1000 * 9 / 8);
+		assertTrue(bloomFilter.getByteSize() <= 1000 * 10 / 8 + 8);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize()
+	{
+		new BloomFilter(0, 0.01);
+	}
+}
@@ -0,0 +1,66 @@
+package bookeeping.backend.utilities.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PathFilterTest
+{
+	@Test
+	public void testSizedFromPaths()
+	{
+		PathFilter pathFilter = new PathFilter(1024 * 1024, 0.01);
+		
+		assertEquals(2000, pathFilter.createBloomFilter(1000).getExpectedInsertions());
+		assertEquals(64, pathFilter.createBloomFilter(0).getExpectedInsertions());
+	}
+	
+	@Test
+	public void testEvictionWithinBytes()
+	{
+		BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+		PathFilter pathFilter = new PathFilter(2 * bloomFilter.getByteSize(), 0.01);
+		
+		pathFilter.putBloomFilter("a", bloomFilter);
+		pathFilter.putBloomFilter("b", new BloomFilter(1000, 0.01));
+		assertSame(bloomFilter, pathFilter.getBloomFilter("a"));
+		pathFilter.putBloomFilter("c", new BloomFilter(1000, 0.01));
+		
+		assertNotNull(pathFilter.getBloomFilter("a"));
+		assertNull(pathFilter.getBloomFilter("b"));
+		assertNotNull(pathFilter.getBloomFilter("c"));
+		assertEquals(2 * bloomFilter.getByteSize(), pathFilter.getBytes());
+		assertTrue(pathFilter.isFiltered("a"));
+		assertFalse(pathFilter.isFiltered("b"));
+		assertTrue(pathFilter.isFiltered("c"));
+		
+		pathFilter.putBloomFilter("a", new BloomFilter(1000, 0.01));
+		assertEquals(2 * bloomFilter.getByteSize(), pathFilter.getBytes());
+		
+		pathFilter.invalidate("a");
+		assertNull(pathFilter.getBloomFilter("a"));
+		assertEquals(bloomFilter.getByteSize(), pathFilter.getBytes());
+		assertTrue(pathFilter.isFiltered("a"));
+		assertEquals(4, pathFilter.getBuildCount());
+	}
+	
+	@Test
+	public void testFilterLargerThanBytes()
+	{
+		BloomFilter bloomFilter = new BloomFilter(1000, 0.01);
+		PathFilter pathFilter = new PathFilter(bloomFilter.getByteSize() - 1, 0.01);
+		
+		pathFilter.putBloomFilter("a", bloomFilter);
+		assertNull(pathFilter.getBloomFilter("a"));
+		assertEquals(0, pathFilter.getBytes());
+		assertFalse(pathFilter.isFiltered("a"));
+		
+		pathFilter.invalidate("a");
+		assertFalse(pathFilter.isFiltered("a"));
+	}
+}